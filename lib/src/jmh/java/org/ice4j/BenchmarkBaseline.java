@@ -0,0 +1,248 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j;
+
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Compares the results of a JMH run, written with <tt>-rf csv</tt>, with a
+ * baseline written the same way, and exits with status <tt>1</tt> if any
+ * benchmark regressed by more than a tolerance.
+ * <p>
+ * Usage: <tt>BenchmarkBaseline baseline.csv results.csv [tolerance%]</tt>
+ * </p>
+ * Scores in the throughput modes are better when higher, all the others when
+ * lower. Benchmarks which are only in one of the files are reported and
+ * ignored.
+ */
+public class BenchmarkBaseline
+{
+    /**
+     * The regression, in percent of the baseline score, tolerated by
+     * default.
+     */
+    private static final double DEFAULT_TOLERANCE = 20;
+
+    public static void main(String[] args)
+        throws IOException
+    {
+        if (args.length < 2)
+        {
+            System.err.println(
+                "Usage: BenchmarkBaseline baseline.csv results.csv"
+                    + " [tolerance%]");
+            System.exit(2);
+        }
+
+        Map<String, Score> baseline = read(Paths.get(args[0]));
+        Map<String, Score> results = read(Paths.get(args[1]));
+        double tolerance
+            = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+        int regressions = 0;
+
+        for (Map.Entry<String, Score> e : results.entrySet())
+        {
+            String benchmark = e.getKey();
+            Score result = e.getValue();
+            Score base = baseline.get(benchmark);
+
+            if (base == null)
+            {
+                System.out.println("NEW        " + benchmark + ": " + result);
+                continue;
+            }
+
+            // The change in percent, positive when the result is worse.
+            double change = 100 * (result.score - base.score) / base.score;
+
+            if (result.isHigherBetter())
+                change = -change;
+
+            String status;
+
+            if (change > tolerance)
+            {
+                status = "REGRESSED ";
+                regressions++;
+            }
+            else if (change < -tolerance)
+            {
+                status = "IMPROVED  ";
+            }
+            else
+            {
+                status = "OK        ";
+            }
+            System.out.printf(
+                "%s %s: %s (baseline %s, %+.1f%% worse)%n",
+                status, benchmark, result, base, change);
+        }
+        for (String benchmark : baseline.keySet())
+        {
+            if (!results.containsKey(benchmark))
+                System.out.println("MISSING    " + benchmark);
+        }
+
+        if (regressions > 0)
+        {
+            System.out.println(
+                regressions + " benchmark(s) regressed by more than "
+                    + tolerance + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads the scores in a JMH CSV result file.
+     *
+     * @param file the file to read.
+     * @return the scores in <tt>file</tt> by benchmark name, mode and
+     * parameters.
+     * @throws IOException if <tt>file</tt> cannot be read.
+     */
+    private static Map<String, Score> read(Path file)
+        throws IOException
+    {
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        Map<String, Score> scores = new LinkedHashMap<>();
+
+        if (lines.isEmpty())
+            return scores;
+
+        List<String> header = parse(lines.get(0));
+        int benchmark = header.indexOf("Benchmark");
+        int mode = header.indexOf("Mode");
+        int score = header.indexOf("Score");
+        int unit = header.indexOf("Unit");
+
+        if (benchmark < 0 || mode < 0 || score < 0 || unit < 0)
+        {
+            throw new IOException(file + " is not a JMH CSV result file");
+        }
+
+        for (String line : lines.subList(1, lines.size()))
+        {
+            if (line.isEmpty())
+                continue;
+
+            List<String> fields = parse(line);
+            StringBuilder key = new StringBuilder(fields.get(benchmark));
+
+            for (int i = 0; i < header.size(); i++)
+            {
+                String name = header.get(i);
+
+                if (name.startsWith("Param: ") && !fields.get(i).isEmpty())
+                {
+                    key.append(' ')
+                        .append(name.substring("Param: ".length()))
+                        .append('=')
+                        .append(fields.get(i));
+                }
+            }
+            key.append(" [").append(fields.get(mode)).append(']');
+
+            scores.put(
+                key.toString(),
+                new Score(
+                    fields.get(mode),
+                    Double.parseDouble(fields.get(score)),
+                    fields.get(unit)));
+        }
+        return scores;
+    }
+
+    /**
+     * Splits a CSV line into its fields, removing the quotes around them.
+     *
+     * @param line the line to split.
+     * @return the fields of <tt>line</tt>.
+     */
+    private static List<String> parse(String line)
+    {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++)
+        {
+            char c = line.charAt(i);
+
+            if (c == '"')
+            {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"')
+                {
+                    field.append(c);
+                    i++;
+                }
+                else
+                {
+                    quoted = !quoted;
+                }
+            }
+            else if (c == ',' && !quoted)
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else
+            {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * The score of a benchmark.
+     */
+    private static class Score
+    {
+        final String mode;
+
+        final double score;
+
+        final String unit;
+
+        Score(String mode, double score, String unit)
+        {
+            this.mode = mode;
+            this.score = score;
+            this.unit = unit;
+        }
+
+        /**
+         * Determines whether a higher score is better, i.e. whether the score
+         * is a throughput.
+         *
+         * @return <tt>true</tt> if a higher score is better.
+         */
+        boolean isHigherBetter()
+        {
+            return "thrpt".equals(mode);
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%.3f %s", score, unit);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.attribute;
+
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.ice4j.*;
+import org.ice4j.stack.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the decoding of the attributes of connectivity checks and the
+ * computation of the MESSAGE-INTEGRITY and FINGERPRINT values over a message
+ * of the size of a typical connectivity check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class AttributeBenchmark
+{
+    /**
+     * The length of a Binding request with USERNAME, PRIORITY,
+     * ICE-CONTROLLING and the headers of MESSAGE-INTEGRITY and FINGERPRINT.
+     */
+    private static final int MESSAGE_LENGTH = 100;
+
+    private static final byte[] KEY
+        = "0123456789abcdefghijklmn".getBytes(StandardCharsets.UTF_8);
+
+    private byte[] message;
+
+    private byte[] username;
+
+    private byte[] xorMappedAddress;
+
+    @Setup
+    public void setUp()
+    {
+        message = new byte[MESSAGE_LENGTH];
+        new Random(0).nextBytes(message);
+
+        username
+            = AttributeFactory.createUsernameAttribute("remoteufrag:localufrag")
+                .encode();
+        xorMappedAddress
+            = AttributeFactory.createXorMappedAddressAttribute(
+                    new TransportAddress("192.0.2.1", 5000, Transport.UDP),
+                    TransactionID.createNewTransactionID().getBytes())
+                .encode();
+    }
+
+    @Benchmark
+    public Attribute decodeUsername()
+        throws StunException
+    {
+        return AttributeDecoder.decode(username, 0, username.length);
+    }
+
+    @Benchmark
+    public Attribute decodeXorMappedAddress()
+        throws StunException
+    {
+        return
+            AttributeDecoder.decode(
+                    xorMappedAddress,
+                    0,
+                    xorMappedAddress.length);
+    }
+
+    @Benchmark
+    public byte[] calculateHmacSha1()
+    {
+        return
+            MessageIntegrityAttribute.calculateHmacSha1(
+                    message,
+                    0,
+                    message.length,
+                    KEY);
+    }
+
+    @Benchmark
+    public byte[] calculateXorCRC32()
+    {
+        return
+            FingerprintAttribute.calculateXorCRC32(
+                    message,
+                    0,
+                    message.length);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice;
+
+import java.util.concurrent.*;
+
+import org.ice4j.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures {@link CheckList#getNextOrdinaryPairToCheck()}, which the
+ * connectivity check client runs every Ta, on a check list whose pairs are
+ * all <tt>Waiting</tt>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class CheckListBenchmark
+{
+    @Param({ "10", "100" })
+    public int pairs;
+
+    private Agent agent;
+
+    private CheckList checkList;
+
+    @Setup
+    public void setUp()
+    {
+        agent = new Agent();
+
+        IceMediaStream stream = agent.createMediaStream("audio");
+        Component component
+            = stream.createComponent(KeepAliveStrategy.SELECTED_ONLY, false);
+        LocalCandidate local
+            = new HostCandidate(
+                    new TransportAddress("192.0.2.1", 10000, Transport.UDP),
+                    component);
+
+        checkList = new CheckList(stream);
+        for (int i = 0; i < pairs; i++)
+        {
+            RemoteCandidate remote
+                = new RemoteCandidate(
+                        new TransportAddress(
+                                "198.51.100.1",
+                                20000 + i,
+                                Transport.UDP),
+                        component,
+                        CandidateType.HOST_CANDIDATE,
+                        Integer.toString(i),
+                        2130706431 - i,
+                        null);
+            CandidatePair pair = new CandidatePair(local, remote);
+
+            pair.setStateWaiting();
+            checkList.add(pair);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        agent.free();
+    }
+
+    @Benchmark
+    public CandidatePair getNextOrdinaryPairToCheck()
+    {
+        return checkList.getNextOrdinaryPairToCheck();
+    }
+}
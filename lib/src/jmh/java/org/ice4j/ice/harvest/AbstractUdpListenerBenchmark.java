@@ -0,0 +1,68 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import java.util.concurrent.*;
+
+import org.ice4j.*;
+import org.ice4j.attribute.*;
+import org.ice4j.message.*;
+import org.ice4j.stack.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures {@link AbstractUdpListener#getUfrag(byte[], int, int)}, which the
+ * single-port harvesters run on the first packet from every remote address.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class AbstractUdpListenerBenchmark
+{
+    private byte[] bindingRequest;
+
+    @Setup
+    public void setUp()
+        throws StunException
+    {
+        Request request
+            = MessageFactory.createBindingRequest(
+                    0x6e7f1eff, true, 0x1234567890abcdefL);
+
+        request.putAttribute(
+            AttributeFactory.createUsernameAttribute(
+                    "localufrag:remoteufrag"));
+        request.putAttribute(AttributeFactory.createFingerprintAttribute());
+        request.setTransactionID(
+            TransactionID.createNewTransactionID().getBytes());
+
+        // Without MESSAGE-INTEGRITY the encoding needs no StunStack.
+        bindingRequest = request.encode(null);
+    }
+
+    @Benchmark
+    public String getUfrag()
+    {
+        return
+            AbstractUdpListener.getUfrag(
+                    bindingRequest,
+                    0,
+                    bindingRequest.length);
+    }
+}
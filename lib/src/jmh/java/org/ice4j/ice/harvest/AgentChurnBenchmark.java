@@ -0,0 +1,114 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.ice4j.ice.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the creation of an <tt>Agent</tt> with one component harvested
+ * from a port range, followed by its disposal, with and without the
+ * {@link PreBoundSocketPool}. A number of agents which keep the ports at the
+ * start of the range busy are created beforehand, so that harvesting from the
+ * preferred port has to skip them, as on a server with ongoing sessions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 5)
+@Fork(3)
+public class AgentChurnBenchmark
+{
+    private static final int MIN_PORT = 20000;
+
+    private static final int MAX_PORT = 30000;
+
+    /**
+     * The number of agents which keep ports busy. Less than the default of
+     * <tt>org.ice4j.BIND_RETRIES</tt>, so that harvesting without the pool
+     * still finds a free port.
+     */
+    private static final int BUSY_AGENTS = 40;
+
+    private final List<Agent> busyAgents = new ArrayList<>();
+
+    /**
+     * The value of {@link HarvestConfig#udpPreBoundSocketPoolSize()}. Every
+     * value runs in its own fork, so the default pool is created (or not)
+     * with it.
+     */
+    @Param({ "0", "16" })
+    public int preBoundSocketPoolSize;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        HarvestConfig.config.setUdpPreBoundSocketPoolSize(
+            preBoundSocketPoolSize);
+        for (int i = 0; i < BUSY_AGENTS; i++)
+        {
+            Agent agent = new Agent();
+
+            busyAgents.add(agent);
+            createComponent(agent);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        for (Agent agent : busyAgents)
+        {
+            agent.free();
+        }
+        busyAgents.clear();
+    }
+
+    private static void createComponent(Agent agent)
+        throws IOException
+    {
+        IceMediaStream stream = agent.createMediaStream("audio");
+
+        agent.createComponent(
+            stream,
+            MIN_PORT, MIN_PORT, MAX_PORT,
+            KeepAliveStrategy.SELECTED_ONLY,
+            true);
+    }
+
+    @Benchmark
+    public Agent createAndFreeAgent()
+        throws IOException
+    {
+        Agent agent = new Agent();
+
+        try
+        {
+            createComponent(agent);
+        }
+        finally
+        {
+            agent.free();
+        }
+        return agent;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.message;
+
+import java.nio.charset.*;
+import java.util.concurrent.*;
+
+import org.ice4j.*;
+import org.ice4j.attribute.*;
+import org.ice4j.security.*;
+import org.ice4j.stack.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the encoding and the decoding of an ICE connectivity check, i.e. a
+ * Binding request with USERNAME, PRIORITY, ICE-CONTROLLING,
+ * MESSAGE-INTEGRITY and FINGERPRINT.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class MessageBenchmark
+{
+    private static final String USERNAME = "remoteufrag:localufrag";
+
+    private static final byte[] KEY
+        = "0123456789abcdefghijklmn".getBytes(StandardCharsets.UTF_8);
+
+    private StunStack stunStack;
+
+    private Request request;
+
+    private byte[] encoded;
+
+    @Setup
+    public void setUp()
+        throws StunException
+    {
+        stunStack = new StunStack();
+        stunStack.getCredentialsManager().registerAuthority(
+            new CredentialsAuthority()
+            {
+                @Override
+                public byte[] getLocalKey(String username)
+                {
+                    return KEY;
+                }
+
+                @Override
+                public byte[] getRemoteKey(String username, String media)
+                {
+                    return KEY;
+                }
+
+                @Override
+                public boolean checkLocalUserName(String username)
+                {
+                    return true;
+                }
+            });
+
+        request
+            = MessageFactory.createBindingRequest(
+                    0x6e7f1eff, true, 0x1234567890abcdefL);
+        request.putAttribute(
+            AttributeFactory.createUsernameAttribute(USERNAME));
+        request.putAttribute(
+            AttributeFactory.createMessageIntegrityAttribute(USERNAME));
+        request.putAttribute(AttributeFactory.createFingerprintAttribute());
+        request.setTransactionID(
+            TransactionID.createNewTransactionID().getBytes());
+
+        encoded = request.encode(stunStack);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        stunStack.shutDown();
+    }
+
+    @Benchmark
+    public byte[] encode()
+    {
+        return request.encode(stunStack);
+    }
+
+    @Benchmark
+    public Message decode()
+        throws StunException
+    {
+        return Message.decode(encoded, 0, encoded.length);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+import org.jitsi.utils.logging2.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the round trip of a packet sent over the loopback interface to one
+ * of the sockets merged by a {@link MergingDatagramSocket} and received from
+ * the latter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class MergingDatagramSocketBenchmark
+{
+    @Param({ "1", "4" })
+    public int numSockets;
+
+    private MergingDatagramSocket merging;
+
+    private DatagramSocket sender;
+
+    private DatagramPacket[] sent;
+
+    private DatagramPacket received;
+
+    private int next;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        merging
+            = new MergingDatagramSocket(
+                    new LoggerImpl(getClass().getName()));
+        merging.setSoTimeout(5000);
+        sender = new DatagramSocket(0, loopback);
+        sent = new DatagramPacket[numSockets];
+        for (int i = 0; i < numSockets; i++)
+        {
+            DatagramSocket socket = new DatagramSocket(0, loopback);
+
+            merging.add(socket);
+            sent[i]
+                = new DatagramPacket(
+                        new byte[1200],
+                        1200,
+                        socket.getLocalSocketAddress());
+        }
+        received = new DatagramPacket(new byte[1500], 1500);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        merging.close();
+        sender.close();
+    }
+
+    @Benchmark
+    public DatagramPacket sendAndReceive()
+        throws IOException
+    {
+        sender.send(sent[next]);
+        next = (next + 1) % sent.length;
+
+        received.setLength(1500);
+        merging.receive(received);
+        return received;
+    }
+}
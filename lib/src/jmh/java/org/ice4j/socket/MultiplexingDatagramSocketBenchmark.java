@@ -0,0 +1,114 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the round trip of an RTP packet sent over the loopback interface
+ * to a {@link MultiplexingDatagramSocket} and received from the multiplexed
+ * socket of the RTP filter, with the STUN, DTLS and RTCP sockets of a
+ * typical media session and a number of extra sockets whose filters declare
+ * no packet type and are thus consulted for every packet.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class MultiplexingDatagramSocketBenchmark
+{
+    @Param({ "0", "8" })
+    public int extraFilters;
+
+    private MultiplexingDatagramSocket multiplexing;
+
+    private MultiplexedDatagramSocket rtpSocket;
+
+    private DatagramSocket sender;
+
+    private DatagramPacket sent;
+
+    private DatagramPacket received;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        multiplexing = new MultiplexingDatagramSocket(0, loopback);
+        multiplexing.setSoTimeout(5000);
+        multiplexing.getSocket(new StunDatagramPacketFilter());
+        multiplexing.getSocket(new DTLSDatagramFilter());
+        multiplexing.getSocket(new RtcpDemuxPacketFilter());
+        for (int i = 0; i < extraFilters; i++)
+        {
+            multiplexing.getSocket(p -> false);
+        }
+        rtpSocket
+            = multiplexing.getSocket(
+                new DatagramPacketFilter()
+                {
+                    @Override
+                    public boolean accept(DatagramPacket p)
+                    {
+                        return !RtcpDemuxPacketFilter.isRtcpPacket(p);
+                    }
+
+                    @Override
+                    public boolean mayAccept(DemuxPacketType type)
+                    {
+                        return type == DemuxPacketType.RTP;
+                    }
+                });
+
+        byte[] rtp = new byte[1200];
+
+        rtp[0] = (byte) 0x80;
+        rtp[1] = 96;
+        sender = new DatagramSocket(0, loopback);
+        sent
+            = new DatagramPacket(
+                    rtp,
+                    rtp.length,
+                    multiplexing.getLocalSocketAddress());
+        received = new DatagramPacket(new byte[1500], 1500);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        sender.close();
+        multiplexing.close();
+    }
+
+    @Benchmark
+    public DatagramPacket sendAndReceive()
+        throws IOException
+    {
+        sender.send(sent);
+
+        received.setLength(1500);
+        rtpSocket.receive(received);
+        return received;
+    }
+}
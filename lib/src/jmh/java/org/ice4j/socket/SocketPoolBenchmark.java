@@ -0,0 +1,92 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures the throughput of {@link SocketPool#send(DatagramPacket)} from
+ * several threads to a loopback address, with one socket and with as many
+ * sockets as sending threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+@Threads(4)
+public class SocketPoolBenchmark
+{
+    @Param({ "1", "4" })
+    public int numSockets;
+
+    private SocketPool pool;
+
+    /**
+     * The socket to which the packets are sent. Nothing reads from it, the
+     * kernel drops what does not fit in its receive buffer.
+     */
+    private DatagramSocket sink;
+
+    @Setup
+    public void setUp()
+        throws IOException
+    {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        sink = new DatagramSocket(0, loopback);
+        pool = new SocketPool(new InetSocketAddress(loopback, 0), numSockets);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        pool.close();
+        sink.close();
+    }
+
+    /**
+     * The packet sent by a benchmark thread. <tt>DatagramSocket.send</tt>
+     * locks the packet, so every thread has its own.
+     */
+    @State(Scope.Thread)
+    public static class Packet
+    {
+        private DatagramPacket packet;
+
+        @Setup
+        public void setUp(SocketPoolBenchmark benchmark)
+        {
+            packet
+                = new DatagramPacket(
+                        new byte[1200],
+                        1200,
+                        benchmark.sink.getLocalSocketAddress());
+        }
+    }
+
+    @Benchmark
+    public void send(Packet packet)
+        throws IOException
+    {
+        pool.send(packet.packet);
+    }
+}
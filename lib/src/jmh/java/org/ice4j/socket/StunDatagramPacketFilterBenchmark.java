@@ -0,0 +1,82 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import java.net.*;
+import java.util.concurrent.*;
+
+import org.ice4j.*;
+import org.ice4j.message.*;
+import org.ice4j.stack.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measures {@link StunDatagramPacketFilter#accept(DatagramPacket)} on the
+ * packets it accepts and on the media packets it rejects, as well as the
+ * classification which lets the multiplexing sockets skip it for the latter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(3)
+public class StunDatagramPacketFilterBenchmark
+{
+    private final StunDatagramPacketFilter filter
+        = new StunDatagramPacketFilter();
+
+    private DatagramPacket stun;
+
+    private DatagramPacket rtp;
+
+    @Setup
+    public void setUp()
+        throws StunException
+    {
+        Request request = MessageFactory.createBindingRequest();
+
+        request.setTransactionID(
+            TransactionID.createNewTransactionID().getBytes());
+
+        byte[] stunBytes = request.encode(null);
+        byte[] rtpBytes = new byte[1200];
+
+        rtpBytes[0] = (byte) 0x80;
+        rtpBytes[1] = 96;
+
+        stun = new DatagramPacket(stunBytes, stunBytes.length);
+        rtp = new DatagramPacket(rtpBytes, rtpBytes.length);
+    }
+
+    @Benchmark
+    public boolean acceptStun()
+    {
+        return filter.accept(stun);
+    }
+
+    @Benchmark
+    public boolean acceptRtp()
+    {
+        return filter.accept(rtp);
+    }
+
+    @Benchmark
+    public DemuxPacketType classifyRtp()
+    {
+        return DemuxPacketType.classify(rtp);
+    }
+}
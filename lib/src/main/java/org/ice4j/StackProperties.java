@@ -86,6 +86,15 @@ public class StackProperties
     public static final String MAX_CTRAN_RETRANSMISSIONS
                                 = "org.ice4j.MAX_RETRANSMISSIONS";
 
+    /**
+     * Indicates whether client transactions should by default derive their
+     * retransmission timers from the round trip times measured to their
+     * destination rather than using fixed ones. Can be overridden per
+     * <tt>StunStack</tt>.
+     */
+    public static final String ADAPTIVE_CTRAN_RETRANSMISSIONS
+                        = "org.ice4j.ADAPTIVE_CTRAN_RETRANSMISSIONS";
+
     /**
      * The name of the property that tells the stack whether or not it should
      * let the application see retransmissions of incoming requests.
@@ -120,6 +129,15 @@ public class StackProperties
      */
     public static final String NO_KEEP_ALIVES = "org.ice4j.NO_KEEP_ALIVES";
 
+    /**
+     * The name of the property which specifies the number of shards (i.e.
+     * timer threads) of the scheduler shared by all <tt>Agent</tt>s and
+     * <tt>StunStack</tt>s. A value of zero or less means one shard per
+     * available processor.
+     */
+    public static final String SCHEDULER_SHARDS
+                                    = "org.ice4j.SCHEDULER_SHARDS";
+
     /**
      * Returns the String value of the specified property (minus all
      * encompassing whitespaces)and null in case no property value was mapped
@@ -42,6 +42,12 @@ public class StunResponseEvent
      */
     private final Request request;
 
+    /**
+     * The round trip time in nanoseconds of the transaction, or -1 if it is
+     * unknown.
+     */
+    private final long roundTripTimeNanos;
+
     /**
      * Creates a new instance of this event.
      *
@@ -59,9 +65,36 @@ public class StunResponseEvent
             Response response,
             Request request,
             TransactionID transactionID)
+    {
+        this(stunStack, rawMessage, response, request, transactionID, -1);
+    }
+
+    /**
+     * Creates a new instance of this event.
+     *
+     * @param stunStack the <tt>StunStack</tt> to be associated with the new
+     * instance
+     * @param rawMessage the crude message we got off the wire.
+     * @param response the STUN {@link Response} that we've just received.
+     * @param request  the message itself
+     * @param transactionID a reference to the exact {@link TransactionID}
+     * instance that represents the corresponding client transaction.
+     * @param roundTripTimeNanos the time in nanoseconds between sending
+     * <tt>request</tt> and receiving <tt>response</tt>, or -1 if it is unknown
+     * (e.g. because the request was retransmitted and the response could
+     * belong to any of the transmissions).
+     */
+    public StunResponseEvent(
+            StunStack stunStack,
+            RawMessage rawMessage,
+            Response response,
+            Request request,
+            TransactionID transactionID,
+            long roundTripTimeNanos)
     {
         super(stunStack, rawMessage, response);
         this.request = request;
+        this.roundTripTimeNanos = roundTripTimeNanos;
         super.setTransactionID(transactionID);
     }
 
@@ -88,4 +121,17 @@ public class StunResponseEvent
     {
         return (Response)getMessage();
     }
+
+    /**
+     * Returns the time between sending the {@link Request} and receiving the
+     * {@link Response}. It is only known if the request was not
+     * retransmitted, because a response to a retransmitted request could
+     * belong to any of the transmissions (Karn's algorithm).
+     *
+     * @return the round trip time in nanoseconds, or -1 if it is unknown.
+     */
+    public long getRoundTripTimeNanos()
+    {
+        return roundTripTimeNanos;
+    }
 }
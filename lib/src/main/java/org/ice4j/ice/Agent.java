@@ -21,7 +21,7 @@ import org.ice4j.*;
 import org.ice4j.ice.harvest.*;
 import org.ice4j.stack.*;
 import org.ice4j.util.EmptyLogger;
-import org.ice4j.util.PeriodicRunnable;
+import org.ice4j.util.ShardedScheduler;
 import org.jitsi.utils.concurrent.*;
 import org.jitsi.utils.logging2.Logger;
 
@@ -77,11 +77,13 @@ public class Agent
                                             = "IceProcessingState";
 
     /**
-     *  The ScheduledExecutorService to execute Agent's scheduled tasks
+     *  The ScheduledExecutorService to execute Agent's scheduled tasks. This
+     *  is the shard of the shared {@link ShardedScheduler} which this agent
+     *  is assigned to, so that all of its timers (including those of its
+     *  {@link StunStack}) run on the same thread.
      */
-    private static final ScheduledExecutorService agentTasksScheduler
-        = ExecutorFactory.createSingleThreadScheduledExecutor(
-            "ice4j.Agent-timer-", 60, TimeUnit.SECONDS);
+    private final ScheduledExecutorService agentTasksScheduler
+        = ShardedScheduler.getDefault().shardFor(this);
 
     /**
      *  The ExecutorService to execute Agent's tasks
@@ -107,10 +109,11 @@ public class Agent
     };
 
     /**
-     * An instance to schedule STUN checks for selected pair.
+     * The service which sends STUN keep-alives for the selected pairs of this
+     * and other agents.
      */
-    private final StunKeepAliveRunner stunKeepAliveRunner
-        = new StunKeepAliveRunner();
+    private final KeepAliveService keepAliveService
+        = KeepAliveService.getDefault();
 
     /**
      * The LinkedHashMap used to store the media streams
@@ -164,6 +167,26 @@ public class Agent
      */
     private long taValue = -1;
 
+    /**
+     * The {@link CheckPacer} which limits the aggregate rate of the
+     * connectivity checks of this agent and the other agents sharing it, or
+     * <tt>null</tt> if checks are only paced by <tt>Ta</tt>.
+     */
+    private volatile CheckPacer checkPacer = CheckPacer.getDefault();
+
+    /**
+     * Whether this agent uses the low-latency connectivity profile.
+     *
+     * @see #setFastConnectivity(boolean)
+     */
+    private volatile boolean fastConnectivity = false;
+
+    /**
+     * The {@link NominationStrategy} which was used before the low-latency
+     * connectivity profile was enabled, and is restored when it is disabled.
+     */
+    private volatile NominationStrategy strategyBeforeFastConnectivity;
+
     /**
      * The <tt>List</tt> of remote addresses that we have discovered through
      * incoming connectivity checks, before actually receiving a session
@@ -349,6 +372,10 @@ public class Agent
 
         tieBreaker = random.nextLong() & 0x7FFFFFFFFFFFFFFFL;
         nominator = new DefaultNominator(this);
+        if (config.getFastConnectivity())
+        {
+            setFastConnectivity(true);
+        }
 
         for (MappingCandidateHarvester harvester
                     : MappingCandidateHarvesters.getHarvesters())
@@ -1292,7 +1319,7 @@ public class Agent
     public synchronized StunStack getStunStack()
     {
         if (stunStack == null)
-            stunStack = new StunStack();
+            stunStack = new StunStack(null, null, agentTasksScheduler);
         return stunStack;
     }
     
@@ -2046,6 +2073,105 @@ public class Agent
         this.taValue = taValue;
     }
 
+    /**
+     * Returns the {@link CheckPacer} which limits the aggregate rate of the
+     * connectivity checks of this agent and the other agents sharing it.
+     *
+     * @return the {@link CheckPacer} of this agent, or <tt>null</tt> if checks
+     * are only paced by <tt>Ta</tt>.
+     */
+    public CheckPacer getCheckPacer()
+    {
+        return checkPacer;
+    }
+
+    /**
+     * Sets the {@link CheckPacer} which limits the aggregate rate of the
+     * connectivity checks of this agent. Agents which should share an
+     * aggregate limit must share the same instance. Should be set before
+     * connectivity checks start.
+     *
+     * @param checkPacer the {@link CheckPacer} to use, or <tt>null</tt> to
+     * only pace checks by <tt>Ta</tt>.
+     */
+    public void setCheckPacer(CheckPacer checkPacer)
+    {
+        this.checkPacer = checkPacer;
+    }
+
+    /**
+     * Determines whether this agent uses the low-latency connectivity profile.
+     *
+     * @return <tt>true</tt> if this agent uses the low-latency connectivity
+     * profile.
+     * @see #setFastConnectivity(boolean)
+     */
+    public boolean isFastConnectivity()
+    {
+        return fastConnectivity;
+    }
+
+    /**
+     * Sets whether this agent uses the low-latency connectivity profile, which
+     * trades a few more checks for a shorter time to connectivity. With it:
+     * <ul>
+     * <li>the {@link NominationStrategy#NOMINATE_FIRST_ACCEPTABLE_RTT}
+     * strategy is used;</li>
+     * <li>several ordinary checks of a check list are kept in flight instead of
+     * one being sent per <tt>Ta</tt>;</li>
+     * <li>checks sent once another pair of the same component has been
+     * validated give up sooner, and so do check lists without a valid pair for
+     * each component;</li>
+     * <li>the retransmission timers of checks are derived from the measured
+     * round trip times (see
+     * {@link StunStack#setAdaptiveRetransmissions(boolean)}).</li>
+     * </ul>
+     * Should be set before connectivity checks start. The thresholds are
+     * configured in {@link AgentConfig}. Disabling the profile restores the
+     * nomination strategy which was used before it was enabled, unless the
+     * strategy was changed in the meantime.
+     *
+     * @param fastConnectivity <tt>true</tt> to use the low-latency connectivity
+     * profile.
+     */
+    public void setFastConnectivity(boolean fastConnectivity)
+    {
+        if (this.fastConnectivity == fastConnectivity)
+        {
+            return;
+        }
+
+        this.fastConnectivity = fastConnectivity;
+        getStunStack().setAdaptiveRetransmissions(fastConnectivity);
+        if (fastConnectivity)
+        {
+            strategyBeforeFastConnectivity = getNominationStrategy();
+            setNominationStrategy(
+                NominationStrategy.NOMINATE_FIRST_ACCEPTABLE_RTT);
+        }
+        else
+        {
+            if (getNominationStrategy()
+                    == NominationStrategy.NOMINATE_FIRST_ACCEPTABLE_RTT)
+            {
+                setNominationStrategy(strategyBeforeFastConnectivity);
+            }
+            strategyBeforeFastConnectivity = null;
+        }
+    }
+
+    /**
+     * Returns the <tt>ScheduledExecutorService</tt> which runs the timers of
+     * this agent.
+     *
+     * @return the <tt>ScheduledExecutorService</tt> which runs the timers of
+     * this agent.
+     */
+    ScheduledExecutorService getTasksScheduler()
+    {
+        return agentTasksScheduler;
+    }
+
     /**
      * Calculates the value of the <tt>Ta</tt> pace timer according to the
      * number and type of {@link IceMediaStream}s this agent will be using.
@@ -2200,12 +2326,52 @@ public class Agent
             = StackProperties.getBoolean(
                 StackProperties.NO_KEEP_ALIVES,
                 false);
-        if (noKeepAlives || !stunKeepAliveRunner.shouldRunStunKeepAlive())
+        if (noKeepAlives || !shouldRunStunKeepAlive())
         {
             return;
         }
 
-        stunKeepAliveRunner.schedule();
+        keepAliveService.register(this);
+    }
+
+    /**
+     * Determines whether STUN keep-alives should be sent for the keep-alive
+     * pairs of this <tt>Agent</tt>.
+     *
+     * @return <tt>true</tt> if keep-alives should be sent, otherwise
+     * <tt>false</tt>
+     */
+    boolean shouldRunStunKeepAlive()
+    {
+        IceProcessingState state = this.state;
+
+        return
+            (IceProcessingState.COMPLETED.equals(state)
+                || IceProcessingState.TERMINATED.equals(state))
+                && !shutdown;
+    }
+
+    /**
+     * Sends a STUN keep-alive for a pair: a Binding request if this
+     * <tt>Agent</tt> performs consent freshness, or a Binding indication
+     * otherwise.
+     *
+     * @param pair the pair to send a keep-alive for.
+     */
+    void sendKeepAlive(CandidatePair pair)
+    {
+        if (performConsentFreshness)
+        {
+            connCheckClient.startCheckForPair(
+                pair,
+                (int) config.getConsentFreshnessOriginalWaitInterval(),
+                (int) config.getConsentFreshnessMaxWaitInterval(),
+                config.getMaxConsentFreshnessRetransmissions());
+        }
+        else
+        {
+            connCheckClient.sendBindingIndicationForPair(pair);
+        }
     }
 
 
@@ -2316,7 +2482,7 @@ public class Agent
         shutdown = true;
 
         //stop sending keep alives (STUN Binding Indications).
-        stunKeepAliveRunner.cancel();
+        keepAliveService.unregister(this);
 
         // cancel termination timer in case agent is freed
         // before termination timer is triggered
@@ -2630,108 +2796,4 @@ public class Agent
     {
         return logger;
     }
-
-    /**
-     * A class to schedule and perform Stun keep-alive checks
-     */
-    private final class StunKeepAliveRunner extends PeriodicRunnable
-    {
-        private final long consentFreshnessInterval = config.getConsentFreshnessInterval();
-        private final int originalConsentFreshnessWaitInterval
-                = (int) config.getConsentFreshnessOriginalWaitInterval();
-
-        private final int maxConsentFreshnessWaitInterval
-                = (int) config.getConsentFreshnessMaxWaitInterval();
-
-        private final int consentFreshnessMaxRetransmissions = config.getMaxConsentFreshnessRetransmissions();
-
-        private int keepAliveSent = 0;
-
-        StunKeepAliveRunner()
-        {
-            super(agentTasksScheduler, agentTasksExecutor);
-        }
-
-        @Override
-        protected Duration getDelayUntilNextRun()
-        {
-            if (shouldRunStunKeepAlive())
-            {
-                if (keepAliveSent == 0)
-                {
-                    return Duration.ZERO;
-                }
-                else
-                {
-                    double r = 1;
-                    if (config.getRandomizeConsentFreshnessInterval())
-                    {
-                        r = 0.8d + ThreadLocalRandom.current().nextDouble() * 0.4;
-                    }
-                    return Duration.ofMillis((long) (consentFreshnessInterval * r));
-                }
-            }
-            return Duration.ofMillis(-1);
-        }
-
-        @Override
-        protected void run()
-        {
-            try
-            {
-                sendKeepAlive();
-            }
-            catch (Exception e)
-            {
-                logger.warn("Error while sending keep alive", e);
-            }
-        }
-
-        private void sendKeepAlive()
-        {
-            ++keepAliveSent;
-
-            for (IceMediaStream stream : getStreams())
-            {
-                for (Component component : stream.getComponents())
-                {
-                    for (CandidatePair pair : component.getKeepAlivePairs())
-                    {
-                        if (pair != null)
-                        {
-                            if (performConsentFreshness)
-                            {
-                                connCheckClient.startCheckForPair(
-                                    pair,
-                                    originalConsentFreshnessWaitInterval,
-                                    maxConsentFreshnessWaitInterval,
-                                    consentFreshnessMaxRetransmissions);
-                            }
-                            else
-                            {
-                                connCheckClient
-                                    .sendBindingIndicationForPair(pair);
-                            }
-                        }
-                    }
-                }
-            }
-        }
-
-        /**
-         * Determines whether {@link #stunKeepAliveRunner} should run.
-         *
-         * @return <tt>true</tt> if <tt>{@link #stunKeepAliveRunner}</tt>
-         * should run otherwise, <tt>false</tt>
-         */
-        boolean shouldRunStunKeepAlive()
-        {
-            IceProcessingState state = Agent.this.state;
-
-            return
-                (IceProcessingState.COMPLETED.equals(state)
-                    || IceProcessingState.TERMINATED.equals(state))
-                    && !shutdown;
-        }
-    }
 }
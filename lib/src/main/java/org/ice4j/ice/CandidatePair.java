@@ -19,9 +19,11 @@ package org.ice4j.ice;
 
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 import org.ice4j.socket.*;
 import org.ice4j.stack.*;
+import org.ice4j.util.*;
 
 /**
  * <tt>CandidatePair</tt>s map local to remote <tt>Candidate</tt>s so that they
@@ -121,6 +123,35 @@ public class CandidatePair
      */
     private long consentFreshness = CONSENT_FRESHNESS_UNKNOWN;
 
+    /**
+     * Whether consent to send over this pair has expired, i.e. no consent
+     * freshness confirmation was received for longer than the consent expiry.
+     */
+    private volatile boolean consentExpired = false;
+
+    /**
+     * The estimate of the round trip time of this pair, from the connectivity
+     * and consent freshness checks sent over it.
+     */
+    private final RttEstimator rttEstimator = new RttEstimator();
+
+    /**
+     * The number of connectivity and consent freshness checks sent over this
+     * pair.
+     */
+    private final AtomicLong checksSent = new AtomicLong();
+
+    /**
+     * The number of checks sent over this pair which were answered.
+     */
+    private final AtomicLong checksAnswered = new AtomicLong();
+
+    /**
+     * The number of checks sent over this pair which timed out, i.e. whose
+     * request or response was lost on every retransmission.
+     */
+    private final AtomicLong checksLost = new AtomicLong();
+
     /**
      * Creates a <tt>CandidatePair</tt> instance mapping <tt>localCandidate</tt>
      * to <tt>remoteCandidate</tt>.
@@ -605,6 +636,76 @@ public class CandidatePair
         return connCheckTranID;
     }
 
+    /**
+     * Returns the estimate of the round trip time of this pair, from the
+     * connectivity and consent freshness checks sent over it.
+     *
+     * @return the estimate of the round trip time of this pair.
+     */
+    public RttEstimator getRttEstimator()
+    {
+        return rttEstimator;
+    }
+
+    /**
+     * Returns the number of connectivity and consent freshness checks sent
+     * over this pair.
+     *
+     * @return the number of checks sent over this pair.
+     */
+    public long getChecksSent()
+    {
+        return checksSent.get();
+    }
+
+    /**
+     * Returns the number of checks sent over this pair which were answered.
+     *
+     * @return the number of checks sent over this pair which were answered.
+     */
+    public long getChecksAnswered()
+    {
+        return checksAnswered.get();
+    }
+
+    /**
+     * Returns the number of checks sent over this pair which timed out.
+     *
+     * @return the number of checks sent over this pair which timed out.
+     */
+    public long getChecksLost()
+    {
+        return checksLost.get();
+    }
+
+    /**
+     * Notifies this pair that a check was sent over it.
+     */
+    void checkSent()
+    {
+        checksSent.incrementAndGet();
+    }
+
+    /**
+     * Notifies this pair that a check sent over it was answered.
+     *
+     * @param rttNanos the round trip time of the check in nanoseconds, or a
+     * negative value if it is unknown.
+     */
+    void checkAnswered(long rttNanos)
+    {
+        checksAnswered.incrementAndGet();
+        rttEstimator.update(rttNanos);
+    }
+
+    /**
+     * Notifies this pair that a check sent over it timed out.
+     */
+    void checkLost()
+    {
+        checksLost.incrementAndGet();
+    }
+
     /**
      * Raises the <tt>useCandidateSent</tt> flag for this pair.
      */
@@ -744,6 +845,39 @@ public class CandidatePair
         }
     }
 
+    /**
+     * Determines whether consent to send over this <tt>CandidatePair</tt> has
+     * expired (RFC 7675 Section 5.1). Keep-alives continue to be sent over the
+     * pair, so consent may be regained.
+     *
+     * @return <tt>true</tt> if consent to send over this pair has expired
+     */
+    public boolean isConsentExpired()
+    {
+        return consentExpired;
+    }
+
+    /**
+     * Sets whether consent to send over this <tt>CandidatePair</tt> has
+     * expired and notifies the listeners of the parent stream of a change.
+     *
+     * @param consentExpired <tt>true</tt> if consent has expired,
+     * <tt>false</tt> if it has been regained
+     */
+    void setConsentExpired(boolean consentExpired)
+    {
+        if (this.consentExpired != consentExpired)
+        {
+            this.consentExpired = consentExpired;
+
+            getParentComponent().getParentStream().firePairPropertyChange(
+                    this,
+                    IceMediaStream.PROPERTY_PAIR_CONSENT_EXPIRED,
+                    !consentExpired,
+                    consentExpired);
+        }
+    }
+
     /**
      * Returns the UDP <tt>DatagramSocket</tt> (if any) for this
      * <tt>CandidatePair</tt>.
@@ -166,6 +166,23 @@ public class CheckList
         return null;
     }
 
+    /**
+     * Puts <tt>pair</tt> back at the head of the triggered check queue after it
+     * was returned by {@link #popTriggeredCheck()} but could not be checked
+     * yet. Unlike {@link #scheduleTriggeredCheck(CandidatePair)} this does not
+     * change the state of the pair.
+     *
+     * @param pair the pair to put back in the triggered check queue.
+     */
+    protected void requeueTriggeredCheck(CandidatePair pair)
+    {
+        synchronized(triggeredCheckQueue)
+        {
+            if (!triggeredCheckQueue.contains(pair))
+                triggeredCheckQueue.add(0, pair);
+        }
+    }
+
     /**
      * Returns the next {@link CandidatePair} that is eligible for a regular
      * connectivity check. According to RFC 5245 this would be the highest
@@ -275,6 +292,25 @@ public class CheckList
         return true;
     }
 
+    /**
+     * Returns the number of pairs in this <tt>CheckList</tt> whose checks are
+     * in progress.
+     *
+     * @return the number of pairs in this <tt>CheckList</tt> in the
+     * {@link CandidatePairState#IN_PROGRESS} state.
+     */
+    public synchronized int getInProgressCount()
+    {
+        int count = 0;
+
+        for (CandidatePair pair : this)
+        {
+            if (pair.getState() == CandidatePairState.IN_PROGRESS)
+                count++;
+        }
+        return count;
+    }
+
     /**
      * Determines whether this <tt>CheckList</tt> can be considered frozen.
      * RFC 5245 says: a check list with all pairs Frozen is called a frozen
@@ -0,0 +1,367 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import static org.ice4j.ice.AgentConfig.config;
+
+/**
+ * Limits the aggregate rate of connectivity checks sent by a group of
+ * {@link Agent}s, so that many agents starting at the same time do not send
+ * their checks in a single synchronized burst.
+ * <p>
+ * The pacer is a token bucket with a rate of {@link #getChecksPerSecond()}
+ * and a capacity of {@link #getBurst()} tokens, which every check has to take
+ * a token from. Every agent which is running checks (an "owner") additionally
+ * has its own bucket, refilled at an equal share of the aggregate rate, which
+ * ordinary checks have to take a token from too, so that an agent with many
+ * pairs cannot starve the others. Triggered checks are prioritized: they are
+ * not limited by the per-owner share, and a part of the aggregate bucket is
+ * reserved for them.
+ * </p>
+ * <p>
+ * The pacer only ever delays checks, it never drops them: the pace maker of a
+ * check list which is denied a token retries after the delay returned by
+ * {@link #tryAcquire(Object, boolean)}.
+ * </p>
+ */
+public class CheckPacer
+{
+    /**
+     * The pacer shared by all <tt>Agent</tt>s, or <tt>null</tt> if it has not
+     * been created yet.
+     */
+    private static CheckPacer defaultPacer;
+
+    /**
+     * Returns the pacer shared by all <tt>Agent</tt>s in this JVM, configured
+     * with {@link AgentConfig#getMaxChecksPerSecond()}, or <tt>null</tt> if
+     * the aggregate rate of checks is not limited.
+     *
+     * @return the pacer shared by all <tt>Agent</tt>s, or <tt>null</tt>.
+     */
+    public static synchronized CheckPacer getDefault()
+    {
+        int checksPerSecond = config.getMaxChecksPerSecond();
+
+        if (checksPerSecond <= 0)
+        {
+            return null;
+        }
+        if (defaultPacer == null
+            || defaultPacer.getChecksPerSecond() != checksPerSecond)
+        {
+            defaultPacer
+                = new CheckPacer(
+                    checksPerSecond,
+                    config.getCheckPacerBurst());
+        }
+        return defaultPacer;
+    }
+
+    /**
+     * The minimum delay returned to a check which was denied a token.
+     */
+    private static final long MIN_WAIT_NANOS
+        = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The fraction of the aggregate bucket reserved for triggered checks.
+     */
+    private static final double TRIGGERED_RESERVE = 0.1;
+
+    /**
+     * The aggregate number of checks per second.
+     */
+    private final int checksPerSecond;
+
+    /**
+     * The capacity of the aggregate bucket.
+     */
+    private final int burst;
+
+    /**
+     * The number of tokens of the aggregate bucket which ordinary checks may
+     * not take.
+     */
+    private final double reserve;
+
+    /**
+     * The source of time, in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The number of tokens in the aggregate bucket.
+     */
+    private double tokens;
+
+    /**
+     * The time at which the aggregate bucket was last refilled.
+     */
+    private long lastRefillNanos;
+
+    /**
+     * The per-owner buckets.
+     */
+    private final Map<Object, Share> shares = new IdentityHashMap<>();
+
+    /**
+     * Initializes a new <tt>CheckPacer</tt>.
+     *
+     * @param checksPerSecond the aggregate number of checks per second.
+     * @param burst the maximum number of checks which may be sent at once
+     * after a quiet period.
+     */
+    public CheckPacer(int checksPerSecond, int burst)
+    {
+        this(checksPerSecond, burst, System::nanoTime);
+    }
+
+    /**
+     * Initializes a new <tt>CheckPacer</tt> which uses a specific clock.
+     *
+     * @param checksPerSecond the aggregate number of checks per second.
+     * @param burst the maximum number of checks which may be sent at once
+     * after a quiet period.
+     * @param clock the source of time in nanoseconds.
+     */
+    CheckPacer(int checksPerSecond, int burst, LongSupplier clock)
+    {
+        if (checksPerSecond <= 0)
+        {
+            throw new IllegalArgumentException(
+                "checksPerSecond=" + checksPerSecond);
+        }
+
+        this.checksPerSecond = checksPerSecond;
+        this.burst = Math.max(1, burst);
+        this.reserve = Math.floor(this.burst * TRIGGERED_RESERVE);
+        this.clock = clock;
+        this.tokens = this.burst;
+        this.lastRefillNanos = clock.getAsLong();
+    }
+
+    /**
+     * Returns the aggregate number of checks per second.
+     *
+     * @return the aggregate number of checks per second.
+     */
+    public int getChecksPerSecond()
+    {
+        return checksPerSecond;
+    }
+
+    /**
+     * Returns the capacity of the aggregate bucket.
+     *
+     * @return the capacity of the aggregate bucket.
+     */
+    public int getBurst()
+    {
+        return burst;
+    }
+
+    /**
+     * Registers an owner (e.g. an {@link Agent}) which is going to send
+     * checks through this pacer. Every call must be matched by a call to
+     * {@link #unregister(Object)}.
+     *
+     * @param owner the owner to register.
+     */
+    public synchronized void register(Object owner)
+    {
+        Share share = shares.get(owner);
+
+        if (share == null)
+        {
+            // A new owner starts with a single token, so that its first check
+            // is not delayed, but it can not burst ahead of the others.
+            share = new Share(clock.getAsLong());
+            shares.put(owner, share);
+        }
+        share.references++;
+    }
+
+    /**
+     * Unregisters an owner previously registered with
+     * {@link #register(Object)}.
+     *
+     * @param owner the owner to unregister.
+     */
+    public synchronized void unregister(Object owner)
+    {
+        Share share = shares.get(owner);
+
+        if (share != null && --share.references <= 0)
+        {
+            shares.remove(owner);
+        }
+    }
+
+    /**
+     * Returns the number of currently registered owners.
+     *
+     * @return the number of currently registered owners.
+     */
+    public synchronized int getOwnerCount()
+    {
+        return shares.size();
+    }
+
+    /**
+     * Tries to take a token for a check.
+     *
+     * @param owner the owner which wants to send the check. If it is not
+     * registered the check is only limited by the aggregate rate.
+     * @param triggered whether the check is a triggered check.
+     * @return zero if the check may be sent now, otherwise the number of
+     * nanoseconds after which to try again.
+     */
+    public synchronized long tryAcquire(Object owner, boolean triggered)
+    {
+        long now = clock.getAsLong();
+
+        refill(now);
+
+        double needed = triggered ? 1 : 1 + reserve;
+        long waitNanos = 0;
+
+        if (tokens < needed)
+        {
+            waitNanos = nanosFor(needed - tokens, checksPerSecond);
+        }
+
+        Share share = triggered ? null : shares.get(owner);
+
+        if (share != null)
+        {
+            double shareRate = ((double) checksPerSecond) / shares.size();
+
+            share.refill(now, shareRate, shareCapacity());
+            if (share.tokens < 1)
+            {
+                waitNanos
+                    = Math.max(
+                        waitNanos,
+                        nanosFor(1 - share.tokens, shareRate));
+            }
+        }
+
+        if (waitNanos > 0)
+        {
+            return Math.max(MIN_WAIT_NANOS, waitNanos);
+        }
+
+        tokens -= 1;
+        if (share != null)
+        {
+            share.tokens -= 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the capacity of the bucket of each owner, i.e. an equal share of
+     * the aggregate burst but at least one token.
+     *
+     * @return the capacity of the bucket of each owner.
+     */
+    private double shareCapacity()
+    {
+        return Math.max(1D, ((double) burst) / Math.max(1, shares.size()));
+    }
+
+    /**
+     * Refills the aggregate bucket.
+     *
+     * @param now the current time in nanoseconds.
+     */
+    private void refill(long now)
+    {
+        long elapsed = now - lastRefillNanos;
+
+        if (elapsed > 0)
+        {
+            tokens
+                = Math.min(
+                    burst,
+                    tokens + elapsed * (checksPerSecond / 1e9));
+            lastRefillNanos = now;
+        }
+    }
+
+    /**
+     * Returns the number of nanoseconds it takes to accumulate the given
+     * number of tokens at the given rate.
+     *
+     * @param missing the number of tokens.
+     * @param rate the rate in tokens per second.
+     * @return the number of nanoseconds it takes to accumulate
+     * <tt>missing</tt> tokens.
+     */
+    private static long nanosFor(double missing, double rate)
+    {
+        return (long) Math.ceil(missing * 1e9 / rate);
+    }
+
+    /**
+     * The bucket of an owner.
+     */
+    private static class Share
+    {
+        /**
+         * The number of times the owner was registered.
+         */
+        private int references = 0;
+
+        /**
+         * The number of tokens in this bucket.
+         */
+        private double tokens = 1;
+
+        /**
+         * The time at which this bucket was last refilled.
+         */
+        private long lastRefillNanos;
+
+        private Share(long now)
+        {
+            this.lastRefillNanos = now;
+        }
+
+        /**
+         * Refills this bucket.
+         *
+         * @param now the current time in nanoseconds.
+         * @param rate the rate of this bucket in tokens per second.
+         * @param capacity the capacity of this bucket.
+         */
+        private void refill(long now, double rate, double capacity)
+        {
+            long elapsed = now - lastRefillNanos;
+
+            if (elapsed > 0)
+            {
+                tokens = Math.min(capacity, tokens + elapsed * (rate / 1e9));
+                lastRefillNanos = now;
+            }
+        }
+    }
+}
@@ -1038,6 +1038,20 @@ public class Component
         return selectedPair;
     }
 
+    /**
+     * Returns the estimate of the round trip time of the selected pair, which
+     * is kept up to date by the consent freshness checks.
+     *
+     * @return the {@link RttEstimator} of the selected pair, or <tt>null</tt>
+     * if no pair has been selected.
+     */
+    public RttEstimator getSelectedPairRttEstimator()
+    {
+        CandidatePair selectedPair = this.selectedPair;
+
+        return selectedPair == null ? null : selectedPair.getRttEstimator();
+    }
+
     /**
      * Returns a human readable name that can be used in debug logs associated
      * with this component.
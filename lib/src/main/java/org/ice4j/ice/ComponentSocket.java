@@ -22,7 +22,6 @@ import org.ice4j.socket.*;
 
 import java.beans.*;
 import java.net.*;
-import java.util.*;
 import org.ice4j.util.*; //Disambiguation
 
 /**
@@ -42,8 +41,11 @@ public class ComponentSocket
      * The set of remote addresses, which this socket is allowed to receive
      * from. These should be the addresses which we have confirmed (e.g. by
      * having received a STUN message with correct authentication fields).
+     * The set is immutable and replaced on modification, so that
+     * {@link #accept(DatagramPacket)} can read it without locking.
      */
-    private Set<SocketAddress> authorizedAddresses = new HashSet<>();
+    private volatile InetSocketAddressSet authorizedAddresses
+        = InetSocketAddressSet.EMPTY;
 
     /**
      * The owning {@link Component}.
@@ -77,17 +79,20 @@ public class ComponentSocket
      * {@inheritDoc}
      * </p>
      * Verifies that the source of the packet is an authorized remote address.
+     * Uses the address and port of the packet directly, because
+     * {@link DatagramPacket#getSocketAddress()} allocates a new object on
+     * every call.
      */
     protected boolean accept(DatagramPacket p)
     {
-        return authorizedAddresses.contains(p.getSocketAddress());
+        return authorizedAddresses.contains(p.getAddress(), p.getPort());
     }
 
     /**
      * Adds a specific address to the list of authorized remote addresses.
      * @param address the address to add.
      */
-    private void addAuthorizedAddress(SocketAddress address)
+    private void addAuthorizedAddress(InetSocketAddress address)
     {
         synchronized (authorizedAddressesSyncRoot)
         {
@@ -98,11 +103,7 @@ public class ComponentSocket
 
             logger.info("Adding allowed address: " + TransportAddress.redact(address));
 
-            Set<SocketAddress> newSet = new HashSet<>();
-            newSet.addAll(authorizedAddresses);
-            newSet.add(address);
-
-            authorizedAddresses = newSet;
+            authorizedAddresses = authorizedAddresses.add(address);
         }
     }
 
@@ -30,6 +30,8 @@ import org.ice4j.stack.*;
 import org.ice4j.util.*;
 import org.jitsi.utils.logging2.Logger;
 
+import static org.ice4j.ice.AgentConfig.config;
+
 /**
  * The class that will be generating our outgoing connectivity checks and that
  * will be handling their responses or lack thereof.
@@ -222,6 +224,11 @@ class ConnectivityCheckClient
      * CONTROLLING/CONTROLLED attributes. Also stores a reference to
      * <tt>candidatePair</tt> in the newly created transactionID so that we
      * could then refer back to it in subsequent response or failure events.
+     * <p>
+     * With the low-latency connectivity profile, checks for pairs which are
+     * not being nominated give up sooner once another pair of the same
+     * component has been validated.
+     * </p>
      *
      * @param candidatePair that {@link CandidatePair} that we'd like to start
      * a check for.
@@ -232,6 +239,24 @@ class ConnectivityCheckClient
      */
     protected TransactionID startCheckForPair(CandidatePair candidatePair)
     {
+        if (parentAgent.isFastConnectivity()
+                && !candidatePair.isNominated()
+                && !candidatePair.useCandidateReceived())
+        {
+            Component component = candidatePair.getParentComponent();
+            CandidatePair validPair
+                = component.getParentStream().getValidPair(component);
+
+            if (validPair != null && validPair != candidatePair)
+            {
+                return
+                    startCheckForPair(
+                        candidatePair,
+                        -1,
+                        config.getFastConnectivityCheckMaxWaitInterval(),
+                        config.getFastConnectivityCheckMaxRetransmissions());
+            }
+        }
         return startCheckForPair(candidatePair, -1, -1, -1);
     }
 
@@ -346,6 +371,8 @@ class ConnectivityCheckClient
                         originalWaitInterval,
                         maxWaitInterval,
                         maxRetransmissions);
+            Ice4jMetrics.ICE_CHECKS_SENT.increment();
+            candidatePair.checkSent();
             if (logger.isTraceEnabled())
             {
                 logger.trace("checking pair " + candidatePair.toRedactedString() + " tid " + tran);
@@ -410,6 +437,8 @@ class ConnectivityCheckClient
         }
         else
         {
+            checkedPair.checkAnswered(ev.getRoundTripTimeNanos());
+
             Response response = ev.getResponse();
             char messageType = response.getMessageType();
 
@@ -486,7 +515,9 @@ class ConnectivityCheckClient
                     final ScheduledFuture<?> scheduledCheckerFuture
                         = scheduledExecutorService.schedule(
                             checkLickCompletedChecker,
-                            5000,
+                            parentAgent.isFastConnectivity()
+                                ? config.getFastConnectivityFailureDelay()
+                                : 5000,
                             TimeUnit.MILLISECONDS);
 
                     final ScheduledFuture<?> existingCheckerFuture
@@ -535,6 +566,11 @@ class ConnectivityCheckClient
         CandidatePair checkedPair
             = (CandidatePair) ev.getTransactionID().getApplicationData();
 
+        long roundTripTimeNanos = ev.getRoundTripTimeNanos();
+
+        if (roundTripTimeNanos >= 0)
+            Ice4jMetrics.ICE_CHECK_RTT.record(roundTripTimeNanos / 1000);
+
         TransportAddress mappedAddress = null;
 
         if (!response.containsAttribute(Attribute.XOR_MAPPED_ADDRESS))
@@ -637,6 +673,12 @@ class ConnectivityCheckClient
                         validRemoteCandidate)
                 : existingPair;
 
+        // The valid pair is the one which is nominated and which carries the
+        // consent freshness checks, so it starts with the round trip time of
+        // the check which validated it.
+        if (validPair != checkedPair)
+            validPair.getRttEstimator().update(ev.getRoundTripTimeNanos());
+
         // we synchronize here because the same pair object can be processed (in
         // another thread) in Agent's triggerCheck. A controlled agent select
         // its pair here if the pair has useCandidateReceived as true (set in
@@ -885,6 +927,7 @@ class ConnectivityCheckClient
             = (CandidatePair) ev.getTransactionID() .getApplicationData();
 
         logger.info("timeout for pair: " + pair.toRedactedShortString() + ", failing.");
+        pair.checkLost();
         pair.setStateFailed();
         updateCheckListAndTimerStates(pair);
     }
@@ -908,6 +951,24 @@ class ConnectivityCheckClient
          */
         private boolean firstRun = true;
 
+        /**
+         * The {@link CheckPacer} which limits the aggregate rate of checks of
+         * the parent agent and other agents, or <tt>null</tt> if checks are
+         * only paced by <tt>Ta</tt>.
+         */
+        private final CheckPacer pacer;
+
+        /**
+         * Whether this {@link PaceMaker} is registered with {@link #pacer}.
+         */
+        private boolean registeredWithPacer;
+
+        /**
+         * The delay until the next run requested by {@link #pacer} after it
+         * denied a check, or <tt>null</tt> to use the regular pace.
+         */
+        private Duration pacerDelay;
+
         /**
          * Creates a new {@link PaceMaker} for this
          * <tt>ConnectivityCheckClient</tt>.
@@ -919,17 +980,74 @@ class ConnectivityCheckClient
         {
             super(scheduledExecutorService, executorService);
             this.checkList = checkList;
+            this.pacer = parentAgent.getCheckPacer();
+            if (pacer != null)
+            {
+                pacer.register(parentAgent);
+                registeredWithPacer = true;
+            }
+        }
+
+        /**
+         * Cancels this {@link PaceMaker} and unregisters it from
+         * {@link #pacer}.
+         */
+        @Override
+        public void cancel()
+        {
+            super.cancel();
+
+            synchronized (this)
+            {
+                if (registeredWithPacer)
+                {
+                    registeredWithPacer = false;
+                    pacer.unregister(parentAgent);
+                }
+            }
         }
 
         /**
          * Sends connectivity checks at the pace determined by the {@link
          * Agent#calculateTa()} method and using either the trigger check queue
-         * or the regular check lists.
+         * or the regular check lists. Each run sends one check. With the
+         * low-latency connectivity profile, a run sends more checks if fewer
+         * than the configured number were in flight when it started, up to
+         * that number.
          */
         @Override
         protected void run()
+        {
+            int checks = 1;
+
+            if (parentAgent.isFastConnectivity())
+            {
+                checks
+                    = Math.max(
+                        checks,
+                        config.getFastConnectivityParallelChecks()
+                            - checkList.getInProgressCount());
+            }
+
+            for (int i = 0; i < checks; i++)
+            {
+                if (!sendNextCheck())
+                {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Sends the next triggered or ordinary check, if any.
+         *
+         * @return <tt>false</tt> if there were no checks left to send or the
+         * {@link #pacer} delayed the check, <tt>true</tt> otherwise.
+         */
+        private boolean sendNextCheck()
         {
             CandidatePair pairToCheck = checkList.popTriggeredCheck();
+            boolean triggered = pairToCheck != null;
 
             if (pairToCheck != null)
             {
@@ -945,6 +1063,25 @@ class ConnectivityCheckClient
                 }
             }
 
+            if (pairToCheck != null && pacer != null)
+            {
+                long waitNanos = pacer.tryAcquire(parentAgent, triggered);
+
+                if (waitNanos > 0)
+                {
+                    // The aggregate rate of checks is exceeded, retry the same
+                    // pair when the pacer has a token for us.
+                    if (triggered)
+                    {
+                        checkList.requeueTriggeredCheck(pairToCheck);
+                    }
+                    logger.trace(() -> "Check delayed by the pacer for "
+                        + waitNanos + "ns");
+                    pacerDelay = Duration.ofNanos(waitNanos);
+                    return false;
+                }
+            }
+
             if (pairToCheck != null)
             {
                 /*
@@ -975,6 +1112,7 @@ class ConnectivityCheckClient
                 {
                     updateCheckListAndTimerStates(pairToCheck);
                 }
+                return true;
             }
             else
             {
@@ -985,6 +1123,7 @@ class ConnectivityCheckClient
                  */
                 logger.trace(() -> "will skip a check beat.");
                 checkList.fireEndOfOrdinaryChecks();
+                return false;
             }
         }
 
@@ -1004,6 +1143,13 @@ class ConnectivityCheckClient
                 return Duration.ZERO;
             }
 
+            if (pacerDelay != null)
+            {
+                Duration delay = pacerDelay;
+                pacerDelay = null;
+                return delay;
+            }
+
             int activeCheckLists = parentAgent.getActiveCheckListCount();
 
             if (activeCheckLists < 1)
@@ -22,6 +22,7 @@ import org.ice4j.attribute.*;
 import org.ice4j.message.*;
 import org.ice4j.security.*;
 import org.ice4j.stack.*;
+import org.ice4j.util.*;
 import org.jitsi.utils.logging2.*;
 
 /**
@@ -130,6 +131,8 @@ class ConnectivityCheckServer
             return;
         }
 
+        Ice4jMetrics.ICE_CHECKS_RECEIVED.increment();
+
         //detect role conflicts
         if ( ( parentAgent.isControlling()
                     && request.containsAttribute(Attribute.ICE_CONTROLLING))
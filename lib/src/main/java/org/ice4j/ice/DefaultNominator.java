@@ -17,10 +17,14 @@
  */
 package org.ice4j.ice;
 
+import org.ice4j.util.*;
 import org.jitsi.utils.logging2.*;
 
 import java.beans.*;
 import java.util.*;
+import java.util.concurrent.*;
+
+import static org.ice4j.ice.AgentConfig.config;
 
 /**
  * Implements ice4j internal nomination strategies.
@@ -47,6 +51,15 @@ public class DefaultNominator
      */
     private final Map<String, TimerTask> validatedCandidates = new HashMap<>();
 
+    /**
+     * Map that will remember association between a component and the task
+     * which nominates its valid pair with the lowest round trip time if no
+     * pair with an acceptable round trip time gets validated in time. It is
+     * used with the NOMINATE_FIRST_ACCEPTABLE_RTT strategy.
+     */
+    private final Map<Component, ScheduledFuture<?>> nominationTimeouts
+        = new HashMap<>();
+
     /**
      * The {@link Logger} used by {@link DefaultNominator} instances.
      */
@@ -124,6 +137,10 @@ public class DefaultNominator
         else if (strategy
                 == NominationStrategy.NOMINATE_FIRST_HOST_OR_REFLEXIVE_VALID)
             strategyNominateFirstHostOrReflexiveValid(ev);
+        else if (strategy == NominationStrategy.NOMINATE_BEST_RTT)
+            strategyNominateBestRtt(ev);
+        else if (strategy == NominationStrategy.NOMINATE_FIRST_ACCEPTABLE_RTT)
+            strategyNominateFirstAcceptableRtt(ev);
     }
 
     /**
@@ -185,6 +202,172 @@ public class DefaultNominator
         }
     }
 
+    /**
+     * Implements a nomination strategy that allows checks for several (or all)
+     * pairs in a check list to conclude before nominating the valid pair with
+     * the lowest round trip time.
+     *
+     * @param ev the {@link PropertyChangeEvent} containing the new state and
+     * the source {@link CheckList}.
+     */
+    private void strategyNominateBestRtt(PropertyChangeEvent ev)
+    {
+        String pname = ev.getPropertyName();
+
+        if (IceMediaStream.PROPERTY_PAIR_VALIDATED.equals(pname)
+                || (IceMediaStream.PROPERTY_PAIR_STATE_CHANGED.equals(pname)
+                        && (ev.getNewValue() == CandidatePairState.FAILED)))
+        {
+            CandidatePair validPair = (CandidatePair) ev.getSource();
+            Component parentComponent = validPair.getParentComponent();
+            IceMediaStream parentStream = parentComponent.getParentStream();
+            CheckList parentCheckList = parentStream.getCheckList();
+
+            if (!parentCheckList.allChecksCompleted())
+                return;
+
+            for (Component component : parentStream.getComponents())
+            {
+                // The guard in propertyChange only covers the component of
+                // the event.
+                if (parentStream.validListContainsNomineeForComponent(
+                        component))
+                {
+                    continue;
+                }
+
+                CandidatePair pair
+                    = parentStream.getValidPairWithLowestRtt(component);
+
+                if (pair != null)
+                {
+                    logger.info(
+                            "Nominate (best RTT): " + pair.toRedactedShortString()
+                                + " " + pair.getRttEstimator());
+                    parentAgent.nominate(pair);
+                }
+            }
+        }
+    }
+
+    /**
+     * Implements a nomination strategy that consists in nominating the first
+     * pair that has become valid with an acceptable round trip time. If a
+     * slower pair is validated first, a timer is armed, and the valid pair
+     * with the lowest round trip time is nominated when it fires or once all
+     * checks in the list completed, whichever comes first.
+     *
+     * @param ev the {@link PropertyChangeEvent} containing the new state and
+     * the source {@link CandidatePair}.
+     */
+    private void strategyNominateFirstAcceptableRtt(PropertyChangeEvent ev)
+    {
+        String pname = ev.getPropertyName();
+        boolean validated
+            = IceMediaStream.PROPERTY_PAIR_VALIDATED.equals(pname);
+
+        if (!validated
+                && !(IceMediaStream.PROPERTY_PAIR_STATE_CHANGED.equals(pname)
+                        && (ev.getNewValue() == CandidatePairState.FAILED)))
+        {
+            return;
+        }
+
+        CandidatePair pair = (CandidatePair) ev.getSource();
+        Component parentComponent = pair.getParentComponent();
+        IceMediaStream parentStream = parentComponent.getParentStream();
+
+        if (validated)
+        {
+            long rttNanos = pair.getRttEstimator().getSmoothedRttNanos();
+
+            if (rttNanos != RttEstimator.UNKNOWN
+                    && rttNanos <= TimeUnit.MILLISECONDS.toNanos(
+                            config.getFastConnectivityAcceptableRtt()))
+            {
+                cancelNominationTimeout(parentComponent);
+                logger.info(
+                        "Nominate (first acceptable RTT): "
+                            + pair.toRedactedShortString() + " "
+                            + pair.getRttEstimator());
+                parentAgent.nominate(pair);
+                return;
+            }
+
+            synchronized (nominationTimeouts)
+            {
+                if (!nominationTimeouts.containsKey(parentComponent))
+                {
+                    long timeout = config.getFastConnectivityNominationTimeout();
+
+                    logger.info(
+                            "Wait timeout to nominate a pair with a higher"
+                                + " RTT: " + pair.toRedactedShortString());
+                    nominationTimeouts.put(
+                            parentComponent,
+                            parentAgent.getTasksScheduler().schedule(
+                                    () -> nominateLowestRtt(parentComponent),
+                                    timeout,
+                                    TimeUnit.MILLISECONDS));
+                }
+            }
+        }
+
+        if (parentStream.getCheckList().allChecksCompleted())
+        {
+            for (Component component : parentStream.getComponents())
+                nominateLowestRtt(component);
+        }
+    }
+
+    /**
+     * Nominates the valid pair of a component with the lowest round trip time,
+     * unless the component already has a nominated pair.
+     *
+     * @param component the {@link Component} to nominate a pair for.
+     */
+    private void nominateLowestRtt(Component component)
+    {
+        cancelNominationTimeout(component);
+
+        IceMediaStream parentStream = component.getParentStream();
+
+        if (parentAgent.getState() != IceProcessingState.RUNNING
+                || !parentAgent.isControlling()
+                || parentStream.validListContainsNomineeForComponent(component))
+        {
+            return;
+        }
+
+        CandidatePair pair = parentStream.getValidPairWithLowestRtt(component);
+
+        if (pair != null)
+        {
+            logger.info(
+                    "Nominate (lowest RTT): " + pair.toRedactedShortString()
+                        + " " + pair.getRttEstimator());
+            parentAgent.nominate(pair);
+        }
+    }
+
+    /**
+     * Cancels the task which nominates the valid pair of a component with the
+     * lowest round trip time, if any.
+     *
+     * @param component the {@link Component} to cancel the task for.
+     */
+    private void cancelNominationTimeout(Component component)
+    {
+        ScheduledFuture<?> nominationTimeout;
+
+        synchronized (nominationTimeouts)
+        {
+            nominationTimeout = nominationTimeouts.remove(component);
+        }
+        if (nominationTimeout != null)
+            nominationTimeout.cancel(false);
+    }
+
     /**
      * The {@link NominationStrategy} that this nominator is using when
      * deciding whether or not a valid {@link CandidatePair} is suitable for
@@ -21,6 +21,7 @@ import java.beans.*;
 import java.util.*;
 
 import org.ice4j.*;
+import org.ice4j.util.*;
 import org.jitsi.utils.collections.*;
 import org.jitsi.utils.logging2.*;
 
@@ -35,6 +36,13 @@ import static org.ice4j.ice.AgentConfig.config;
  */
 public class IceMediaStream
 {
+    /**
+     * The property name that we use when delivering events notifying listeners
+     * that consent to send over a pair has expired or has been regained.
+     */
+    public static final String PROPERTY_PAIR_CONSENT_EXPIRED
+        = "PairConsentExpired";
+
     /**
      * The property name that we use when delivering events notifying listeners
      * that the consent freshness of a pair has changed.
@@ -818,6 +826,46 @@ public class IceMediaStream
         return null;
     }
 
+    /**
+     * Returns the {@link CandidatePair} with the lowest smoothed round trip
+     * time among the pairs stored in this stream's valid list that belong to
+     * the specified <tt>component</tt>. Pairs with an unknown round trip time
+     * come last, and among pairs with the same round trip time the one with
+     * the highest priority is returned.
+     *
+     * @param component the {@link Component} we'd like to obtain a valid
+     * pair for.
+     *
+     * @return the valid {@link CandidatePair} with the lowest round trip time
+     * for the specified <tt>component</tt> if at least one exists, and
+     * <tt>null</tt> otherwise.
+     */
+    protected CandidatePair getValidPairWithLowestRtt(Component component)
+    {
+        CandidatePair best = null;
+        long bestRtt = Long.MAX_VALUE;
+
+        synchronized (validList)
+        {
+            for (CandidatePair pair : validList)
+            {
+                if (pair.getParentComponent() != component)
+                    continue;
+
+                long rtt = pair.getRttEstimator().getSmoothedRttNanos();
+
+                if (rtt == RttEstimator.UNKNOWN)
+                    rtt = Long.MAX_VALUE;
+                if (best == null || rtt < bestRtt)
+                {
+                    best = pair;
+                    bestRtt = rtt;
+                }
+            }
+        }
+        return best;
+    }
+
     /**
      * Adds <tt>l</tt> to the list of listeners registered for property changes
      * if {@link CandidatePair}s. We add such listeners in the stream, rather
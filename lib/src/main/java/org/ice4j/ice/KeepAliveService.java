@@ -0,0 +1,559 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice;
+
+import org.ice4j.util.ShardedScheduler;
+import org.ice4j.util.TimingWheel;
+import org.jitsi.utils.concurrent.*;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import static org.ice4j.ice.AgentConfig.config;
+
+/**
+ * Sends STUN keep-alives (Binding indications, or Binding requests when
+ * consent freshness is enabled) for the keep-alive pairs of all registered
+ * {@link Agent}s from a timing wheel per shard of the
+ * {@link ShardedScheduler}, instead of one timer per agent.
+ * <p>
+ * Every keep-alive pair (as selected by the {@link KeepAliveStrategy} of its
+ * {@link Component}) is placed in a bucket of the {@link TimingWheel} of the
+ * shard of its agent according to the time its next keep-alive is due. On
+ * every tick the due pairs are grouped by their local candidate and the
+ * keep-alives for each group are sent in one batch. After each keep-alive,
+ * the next one is due after the consent freshness interval, randomized
+ * between 0.8 and 1.2 of it as recommended in RFC 7675 Section 5.1 (unless
+ * randomization is disabled).
+ * </p>
+ * <p>
+ * When consent freshness is enabled, the service also tracks the consent
+ * expiry of each pair: if no response was received for a pair for
+ * {@link AgentConfig#getConsentExpiry()} (30 seconds per RFC 7675 Section
+ * 5.1), the pair is marked with {@link CandidatePair#isConsentExpired()},
+ * which notifies the listeners of its stream. Keep-alives for the pair
+ * continue, so that a response regains consent.
+ * </p>
+ */
+public class KeepAliveService
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>KeepAliveService</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(KeepAliveService.class.getName());
+
+    /**
+     * The duration of a tick of the timing wheels in milliseconds.
+     */
+    static final long TICK_MILLIS = 100;
+
+    /**
+     * The number of buckets of the timing wheels.
+     */
+    private static final int WHEEL_SIZE = 256;
+
+    /**
+     * The name under which the timing wheels report to the
+     * {@link org.ice4j.util.PeriodicTaskMetrics} of
+     * {@link org.ice4j.util.PeriodicRunnable}.
+     */
+    private static final String METRICS_NAME = "KeepAliveService";
+
+    /**
+     * The service shared by all <tt>Agent</tt>s in this JVM.
+     */
+    private static final KeepAliveService defaultService
+        = new KeepAliveService(
+            ShardedScheduler.getDefault().getShards(),
+            ExecutorFactory.createCachedThreadPool(
+                "ice4j.KeepAlive-executor-"),
+            Clock.systemUTC());
+
+    /**
+     * Returns the service shared by all <tt>Agent</tt>s in this JVM.
+     *
+     * @return the service shared by all <tt>Agent</tt>s in this JVM.
+     */
+    public static KeepAliveService getDefault()
+    {
+        return defaultService;
+    }
+
+    /**
+     * The timing wheels, one per timer. An agent is assigned to a wheel in
+     * the same way {@link ShardedScheduler#shardFor(Object)} assigns it to a
+     * shard.
+     */
+    private final List<TimingWheel<Entry>> wheels;
+
+    /**
+     * The executor which sends the batches of keep-alives.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The source of time.
+     */
+    private final Clock clock;
+
+    /**
+     * The registered agents.
+     */
+    private final Map<Agent, AgentEntries> agents = new ConcurrentHashMap<>();
+
+    /**
+     * The number of keep-alives sent.
+     */
+    private final AtomicLong keepAlivesSent = new AtomicLong();
+
+    /**
+     * The number of times consent expired for a pair.
+     */
+    private final AtomicLong consentExpirations = new AtomicLong();
+
+    /**
+     * Initializes a new <tt>KeepAliveService</tt>.
+     *
+     * @param timers the timers which drive the timing wheels, typically the
+     * shards of a {@link ShardedScheduler}.
+     * @param executor the executor which sends the batches of keep-alives.
+     * @param clock the source of time.
+     */
+    KeepAliveService(
+        List<? extends ScheduledExecutorService> timers,
+        ExecutorService executor,
+        Clock clock)
+    {
+        this.executor = executor;
+        this.clock = clock;
+
+        List<TimingWheel<Entry>> wheels = new ArrayList<>(timers.size());
+
+        for (ScheduledExecutorService timer : timers)
+        {
+            wheels.add(
+                new TimingWheel<>(
+                    METRICS_NAME,
+                    timer,
+                    clock,
+                    TICK_MILLIS,
+                    WHEEL_SIZE,
+                    this::handle));
+        }
+        this.wheels = Collections.unmodifiableList(wheels);
+    }
+
+    /**
+     * Starts sending keep-alives for the keep-alive pairs of an agent. The
+     * set of pairs is re-read every keep-alive interval, and the agent is
+     * unregistered automatically once it no longer needs keep-alives.
+     *
+     * @param agent the agent to send keep-alives for.
+     */
+    void register(Agent agent)
+    {
+        AgentEntries entries
+            = new AgentEntries(
+                agent,
+                wheels.get(ShardedScheduler.indexFor(agent, wheels.size())));
+
+        if (agents.putIfAbsent(agent, entries) == null)
+        {
+            // Read the keep-alive pairs (and send the first keep-alives) on
+            // the next tick.
+            entries.wheel.schedule(entries.refresh, 0);
+        }
+    }
+
+    /**
+     * Stops sending keep-alives for an agent.
+     *
+     * @param agent the agent to stop sending keep-alives for.
+     */
+    void unregister(Agent agent)
+    {
+        AgentEntries entries = agents.remove(agent);
+
+        if (entries == null)
+        {
+            return;
+        }
+
+        synchronized (entries)
+        {
+            entries.wheel.cancel(entries.refresh);
+            for (Entry entry : entries.pairs.values())
+            {
+                entries.wheel.cancel(entry);
+            }
+            entries.pairs.clear();
+        }
+    }
+
+    /**
+     * Returns the number of registered agents.
+     *
+     * @return the number of registered agents.
+     */
+    public int getAgentCount()
+    {
+        return agents.size();
+    }
+
+    /**
+     * Returns the number of pairs currently kept alive.
+     *
+     * @return the number of pairs currently kept alive.
+     */
+    public int getPairCount()
+    {
+        int count = 0;
+
+        for (AgentEntries entries : agents.values())
+        {
+            synchronized (entries)
+            {
+                count += entries.pairs.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of keep-alives sent by this service.
+     *
+     * @return the number of keep-alives sent by this service.
+     */
+    public long getKeepAlivesSent()
+    {
+        return keepAlivesSent.get();
+    }
+
+    /**
+     * Returns the number of times consent expired for a pair.
+     *
+     * @return the number of times consent expired for a pair.
+     */
+    public long getConsentExpirations()
+    {
+        return consentExpirations.get();
+    }
+
+    /**
+     * Returns the delay in milliseconds until the next keep-alive of a pair.
+     *
+     * @return the delay in milliseconds until the next keep-alive of a pair.
+     */
+    private static long intervalMillis()
+    {
+        double r = 1;
+
+        if (config.getRandomizeConsentFreshnessInterval())
+        {
+            r = 0.8d + ThreadLocalRandom.current().nextDouble() * 0.4;
+        }
+        return (long) (config.getConsentFreshnessInterval() * r);
+    }
+
+    /**
+     * Handles the entries of a timing wheel which are due and sends the
+     * resulting keep-alives. Runs on the timer of the wheel.
+     *
+     * @param due the entries which are due.
+     */
+    private void handle(List<Entry> due)
+    {
+        Map<LocalCandidate, List<Entry>> batches = new LinkedHashMap<>();
+
+        for (Entry entry : due)
+        {
+            AgentEntries entries = entry.agentEntries;
+
+            synchronized (entries)
+            {
+                if (entry.isCancelled())
+                {
+                    continue;
+                }
+                if (entry.pair == null)
+                {
+                    refresh(entries, batches);
+                }
+                else
+                {
+                    fire(entry, batches);
+                }
+            }
+        }
+
+        for (List<Entry> batch : batches.values())
+        {
+            executor.execute(() -> sendBatch(batch));
+        }
+    }
+
+    /**
+     * Re-reads the keep-alive pairs of an agent: starts keeping alive new
+     * pairs and stops keeping alive pairs which were removed. Must be called
+     * with <tt>entries</tt> locked.
+     *
+     * @param entries the entries of the agent.
+     * @param batches the keep-alives to send, grouped by local candidate.
+     */
+    private void refresh(
+        AgentEntries entries,
+        Map<LocalCandidate, List<Entry>> batches)
+    {
+        Agent agent = entries.agent;
+
+        if (!agent.shouldRunStunKeepAlive())
+        {
+            unregister(agent);
+            return;
+        }
+
+        Map<CandidatePair, Component> current = new HashMap<>();
+
+        for (IceMediaStream stream : agent.getStreams())
+        {
+            for (Component component : stream.getComponents())
+            {
+                for (CandidatePair pair : component.getKeepAlivePairs())
+                {
+                    if (pair != null)
+                    {
+                        current.put(pair, component);
+                    }
+                }
+            }
+        }
+
+        for (Iterator<Map.Entry<CandidatePair, Entry>> i
+                    = entries.pairs.entrySet().iterator();
+                i.hasNext();)
+        {
+            Map.Entry<CandidatePair, Entry> e = i.next();
+
+            if (!current.containsKey(e.getKey()))
+            {
+                entries.wheel.cancel(e.getValue());
+                i.remove();
+            }
+        }
+
+        for (Map.Entry<CandidatePair, Component> e : current.entrySet())
+        {
+            CandidatePair pair = e.getKey();
+
+            if (!entries.pairs.containsKey(pair))
+            {
+                Entry entry = new Entry(entries, e.getValue(), pair);
+
+                entry.consentStartMillis = clock.millis();
+                entries.pairs.put(pair, entry);
+                // Send the first keep-alive right away.
+                fire(entry, batches);
+            }
+        }
+
+        entries.wheel.schedule(entries.refresh, intervalMillis());
+    }
+
+    /**
+     * Handles an entry which is due: drops it if its pair is no longer a
+     * keep-alive pair of its component, checks the consent of its pair, adds
+     * it to the batch of its local candidate and schedules its next
+     * keep-alive. Must be called with the entries of its agent locked.
+     *
+     * @param entry the entry which is due.
+     * @param batches the keep-alives to send, grouped by local candidate.
+     */
+    private void fire(
+        Entry entry,
+        Map<LocalCandidate, List<Entry>> batches)
+    {
+        AgentEntries entries = entry.agentEntries;
+        CandidatePair pair = entry.pair;
+
+        // The pairs are re-read only on the (randomized) refresh of the
+        // agent, so a pair may have been deselected or removed since.
+        if (!entry.component.getKeepAlivePairs().contains(pair))
+        {
+            entries.wheel.cancel(entry);
+            entries.pairs.remove(pair);
+            return;
+        }
+
+        if (entries.agent.getPerformConsentFreshness())
+        {
+            checkConsent(entry);
+        }
+
+        batches
+            .computeIfAbsent(pair.getLocalCandidate(), k -> new ArrayList<>())
+            .add(entry);
+        entries.wheel.schedule(entry, intervalMillis());
+    }
+
+    /**
+     * Marks the pair of an entry as having lost consent if no response was
+     * received for it for the consent expiry, or as having regained consent
+     * if a response was received since. Must be called with the entries of
+     * its agent locked.
+     *
+     * @param entry the entry whose pair to check.
+     */
+    private void checkConsent(Entry entry)
+    {
+        CandidatePair pair = entry.pair;
+        long lastConsent
+            = Math.max(pair.getConsentFreshness(), entry.consentStartMillis);
+        boolean expired
+            = clock.millis() - lastConsent > config.getConsentExpiry();
+
+        if (expired == entry.consentExpired)
+        {
+            return;
+        }
+
+        entry.consentExpired = expired;
+        if (expired)
+        {
+            consentExpirations.incrementAndGet();
+            logger.info(
+                "Consent expired for pair " + pair.toRedactedShortString()
+                    + ", continuing keep-alives.");
+        }
+        else
+        {
+            logger.info(
+                "Consent regained for pair " + pair.toRedactedShortString());
+        }
+        pair.setConsentExpired(expired);
+    }
+
+    /**
+     * Sends the keep-alives for a batch of entries which share the same local
+     * candidate.
+     *
+     * @param batch the entries to send keep-alives for.
+     */
+    private void sendBatch(List<Entry> batch)
+    {
+        for (Entry entry : batch)
+        {
+            if (entry.isCancelled())
+            {
+                continue;
+            }
+            try
+            {
+                entry.agentEntries.agent.sendKeepAlive(entry.pair);
+                keepAlivesSent.incrementAndGet();
+            }
+            catch (Exception e)
+            {
+                logger.log(Level.INFO, "Failed to send a keep-alive", e);
+            }
+        }
+    }
+
+    /**
+     * An entry of a timing wheel: either the keep-alive of a pair, or (when
+     * {@link #pair} is <tt>null</tt>) the periodic refresh of the keep-alive
+     * pairs of an agent.
+     */
+    private static final class Entry
+        extends TimingWheel.Timeout
+    {
+        /**
+         * The entries of the agent this entry belongs to.
+         */
+        private final AgentEntries agentEntries;
+
+        /**
+         * The component of {@link #pair}, or <tt>null</tt> for the refresh
+         * entry.
+         */
+        private final Component component;
+
+        /**
+         * The pair to keep alive, or <tt>null</tt> for the refresh entry.
+         */
+        private final CandidatePair pair;
+
+        /**
+         * The time the pair started to be kept alive, which counts as the
+         * last consent if no response was received yet.
+         */
+        private long consentStartMillis;
+
+        /**
+         * Whether consent for the pair expired at the last keep-alive.
+         */
+        private boolean consentExpired = false;
+
+        private Entry(
+            AgentEntries agentEntries,
+            Component component,
+            CandidatePair pair)
+        {
+            this.agentEntries = agentEntries;
+            this.component = component;
+            this.pair = pair;
+        }
+    }
+
+    /**
+     * The entries of a registered agent. Access to the state of an agent is
+     * synchronized on its <tt>AgentEntries</tt>.
+     */
+    private static final class AgentEntries
+    {
+        /**
+         * The agent.
+         */
+        private final Agent agent;
+
+        /**
+         * The timing wheel of the agent.
+         */
+        private final TimingWheel<Entry> wheel;
+
+        /**
+         * The entry which periodically re-reads the keep-alive pairs of the
+         * agent.
+         */
+        private final Entry refresh;
+
+        /**
+         * The entries for the keep-alive pairs of the agent.
+         */
+        private final Map<CandidatePair, Entry> pairs = new HashMap<>();
+
+        private AgentEntries(Agent agent, TimingWheel<Entry> wheel)
+        {
+            this.agent = agent;
+            this.wheel = wheel;
+            this.refresh = new Entry(this, null, null);
+        }
+    }
+}
@@ -65,7 +65,16 @@ public enum NominationStrategy
      * The strategy consists in nominating the pair that showed the best
      * shortest round trip time once all checks in a list completed.
      */
-    NOMINATE_BEST_RTT("NominateBestRTT");
+    NOMINATE_BEST_RTT("NominateBestRTT"),
+
+    /**
+     * The strategy consists in nominating the first pair that's confirmed as
+     * valid with a round trip time no higher than the acceptable one. If the
+     * first valid pairs are slower, the one with the lowest round trip time is
+     * nominated once all checks in the list completed or after a timeout,
+     * whichever comes first.
+     */
+    NOMINATE_FIRST_ACCEPTABLE_RTT("NominateFirstAcceptableRTT");
 
     /**
      * The name of this strategy.
@@ -19,6 +19,7 @@ package org.ice4j.ice.harvest;
 
 import org.ice4j.*;
 import org.ice4j.socket.*;
+import org.ice4j.util.*;
 
 import java.io.*;
 import java.net.*;
@@ -35,11 +36,12 @@ import static org.ice4j.ice.harvest.HarvestConfig.config;
  * handshake). The handling of the accepted sessions (e.g. handling in ICE) is
  * left to the implementations.
  *
- * This instance runs two threads: {@link #acceptThread} and
- * {@link #readThread}. The 'accept' thread just accepts new <tt>Socket</tt>s
- * and passes them over to the 'read' thread. The 'read' thread reads a STUN
- * message from an accepted socket and, based on the STUN username, passes it
- * to the appropriate session.
+ * This instance runs an {@link #acceptThread} and one or more
+ * {@link #readThreads}. The 'accept' thread just accepts new <tt>Socket</tt>s
+ * and passes them over to the 'read' threads in a round-robin fashion. Each
+ * 'read' thread has its own <tt>Selector</tt>, reads a STUN message from each
+ * accepted socket assigned to it and, based on the STUN username, passes it to
+ * the appropriate session.
  *
  * @author Boris Grozev
  * @author Lyubomir Marinov
@@ -70,6 +72,28 @@ public abstract class AbstractTcpListener
         }
     }
 
+    /**
+     * Returns a list of all addresses on the interfaces of the host which are
+     * found suitable for candidate allocations, as cached by
+     * {@link NetworkInterfaceCache#getDefault()}.
+     *
+     * @param port the port to use.
+     */
+    private static List<TransportAddress> getLocalAddresses(int port)
+    {
+        List<TransportAddress> addresses = new LinkedList<>();
+
+        for (NetworkInterfaceCache.InterfaceInfo iface
+                : HostCandidateHarvester.getAllowedInterfaceInfos())
+        {
+            for (InetAddress addr : iface.getAddresses())
+            {
+                addresses.add(new TransportAddress(addr, port, Transport.TCP));
+            }
+        }
+        return addresses;
+    }
+
     /**
      * Returns a list of all addresses on the interfaces in <tt>interfaces</tt>
      * which are found suitable for candidate allocations (are not loopback, are
@@ -121,20 +145,9 @@ public abstract class AbstractTcpListener
     protected final List<TransportAddress> localAddresses = new LinkedList<>();
 
     /**
-     * Channels pending to be added to the list that {@link #readThread} reads
-     * from.
+     * The threads which read from the already <tt>accept</tt>ed sockets.
      */
-    private final List<SocketChannel> newChannels = new LinkedList<>();
-
-    /**
-     * The <tt>Selector</tt> used by {@link #readThread}.
-     */
-    private final Selector readSelector = Selector.open();
-
-    /**
-     * The thread which reads from the already <tt>accept</tt>ed sockets.
-     */
-    private ReadThread readThread;
+    private final List<ReadThread> readThreads = new ArrayList<>();
 
     /**
      * The list of <tt>ServerSocketChannel</tt>s that we will <tt>accept</tt>
@@ -156,7 +169,7 @@ public abstract class AbstractTcpListener
     public AbstractTcpListener(int port)
             throws IOException
     {
-        this(port, Collections.list(NetworkInterface.getNetworkInterfaces()));
+        this(getLocalAddresses(port));
     }
 
     /**
@@ -250,11 +263,20 @@ public abstract class AbstractTcpListener
             addSocketChannel( addressToBind );
         }
 
+        // Every listener has its own read threads, so more than one is only
+        // started when configured.
+        int readThreadCount = Math.max(1, config.tcpReadThreads());
+
+        for (int i = 0; i < readThreadCount; i++)
+        {
+            ReadThread readThread = new ReadThread(i);
+
+            readThreads.add(readThread);
+            readThread.start();
+        }
+
         acceptThread = new AcceptThread();
         acceptThread.start();
-
-        readThread = new ReadThread();
-        readThread.start();
     }
 
     /**
@@ -265,7 +287,10 @@ public abstract class AbstractTcpListener
         throws IOException
     {
         ServerSocketChannel channel = MuxServerSocketChannelFactory
-            .openAndBindServerSocketChannel(null, address, 0);
+            .openAndBindServerSocketChannel(
+                    null,
+                    address,
+                    config.tcpAcceptBacklog());
 
         serverSocketChannels.add(channel);
     }
@@ -274,11 +299,13 @@ public abstract class AbstractTcpListener
      * Accepts a session.
      * @param socket the {@link Socket} for the session.
      * @param ufrag the local username fragment for the session.
-     * @param pushback the first "datagram" (RFC4571-framed), already read from
-     * the socket's stream.
+     * @param pushback the decoder which holds the first "datagram"
+     * (RFC4571-framed), already read from the socket's stream. The
+     * implementation takes over the decoder and has to release it, unless it
+     * throws an exception.
      */
     protected abstract void acceptSession(
-            Socket socket, String ufrag, DatagramPacket pushback)
+            Socket socket, String ufrag, TCPFrameDecoder pushback)
         throws IOException, IllegalStateException;
 
     /**
@@ -312,12 +339,10 @@ public abstract class AbstractTcpListener
         }
 
         /**
-         * Notifies {@link #readThread} that new channels have been added.
+         * The index in {@link #readThreads} of the thread which the next
+         * accepted channel is to be passed to.
          */
-        private void notifyReadThread()
-        {
-            readSelector.wakeup();
-        }
+        private int nextReadThread = 0;
 
         /**
          * {@inheritDoc}
@@ -341,14 +366,24 @@ public abstract class AbstractTcpListener
                 {
                     if (key.isValid())
                     {
-                        SocketChannel channel;
+                        ServerSocketChannel serverChannel
+                            = (ServerSocketChannel) key.channel();
                         boolean acceptable = key.isAcceptable();
+                        boolean accepted = false;
 
                         try
                         {
-                            channel
-                                = ((ServerSocketChannel) key.channel())
-                                    .accept();
+                            // Accept all pending connections, so that a burst
+                            // of them is not accepted one per select.
+                            SocketChannel channel;
+
+                            while ((channel = serverChannel.accept()) != null)
+                            {
+                                channelsToAdd.add(channel);
+                                accepted = true;
+                                Ice4jMetrics.TCP_LISTENER_CONNECTIONS_ACCEPTED
+                                    .increment();
+                            }
                         }
                         catch (IOException ioe)
                         {
@@ -356,13 +391,7 @@ public abstract class AbstractTcpListener
                             break;
                         }
 
-                        // Add the accepted channel to newChannels to allow the
-                        // 'read' thread to it up.
-                        if (channel != null)
-                        {
-                            channelsToAdd.add(channel);
-                        }
-                        else if (acceptable)
+                        if (!accepted && acceptable)
                         {
                             // The SelectionKey reported the channel as
                             // acceptable but channel#accept() did not accept a
@@ -375,13 +404,11 @@ public abstract class AbstractTcpListener
                 // We accepted from all serverSocketChannels.
                 selector.selectedKeys().clear();
 
-                if (!channelsToAdd.isEmpty())
+                // Pass the accepted channels over to the 'read' threads.
+                for (SocketChannel channel : channelsToAdd)
                 {
-                    synchronized (newChannels)
-                    {
-                        newChannels.addAll(channelsToAdd);
-                    }
-                    notifyReadThread();
+                    readThreads.get(nextReadThread).addChannel(channel);
+                    nextReadThread = (nextReadThread + 1) % readThreads.size();
                 }
 
                 if (exception != null)
@@ -433,28 +460,17 @@ public abstract class AbstractTcpListener
         public final SocketChannel channel;
 
         /**
-         * The buffer which stores the data so far read from the channel.
+         * The decoder of the data so far read from the channel. It reads
+         * exactly the bytes of the pseudo SSL handshake and of the first
+         * frame, so that the rest of the stream is left to the session.
          */
-        ByteBuffer buffer = null;
+        final TCPFrameDecoder decoder = TCPFrameDecoder.createExact();
 
         /**
          * Whether we had checked for initial "pseudo" SSL handshake.
          */
         boolean checkedForSSLHandshake = false;
 
-        /**
-         * Buffer to use if we had read some data in advance and want to process
-         * it after next read, used when we are checking for "pseudo" SSL and
-         * we haven't found some, but had read data to check for it.
-         */
-        byte[] preBuffered = null;
-
-        /**
-         * The value of the RFC4571 "length" field read from the channel, or
-         * -1 if it hasn't been read (yet).
-         */
-        int length = -1;
-
         /**
          * Initializes a new <tt>ChannelDesc</tt> with the given channel.
          * @param channel the channel.
@@ -466,18 +482,19 @@ public abstract class AbstractTcpListener
     }
 
     /**
-     * An <tt>IceSocketWrapper</tt> implementation which allows a
-     * <tt>DatagramPacket</tt> to be pushed back and received on the first call
-     * to {@link #receive(DatagramPacket)}.
+     * An <tt>IceSocketWrapper</tt> implementation which allows a frame which
+     * has already been read from the stream of the socket to be pushed back
+     * and received on the first call to {@link #receive(DatagramPacket)}.
      */
     protected static class PushBackIceSocketWrapper
         extends IceSocketWrapper
     {
         /**
-         * The <tt>DatagramPacket</tt> which will be used on the first call to
-         * {@link #receive(DatagramPacket)}.
+         * The decoder which holds the frame which will be received on the
+         * first call to {@link #receive(DatagramPacket)}, or <tt>null</tt>
+         * once it has been received. Access synchronized via <tt>this</tt>.
          */
-        private DatagramPacket datagramPacket;
+        private TCPFrameDecoder pushback;
 
         /**
          * The <tt>IceSocketWrapper</tt> that this instance wraps around.
@@ -486,20 +503,35 @@ public abstract class AbstractTcpListener
 
         /**
          * Initializes a new <tt>PushBackIceSocketWrapper</tt> instance that
-         * wraps around <tt>wrappedWrapper</tt> and reads from
-         * <tt>datagramSocket</tt> on the first call to
+         * wraps around <tt>wrappedWrapper</tt> and receives the frame held by
+         * <tt>pushback</tt> on the first call to
          * {@link #receive(DatagramPacket)}
          *
          * @param wrappedWrapper the <tt>IceSocketWrapper</tt> instance that we
          * wrap around.
-         * @param datagramPacket the <tt>DatagramPacket</tt> which will be used
-         * on the first call to {@link #receive(DatagramPacket)}
+         * @param pushback the decoder which holds the frame which will be
+         * received on the first call to {@link #receive(DatagramPacket)}. The
+         * new instance takes it over and releases it.
          */
         public PushBackIceSocketWrapper(IceSocketWrapper wrappedWrapper,
-                                        DatagramPacket datagramPacket)
+                                        TCPFrameDecoder pushback)
         {
             this.wrapped = wrappedWrapper;
-            this.datagramPacket = datagramPacket;
+            this.pushback = pushback;
+        }
+
+        /**
+         * Takes {@link #pushback} over from this instance.
+         *
+         * @return {@link #pushback} or <tt>null</tt> if it has already been
+         * taken.
+         */
+        private synchronized TCPFrameDecoder takePushback()
+        {
+            TCPFrameDecoder pushback = this.pushback;
+
+            this.pushback = null;
+            return pushback;
         }
 
         /**
@@ -508,6 +540,12 @@ public abstract class AbstractTcpListener
         @Override
         public void close()
         {
+            TCPFrameDecoder pushback = takePushback();
+
+            if (pushback != null)
+            {
+                pushback.release();
+            }
             wrapped.close();
         }
 
@@ -559,27 +597,34 @@ public abstract class AbstractTcpListener
         /**
          * {@inheritDoc}
          *
-         * On the first call to this instance reads from
-         * {@link #datagramPacket}, on subsequent calls delegates to
+         * On the first call to this instance receives the frame held by
+         * {@link #pushback}, on subsequent calls delegates to
          * {@link #wrapped}.
          */
         @Override
         public void receive(DatagramPacket p) throws IOException
         {
-            if (datagramPacket != null)
-            {
-                int len = Math.min(p.getLength(), datagramPacket.getLength());
-                System.arraycopy(datagramPacket.getData(), 0,
-                                 p.getData(), 0,
-                                 len);
-                p.setAddress(datagramPacket.getAddress());
-                p.setPort(datagramPacket.getPort());
-                datagramPacket = null;
-            }
-            else
+            TCPFrameDecoder pushback = takePushback();
+
+            if (pushback != null)
             {
-                wrapped.receive(p);
+                try
+                {
+                    if (pushback.pollFrame(p))
+                    {
+                        Socket socket = wrapped.getTCPSocket();
+
+                        p.setAddress(socket.getInetAddress());
+                        p.setPort(socket.getPort());
+                        return;
+                    }
+                }
+                finally
+                {
+                    pushback.release();
+                }
             }
+            wrapped.receive(p);
         }
 
         /**
@@ -592,16 +637,52 @@ public abstract class AbstractTcpListener
         }
     }
 
+    /**
+     * A <tt>Thread</tt> which reads the first datagram from the
+     * <tt>SocketChannel</tt>s passed to it by {@link #acceptThread}.
+     */
     private class ReadThread
         extends Thread
     {
+        /**
+         * Channels pending to be added to the list that this thread reads
+         * from.
+         */
+        private final List<SocketChannel> newChannels = new LinkedList<>();
+
+        /**
+         * The <tt>Selector</tt> used by this thread.
+         */
+        private final Selector readSelector;
+
         /**
          * Initializes a new <tt>ReadThread</tt>.
+         *
+         * @param index the index of the new thread, used in its name.
+         * @throws IOException if the <tt>Selector</tt> of the new thread
+         * cannot be opened.
          */
-        public ReadThread()
+        public ReadThread(int index)
+            throws IOException
         {
-            setName("TcpHarvester ReadThread");
+            setName("TcpHarvester ReadThread-" + index);
             setDaemon(true);
+
+            readSelector = Selector.open();
+        }
+
+        /**
+         * Passes a channel over to this thread to read from.
+         *
+         * @param channel the channel.
+         */
+        void addChannel(SocketChannel channel)
+        {
+            synchronized (newChannels)
+            {
+                newChannels.add(channel);
+            }
+            readSelector.wakeup();
         }
 
         /**
@@ -625,6 +706,8 @@ public abstract class AbstractTcpListener
                     catch (IOException ioe)
                     {
                         logger.info("Failed to register channel: " + ioe);
+                        Ice4jMetrics.TCP_LISTENER_CONNECTIONS_DROPPED
+                            .increment();
                         closeNoExceptions(channel);
                     }
                 }
@@ -634,19 +717,21 @@ public abstract class AbstractTcpListener
 
         /**
          * Tries to read, without blocking, from <tt>channel</tt> to its
-         * buffer. If after reading the buffer is filled, handles the data in
-         * the buffer.
+         * decoder, and handles the data which has been decoded.
          *
-         * This works in three stages:
-         * 1 (optional): Read a fixed-size message. If it matches the
-         * hard-coded pseudo SSL ClientHello, sends the hard-coded ServerHello.
-         * 2: Read two bytes as an unsigned int and interpret it as the length
-         * to read in the next stage.
-         * 3: Read number of bytes indicated in stage2 and try to interpret
-         * them as a STUN message.
+         * This works in two stages:
+         * 1 (optional): If the data starts with the hard-coded pseudo SSL
+         * ClientHello, reads it and sends the hard-coded ServerHello.
+         * 2: Reads an RFC4571 frame (two bytes as an unsigned int and the
+         * number of bytes indicated by them) and tries to interpret it as a
+         * STUN message.
+         *
+         * Both stages are incremental: the bytes read so far are kept in the
+         * (pooled) buffer of the decoder of <tt>channel</tt>, so nothing is
+         * allocated for a client which sends its data a few bytes at a time.
          *
          * If a datagram is successfully read it is passed on to
-         * {@link #processFirstDatagram(byte[], ChannelDesc, SelectionKey)}
+         * {@link #processFirstDatagram(ChannelDesc, SelectionKey)}
          *
          * @param channel the <tt>SocketChannel</tt> to read from.
          * @param key the <tt>SelectionKey</tt> associated with
@@ -655,132 +740,44 @@ public abstract class AbstractTcpListener
          */
         private void readFromChannel(ChannelDesc channel, SelectionKey key)
         {
-            if (channel.buffer == null)
-            {
-                // Set up a buffer with a pre-determined size
-
-                if (!channel.checkedForSSLHandshake && channel.length == -1)
-                {
-                    channel.buffer
-                        = ByteBuffer.allocate(
-                                GoogleTurnSSLCandidateHarvester
-                                    .SSL_CLIENT_HANDSHAKE.length);
-                }
-                else if (channel.length == -1)
-                {
-                    channel.buffer = ByteBuffer.allocate(2);
-                }
-                else
-                {
-                    channel.buffer = ByteBuffer.allocate(channel.length);
-                }
-            }
+            TCPFrameDecoder decoder = channel.decoder;
 
             try
             {
-                int read = channel.channel.read(channel.buffer);
-
-                if (read == -1)
-                    throw new IOException("End of stream!");
-
-                if (!channel.buffer.hasRemaining())
+                if (!channel.checkedForSSLHandshake)
                 {
-                    // We've filled in the buffer.
-                    if (!channel.checkedForSSLHandshake)
-                    {
-                        byte[] bytesRead
-                            = new byte[GoogleTurnSSLCandidateHarvester
-                                .SSL_CLIENT_HANDSHAKE.length];
-
-                        channel.buffer.flip();
-                        channel.buffer.get(bytesRead);
-
-                        // Set to null, so that we re-allocate it for the next
-                        // stage
-                        channel.buffer = null;
-                        channel.checkedForSSLHandshake = true;
-
-                        if (Arrays.equals(bytesRead,
-                                          GoogleTurnSSLCandidateHarvester
-                                                  .SSL_CLIENT_HANDSHAKE))
-                        {
-                            ByteBuffer byteBuffer = ByteBuffer.wrap(
-                                    GoogleTurnSSLCandidateHarvester
-                                            .SSL_SERVER_HANDSHAKE);
-                            channel.channel.write(byteBuffer);
-                        }
-                        else
-                        {
-                            int fb = bytesRead[0];
-                            int sb = bytesRead[1];
+                    byte[] clientHandshake
+                        = GoogleTurnSSLCandidateHarvester.SSL_CLIENT_HANDSHAKE;
 
-                            channel.length = (((fb & 0xff) << 8) | (sb & 0xff));
-
-                            byte[] preBuffered
-                                = Arrays.copyOfRange(
-                                    bytesRead, 2, bytesRead.length);
-
-                            // if we had read enough data
-                            if (channel.length <= bytesRead.length - 2)
-                            {
-                                processFirstDatagram(
-                                    preBuffered, channel, key);
-                            }
-                            else
-                            {
-                                // not enough data, store what was read
-                                // and continue
-                                channel.preBuffered = preBuffered;
-
-                                channel.length -= channel.preBuffered.length;
-                            }
-                        }
-                    }
-                    else if (channel.length == -1)
+                    // The first byte of the ClientHello cannot start the
+                    // length of a STUN message, so reading it alone is enough
+                    // to tell the two apart without reading past the frame.
+                    if (!decoder.fill(channel.channel, 1))
                     {
-                        channel.buffer.flip();
-
-                        int fb = channel.buffer.get();
-                        int sb = channel.buffer.get();
-
-                        channel.length = (((fb & 0xff) << 8) | (sb & 0xff));
-
-                        // Set to null, so that we re-allocate it for the next
-                        // stage
-                        channel.buffer = null;
+                        return;
                     }
-                    else
+                    if (decoder.mayStartWith(clientHandshake))
                     {
-                        byte[] bytesRead = new byte[channel.length];
-
-                        channel.buffer.flip();
-                        channel.buffer.get(bytesRead);
-
-                        if (channel.preBuffered != null)
+                        if (!decoder.fill(
+                                channel.channel, clientHandshake.length))
                         {
-                            // will store preBuffered and currently read data
-                            byte[] newBytesRead = new byte[
-                                channel.preBuffered.length + bytesRead.length];
-
-                            // copy old data
-                            System.arraycopy(
-                                channel.preBuffered, 0,
-                                newBytesRead, 0,
-                                channel.preBuffered.length);
-                            // and new data
-                            System.arraycopy(
-                                bytesRead, 0,
-                                newBytesRead, channel.preBuffered.length,
-                                bytesRead.length);
-
-                            // use that data for processing
-                            bytesRead = newBytesRead;
-
-                            channel.preBuffered = null;
+                            return;
+                        }
+                        if (decoder.mayStartWith(clientHandshake))
+                        {
+                            decoder.skip(clientHandshake.length);
+                            channel.channel.write(
+                                ByteBuffer.wrap(
+                                    GoogleTurnSSLCandidateHarvester
+                                        .SSL_SERVER_HANDSHAKE));
                         }
-
-                        processFirstDatagram(bytesRead, channel, key);
                     }
+                    channel.checkedForSSLHandshake = true;
+                }
+
+                if (decoder.fillFrame(channel.channel))
+                {
+                    processFirstDatagram(channel, key);
                 }
             }
             catch (Exception e)
@@ -793,7 +790,9 @@ public abstract class AbstractTcpListener
                 logger.info(
                         "Failed to handle TCP socket "
                             + channel.channel.socket() + ": " + e.getMessage());
+                Ice4jMetrics.TCP_LISTENER_CONNECTIONS_DROPPED.increment();
                 key.cancel();
+                decoder.release();
                 closeNoExceptions(channel.channel);
             }
         }
@@ -804,9 +803,9 @@ public abstract class AbstractTcpListener
          * If the datagram contains a STUN Binding Request, and it has a
          * USERNAME attribute, the local &quot;ufrag&quot; is extracted from the
          * attribute value, and the socket is passed to
-         * {@link #acceptSession(Socket, String, DatagramPacket)}.
+         * {@link #acceptSession(Socket, String, TCPFrameDecoder)} along with
+         * the decoder which holds the datagram.
          *
-         * @param bytesRead bytes to be processed
          * @param channel the <tt>SocketChannel</tt> to read from.
          * @param key the <tt>SelectionKey</tt> associated with
          * <tt>channel</tt>, which is to be canceled in case no further
@@ -818,16 +817,17 @@ public abstract class AbstractTcpListener
          * (e.g. no ICE Agent with the given local ufrag is found).
          */
         private void processFirstDatagram(
-            byte[] bytesRead,
             ChannelDesc channel, SelectionKey key)
             throws IOException, IllegalStateException
         {
+            TCPFrameDecoder decoder = channel.decoder;
+
             // Does this look like a STUN binding request?
             // What's the username?
             String ufrag
-                = AbstractUdpListener.getUfrag(bytesRead,
-                                               (char) 0,
-                                               (char) bytesRead.length);
+                = AbstractUdpListener.getUfrag(decoder.getData(),
+                                               decoder.getFrameOffset(),
+                                               decoder.getFrameLength());
 
             if (ufrag == null)
             {
@@ -841,16 +841,8 @@ public abstract class AbstractTcpListener
             key.cancel();
             channel.channel.configureBlocking(true);
 
-            // Construct a DatagramPacket from the just-read packet
-            // which is to be pushed back
-            DatagramPacket p
-                = new DatagramPacket(bytesRead, bytesRead.length);
-            Socket socket = channel.channel.socket();
-
-            p.setAddress(socket.getInetAddress());
-            p.setPort(socket.getPort());
-
-            acceptSession(socket, ufrag, p);
+            // The decoder, which holds the just-read packet, is pushed back.
+            acceptSession(channel.channel.socket(), ufrag, decoder);
         }
 
         /**
@@ -869,7 +861,10 @@ public abstract class AbstractTcpListener
 
                 checkForNewChannels();
 
-                for (SelectionKey key : readSelector.keys())
+                // Read only from the channels which are ready, so that the
+                // cost of a wake-up does not grow with the number of pending
+                // channels.
+                for (SelectionKey key : readSelector.selectedKeys())
                 {
                     if (key.isValid())
                     {
@@ -879,7 +874,6 @@ public abstract class AbstractTcpListener
                         readFromChannel(channelDesc, key);
                     }
                 }
-                // We read from all SocketChannels.
                 readSelector.selectedKeys().clear();
 
                 try
@@ -916,6 +910,7 @@ public abstract class AbstractTcpListener
                 {
                     Channel channel = key.channel();
 
+                    ((ChannelDesc) key.attachment()).decoder.release();
                     if (channel.isOpen())
                         closeNoExceptions(channel);
                 }
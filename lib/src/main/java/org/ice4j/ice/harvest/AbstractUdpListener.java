@@ -30,6 +30,7 @@ import java.net.*;
 import java.time.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 import java.util.logging.Logger;
 
@@ -70,6 +71,13 @@ public abstract class AbstractUdpListener
      */
     private static final int POOL_SIZE = 256;
 
+    /**
+     * The minimum interval in nanoseconds between two log messages about
+     * packets dropped because the queue of their session was full.
+     */
+    private static final long DROP_LOG_INTERVAL_NANOS
+        = TimeUnit.SECONDS.toNanos(10);
+
     /**
      * Number of extra bytes to leave at the start of a buffer (only when the push API is used).
      */
@@ -215,6 +223,24 @@ public abstract class AbstractUdpListener
      */
     private boolean close = false;
 
+    /**
+     * The statistics of the queues of all sessions of this listener.
+     */
+    private final UdpQueueStatistics queueStatistics
+        = new UdpQueueStatistics(null);
+
+    /**
+     * The value of {@link System#nanoTime()} when a dropped packet was last
+     * logged.
+     */
+    private final AtomicLong lastDropLogNanos
+        = new AtomicLong(System.nanoTime() - DROP_LOG_INTERVAL_NANOS);
+
+    /**
+     * The number of dropped packets when a dropped packet was last logged.
+     */
+    private volatile long droppedAtLastDropLog;
+
     /**
      * Initializes a new <tt>SinglePortUdpHarvester</tt> instance which is to
      * bind on the specified local address.
@@ -293,6 +319,43 @@ public abstract class AbstractUdpListener
         return localAddress;
     }
 
+    /**
+     * Returns the statistics of the queues of all sessions of this listener.
+     *
+     * @return the statistics of the queues of all sessions of this listener.
+     */
+    public UdpQueueStatistics getQueueStatistics()
+    {
+        return queueStatistics;
+    }
+
+    /**
+     * Logs that a packet was dropped because the queue of its session was
+     * full, at most once every {@link #DROP_LOG_INTERVAL_NANOS}, so that the
+     * logging does not add to the load which causes the drops.
+     *
+     * @param socket the session whose queue was full.
+     */
+    private void logDrop(MySocket socket)
+    {
+        long now = System.nanoTime();
+        long last = lastDropLogNanos.get();
+
+        if (now - last >= DROP_LOG_INTERVAL_NANOS
+                && lastDropLogNanos.compareAndSet(last, now))
+        {
+            long dropped = queueStatistics.getDropped();
+
+            logger.info(
+                    "Dropped " + (dropped - droppedAtLastDropLog)
+                        + " packets because the queue was full. Last remote"
+                        + " address = " + socket.remoteAddress + " ufrag="
+                        + socket.ufrag + ". Queue statistics: "
+                        + queueStatistics);
+            droppedAtLastDropLog = dropped;
+        }
+    }
+
     /**
      * Triggers the termination of the threads of this instance.
      */
@@ -343,6 +406,7 @@ public abstract class AbstractUdpListener
                 }
                 break;
             }
+            Ice4jMetrics.UDP_LISTENER_PACKETS_RECEIVED.increment();
             buf.setOffset(pkt.getOffset());
             buf.setLength(pkt.getLength());
 
@@ -362,6 +426,7 @@ public abstract class AbstractUdpListener
                 {
                     // Not a STUN Binding Request or doesn't have a valid
                     // USERNAME attribute. Drop it.
+                    Ice4jMetrics.UDP_LISTENER_PACKETS_UNKNOWN.increment();
                     continue;
                 }
 
@@ -419,6 +484,7 @@ public abstract class AbstractUdpListener
             {
                 receiveSocket.receive(pkt);
                 receivedTime = clock.instant();
+                Ice4jMetrics.UDP_LISTENER_PACKETS_RECEIVED.increment();
             }
             catch (IOException ioe)
             {
@@ -438,6 +504,7 @@ public abstract class AbstractUdpListener
                 if (ufrag == null)
                 {
                     // Not a STUN Binding Request or doesn't have a valid USERNAME attribute. Drop it.
+                    Ice4jMetrics.UDP_LISTENER_PACKETS_UNKNOWN.increment();
                     continue;
                 }
 
@@ -547,7 +614,10 @@ public abstract class AbstractUdpListener
         throws SocketException
     {
         MySocket newSocket = new MySocket(remoteAddress, ufrag, bufferHandler);
-        sockets.put(remoteAddress, newSocket);
+        if (sockets.put(remoteAddress, newSocket) == null)
+        {
+            Ice4jMetrics.UDP_LISTENER_SESSIONS.add(1);
+        }
         return newSocket;
     }
 
@@ -578,6 +648,27 @@ public abstract class AbstractUdpListener
          */
         private final QueueStatistics queueStatistics;
 
+        /**
+         * The statistics of {@link #queue}, which add up to the statistics of
+         * the listener.
+         */
+        private final UdpQueueStatistics statistics
+            = new UdpQueueStatistics(AbstractUdpListener.this.queueStatistics);
+
+        /**
+         * The values of {@link System#nanoTime()} when the packets in
+         * {@link #queue} were added, in the same order, starting at
+         * {@link #enqueueTimesHead}. Accessed only while holding the lock of
+         * {@link #queue}.
+         */
+        private final long[] enqueueTimes = new long[QUEUE_SIZE];
+
+        /**
+         * The index in {@link #enqueueTimes} of the time of the head of
+         * {@link #queue}.
+         */
+        private int enqueueTimesHead = 0;
+
         /**
          * The remote address that is associated with this socket.
          */
@@ -632,26 +723,40 @@ public abstract class AbstractUdpListener
                 // receivers can notice the loss earlier.
                 if (queue.size() == QUEUE_SIZE)
                 {
-                    logger.info(
-                            "Dropping a packet because the queue is full. Remote address = "
-                                    + remoteAddress + " ufrag=" + ufrag);
+                    logDrop(this);
                     if (queueStatistics != null)
                     {
                         queueStatistics.dropped();
                     }
+                    statistics.dropped();
+                    Ice4jMetrics.UDP_LISTENER_PACKETS_DROPPED.increment();
                     queue.poll();
+                    enqueueTimesHead = (enqueueTimesHead + 1) % QUEUE_SIZE;
                 }
 
+                enqueueTimes[(enqueueTimesHead + queue.size()) % QUEUE_SIZE]
+                    = System.nanoTime();
                 queue.offer(buf);
                 if (queueStatistics != null)
                 {
                     queueStatistics.added();
                 }
+                statistics.enqueued(queue.size());
 
                 queue.notify();
             }
         }
 
+        /**
+         * Returns the statistics of the queue of this socket.
+         *
+         * @return the statistics of the queue of this socket.
+         */
+        public UdpQueueStatistics getQueueStatistics()
+        {
+            return statistics;
+        }
+
         /**
          * {@inheritDoc}
          *
@@ -745,7 +850,11 @@ public abstract class AbstractUdpListener
             // case this.removeAddress is not initialized yet.
             if (remoteAddress != null)
             {
-                AbstractUdpListener.this.sockets.remove(remoteAddress);
+                if (AbstractUdpListener.this.sockets.remove(remoteAddress)
+                        != null)
+                {
+                    Ice4jMetrics.UDP_LISTENER_SESSIONS.add(-1);
+                }
             }
 
             super.close();
@@ -783,9 +892,17 @@ public abstract class AbstractUdpListener
                     }
 
                     buf = queue.poll();
-                    if (buf != null && queueStatistics != null)
+                    if (buf != null)
                     {
-                        queueStatistics.removed(queue.size(), null);
+                        statistics.dequeued(
+                            System.nanoTime()
+                                - enqueueTimes[enqueueTimesHead]);
+                        enqueueTimesHead
+                            = (enqueueTimesHead + 1) % QUEUE_SIZE;
+                        if (queueStatistics != null)
+                        {
+                            queueStatistics.removed(queue.size(), null);
+                        }
                     }
                 }
             }
@@ -50,6 +50,33 @@ public interface CandidateHarvester
      */
     Collection<LocalCandidate> harvest(Component component);
 
+    /**
+     * Gathers all candidate addresses of the type that this
+     * <tt>CandidateHarvester</tt> supports and reports them to a specific
+     * {@link TrickleCallback} as soon as they are discovered. The default
+     * implementation calls {@link #harvest(Component)} and leaves the
+     * reporting of the returned candidates to the caller.
+     * <p>
+     * The harvest may be cancelled by interrupting the calling thread, in
+     * which case the candidates discovered so far are returned and no more
+     * candidates are to be reported to <tt>trickleCallback</tt>.
+     * </p>
+     *
+     * @param component the {@link Component} that we'd like to gather candidate
+     * addresses for.
+     * @param trickleCallback the {@link TrickleCallback} to report each
+     * candidate to as soon as it is discovered. Candidates which are also
+     * returned may be reported again by the caller.
+     * @return  the <tt>LocalCandidate</tt>s gathered by this
+     * <tt>CandidateHarvester</tt>.
+     */
+    default Collection<LocalCandidate> harvest(
+            Component component,
+            TrickleCallback trickleCallback)
+    {
+        return harvest(component);
+    }
+
     /**
      * Returns the statistics describing how well the various harvests of this
      * harvester went.
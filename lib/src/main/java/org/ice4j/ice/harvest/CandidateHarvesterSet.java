@@ -19,10 +19,11 @@ package org.ice4j.ice.harvest;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.logging.*;
 
-import org.ice4j.*;
 import org.ice4j.ice.*;
+import org.jitsi.utils.concurrent.*;
 
 /**
  * Implements {@link Set} of <tt>CandidateHarvester</tt>s which runs the
@@ -50,7 +51,21 @@ public class CandidateHarvesterSet
     /**
      * A pool of thread used for gathering process.
      */
-    private static ExecutorService threadPool = Executors.newCachedThreadPool();
+    private static final ExecutorService threadPool
+        = ExecutorFactory.createCachedThreadPool("ice4j.CandidateHarvesterSet-");
+
+    /**
+     * The time in milliseconds from the start of the last harvest to the
+     * discovery of its first candidate, or <tt>-1</tt> if it has not discovered
+     * any.
+     */
+    private volatile long timeToFirstCandidate = -1;
+
+    /**
+     * The time in milliseconds from the start of the last harvest to the end of
+     * all of its harvesters, or <tt>-1</tt> if no harvest has ended.
+     */
+    private volatile long timeToAllCandidates = -1;
 
     /**
      * Initializes a new <tt>CandidateHarvesterSet</tt> instance.
@@ -142,6 +157,21 @@ public class CandidateHarvesterSet
                   ExecutorService                        executorService,
             final TrickleCallback                        trickleCallback)
     {
+        long startTime = System.nanoTime();
+        AtomicLong firstCandidateTime = new AtomicLong(-1);
+
+        /*
+         * Note the time of the first candidate, and forward all candidates to
+         * the application as soon as they are discovered if it is trickling.
+         */
+        TrickleCallback pipelineCallback
+            = iceCandidates ->
+            {
+                firstCandidateTime.compareAndSet(-1, System.nanoTime());
+                if (trickleCallback != null)
+                    trickleCallback.onIceCandidates(iceCandidates);
+            };
+
         /*
          * Start asynchronously executing the
          * CandidateHarvester#harvest(Component) method of the harvesters.
@@ -176,15 +206,20 @@ public class CandidateHarvesterSet
 
             // Asynchronously start gathering candidates using the harvester.
             CandidateHarvesterSetTask task = new CandidateHarvesterSetTask(
-                harvester, componentsCopy, trickleCallback);
+                harvester, componentsCopy, pipelineCallback);
 
             tasks.put(task, executorService.submit(task));
         }
 
         /*
          * Wait for all harvesters to be given a chance to execute their
-         * CandidateHarvester#harvest(Component) method.
+         * CandidateHarvester#harvest(Component) method. They all run in
+         * parallel, so they share the deadline.
          */
+        long deadline
+            = startTime
+                + TimeUnit.MILLISECONDS.toNanos(
+                    HarvestConfig.config.timeout());
         Iterator<Map.Entry<CandidateHarvesterSetTask, Future<?>>> taskIter
             = tasks.entrySet().iterator();
 
@@ -198,12 +233,21 @@ public class CandidateHarvesterSet
             {
                 try
                 {
-                    future.get(HarvestConfig.config.timeout(), TimeUnit.MILLISECONDS);
+                    future.get(
+                        Math.max(0, deadline - System.nanoTime()),
+                        TimeUnit.NANOSECONDS);
                     break;
                 }
                 catch (TimeoutException te)
                 {
                     CandidateHarvesterSetElement harvester = task.getKey().getHarvester();
+
+                    /*
+                     * Interrupt the harvester so that it stops waiting and
+                     * returns the candidates it has discovered so far. Those
+                     * have already been trickled if it supports it.
+                     */
+                    future.cancel(true);
                     if (harvester != null)
                     {
                         harvester.setEnabled(false);
@@ -247,6 +291,49 @@ public class CandidateHarvesterSet
             while (true);
             taskIter.remove();
         }
+
+        long endTime = System.nanoTime();
+
+        timeToFirstCandidate
+            = (firstCandidateTime.get() == -1)
+                ? -1
+                : TimeUnit.NANOSECONDS.toMillis(
+                    firstCandidateTime.get() - startTime);
+        timeToAllCandidates
+            = TimeUnit.NANOSECONDS.toMillis(endTime - startTime);
+        if (logger.isLoggable(Level.FINE))
+        {
+            logger.fine(
+                "Harvest completed in " + timeToAllCandidates
+                    + " ms, first candidate after " + timeToFirstCandidate
+                    + " ms.");
+        }
+    }
+
+    /**
+     * Returns the time in milliseconds from the start of the last harvest to
+     * the discovery of its first candidate by any of the harvesters in this
+     * set. Host candidates, which are harvested before, are not included.
+     *
+     * @return the time to the first candidate of the last harvest, or
+     * <tt>-1</tt> if it has not discovered any candidate.
+     */
+    public long getTimeToFirstCandidate()
+    {
+        return timeToFirstCandidate;
+    }
+
+    /**
+     * Returns the time in milliseconds from the start of the last harvest to
+     * the end (or the cancellation at the deadline) of all of the harvesters
+     * in this set.
+     *
+     * @return the duration of the last harvest, or <tt>-1</tt> if no harvest
+     * has ended.
+     */
+    public long getTimeToAllCandidates()
+    {
+        return timeToAllCandidates;
     }
 
     /**
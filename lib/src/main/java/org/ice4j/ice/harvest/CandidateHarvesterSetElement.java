@@ -20,6 +20,7 @@ package org.ice4j.ice.harvest;
 import org.ice4j.ice.*;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.logging.*;
 
 /**
@@ -67,8 +68,10 @@ class CandidateHarvesterSetElement
     }
 
     /**
-     * Calls {@link CandidateHarvester#harvest(org.ice4j.ice.Component)} on the
-     * associated <tt>CandidateHarvester</tt> if <tt>enabled</tt>.
+     * Calls {@link CandidateHarvester#harvest(Component, TrickleCallback)} on
+     * the associated <tt>CandidateHarvester</tt> if <tt>enabled</tt>. The
+     * candidates which the harvester does not report as soon as it discovers
+     * them are reported once it returns.
      *
      * @param component the <tt>Component</tt> to gather candidates for
      * @param trickleCallback the {@link TrickleCallback} that we will be
@@ -83,7 +86,26 @@ class CandidateHarvesterSetElement
 
         startHarvestTiming();
 
-        Collection<LocalCandidate> candidates = harvester.harvest(component);
+        // The candidates which the harvester has reported as soon as it
+        // discovered them, and which do not have to be reported again.
+        Set<LocalCandidate> trickled = ConcurrentHashMap.newKeySet();
+        TrickleCallback harvesterCallback = null;
+
+        if (trickleCallback != null)
+        {
+            harvesterCallback
+                = iceCandidates ->
+                {
+                    if (iceCandidates != null)
+                    {
+                        trickled.addAll(iceCandidates);
+                        trickleCallback.onIceCandidates(iceCandidates);
+                    }
+                };
+        }
+
+        Collection<LocalCandidate> candidates
+            = harvester.harvest(component, harvesterCallback);
 
         stopHarvestTiming(candidates);
 
@@ -98,7 +120,11 @@ class CandidateHarvesterSetElement
         }
         else if (trickleCallback != null)
         {
-            trickleCallback.onIceCandidates(candidates);
+            List<LocalCandidate> remaining = new ArrayList<>(candidates);
+
+            remaining.removeAll(trickled);
+            if (!remaining.isEmpty())
+                trickleCallback.onIceCandidates(remaining);
         }
 
     }
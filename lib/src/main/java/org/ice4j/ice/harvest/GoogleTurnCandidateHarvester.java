@@ -86,6 +86,20 @@ public class GoogleTurnCandidateHarvester
             new GoogleTurnCandidateHarvest(this, hostCandidate, getPassword());
     }
 
+    /**
+     * Returns <tt>null</tt> because the relayed candidates require an
+     * allocation on the server, so the server reflexive address alone does
+     * not save a request.
+     *
+     * @return <tt>null</tt>
+     * @see StunCandidateHarvester#getMappingCache()
+     */
+    @Override
+    protected ServerReflexiveMappingCache getMappingCache()
+    {
+        return null;
+    }
+
     /**
      * Returns the password for this candidate.
      * @return the password for this candidate.
@@ -26,7 +26,6 @@ import java.util.stream.*;
 import org.ice4j.*;
 import org.ice4j.ice.*;
 import org.ice4j.socket.*;
-import org.ice4j.util.NetworkInterfaceUtils;
 
 import static org.ice4j.ice.harvest.HarvestConfig.config;
 
@@ -61,12 +60,10 @@ public class HostCandidateHarvester
     public static List<InetAddress> getAllAllowedAddresses()
     {
         List<InetAddress> addresses = new LinkedList<>();
-        for (NetworkInterface iface : getAllowedInterfaces())
+        for (NetworkInterfaceCache.InterfaceInfo iface : getAllowedInterfaceInfos())
         {
-            Enumeration<InetAddress> ifaceAddresses = iface.getInetAddresses();
-            while (ifaceAddresses.hasMoreElements())
+            for (InetAddress address : iface.getAddresses())
             {
-                InetAddress address = ifaceAddresses.nextElement();
                 if (isAddressAllowed(address))
                 {
                     addresses.add(address);
@@ -120,16 +117,12 @@ public class HostCandidateHarvester
         boolean boundAtLeastOneSocket = false;
         boolean foundAtLeastOneUsableInterface = false;
         boolean foundAtLeastOneUsableAddress = false;
-        for (NetworkInterface iface: getAllowedInterfaces())
+        for (NetworkInterfaceCache.InterfaceInfo iface : getAllowedInterfaceInfos())
         {
             foundAtLeastOneUsableInterface = true;
 
-            Enumeration<InetAddress> addresses = iface.getInetAddresses();
-
-            while (addresses.hasMoreElements())
+            for (InetAddress addr : iface.getAddresses())
             {
-                InetAddress addr = addresses.nextElement();
-
                 if (!isAddressAllowed(addr))
                 {
                     continue;
@@ -245,12 +238,35 @@ public class HostCandidateHarvester
             return false;
         }
 
+        return isInterfaceNameAllowed(iface.getName(), iface.getDisplayName());
+    }
+
+    /**
+     * Returns a boolean value indicating whether ice4j should allocate a host candidate for the specified interface,
+     * as in {@link #isInterfaceAllowed(NetworkInterface)}, using the state cached in a snapshot.
+     *
+     * @param iface The interface from a {@link NetworkInterfaceCache.Snapshot}.
+     */
+    static boolean isInterfaceAllowed(NetworkInterfaceCache.InterfaceInfo iface)
+    {
+        return !iface.isLoopback() && iface.isUp()
+            && isInterfaceNameAllowed(iface.getName(), iface.getDisplayName());
+    }
+
+    /**
+     * Returns a boolean value indicating whether an interface is allowed by the configuration.
+     *
+     * @param name the name of the interface.
+     * @param displayName the display name of the interface.
+     */
+    private static boolean isInterfaceNameAllowed(String name, String displayName)
+    {
         // gp: use getDisplayName() on Windows and getName() on Linux. Also
         // see NetworkAddressManagementServiceImpl in Jitsi.
         String ifName = (System.getProperty("os.name") == null
                 || System.getProperty("os.name").startsWith("Windows"))
-                ? iface.getDisplayName()
-                : iface.getName();
+                ? displayName
+                : name;
 
         if (!config.getAllowedInterfaces().isEmpty())
         {
@@ -270,16 +286,19 @@ public class HostCandidateHarvester
      */
     public static List<NetworkInterface> getAllowedInterfaces()
     {
-        try
-        {
-            return NetworkInterfaceUtils.networkInterfaces()
-                    .filter(HostCandidateHarvester::isInterfaceAllowed).collect(Collectors.toList());
-        }
-        catch (IOException ioe)
-        {
-            logger.warning("Failed to get network interfaces: " + ioe.getMessage());
-            return Collections.emptyList();
-        }
+        return getAllowedInterfaceInfos().stream()
+                .map(NetworkInterfaceCache.InterfaceInfo::getNetworkInterface)
+                .filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    /**
+     * Get the network interfaces suitable for host candidate harvesting (see {@link #getAllowedInterfaces()}) from
+     * the snapshot of {@link NetworkInterfaceCache#getDefault()}, along with their addresses.
+     */
+    static List<NetworkInterfaceCache.InterfaceInfo> getAllowedInterfaceInfos()
+    {
+        return NetworkInterfaceCache.getDefault().getSnapshot().getInterfaces().stream()
+                .filter(HostCandidateHarvester::isInterfaceAllowed).collect(Collectors.toList());
     }
 
     /**
@@ -424,6 +443,10 @@ public class HostCandidateHarvester
      *
      * If 0, 0, 0 are specified for preferred, min and max port, an ephemeral port will be used instead.
      *
+     * If the {@link PreBoundSocketPool} is enabled and has a socket bound on
+     * <tt>laddr</tt> and a port in the range, that socket is returned instead,
+     * preferring <tt>preferredPort</tt> and the ports above it.
+     *
      * @param laddr the address that we'd like to bind the socket on.
      * @param preferredPort the port number that we should try to bind to first.
      * @param minPort the port number where we should first try to bind before
@@ -452,6 +475,21 @@ public class HostCandidateHarvester
     {
         // make sure port numbers are valid.
         boolean ephemeral = checkPorts(preferredPort, minPort, maxPort);
+
+        PreBoundSocketPool pool = PreBoundSocketPool.getDefault();
+        if (pool != null)
+        {
+            DatagramSocket socket = pool.acquire(laddr, preferredPort, minPort, maxPort);
+            if (socket != null)
+            {
+                if (logger.isLoggable(Level.FINEST))
+                {
+                    logger.finest("Took pre-bound socket " + socket.getLocalSocketAddress());
+                }
+                return new IceUdpSocketWrapper(socket);
+            }
+        }
+
         if (ephemeral)
         {
             DatagramSocket socket = new MultiplexingDatagramSocket(0, laddr);
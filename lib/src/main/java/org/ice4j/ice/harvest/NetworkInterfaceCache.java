@@ -0,0 +1,629 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import org.ice4j.util.ShardedScheduler;
+
+import java.io.*;
+import java.net.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.*;
+
+import static org.ice4j.ice.harvest.HarvestConfig.config;
+
+/**
+ * Caches a snapshot of the network interfaces of the host and their
+ * addresses, so that harvesting does not have to enumerate them (a slow
+ * netlink round-trip on Linux) on every call.
+ * <p>
+ * A snapshot is re-enumerated when it is older than the refresh interval and
+ * is asked for, or, while there are {@link Listener}s, periodically on a
+ * timer. When a new snapshot differs from the previous one, the listeners are
+ * notified, so that harvesters can react to addresses which appear or
+ * disappear.
+ * </p>
+ */
+public class NetworkInterfaceCache
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>NetworkInterfaceCache</tt> class
+     * for logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(NetworkInterfaceCache.class.getName());
+
+    /**
+     * The cache shared by all harvesters in this JVM.
+     */
+    private static final NetworkInterfaceCache defaultCache
+        = new NetworkInterfaceCache(
+            NetworkInterfaceCache::enumerateSystemInterfaces,
+            ShardedScheduler.getDefault().shardFor(
+                NetworkInterfaceCache.class),
+            Clock.systemUTC(),
+            config.networkInterfaceRefreshInterval());
+
+    /**
+     * Returns the cache shared by all harvesters in this JVM.
+     *
+     * @return the cache shared by all harvesters in this JVM.
+     */
+    public static NetworkInterfaceCache getDefault()
+    {
+        return defaultCache;
+    }
+
+    /**
+     * Enumerates the network interfaces of the host.
+     *
+     * @return the network interfaces of the host.
+     * @throws IOException if the interfaces cannot be enumerated.
+     */
+    private static List<InterfaceInfo> enumerateSystemInterfaces()
+        throws IOException
+    {
+        List<InterfaceInfo> interfaces = new ArrayList<>();
+        Enumeration<NetworkInterface> ifaces
+            = NetworkInterface.getNetworkInterfaces();
+
+        while (ifaces != null && ifaces.hasMoreElements())
+        {
+            NetworkInterface iface = ifaces.nextElement();
+            boolean up;
+            boolean loopback;
+
+            try
+            {
+                up = iface.isUp();
+                loopback = iface.isLoopback();
+            }
+            catch (SocketException se)
+            {
+                logger.warning(
+                    "Failed to check state of interface " + iface.getName()
+                        + ": " + se);
+                up = false;
+                loopback = false;
+            }
+            interfaces.add(
+                new InterfaceInfo(
+                    iface,
+                    iface.getName(),
+                    iface.getDisplayName(),
+                    up,
+                    loopback,
+                    iface.isVirtual(),
+                    Collections.list(iface.getInetAddresses())));
+        }
+        return interfaces;
+    }
+
+    /**
+     * Enumerates the network interfaces.
+     */
+    private final Enumerator enumerator;
+
+    /**
+     * The timer which refreshes the snapshot while there are listeners.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * The source of time.
+     */
+    private final Clock clock;
+
+    /**
+     * The age after which a snapshot is refreshed.
+     */
+    private final Duration refreshInterval;
+
+    /**
+     * The listeners notified when the snapshot changes.
+     */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Synchronizes access to the state of this cache.
+     */
+    private final Object syncRoot = new Object();
+
+    /**
+     * The current snapshot, or <tt>null</tt> if the interfaces have not been
+     * enumerated yet. Access synchronized via {@link #syncRoot}.
+     */
+    private Snapshot snapshot;
+
+    /**
+     * The periodic refresh, or <tt>null</tt> if there are no listeners.
+     * Access synchronized via {@link #syncRoot}.
+     */
+    private ScheduledFuture<?> refreshFuture;
+
+    /**
+     * Initializes a new <tt>NetworkInterfaceCache</tt>.
+     *
+     * @param enumerator enumerates the network interfaces.
+     * @param timer the timer which refreshes the snapshot while there are
+     * listeners.
+     * @param clock the source of time.
+     * @param refreshInterval the age after which a snapshot is refreshed. If
+     * zero, the interfaces are enumerated on every call.
+     */
+    public NetworkInterfaceCache(
+        Enumerator enumerator,
+        ScheduledExecutorService timer,
+        Clock clock,
+        Duration refreshInterval)
+    {
+        this.enumerator = enumerator;
+        this.timer = timer;
+        this.clock = clock;
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Returns the current snapshot of the network interfaces, refreshing it
+     * first if it is older than the refresh interval.
+     *
+     * @return the current snapshot of the network interfaces.
+     */
+    public Snapshot getSnapshot()
+    {
+        Snapshot previous;
+        Snapshot current;
+
+        synchronized (syncRoot)
+        {
+            previous = snapshot;
+            if (previous != null
+                && clock.millis() - previous.timestamp
+                    < refreshInterval.toMillis())
+            {
+                return previous;
+            }
+            current = enumerate();
+        }
+        fireChanged(previous, current);
+        return current;
+    }
+
+    /**
+     * Refreshes the snapshot of the network interfaces regardless of its
+     * age, and notifies the listeners if it has changed.
+     *
+     * @return the new snapshot of the network interfaces.
+     */
+    public Snapshot refresh()
+    {
+        Snapshot previous;
+        Snapshot current;
+
+        synchronized (syncRoot)
+        {
+            previous = snapshot;
+            current = enumerate();
+        }
+        fireChanged(previous, current);
+        return current;
+    }
+
+    /**
+     * Adds a listener to be notified when the snapshot changes. While there
+     * are listeners, the snapshot is refreshed periodically.
+     *
+     * @param listener the listener.
+     */
+    public void addListener(Listener listener)
+    {
+        synchronized (syncRoot)
+        {
+            listeners.add(listener);
+
+            long interval = refreshInterval.toMillis();
+
+            if (refreshFuture == null && interval > 0)
+            {
+                refreshFuture
+                    = timer.scheduleWithFixedDelay(
+                        this::refreshQuietly,
+                        interval,
+                        interval,
+                        TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Removes a listener added with {@link #addListener(Listener)}.
+     *
+     * @param listener the listener.
+     */
+    public void removeListener(Listener listener)
+    {
+        synchronized (syncRoot)
+        {
+            listeners.remove(listener);
+            if (listeners.isEmpty() && refreshFuture != null)
+            {
+                refreshFuture.cancel(false);
+                refreshFuture = null;
+            }
+        }
+    }
+
+    /**
+     * Refreshes the snapshot from the timer.
+     */
+    private void refreshQuietly()
+    {
+        try
+        {
+            refresh();
+        }
+        catch (Throwable t)
+        {
+            logger.log(
+                Level.WARNING, "Failed to refresh the network interfaces", t);
+        }
+    }
+
+    /**
+     * Enumerates the network interfaces into a new snapshot and makes it the
+     * current one. If the enumeration fails, the interfaces of the current
+     * snapshot are kept (and retried after the refresh interval), because a
+     * failure says nothing about the interfaces of the host. Must be called
+     * with {@link #syncRoot} held.
+     *
+     * @return the new snapshot.
+     */
+    private Snapshot enumerate()
+    {
+        List<InterfaceInfo> interfaces;
+
+        try
+        {
+            interfaces = enumerator.enumerate();
+        }
+        catch (IOException ioe)
+        {
+            logger.warning(
+                "Failed to get network interfaces: " + ioe.getMessage());
+            if (snapshot == null)
+            {
+                // Nothing to keep, and nothing cached so that the next call
+                // tries again.
+                return new Snapshot(Collections.emptyList(), clock.millis());
+            }
+            interfaces = snapshot.interfaces;
+        }
+        snapshot = new Snapshot(interfaces, clock.millis());
+        return snapshot;
+    }
+
+    /**
+     * Notifies the listeners if a snapshot differs from the previous one.
+     *
+     * @param previous the previous snapshot, or <tt>null</tt>.
+     * @param current the new snapshot.
+     */
+    private void fireChanged(Snapshot previous, Snapshot current)
+    {
+        if (previous == null || previous.equals(current))
+        {
+            return;
+        }
+
+        if (logger.isLoggable(Level.INFO))
+        {
+            logger.info("Network interfaces changed: " + current);
+        }
+        for (Listener listener : listeners)
+        {
+            try
+            {
+                listener.interfacesChanged(previous, current);
+            }
+            catch (Throwable t)
+            {
+                logger.log(
+                    Level.WARNING,
+                    "A network interface listener failed",
+                    t);
+            }
+        }
+    }
+
+    /**
+     * Enumerates the network interfaces of the host.
+     */
+    public interface Enumerator
+    {
+        /**
+         * Enumerates the network interfaces of the host.
+         *
+         * @return the network interfaces of the host.
+         * @throws IOException if the interfaces cannot be enumerated.
+         */
+        List<InterfaceInfo> enumerate()
+            throws IOException;
+    }
+
+    /**
+     * Is notified when the network interfaces or their addresses change.
+     */
+    public interface Listener
+    {
+        /**
+         * Notifies this listener that the network interfaces or their
+         * addresses have changed.
+         *
+         * @param previous the previous snapshot.
+         * @param current the new snapshot.
+         */
+        void interfacesChanged(Snapshot previous, Snapshot current);
+    }
+
+    /**
+     * The state of a network interface and its addresses at the time of a
+     * snapshot.
+     */
+    public static final class InterfaceInfo
+    {
+        private final NetworkInterface networkInterface;
+
+        private final String name;
+
+        private final String displayName;
+
+        private final boolean up;
+
+        private final boolean loopback;
+
+        private final boolean virtual;
+
+        private final List<InetAddress> addresses;
+
+        /**
+         * Initializes a new <tt>InterfaceInfo</tt>.
+         *
+         * @param networkInterface the interface, or <tt>null</tt>.
+         * @param name the name of the interface.
+         * @param displayName the display name of the interface.
+         * @param up whether the interface is up.
+         * @param loopback whether the interface is a loopback interface.
+         * @param virtual whether the interface is virtual.
+         * @param addresses the addresses of the interface.
+         */
+        public InterfaceInfo(
+            NetworkInterface networkInterface,
+            String name,
+            String displayName,
+            boolean up,
+            boolean loopback,
+            boolean virtual,
+            List<InetAddress> addresses)
+        {
+            this.networkInterface = networkInterface;
+            this.name = name;
+            this.displayName = displayName;
+            this.up = up;
+            this.loopback = loopback;
+            this.virtual = virtual;
+            this.addresses
+                = Collections.unmodifiableList(new ArrayList<>(addresses));
+        }
+
+        /**
+         * Returns the interface, or <tt>null</tt> if it is not known.
+         *
+         * @return the interface, or <tt>null</tt> if it is not known.
+         */
+        public NetworkInterface getNetworkInterface()
+        {
+            return networkInterface;
+        }
+
+        /**
+         * Returns the name of the interface.
+         *
+         * @return the name of the interface.
+         */
+        public String getName()
+        {
+            return name;
+        }
+
+        /**
+         * Returns the display name of the interface.
+         *
+         * @return the display name of the interface.
+         */
+        public String getDisplayName()
+        {
+            return displayName;
+        }
+
+        /**
+         * Returns whether the interface was up.
+         *
+         * @return whether the interface was up.
+         */
+        public boolean isUp()
+        {
+            return up;
+        }
+
+        /**
+         * Returns whether the interface is a loopback interface.
+         *
+         * @return whether the interface is a loopback interface.
+         */
+        public boolean isLoopback()
+        {
+            return loopback;
+        }
+
+        /**
+         * Returns whether the interface is virtual.
+         *
+         * @return whether the interface is virtual.
+         */
+        public boolean isVirtual()
+        {
+            return virtual;
+        }
+
+        /**
+         * Returns the addresses of the interface.
+         *
+         * @return the addresses of the interface.
+         */
+        public List<InetAddress> getAddresses()
+        {
+            return addresses;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Compares the state of the interfaces, but not the
+         * <tt>NetworkInterface</tt> instances.
+         */
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof InterfaceInfo))
+            {
+                return false;
+            }
+
+            InterfaceInfo that = (InterfaceInfo) o;
+
+            return up == that.up
+                && loopback == that.loopback
+                && virtual == that.virtual
+                && Objects.equals(name, that.name)
+                && Objects.equals(displayName, that.displayName)
+                && new HashSet<>(addresses).equals(
+                    new HashSet<>(that.addresses));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(name, up, new HashSet<>(addresses));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return name + (up ? "" : " (down)") + " " + addresses;
+        }
+    }
+
+    /**
+     * The network interfaces of the host at a point in time.
+     */
+    public static final class Snapshot
+    {
+        private final List<InterfaceInfo> interfaces;
+
+        /**
+         * The time (as returned by the clock of the cache) at which the
+         * interfaces were enumerated.
+         */
+        private final long timestamp;
+
+        private Snapshot(List<InterfaceInfo> interfaces, long timestamp)
+        {
+            this.interfaces
+                = Collections.unmodifiableList(new ArrayList<>(interfaces));
+            this.timestamp = timestamp;
+        }
+
+        /**
+         * Returns the network interfaces.
+         *
+         * @return the network interfaces.
+         */
+        public List<InterfaceInfo> getInterfaces()
+        {
+            return interfaces;
+        }
+
+        /**
+         * Returns the addresses of all network interfaces.
+         *
+         * @return the addresses of all network interfaces.
+         */
+        public Set<InetAddress> getAddresses()
+        {
+            Set<InetAddress> addresses = new LinkedHashSet<>();
+
+            for (InterfaceInfo iface : interfaces)
+            {
+                addresses.addAll(iface.getAddresses());
+            }
+            return addresses;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Compares the interfaces regardless of their order and of the time
+         * of the snapshots.
+         */
+        @Override
+        public boolean equals(Object o)
+        {
+            return this == o
+                || (o instanceof Snapshot
+                    && new HashSet<>(interfaces).equals(
+                        new HashSet<>(((Snapshot) o).interfaces)));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return new HashSet<>(interfaces).hashCode();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String toString()
+        {
+            return interfaces.toString();
+        }
+    }
+}
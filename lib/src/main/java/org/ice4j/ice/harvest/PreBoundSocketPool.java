@@ -0,0 +1,587 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import org.ice4j.socket.*;
+import org.jitsi.utils.concurrent.*;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+import static org.ice4j.ice.harvest.HarvestConfig.config;
+
+/**
+ * Keeps a number of UDP sockets bound in advance on each local address and
+ * port range which host candidates are harvested on, so that a harvest can
+ * take a socket without going through the failing <tt>bind</tt>s of a busy
+ * port range.
+ * <p>
+ * The sockets are bound in the background, after a socket has been taken.
+ * The pool of each address and port range remembers in bitmaps the ports
+ * which it has bound and the ports which it found in use by others, and skips
+ * them when it looks for a port to bind. A port which it has bound is only
+ * tried again once the socket bound on it has been closed. The ports found in
+ * use by others are tried again once the whole range has been swept.
+ * </p>
+ * <p>
+ * A harvest is handed the idle socket which is the closest to its preferred
+ * port in the order in which the harvester itself would try the ports (i.e.
+ * upwards from the preferred port, wrapping around at the end of the range).
+ * The first harvest on an address and port range finds its pool empty and
+ * binds a socket itself.
+ * </p>
+ */
+public class PreBoundSocketPool
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>PreBoundSocketPool</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(PreBoundSocketPool.class.getName());
+
+    /**
+     * The pool used by all host harvesters in this JVM, or <tt>null</tt> if
+     * it has not been created yet.
+     */
+    private static PreBoundSocketPool defaultPool;
+
+    /**
+     * Returns the pool used by all host harvesters in this JVM, or
+     * <tt>null</tt> if pre-binding is disabled (i.e.
+     * {@link HarvestConfig#udpPreBoundSocketPoolSize()} is not positive).
+     *
+     * @return the pool used by all host harvesters in this JVM, or
+     * <tt>null</tt> if pre-binding is disabled.
+     */
+    public static synchronized PreBoundSocketPool getDefault()
+    {
+        int size = config.udpPreBoundSocketPoolSize();
+
+        if (size <= 0)
+        {
+            return null;
+        }
+        if (defaultPool == null)
+        {
+            defaultPool
+                = new PreBoundSocketPool(
+                    size,
+                    ExecutorFactory.createCachedThreadPool(
+                        "ice4j.PreBoundSocketPool-"),
+                    MultiplexingDatagramSocket::new);
+
+            // Drop the sockets bound on addresses which went away.
+            NetworkInterfaceCache.getDefault().addListener(
+                (previous, current) ->
+                    defaultPool.retainAddresses(current.getAddresses()));
+        }
+        return defaultPool;
+    }
+
+    /**
+     * The number of sockets to keep bound for each address and port range.
+     */
+    private final int targetSize;
+
+    /**
+     * The executor which binds the sockets.
+     */
+    private final Executor executor;
+
+    /**
+     * Creates and binds the sockets.
+     */
+    private final SocketFactory socketFactory;
+
+    /**
+     * The pools of each address and port range.
+     */
+    private final Map<Key, Pool> pools = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a new <tt>PreBoundSocketPool</tt>.
+     *
+     * @param targetSize the number of sockets to keep bound for each address
+     * and port range.
+     * @param executor the executor which binds the sockets.
+     * @param socketFactory creates and binds the sockets.
+     */
+    public PreBoundSocketPool(
+        int targetSize,
+        Executor executor,
+        SocketFactory socketFactory)
+    {
+        this.targetSize = targetSize;
+        this.executor = executor;
+        this.socketFactory = socketFactory;
+    }
+
+    /**
+     * Takes a socket bound on a specific address and a port in a specific
+     * range, and starts binding a replacement in the background.
+     *
+     * @param address the local address.
+     * @param preferredPort the port to hand out a socket on if one is idle.
+     * Otherwise the idle socket on the next port upwards (wrapping around at
+     * the end of the range) is handed out.
+     * @param minPort the lowest port of the range, or <tt>0</tt> for an
+     * ephemeral port.
+     * @param maxPort the highest port of the range, or <tt>0</tt> for an
+     * ephemeral port.
+     * @return a bound socket, or <tt>null</tt> if none is available yet.
+     */
+    public DatagramSocket acquire(
+        InetAddress address,
+        int preferredPort,
+        int minPort,
+        int maxPort)
+    {
+        Pool pool
+            = pools.computeIfAbsent(
+                new Key(address, minPort, maxPort),
+                key -> new Pool(key, preferredPort));
+        DatagramSocket socket = pool.take(preferredPort);
+
+        pool.replenishAsync();
+        return socket;
+    }
+
+    /**
+     * Returns the number of sockets ready to be taken for a specific address
+     * and port range.
+     *
+     * @param address the local address.
+     * @param minPort the lowest port of the range.
+     * @param maxPort the highest port of the range.
+     * @return the number of sockets ready to be taken.
+     */
+    public int getIdleCount(InetAddress address, int minPort, int maxPort)
+    {
+        Pool pool = pools.get(new Key(address, minPort, maxPort));
+
+        return (pool == null) ? 0 : pool.getIdleCount();
+    }
+
+    /**
+     * Closes the sockets which are bound on addresses other than specific
+     * ones and forgets their pools.
+     *
+     * @param addresses the addresses to keep the sockets of.
+     */
+    public void retainAddresses(Collection<InetAddress> addresses)
+    {
+        for (Iterator<Map.Entry<Key, Pool>> i = pools.entrySet().iterator();
+                i.hasNext();)
+        {
+            Map.Entry<Key, Pool> entry = i.next();
+
+            if (!addresses.contains(entry.getKey().address))
+            {
+                i.remove();
+                entry.getValue().close();
+            }
+        }
+    }
+
+    /**
+     * Closes all sockets which have not been taken.
+     */
+    public void close()
+    {
+        for (Iterator<Pool> i = pools.values().iterator(); i.hasNext();)
+        {
+            Pool pool = i.next();
+
+            i.remove();
+            pool.close();
+        }
+    }
+
+    /**
+     * Creates a socket bound on a specific port and address.
+     */
+    public interface SocketFactory
+    {
+        /**
+         * Creates a socket bound on a specific port and address.
+         *
+         * @param port the port, or <tt>0</tt> for an ephemeral port.
+         * @param address the address.
+         * @return the socket.
+         * @throws SocketException if the socket cannot be bound.
+         */
+        DatagramSocket create(int port, InetAddress address)
+            throws SocketException;
+    }
+
+    /**
+     * Identifies the pool of an address and port range.
+     */
+    private static final class Key
+    {
+        private final InetAddress address;
+
+        private final int minPort;
+
+        private final int maxPort;
+
+        private Key(InetAddress address, int minPort, int maxPort)
+        {
+            this.address = address;
+            this.minPort = minPort;
+            this.maxPort = maxPort;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+
+            Key that = (Key) o;
+
+            return address.equals(that.address)
+                && minPort == that.minPort
+                && maxPort == that.maxPort;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(address, minPort, maxPort);
+        }
+    }
+
+    /**
+     * The sockets of an address and port range.
+     */
+    private final class Pool
+    {
+        private final Key key;
+
+        /**
+         * The sockets ready to be taken. Access synchronized via the list.
+         */
+        private final List<DatagramSocket> idle = new ArrayList<>();
+
+        /**
+         * The sockets which have been taken and whose ports are marked in
+         * {@link #boundPorts} until they are closed, mapped to their ports
+         * (a closed socket no longer reports its port).
+         */
+        private final Map<DatagramSocket, Integer> taken
+            = new ConcurrentHashMap<>();
+
+        /**
+         * Whether a replenishment has been submitted and not finished.
+         */
+        private final AtomicBoolean replenishing = new AtomicBoolean();
+
+        /**
+         * The ports of the range (relative to its lowest port) on which this
+         * pool has a socket which is not known to be closed. Only accessed by
+         * the replenishment, of which there is one at a time.
+         */
+        private final BitSet boundPorts;
+
+        /**
+         * The ports of the range (relative to its lowest port) which have
+         * been found in use by others since the range was last swept. Only
+         * accessed by the replenishment.
+         */
+        private final BitSet busyPorts;
+
+        /**
+         * The port (relative to the lowest port of the range) from which to
+         * look for a port to bind. Only accessed by the replenishment.
+         */
+        private int cursor = 0;
+
+        /**
+         * Whether this pool has been closed.
+         */
+        private volatile boolean closed = false;
+
+        private Pool(Key key, int preferredPort)
+        {
+            this.key = key;
+            if (isEphemeral())
+            {
+                boundPorts = null;
+                busyPorts = null;
+            }
+            else
+            {
+                boundPorts = new BitSet(getRangeSize());
+                busyPorts = new BitSet(getRangeSize());
+                if (preferredPort >= key.minPort
+                    && preferredPort <= key.maxPort)
+                {
+                    cursor = preferredPort - key.minPort;
+                }
+            }
+        }
+
+        private boolean isEphemeral()
+        {
+            return key.minPort == 0 && key.maxPort == 0;
+        }
+
+        private int getRangeSize()
+        {
+            return key.maxPort - key.minPort + 1;
+        }
+
+        private int getIdleCount()
+        {
+            synchronized (idle)
+            {
+                return idle.size();
+            }
+        }
+
+        /**
+         * Takes the idle socket which is the closest to a preferred port,
+         * counting upwards and wrapping around at the end of the range.
+         *
+         * @param preferredPort the preferred port.
+         * @return the socket, or <tt>null</tt> if no socket is idle.
+         */
+        private DatagramSocket take(int preferredPort)
+        {
+            DatagramSocket socket = null;
+
+            synchronized (idle)
+            {
+                int best = -1;
+                int bestDistance = Integer.MAX_VALUE;
+
+                for (int i = 0; i < idle.size(); i++)
+                {
+                    int distance
+                        = isEphemeral()
+                            ? 0
+                            : Math.floorMod(
+                                idle.get(i).getLocalPort() - preferredPort,
+                                getRangeSize());
+
+                    if (distance < bestDistance)
+                    {
+                        best = i;
+                        bestDistance = distance;
+                        if (distance == 0)
+                        {
+                            break;
+                        }
+                    }
+                }
+                if (best != -1)
+                {
+                    socket = idle.remove(best);
+                }
+            }
+            if (socket != null && !isEphemeral())
+            {
+                taken.put(socket, socket.getLocalPort());
+            }
+            return socket;
+        }
+
+        /**
+         * Submits a replenishment unless one is already pending.
+         */
+        private void replenishAsync()
+        {
+            if (getIdleCount() < targetSize
+                && replenishing.compareAndSet(false, true))
+            {
+                try
+                {
+                    executor.execute(this::replenish);
+                }
+                catch (RejectedExecutionException ree)
+                {
+                    replenishing.set(false);
+                    logger.warning("Failed to replenish socket pool: " + ree);
+                }
+            }
+        }
+
+        /**
+         * Binds sockets until there are {@link #targetSize} idle ones, or the
+         * whole port range has been tried.
+         */
+        private void replenish()
+        {
+            try
+            {
+                if (!isEphemeral())
+                {
+                    releaseClosedPorts();
+                }
+
+                int attempts = isEphemeral() ? targetSize : getRangeSize();
+                boolean swept = false;
+
+                while (!closed && getIdleCount() < targetSize)
+                {
+                    if (attempts-- <= 0)
+                    {
+                        swept = true;
+                        break;
+                    }
+
+                    int port = isEphemeral() ? 0 : nextPort();
+
+                    if (port == -1)
+                    {
+                        swept = true;
+                        break;
+                    }
+                    try
+                    {
+                        DatagramSocket socket
+                            = socketFactory.create(port, key.address);
+
+                        synchronized (idle)
+                        {
+                            idle.add(socket);
+                        }
+                    }
+                    catch (SocketException se)
+                    {
+                        if (!isEphemeral())
+                        {
+                            boundPorts.clear(port - key.minPort);
+                            busyPorts.set(port - key.minPort);
+                        }
+                        if (logger.isLoggable(Level.FINEST))
+                        {
+                            logger.finest(
+                                "Failed to pre-bind to " + key.address + ":"
+                                    + port + ": " + se.getMessage());
+                        }
+                    }
+                }
+                if (swept && !isEphemeral())
+                {
+                    // Try the ports in use by others again on the next sweep.
+                    busyPorts.clear();
+                }
+                if (closed)
+                {
+                    closeIdle();
+                }
+            }
+            finally
+            {
+                replenishing.set(false);
+            }
+        }
+
+        /**
+         * Makes the ports of the taken sockets which have been closed
+         * available to be bound again.
+         */
+        private void releaseClosedPorts()
+        {
+            for (Iterator<Map.Entry<DatagramSocket, Integer>> i
+                        = taken.entrySet().iterator();
+                    i.hasNext();)
+            {
+                Map.Entry<DatagramSocket, Integer> e = i.next();
+
+                if (e.getKey().isClosed())
+                {
+                    i.remove();
+                    boundPorts.clear(e.getValue() - key.minPort);
+                }
+            }
+        }
+
+        /**
+         * Returns the next port of the range which neither has a socket of
+         * this pool nor has been found in use since the range was last swept,
+         * and marks it as bound.
+         *
+         * @return the next port, or <tt>-1</tt> if there is none.
+         */
+        private int nextPort()
+        {
+            int offset = nextFreeOffset(cursor);
+
+            if (offset == -1)
+            {
+                offset = nextFreeOffset(0);
+            }
+            if (offset == -1)
+            {
+                return -1;
+            }
+            boundPorts.set(offset);
+            cursor = (offset + 1) % getRangeSize();
+            return key.minPort + offset;
+        }
+
+        /**
+         * Returns the first port (relative to the lowest port of the range)
+         * at or above a specific one which is set in neither
+         * {@link #boundPorts} nor {@link #busyPorts}.
+         *
+         * @param from the port (relative to the lowest port of the range) to
+         * start at.
+         * @return the port, or <tt>-1</tt> if there is none.
+         */
+        private int nextFreeOffset(int from)
+        {
+            int offset = boundPorts.nextClearBit(from);
+
+            while (offset < getRangeSize() && busyPorts.get(offset))
+            {
+                offset
+                    = boundPorts.nextClearBit(busyPorts.nextClearBit(offset));
+            }
+            return offset < getRangeSize() ? offset : -1;
+        }
+
+        /**
+         * Closes this pool and the sockets which have not been taken.
+         */
+        private void close()
+        {
+            closed = true;
+            closeIdle();
+        }
+
+        private void closeIdle()
+        {
+            synchronized (idle)
+            {
+                for (DatagramSocket socket : idle)
+                {
+                    socket.close();
+                }
+                idle.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import org.ice4j.util.Histogram;
+import org.ice4j.util.ShardedScheduler;
+import org.ice4j.util.TimingWheel;
+import org.jitsi.utils.concurrent.*;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.logging.*;
+
+/**
+ * Runs the periodic refreshes of the state which a TURN or STUN server keeps
+ * for harvested candidates (Allocation refreshes and STUN keep-alives of
+ * {@link StunCandidateHarvest}s, permission and channel refreshes of
+ * <tt>RelayedCandidateDatagramSocket</tt>s) from a timing wheel per shard of
+ * the {@link ShardedScheduler}, instead of a thread per harvest.
+ * <p>
+ * Each {@link Task} is placed in a bucket of a {@link TimingWheel} according
+ * to the time it is due. Due tasks are run on a shared executor, off the
+ * timer and off the data path, and return the delay until they are due
+ * again. The service also keeps the latency of the refreshes, i.e. the time
+ * from sending a refresh request to receiving its success response, as
+ * reported by the tasks through {@link #refreshSucceeded(long)}.
+ * </p>
+ */
+public class RefreshService
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>RefreshService</tt> class for
+     * logging output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(RefreshService.class.getName());
+
+    /**
+     * The duration of a tick of the timing wheels in milliseconds.
+     */
+    static final long TICK_MILLIS = 1000;
+
+    /**
+     * The number of buckets of the timing wheels.
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * The name under which the timing wheels report to the
+     * {@link org.ice4j.util.PeriodicTaskMetrics} of
+     * {@link org.ice4j.util.PeriodicRunnable}.
+     */
+    private static final String METRICS_NAME = "RefreshService";
+
+    /**
+     * The value returned by {@link Task#run()} to signal that the task is not
+     * to be run again until it is rescheduled.
+     */
+    public static final long NOT_SCHEDULED = -1;
+
+    /**
+     * The service shared by all harvests in this JVM.
+     */
+    private static final RefreshService defaultService
+        = new RefreshService(
+            ShardedScheduler.getDefault().getShards(),
+            ExecutorFactory.createCachedThreadPool("ice4j.Refresh-executor-"),
+            Clock.systemUTC());
+
+    /**
+     * Returns the service shared by all harvests in this JVM.
+     *
+     * @return the service shared by all harvests in this JVM.
+     */
+    public static RefreshService getDefault()
+    {
+        return defaultService;
+    }
+
+    /**
+     * The timing wheels, one per timer.
+     */
+    private final List<TimingWheel<Registration>> wheels;
+
+    /**
+     * The executor which runs the due tasks.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The source of time.
+     */
+    private final Clock clock;
+
+    /**
+     * The latencies in milliseconds of the successful refreshes.
+     */
+    private final Histogram refreshLatency = new Histogram();
+
+    /**
+     * The number of refresh requests sent.
+     */
+    private final AtomicLong refreshesSent = new AtomicLong();
+
+    /**
+     * The number of refresh requests which failed.
+     */
+    private final AtomicLong refreshFailures = new AtomicLong();
+
+    /**
+     * Initializes a new <tt>RefreshService</tt>.
+     *
+     * @param timers the timers which drive the timing wheels, typically the
+     * shards of a {@link ShardedScheduler}.
+     * @param executor the executor which runs the due tasks.
+     * @param clock the source of time.
+     */
+    public RefreshService(
+        List<? extends ScheduledExecutorService> timers,
+        ExecutorService executor,
+        Clock clock)
+    {
+        this.executor = executor;
+        this.clock = clock;
+
+        List<TimingWheel<Registration>> wheels = new ArrayList<>(timers.size());
+
+        for (ScheduledExecutorService timer : timers)
+        {
+            wheels.add(
+                new TimingWheel<>(
+                    METRICS_NAME,
+                    timer,
+                    clock,
+                    TICK_MILLIS,
+                    WHEEL_SIZE,
+                    this::runDue));
+        }
+        this.wheels = Collections.unmodifiableList(wheels);
+    }
+
+    /**
+     * Registers a task with this service. The task is not run until it is
+     * scheduled with {@link Registration#schedule(long)}.
+     *
+     * @param task the task.
+     * @return the registration of <tt>task</tt>.
+     */
+    public Registration register(Task task)
+    {
+        return new Registration(task);
+    }
+
+    /**
+     * Returns the current time of this service in milliseconds.
+     *
+     * @return the current time of this service in milliseconds.
+     */
+    public long currentTimeMillis()
+    {
+        return clock.millis();
+    }
+
+    /**
+     * Notes that a refresh request has been sent.
+     */
+    public void refreshSent()
+    {
+        refreshesSent.incrementAndGet();
+    }
+
+    /**
+     * Notes that a refresh request has received a success response.
+     *
+     * @param sentTimeMillis the time (as returned by
+     * {@link #currentTimeMillis()}) at which the request was sent.
+     */
+    public void refreshSucceeded(long sentTimeMillis)
+    {
+        refreshLatency.record(Math.max(0, clock.millis() - sentTimeMillis));
+    }
+
+    /**
+     * Notes that a refresh request has received an error response or has
+     * timed out.
+     */
+    public void refreshFailed()
+    {
+        refreshFailures.incrementAndGet();
+    }
+
+    /**
+     * Returns the latencies in milliseconds of the successful refreshes.
+     *
+     * @return the latencies in milliseconds of the successful refreshes.
+     */
+    public Histogram getRefreshLatency()
+    {
+        return refreshLatency;
+    }
+
+    /**
+     * Returns the number of refresh requests sent.
+     *
+     * @return the number of refresh requests sent.
+     */
+    public long getRefreshesSent()
+    {
+        return refreshesSent.get();
+    }
+
+    /**
+     * Returns the number of refresh requests which failed.
+     *
+     * @return the number of refresh requests which failed.
+     */
+    public long getRefreshFailures()
+    {
+        return refreshFailures.get();
+    }
+
+    /**
+     * Returns the number of tasks which are scheduled.
+     *
+     * @return the number of tasks which are scheduled.
+     */
+    public int getScheduledCount()
+    {
+        int count = 0;
+
+        for (TimingWheel<Registration> wheel : wheels)
+        {
+            count += wheel.getScheduledCount();
+        }
+        return count;
+    }
+
+    /**
+     * Runs the registrations which are due on the executor.
+     *
+     * @param due the registrations which are due.
+     */
+    private void runDue(List<Registration> due)
+    {
+        for (Registration registration : due)
+        {
+            executor.execute(registration::run);
+        }
+    }
+
+    /**
+     * A periodic refresh.
+     */
+    public interface Task
+    {
+        /**
+         * Runs the refresh.
+         *
+         * @return the delay in milliseconds until the task is due again, or
+         * {@link #NOT_SCHEDULED} if it is not to be run again until it is
+         * rescheduled.
+         */
+        long run();
+    }
+
+    /**
+     * The registration of a {@link Task} with a <tt>RefreshService</tt>.
+     */
+    public final class Registration
+        extends TimingWheel.Timeout
+    {
+        /**
+         * The task.
+         */
+        private final Task task;
+
+        /**
+         * The timing wheel of this registration.
+         */
+        private final TimingWheel<Registration> wheel;
+
+        private Registration(Task task)
+        {
+            this.task = task;
+            this.wheel
+                = wheels.get(ShardedScheduler.indexFor(this, wheels.size()));
+        }
+
+        /**
+         * Schedules the task to run after a specific delay, unless it is
+         * already scheduled to run earlier.
+         *
+         * @param delayMillis the delay in milliseconds.
+         */
+        public void schedule(long delayMillis)
+        {
+            wheel.schedule(this, delayMillis);
+        }
+
+        /**
+         * Cancels the task. It is not run again, though a run which has
+         * already started completes.
+         */
+        public void cancel()
+        {
+            wheel.cancel(this);
+        }
+
+        /**
+         * Returns whether the task is scheduled.
+         *
+         * @return whether the task is scheduled.
+         */
+        public boolean isScheduled()
+        {
+            return wheel.isScheduled(this);
+        }
+
+        /**
+         * Runs the task and reschedules it.
+         */
+        private void run()
+        {
+            if (isCancelled())
+            {
+                return;
+            }
+
+            long delay = NOT_SCHEDULED;
+
+            try
+            {
+                delay = task.run();
+            }
+            catch (Throwable t)
+            {
+                logger.log(Level.WARNING, "Failed to run a refresh", t);
+            }
+            if (delay != NOT_SCHEDULED)
+            {
+                schedule(Math.max(0, delay));
+            }
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import org.ice4j.*;
+
+import java.net.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.ice4j.ice.harvest.HarvestConfig.config;
+
+/**
+ * Remembers the server reflexive addresses which STUN servers have reported
+ * for local addresses, so that agents which harvest through the same local
+ * address and STUN server do not each have to send a Binding request.
+ * <p>
+ * A mapping is forgotten when it is older than the configured time to live, or
+ * when its local address disappears from the network interfaces of the host.
+ * A NAT which changes a mapping within the time to live goes unnoticed, so the
+ * cache is only enabled when the time to live is configured.
+ * </p>
+ */
+public class ServerReflexiveMappingCache
+{
+    /**
+     * The cache shared by all harvesters in this JVM, or <tt>null</tt> if it
+     * has not been created yet.
+     */
+    private static ServerReflexiveMappingCache defaultCache;
+
+    /**
+     * Returns the cache shared by all harvesters in this JVM, or <tt>null</tt>
+     * if caching is disabled (i.e. {@link HarvestConfig#stunMappingCacheTtl()}
+     * is zero).
+     *
+     * @return the cache shared by all harvesters in this JVM, or <tt>null</tt>
+     * if caching is disabled.
+     */
+    public static synchronized ServerReflexiveMappingCache getDefault()
+    {
+        Duration ttl = config.stunMappingCacheTtl();
+
+        if (ttl.isZero() || ttl.isNegative())
+        {
+            return null;
+        }
+        if (defaultCache == null)
+        {
+            defaultCache
+                = new ServerReflexiveMappingCache(Clock.systemUTC(), ttl);
+
+            // Forget the mappings of addresses which went away.
+            NetworkInterfaceCache.getDefault().addListener(
+                (previous, current) ->
+                    defaultCache.retainAddresses(current.getAddresses()));
+        }
+        return defaultCache;
+    }
+
+    /**
+     * The clock which timestamps the mappings.
+     */
+    private final Clock clock;
+
+    /**
+     * How long a mapping is used after it has been learned.
+     */
+    private final Duration ttl;
+
+    /**
+     * The mappings by local address and STUN server.
+     */
+    private final Map<Key, Mapping> mappings = new ConcurrentHashMap<>();
+
+    /**
+     * Initializes a new <tt>ServerReflexiveMappingCache</tt>.
+     *
+     * @param clock the clock which timestamps the mappings.
+     * @param ttl how long a mapping is used after it has been learned.
+     */
+    public ServerReflexiveMappingCache(Clock clock, Duration ttl)
+    {
+        this.clock = clock;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Returns the server reflexive address which a specific STUN server has
+     * recently reported for a specific local address.
+     *
+     * @param localAddress the local address.
+     * @param stunServer the STUN server.
+     * @return the server reflexive address, or <tt>null</tt> if there is no
+     * mapping or it has expired.
+     */
+    public TransportAddress get(
+        TransportAddress localAddress,
+        TransportAddress stunServer)
+    {
+        Key key = new Key(localAddress, stunServer);
+        Mapping mapping = mappings.get(key);
+
+        if (mapping == null)
+        {
+            return null;
+        }
+        if (!clock.instant().isBefore(mapping.expiration))
+        {
+            mappings.remove(key, mapping);
+            return null;
+        }
+        return mapping.address;
+    }
+
+    /**
+     * Remembers the server reflexive address which a specific STUN server has
+     * reported for a specific local address.
+     *
+     * @param localAddress the local address.
+     * @param stunServer the STUN server.
+     * @param mappedAddress the server reflexive address.
+     */
+    public void put(
+        TransportAddress localAddress,
+        TransportAddress stunServer,
+        TransportAddress mappedAddress)
+    {
+        mappings.put(
+            new Key(localAddress, stunServer),
+            new Mapping(mappedAddress, clock.instant().plus(ttl)));
+    }
+
+    /**
+     * Forgets the mappings of the local addresses other than specific ones.
+     *
+     * @param addresses the local addresses to keep the mappings of.
+     */
+    public void retainAddresses(Collection<InetAddress> addresses)
+    {
+        mappings.keySet().removeIf(
+            key -> !addresses.contains(key.localAddress.getAddress()));
+    }
+
+    /**
+     * Forgets all mappings.
+     */
+    public void clear()
+    {
+        mappings.clear();
+    }
+
+    /**
+     * Returns the number of mappings in this cache, including expired ones
+     * which have not been looked up since they expired.
+     *
+     * @return the number of mappings in this cache.
+     */
+    public int size()
+    {
+        return mappings.size();
+    }
+
+    /**
+     * Identifies a mapping.
+     */
+    private static final class Key
+    {
+        private final TransportAddress localAddress;
+
+        private final TransportAddress stunServer;
+
+        private Key(TransportAddress localAddress, TransportAddress stunServer)
+        {
+            this.localAddress = localAddress;
+            this.stunServer = stunServer;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+
+            Key that = (Key) o;
+
+            return localAddress.equals(that.localAddress)
+                && stunServer.equals(that.stunServer);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(localAddress, stunServer);
+        }
+    }
+
+    /**
+     * A server reflexive address and the time it expires.
+     */
+    private static final class Mapping
+    {
+        private final TransportAddress address;
+
+        private final Instant expiration;
+
+        private Mapping(TransportAddress address, Instant expiration)
+        {
+            this.address = address;
+            this.expiration = expiration;
+        }
+    }
+}
@@ -68,7 +68,8 @@ public class StunCandidateHarvest
      * The list of <tt>Candidate</tt>s harvested for {@link #hostCandidate} by
      * this harvest.
      */
-    private final List<LocalCandidate> candidates = new LinkedList<>();
+    private final List<LocalCandidate> candidates
+        = Collections.synchronizedList(new LinkedList<>());
 
     /**
      * The indicator which determines whether this <tt>StunCandidateHarvest</tt>
@@ -122,12 +123,13 @@ public class StunCandidateHarvest
     private final Object sendKeepAliveMessageSyncRoot = new Object();
 
     /**
-     * The <tt>Thread</tt> which sends the STUN keep-alive messages to the STUN
-     * server associated with the <tt>StunCandidateHarvester</tt> of this
-     * instance in order to keep the <tt>Candidate</tt>s harvested by this
-     * instance alive.
+     * The registration with {@link RefreshService} of the sending of the STUN
+     * keep-alive messages to the STUN server associated with the
+     * <tt>StunCandidateHarvester</tt> of this instance in order to keep the
+     * <tt>Candidate</tt>s harvested by this instance alive, or <tt>null</tt>
+     * if no keep-alive messages are to be sent.
      */
-    private Thread sendKeepAliveMessageThread;
+    private RefreshService.Registration sendKeepAliveMessageRegistration;
 
     /**
      * The time (stamp) in milliseconds of the last call to
@@ -137,6 +139,13 @@ public class StunCandidateHarvest
      */
     private long sendKeepAliveMessageTime = -1;
 
+    /**
+     * The {@link TrickleCallback} to report the <tt>Candidate</tt>s harvested
+     * by this harvest to as soon as they are added to the component of
+     * {@link #hostCandidate}, or <tt>null</tt>.
+     */
+    private volatile TrickleCallback trickleCallback;
+
     /**
      * Initializes a new <tt>StunCandidateHarvest</tt> which is to represent the
      * harvesting of STUN <tt>Candidate</tt>s for a specific
@@ -183,6 +192,14 @@ public class StunCandidateHarvest
         {
             added = false;
         }
+
+        TrickleCallback trickleCallback = this.trickleCallback;
+
+        if (added && trickleCallback != null)
+        {
+            trickleCallback.onIceCandidates(
+                    Collections.singletonList(candidate));
+        }
         return added;
     }
 
@@ -374,38 +391,6 @@ public class StunCandidateHarvest
         return MessageFactory.createBindingRequest();
     }
 
-    /**
-     * Creates and starts the {@link #sendKeepAliveMessageThread} which is to
-     * send STUN keep-alive <tt>Message</tt>s to the STUN server associated with
-     * the <tt>StunCandidateHarvester</tt> of this instance in order to keep the
-     * <tt>Candidate</tt>s harvested by this instance alive.
-     */
-    private void createSendKeepAliveMessageThread()
-    {
-        synchronized (sendKeepAliveMessageSyncRoot)
-        {
-            Thread t = new SendKeepAliveMessageThread(this);
-            t.setDaemon(true);
-            t.setName(
-                    getClass().getName() + ".sendKeepAliveMessageThread: "
-                        + hostCandidate);
-
-            boolean started = false;
-
-            sendKeepAliveMessageThread = t;
-            try
-            {
-                t.start();
-                started = true;
-            }
-            finally
-            {
-                if (!started && (sendKeepAliveMessageThread == t))
-                    sendKeepAliveMessageThread = null;
-            }
-        }
-    }
-
     /**
      * Creates a <tt>ServerReflexiveCandidate</tt> using {@link #hostCandidate}
      * as its base and the <tt>XOR-MAPPED-ADDRESS</tt> attribute in
@@ -422,35 +407,58 @@ public class StunCandidateHarvest
 
         if (addr != null)
         {
-            ServerReflexiveCandidate srvrRflxCand
-                = createServerReflexiveCandidate(addr);
+            ServerReflexiveMappingCache mappingCache
+                = harvester.getMappingCache();
 
-            if (srvrRflxCand != null)
+            if (mappingCache != null
+                    && hostCandidate.getTransport() == Transport.UDP)
             {
-                try
-                {
-                    addCandidate(srvrRflxCand);
-                }
-                finally
+                mappingCache.put(
+                        hostCandidate.getTransportAddress(),
+                        harvester.stunServer,
+                        addr);
+            }
+            addServerReflexiveCandidate(addr);
+        }
+    }
+
+    /**
+     * Creates a <tt>ServerReflexiveCandidate</tt> for a specific server
+     * reflexive address of {@link #hostCandidate} and adds it to the list of
+     * <tt>LocalCandidate</tt>s harvested by this harvest.
+     *
+     * @param addr the server reflexive address of {@link #hostCandidate}
+     */
+    void addServerReflexiveCandidate(TransportAddress addr)
+    {
+        ServerReflexiveCandidate srvrRflxCand
+            = createServerReflexiveCandidate(addr);
+
+        if (srvrRflxCand != null)
+        {
+            try
+            {
+                addCandidate(srvrRflxCand);
+            }
+            finally
+            {
+                // Free srvrRflxCand if it has not been consumed.
+                if (!containsCandidate(srvrRflxCand))
                 {
-                    // Free srvrRflxCand if it has not been consumed.
-                    if (!containsCandidate(srvrRflxCand))
+                    try
                     {
-                        try
-                        {
-                            srvrRflxCand.free();
-                        }
-                        catch (Exception ex)
+                        srvrRflxCand.free();
+                    }
+                    catch (Exception ex)
+                    {
+                        if (logger.isLoggable(Level.FINE))
                         {
-                            if (logger.isLoggable(Level.FINE))
-                            {
-                                logger.log(
-                                        Level.FINE,
-                                        "Failed to free"
-                                            + " ServerReflexiveCandidate: "
-                                            + srvrRflxCand,
-                                        ex);
-                            }
+                            logger.log(
+                                    Level.FINE,
+                                    "Failed to free"
+                                        + " ServerReflexiveCandidate: "
+                                        + srvrRflxCand,
+                                    ex);
                         }
                     }
                 }
@@ -482,32 +490,6 @@ public class StunCandidateHarvest
                     CandidateExtendedType.STUN_SERVER_REFLEXIVE_CANDIDATE);
     }
 
-    /**
-     * Runs in {@link #sendKeepAliveMessageThread} to notify this instance that
-     * <tt>sendKeepAliveMessageThread</tt> is about to exit.
-     */
-    private void exitSendKeepAliveMessageThread()
-    {
-        synchronized (sendKeepAliveMessageSyncRoot)
-        {
-            if (sendKeepAliveMessageThread == Thread.currentThread())
-                sendKeepAliveMessageThread = null;
-
-            /*
-             * Well, if the currentThread is finishing and this instance is
-             * still to send keep-alive messages, we'd better start another
-             * Thread for the purpose to continue the work that the
-             * currentThread was supposed to carry out.
-             */
-            if ((sendKeepAliveMessageThread == null)
-                    && (sendKeepAliveMessageInterval
-                         != SEND_KEEP_ALIVE_MESSAGE_INTERVAL_NOT_SPECIFIED))
-            {
-                createSendKeepAliveMessageThread();
-            }
-        }
-    }
-
     /**
      * Gets the number of <tt>Candidate</tt>s harvested for
      * {@link #hostCandidate} during this harvest.
@@ -1116,64 +1098,39 @@ public class StunCandidateHarvest
     }
 
     /**
-     * Runs in {@link #sendKeepAliveMessageThread} and sends STUN
-     * keep-alive <tt>Message</tt>s to the STUN server associated with the
-     * <tt>StunCandidateHarvester</tt> of this instance.
+     * Runs in {@link RefreshService} and sends a STUN keep-alive
+     * <tt>Message</tt> to the STUN server associated with the
+     * <tt>StunCandidateHarvester</tt> of this instance if one is due.
      *
-     * @return <tt>true</tt> if the method is to be invoked again; otherwise,
-     * <tt>false</tt>
+     * @param refreshService the <tt>RefreshService</tt> which runs the method
+     * @return the delay in milliseconds until the next STUN keep-alive
+     * <tt>Message</tt> is due or {@link RefreshService#NOT_SCHEDULED} if no
+     * more STUN keep-alive messages are to be sent
      */
-    private boolean runInSendKeepAliveMessageThread()
+    private long runSendKeepAliveMessage(RefreshService refreshService)
     {
         synchronized (sendKeepAliveMessageSyncRoot)
         {
-            // Since we're going to #wait, make sure we're not canceled yet.
-            if (sendKeepAliveMessageThread != Thread.currentThread())
-                return false;
             if (sendKeepAliveMessageInterval
                     == SEND_KEEP_ALIVE_MESSAGE_INTERVAL_NOT_SPECIFIED)
             {
-                return false;
+                return RefreshService.NOT_SCHEDULED;
             }
 
-            // Determine the amount of milliseconds that we'll have to #wait.
-            long timeout;
+            /*
+             * The interval may have been increased since this run was
+             * scheduled.
+             */
+            long timeout
+                = sendKeepAliveMessageTime
+                    + sendKeepAliveMessageInterval
+                    - refreshService.currentTimeMillis();
 
-            if (sendKeepAliveMessageTime == -1)
-            {
-                /*
-                 * If we're just starting, don't just go and send a new STUN
-                 * keep-alive message but rather wait for the whole interval.
-                 */
-                timeout = sendKeepAliveMessageInterval;
-            }
-            else
-            {
-                timeout
-                    = sendKeepAliveMessageTime
-                        + sendKeepAliveMessageInterval
-                        - System.currentTimeMillis();
-            }
-            // At long last, #wait if necessary.
             if (timeout > 0)
-            {
-                try
-                {
-                    sendKeepAliveMessageSyncRoot.wait(timeout);
-                }
-                catch (InterruptedException iex)
-                {
-                }
-                /*
-                 * Apart from being the time to send the STUN keep-alive
-                 * message, it could be that we've experienced a spurious
-                 * wake-up or that we've been canceled.
-                 */
-                return true;
-            }
+                return timeout;
+            sendKeepAliveMessageTime = refreshService.currentTimeMillis();
         }
 
-        sendKeepAliveMessageTime = System.currentTimeMillis();
         try
         {
             sendKeepAliveMessage();
@@ -1185,7 +1142,15 @@ public class StunCandidateHarvest
                     "Failed to send STUN keep-alive message.",
                     sex);
         }
-        return true;
+
+        synchronized (sendKeepAliveMessageSyncRoot)
+        {
+            return
+                (sendKeepAliveMessageInterval
+                        == SEND_KEEP_ALIVE_MESSAGE_INTERVAL_NOT_SPECIFIED)
+                    ? RefreshService.NOT_SCHEDULED
+                    : sendKeepAliveMessageInterval;
+        }
     }
 
     /**
@@ -1365,17 +1330,60 @@ public class StunCandidateHarvest
                 && (sendKeepAliveMessageInterval < 1))
             throw new IllegalArgumentException("sendKeepAliveMessageInterval");
 
+        RefreshService refreshService = harvester.getRefreshService();
+
         synchronized (sendKeepAliveMessageSyncRoot)
         {
             this.sendKeepAliveMessageInterval = sendKeepAliveMessageInterval;
-            if (sendKeepAliveMessageThread == null)
+            if (sendKeepAliveMessageInterval
+                    == SEND_KEEP_ALIVE_MESSAGE_INTERVAL_NOT_SPECIFIED)
             {
-                if (this.sendKeepAliveMessageInterval
-                        != SEND_KEEP_ALIVE_MESSAGE_INTERVAL_NOT_SPECIFIED)
-                    createSendKeepAliveMessageThread();
+                if (sendKeepAliveMessageRegistration != null)
+                {
+                    sendKeepAliveMessageRegistration.cancel();
+                    sendKeepAliveMessageRegistration = null;
+                }
+                return;
             }
-            else
-                sendKeepAliveMessageSyncRoot.notify();
+
+            if (sendKeepAliveMessageRegistration == null)
+            {
+                /*
+                 * The RefreshService references this instance through a
+                 * WeakReference in an attempt to reduce the risk that the
+                 * registration keeps it alive regardless of the fact that it
+                 * may no longer be reachable otherwise.
+                 */
+                WeakReference<StunCandidateHarvest> weakThis
+                    = new WeakReference<>(this);
+
+                sendKeepAliveMessageRegistration
+                    = refreshService.register(() ->
+                    {
+                        StunCandidateHarvest harvest = weakThis.get();
+
+                        return
+                            (harvest == null)
+                                ? RefreshService.NOT_SCHEDULED
+                                : harvest.runSendKeepAliveMessage(
+                                        refreshService);
+                    });
+            }
+
+            /*
+             * If we're just starting, don't just go and send a new STUN
+             * keep-alive message but rather wait for the whole interval.
+             */
+            if (sendKeepAliveMessageTime == -1)
+            {
+                sendKeepAliveMessageTime = refreshService.currentTimeMillis();
+            }
+            sendKeepAliveMessageRegistration.schedule(
+                    Math.max(
+                            0,
+                            sendKeepAliveMessageTime
+                                + sendKeepAliveMessageInterval
+                                - refreshService.currentTimeMillis()));
         }
     }
 
@@ -1410,69 +1418,24 @@ public class StunCandidateHarvest
     }
 
     /**
-     * Close the harvest.
+     * Sets the {@link TrickleCallback} to report the <tt>Candidate</tt>s
+     * harvested by this harvest to as soon as they are discovered.
+     *
+     * @param trickleCallback the <tt>TrickleCallback</tt> to report the
+     * candidates to, or <tt>null</tt> to stop reporting them.
      */
-    public void close()
+    void setTrickleCallback(TrickleCallback trickleCallback)
     {
-        // stop keep alive thread
-        setSendKeepAliveMessageInterval(
-            SEND_KEEP_ALIVE_MESSAGE_INTERVAL_NOT_SPECIFIED);
+        this.trickleCallback = trickleCallback;
     }
 
     /**
-     * Sends STUN keep-alive <tt>Message</tt>s to the STUN server associated
-     * with the <tt>StunCandidateHarvester</tt> of this instance.
-     *
-     * @author Lyubomir Marinov
+     * Close the harvest.
      */
-    private static class SendKeepAliveMessageThread
-        extends Thread
+    public void close()
     {
-        /**
-         * The <tt>StunCandidateHarvest</tt> which has initialized this
-         * instance. The <tt>StunCandidateHarvest</tt> is referenced by a
-         * <tt>WeakReference</tt> in an attempt to reduce the risk that the
-         * <tt>Thread</tt> may live regardless of the fact that the specified
-         * <tt>StunCandidateHarvest</tt> may no longer be reachable.
-         */
-        private final WeakReference<StunCandidateHarvest> harvest;
-
-        /**
-         * Initializes a new <tt>SendKeepAliveMessageThread</tt> instance with a
-         * specific <tt>StunCandidateHarvest</tt>.
-         *
-         * @param harvest the <tt>StunCandidateHarvest</tt> to initialize the
-         * new instance with
-         */
-        public SendKeepAliveMessageThread(StunCandidateHarvest harvest)
-        {
-            this.harvest = new WeakReference<>(harvest);
-        }
-
-        @Override
-        public void run()
-        {
-            try
-            {
-                do
-                {
-                    StunCandidateHarvest harvest = this.harvest.get();
-
-                    if ((harvest == null)
-                            || !harvest.runInSendKeepAliveMessageThread())
-                    {
-                        break;
-                    }
-                }
-                while (true);
-            }
-            finally
-            {
-                StunCandidateHarvest harvest = this.harvest.get();
-
-                if (harvest != null)
-                    harvest.exitSendKeepAliveMessageThread();
-            }
-        }
+        // stop keep-alives
+        setSendKeepAliveMessageInterval(
+            SEND_KEEP_ALIVE_MESSAGE_INTERVAL_NOT_SPECIFIED);
     }
 }
@@ -123,35 +123,33 @@ public class StunCandidateHarvester
      * harvest has harvested <tt>Candidates</tt>, it is moved from
      * {@link #startedHarvests} to {@link #completedHarvests}. Otherwise, it is
      * just removed from {@link #startedHarvests}.
+     * <p>
+     * The whole move happens with {@link #startedHarvests} locked, like
+     * {@link #abandonResolutions(List)}, so that a harvest which is being
+     * abandoned concurrently is not added to {@link #completedHarvests}.
+     * </p>
      *
      * @param harvest the <tt>StunCandidateHarvest</tt> which has been completed
      */
     void completedResolvingCandidate(StunCandidateHarvest harvest)
     {
-        boolean doNotify = false;
-
         synchronized (startedHarvests)
         {
-            startedHarvests.remove(harvest);
-
-            // If this was the last candidate, we are done with the STUN
-            // resolution and need to notify the waiters.
-            if (startedHarvests.isEmpty())
-                doNotify = true;
-        }
+            // An abandoned harvest is no longer waited for.
+            if (!startedHarvests.remove(harvest))
+                return;
 
-        synchronized (completedHarvests)
-        {
-            if (harvest.getCandidateCount() < 1)
-                completedHarvests.remove(harvest);
-            else if (!completedHarvests.contains(harvest))
-                completedHarvests.add(harvest);
-        }
+            synchronized (completedHarvests)
+            {
+                if (harvest.getCandidateCount() < 1)
+                    completedHarvests.remove(harvest);
+                else if (!completedHarvests.contains(harvest))
+                    completedHarvests.add(harvest);
+            }
 
-        synchronized(startedHarvests)
-        {
-            if (doNotify)
-                startedHarvests.notify();
+            // The waiters are waiting for their own harvests, which may not
+            // be all of the started ones.
+            startedHarvests.notifyAll();
         }
     }
 
@@ -223,6 +221,19 @@ public class StunCandidateHarvester
         return stunStack;
     }
 
+    /**
+     * Gets the <tt>RefreshService</tt> which sends the periodic refreshes
+     * (STUN keep-alives, TURN Allocation, permission and channel refreshes)
+     * for the candidates harvested by this <tt>CandidateHarvester</tt>.
+     *
+     * @return the <tt>RefreshService</tt> used by this
+     * <tt>CandidateHarvester</tt>
+     */
+    public RefreshService getRefreshService()
+    {
+        return RefreshService.getDefault();
+    }
+
     /**
      * Gathers STUN candidates for all host <tt>Candidate</tt>s that are already
      * present in the specified <tt>component</tt>. This method relies on the
@@ -236,6 +247,28 @@ public class StunCandidateHarvester
      */
     @Override
     public Collection<LocalCandidate> harvest(Component component)
+    {
+        return harvest(component, null);
+    }
+
+    /**
+     * Gathers STUN candidates for all host <tt>Candidate</tt>s that are already
+     * present in the specified <tt>component</tt> and reports each of them to
+     * <tt>trickleCallback</tt> as soon as the STUN server has answered for its
+     * host candidate. If the calling thread is interrupted, the resolutions
+     * which have not completed yet are abandoned.
+     *
+     * @param component the {@link Component} that we'd like to gather candidate
+     * STUN <tt>Candidate</tt>s for
+     * @param trickleCallback the {@link TrickleCallback} to report each
+     * candidate to as soon as it is discovered, or <tt>null</tt>
+     * @return  the <tt>LocalCandidate</tt>s gathered by this
+     * <tt>CandidateHarvester</tt>
+     */
+    @Override
+    public Collection<LocalCandidate> harvest(
+            Component component,
+            TrickleCallback trickleCallback)
     {
         if (logger.isLoggable(Level.FINE))
         {
@@ -244,16 +277,33 @@ public class StunCandidateHarvester
         }
         stunStack = component.getParentStream().getParentAgent().getStunStack();
 
+        List<StunCandidateHarvest> harvests = new ArrayList<>();
+
         for (Candidate<?> cand : component.getLocalCandidates())
         {
             if ((cand instanceof HostCandidate)
                     && (cand.getTransport() == stunServer.getTransport()))
             {
-                startResolvingCandidate((HostCandidate) cand);
+                StunCandidateHarvest harvest
+                    = resolveCandidateFromMappingCache(
+                            (HostCandidate) cand,
+                            trickleCallback);
+
+                if (harvest == null)
+                {
+                    harvest
+                        = startResolvingCandidate(
+                                (HostCandidate) cand,
+                                trickleCallback);
+                }
+
+                if (harvest != null)
+                    harvests.add(harvest);
             }
         }
 
-        waitForResolutionEnd();
+        if (!waitForResolutionEnd(harvests))
+            abandonResolutions(harvests);
 
         /*
          * Report the LocalCandidates gathered by this CandidateHarvester so
@@ -263,20 +313,20 @@ public class StunCandidateHarvester
 
         synchronized (completedHarvests)
         {
-            for (StunCandidateHarvest completedHarvest : completedHarvests)
+            // The abandoned harvests contribute the candidates they have
+            // found so far.
+            for (StunCandidateHarvest harvest : harvests)
             {
-                LocalCandidate[] completedHarvestCandidates
-                    = completedHarvest.getCandidates();
+                completedHarvests.remove(harvest);
+
+                LocalCandidate[] harvestCandidates = harvest.getCandidates();
 
-                if ((completedHarvestCandidates != null)
-                        && (completedHarvestCandidates.length != 0))
+                if ((harvestCandidates != null)
+                        && (harvestCandidates.length != 0))
                 {
-                    candidates.addAll(
-                            Arrays.asList(completedHarvestCandidates));
+                    candidates.addAll(Arrays.asList(harvestCandidates));
                 }
             }
-
-            completedHarvests.clear();
         }
 
         logger.finest(
@@ -297,19 +347,80 @@ public class StunCandidateHarvester
         return retval.toString();
     }
 
+    /**
+     * Gets the cache of the server reflexive addresses learned from STUN
+     * servers which this harvester consults before sending a Binding request
+     * for a host candidate, and fills with the addresses it learns. The
+     * harvesters which need more than the server reflexive address from the
+     * server (e.g. TURN allocations) are to return <tt>null</tt>.
+     *
+     * @return the mapping cache, or <tt>null</tt> if it is not to be used.
+     */
+    protected ServerReflexiveMappingCache getMappingCache()
+    {
+        return ServerReflexiveMappingCache.getDefault();
+    }
+
+    /**
+     * Harvests the server reflexive candidate of the specified
+     * <tt>hostCand</tt> from the mapping cache if it holds its address.
+     *
+     * @param hostCand the <tt>HostCandidate</tt> that we'd like to resolve.
+     * @param trickleCallback the {@link TrickleCallback} to report the
+     * resolved candidate to, or <tt>null</tt>
+     * @return the completed <tt>StunCandidateHarvest</tt>, or <tt>null</tt> if
+     * the cache does not hold the address of <tt>hostCand</tt>.
+     */
+    private StunCandidateHarvest resolveCandidateFromMappingCache(
+            HostCandidate hostCand,
+            TrickleCallback trickleCallback)
+    {
+        ServerReflexiveMappingCache mappingCache = getMappingCache();
+
+        if (mappingCache == null || hostCand.getTransport() != Transport.UDP)
+            return null;
+
+        TransportAddress mappedAddress
+            = mappingCache.get(hostCand.getTransportAddress(), stunServer);
+
+        if (mappedAddress == null)
+            return null;
+
+        StunCandidateHarvest harvest = createHarvest(hostCand);
+
+        if (harvest == null)
+            return null;
+
+        harvest.setTrickleCallback(trickleCallback);
+        harvest.addServerReflexiveCandidate(mappedAddress);
+        if (logger.isLoggable(Level.FINE))
+        {
+            logger.fine(
+                    "Resolved " + hostCand.toShortString()
+                        + " from the mapping cache: " + mappedAddress);
+        }
+        return harvest;
+    }
+
     /**
      * Sends a binding request to our stun server through the specified
      * <tt>hostCand</tt> candidate and adds it to the list of addresses still
      * waiting for resolution.
      *
      * @param hostCand the <tt>HostCandidate</tt> that we'd like to resolve.
+     * @param trickleCallback the {@link TrickleCallback} to report the
+     * resolved candidates to, or <tt>null</tt>
+     * @return the started <tt>StunCandidateHarvest</tt>, or <tt>null</tt> if
+     * none was started.
      */
-    private void startResolvingCandidate(HostCandidate hostCand)
+    private StunCandidateHarvest startResolvingCandidate(
+            HostCandidate hostCand,
+            TrickleCallback trickleCallback)
     {
         //first of all, make sure that the STUN server and the Candidate
         //address are of the same type and that they can communicate.
         if (!hostCand.getTransportAddress().canReach(stunServer))
-            return;
+            return null;
 
         HostCandidate cand = getHostCandidate(hostCand);
 
@@ -318,7 +429,7 @@ public class StunCandidateHarvester
             logger.info(
                     "server/candidate address type mismatch,"
                         + " skipping candidate in this harvester");
-            return;
+            return null;
         }
 
         StunCandidateHarvest harvest = createHarvest(cand);
@@ -326,9 +437,11 @@ public class StunCandidateHarvester
         if (harvest == null)
         {
             logger.warning("failed to create harvest");
-            return;
+            return null;
         }
 
+        harvest.setTrickleCallback(trickleCallback);
+
         synchronized (startedHarvests)
         {
             startedHarvests.add(harvest);
@@ -377,21 +490,24 @@ public class StunCandidateHarvester
                     }
                 }
             }
+            return started ? harvest : null;
         }
     }
 
     /**
-     * Blocks the current thread until all resolutions in this harvester
-     * have terminated one way or another.
+     * Blocks the current thread until specific resolutions in this harvester
+     * have terminated one way or another, or the thread is interrupted.
+     *
+     * @param harvests the resolutions to wait for.
+     * @return <tt>true</tt> if the resolutions have terminated, or
+     * <tt>false</tt> if the current thread was interrupted.
      */
-    private void waitForResolutionEnd()
+    private boolean waitForResolutionEnd(List<StunCandidateHarvest> harvests)
     {
         synchronized(startedHarvests)
         {
-            boolean interrupted = false;
-
             // Handle spurious wakeups.
-            while (!startedHarvests.isEmpty())
+            while (!Collections.disjoint(startedHarvests, harvests))
             {
                 try
                 {
@@ -403,12 +519,38 @@ public class StunCandidateHarvester
                             "interrupted waiting for harvests to complete,"
                                 + " no. startedHarvests = "
                                 + startedHarvests.size());
-                    interrupted = true;
+                    // Restore the interrupted status.
+                    Thread.currentThread().interrupt();
+                    return false;
                 }
             }
-            // Restore the interrupted status.
-            if (interrupted)
-                Thread.currentThread().interrupt();
+            return true;
+        }
+    }
+
+    /**
+     * Stops waiting for the resolutions among specific ones which have not
+     * terminated yet. Their candidates which are discovered later are still
+     * added to their components but are no longer reported to the
+     * <tt>TrickleCallback</tt> of the harvest.
+     *
+     * @param harvests the resolutions to abandon.
+     */
+    private void abandonResolutions(List<StunCandidateHarvest> harvests)
+    {
+        for (StunCandidateHarvest harvest : harvests)
+        {
+            boolean abandoned;
+
+            synchronized (startedHarvests)
+            {
+                abandoned = startedHarvests.remove(harvest);
+            }
+            if (abandoned)
+            {
+                harvest.setTrickleCallback(null);
+                logger.info("abandoned harvest: " + harvest);
+            }
         }
     }
 
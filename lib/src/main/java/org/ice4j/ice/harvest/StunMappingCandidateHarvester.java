@@ -81,6 +81,25 @@ public class StunMappingCandidateHarvester
      */
     public void discover()
     {
+        ServerReflexiveMappingCache mappingCache
+            = ServerReflexiveMappingCache.getDefault();
+
+        if (mappingCache != null)
+        {
+            publicAddress = mappingCache.get(localAddress, stunServerAddress);
+            if (publicAddress != null)
+            {
+                logger.info("Using cached public address " + publicAddress
+                                + " from STUN server " + stunServerAddress
+                                + " for local address " + localAddress);
+                return;
+            }
+        }
+
+        // The cache is keyed by the address this harvester was initialized
+        // with, before the port is bound.
+        TransportAddress requestedLocalAddress = localAddress;
+
         try
         {
             SimpleAddressDetector sad
@@ -100,6 +119,10 @@ public class StunMappingCandidateHarvester
 
             if (publicAddress != null)
             {
+                if (mappingCache != null)
+                {
+                    mappingCache.put(requestedLocalAddress, stunServerAddress, publicAddress);
+                }
                 logger.info("Discovered public address " + publicAddress
                                 + " from STUN server " + stunServerAddress
                                 + " using local address " + localSocket);
@@ -124,7 +124,7 @@ public class TcpHarvester
     public TcpHarvester(int port, boolean ssltcp)
             throws IOException
     {
-        super(port, Collections.list(NetworkInterface.getNetworkInterfaces()));
+        super(port);
         this.ssltcp = ssltcp;
         addMappedAddresses();
     }
@@ -456,7 +456,7 @@ public class TcpHarvester
      */
     @Override
     protected void acceptSession(Socket socket, String ufrag,
-                                 DatagramPacket pushback)
+                                 TCPFrameDecoder pushback)
         throws IOException, IllegalStateException
     {
         Component component = getComponent(ufrag);
@@ -471,18 +471,18 @@ public class TcpHarvester
 
     /**
      * Makes <tt>socket</tt> available to <tt>component</tt> and pushes back
-     * <tt>datagramPacket</tt> into the STUN socket.
+     * the frame held by <tt>pushback</tt> into the STUN socket.
      *
      * @param socket the <tt>Socket</tt>.
      * @param component the <tt>Component</tt>.
-     * @param datagramPacket the <tt>DatagramPacket</tt> to push back.
+     * @param pushback the decoder which holds the frame to push back.
      * @throws IllegalStateException if the ICE state is incorrect, or an
      * appropriate candidate could not be found.
      * @throws IOException if creation of some of the required socket instances
      * failed.
      */
     private void addSocketToComponent(
-            Socket socket, Component component, DatagramPacket datagramPacket)
+            Socket socket, Component component, TCPFrameDecoder pushback)
         throws IOException, IllegalStateException
     {
         IceProcessingState state
@@ -517,7 +517,7 @@ public class TcpHarvester
         stunSocket
             = new IceTcpSocketWrapper(
                 multiplexing.getSocket(new StunDatagramPacketFilter()));
-        stunSocket = new PushBackIceSocketWrapper(stunSocket, datagramPacket);
+        stunSocket = new PushBackIceSocketWrapper(stunSocket, pushback);
 
         TcpHostCandidate candidate = findCandidate(component, socket);
         if (candidate == null)
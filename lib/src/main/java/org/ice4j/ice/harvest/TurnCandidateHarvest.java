@@ -45,6 +45,20 @@ public class TurnCandidateHarvest
     private static final Logger logger
         = Logger.getLogger(TurnCandidateHarvest.class.getName());
 
+    /**
+     * The time in milliseconds before a TURN Allocation expires that a
+     * <tt>TurnCandidateHarvest</tt> is to refresh it.
+     */
+    private static final long ALLOCATION_LIFETIME_LEEWAY
+        = 60 /* seconds */ * 1000L;
+
+    /**
+     * The time (as returned by {@link RefreshService#currentTimeMillis()}) at
+     * which the last TURN Refresh request which has not received a response
+     * yet has been created, or <tt>-1</tt>.
+     */
+    private volatile long refreshRequestTime = -1;
+
     /**
      * The <tt>Request</tt> created by the last call to
      * {@link #createRequestToStartResolvingCandidate()}.
@@ -197,6 +211,10 @@ public class TurnCandidateHarvest
         switch (candidate.getType())
         {
         case RELAYED_CANDIDATE:
+            RefreshService refreshService = harvester.getRefreshService();
+
+            refreshRequestTime = refreshService.currentTimeMillis();
+            refreshService.refreshSent();
             return MessageFactory.createRefreshRequest();
         case SERVER_REFLEXIVE_CANDIDATE:
             /*
@@ -471,6 +489,12 @@ public class TurnCandidateHarvest
             Request request,
             TransactionID transactionID)
     {
+        if ((request.getMessageType() == Message.REFRESH_REQUEST)
+                && (refreshRequestTime != -1))
+        {
+            refreshRequestTime = -1;
+            harvester.getRefreshService().refreshFailed();
+        }
 
         /*
          * TurnCandidateHarvest uses the applicationData of TransactionID to
@@ -529,12 +553,29 @@ public class TurnCandidateHarvest
                 = (LifetimeAttribute) response.getAttribute(Attribute.LIFETIME);
             if (lifetimeAttribute != null)
                 lifetime = lifetimeAttribute.getLifetime();
+
+            long refreshRequestTime = this.refreshRequestTime;
+
+            if (refreshRequestTime != -1)
+            {
+                this.refreshRequestTime = -1;
+                harvester.getRefreshService().refreshSucceeded(
+                        refreshRequestTime);
+            }
             break;
         }
         if (lifetime >= 0)
         {
+            /*
+             * Refresh the Allocation ahead of its expiry rather than at the
+             * time it expires.
+             */
+            long lifetimeMillis = 1000L * lifetime;
+
             setSendKeepAliveMessageInterval(
-                    /* milliseconds */ 1000L * lifetime);
+                    Math.max(
+                            lifetimeMillis / 2,
+                            lifetimeMillis - ALLOCATION_LIFETIME_LEEWAY));
         }
 
         /*
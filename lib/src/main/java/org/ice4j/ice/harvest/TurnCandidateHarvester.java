@@ -108,6 +108,20 @@ public class TurnCandidateHarvester
         return new TurnCandidateHarvest(this, hostCandidate);
     }
 
+    /**
+     * Returns <tt>null</tt> because the relayed candidates require an
+     * allocation on the server, so the server reflexive address alone does
+     * not save a request.
+     *
+     * @return <tt>null</tt>
+     * @see StunCandidateHarvester#getMappingCache()
+     */
+    @Override
+    protected ServerReflexiveMappingCache getMappingCache()
+    {
+        return null;
+    }
+
     /**
      * Creates a <tt>LongTermCredential</tt> to be used by a specific
      * <tt>StunCandidateHarvest</tt> for the purposes of the long-term
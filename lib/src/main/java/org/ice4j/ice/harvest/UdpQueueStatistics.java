@@ -0,0 +1,181 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import java.util.concurrent.atomic.*;
+
+import org.ice4j.util.*;
+
+/**
+ * Statistics about the queues of the sessions of an {@link AbstractUdpListener}:
+ * how many packets were enqueued, dequeued and dropped because the queue was
+ * full, the maximum depth and the time the packets spent in the queue.
+ * <p>
+ * There is an instance for each session and one for the whole listener,
+ * which the former add up to. They are always collected: the counters are
+ * striped, so the listener's thread and the threads reading from the sessions
+ * do not contend on them.
+ * </p>
+ */
+public class UdpQueueStatistics
+{
+    /**
+     * The statistics which this instance adds up to, or <tt>null</tt>.
+     */
+    private final UdpQueueStatistics parent;
+
+    /**
+     * The number of packets added to the queue.
+     */
+    private final LongAdder enqueued = new LongAdder();
+
+    /**
+     * The number of packets taken from the queue.
+     */
+    private final LongAdder dequeued = new LongAdder();
+
+    /**
+     * The number of packets dropped because the queue was full.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * The maximum number of packets in the queue.
+     */
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+
+    /**
+     * The histogram of the time in microseconds the dequeued packets spent in
+     * the queue.
+     */
+    private final Histogram timeInQueue
+        = new Histogram(Histogram.DEFAULT_MICROS_BOUNDS);
+
+    /**
+     * Initializes a new <tt>UdpQueueStatistics</tt> instance.
+     *
+     * @param parent the statistics which the new instance is to add up to, or
+     * <tt>null</tt>.
+     */
+    UdpQueueStatistics(UdpQueueStatistics parent)
+    {
+        this.parent = parent;
+    }
+
+    /**
+     * Notifies that a packet was added to the queue.
+     *
+     * @param depth the number of packets in the queue after adding it.
+     */
+    void enqueued(int depth)
+    {
+        enqueued.increment();
+        maxDepth.accumulate(depth);
+        if (parent != null)
+        {
+            parent.enqueued(depth);
+        }
+    }
+
+    /**
+     * Notifies that a packet was taken from the queue.
+     *
+     * @param timeInQueueNanos the time in nanoseconds the packet spent in the
+     * queue.
+     */
+    void dequeued(long timeInQueueNanos)
+    {
+        dequeued.increment();
+        timeInQueue.record(timeInQueueNanos / 1000);
+        if (parent != null)
+        {
+            parent.dequeued(timeInQueueNanos);
+        }
+    }
+
+    /**
+     * Notifies that a packet was dropped because the queue was full.
+     */
+    void dropped()
+    {
+        dropped.increment();
+        if (parent != null)
+        {
+            parent.dropped();
+        }
+    }
+
+    /**
+     * Returns the number of packets added to the queue.
+     *
+     * @return the number of packets added to the queue.
+     */
+    public long getEnqueued()
+    {
+        return enqueued.sum();
+    }
+
+    /**
+     * Returns the number of packets taken from the queue.
+     *
+     * @return the number of packets taken from the queue.
+     */
+    public long getDequeued()
+    {
+        return dequeued.sum();
+    }
+
+    /**
+     * Returns the number of packets dropped because the queue was full.
+     *
+     * @return the number of packets dropped because the queue was full.
+     */
+    public long getDropped()
+    {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the maximum number of packets which were in a single queue.
+     *
+     * @return the maximum number of packets which were in a single queue.
+     */
+    public long getMaxDepth()
+    {
+        return maxDepth.get();
+    }
+
+    /**
+     * Returns the histogram of the time the dequeued packets spent in the
+     * queue, in microseconds.
+     *
+     * @return the histogram of the time in queue in microseconds.
+     */
+    public Histogram getTimeInQueue()
+    {
+        return timeInQueue;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "enqueued=" + getEnqueued()
+            + " dequeued=" + getDequeued()
+            + " dropped=" + getDropped()
+            + " maxDepth=" + getMaxDepth()
+            + " timeInQueueUs={" + timeInQueue + "}";
+    }
+}
@@ -17,6 +17,8 @@
  */
 package org.ice4j.message;
 
+import java.net.*;
+
 import org.ice4j.*;
 
 /**
@@ -51,6 +53,16 @@ public class ChannelData
      */
     private byte data[] = null;
 
+    /**
+     * The offset of the application data in {@link #data}.
+     */
+    private int dataOffset = 0;
+
+    /**
+     * The length of the application data in {@link #data}.
+     */
+    private int dataLength = 0;
+
     /**
      * Size of the header.
      */
@@ -86,8 +98,25 @@ public class ChannelData
      * @param data the data
      */
     public void setData(byte data[])
+    {
+        setData(data, 0, (data == null) ? 0 : data.length);
+    }
+
+    /**
+     * Sets the data to a range of a specific array. If there are at least
+     * {@link #HEADER_LENGTH} bytes in the array before <tt>offset</tt>, the
+     * message can be encoded in place with {@link #encodeInPlace(boolean)},
+     * which overwrites these bytes with the header.
+     *
+     * @param data the array which contains the data
+     * @param offset the offset of the data in <tt>data</tt>
+     * @param length the length of the data
+     */
+    public void setData(byte data[], int offset, int length)
     {
         this.data = data;
+        this.dataOffset = offset;
+        this.dataLength = length;
     }
 
     /**
@@ -99,6 +128,15 @@ public class ChannelData
         return this.data;
     }
 
+    /**
+     * Get the offset of the data in the array returned by {@link #getData()}.
+     * @return data offset
+     */
+    public int getDataOffset()
+    {
+        return dataOffset;
+    }
+
     /**
      * Get the data length (without padding).
      *
@@ -109,7 +147,7 @@ public class ChannelData
         if (data == null)
             return 0;
 
-        return (char)data.length;
+        return (char) dataLength;
     }
 
     /**
@@ -154,30 +192,205 @@ public class ChannelData
     public byte[] encode(boolean pad) throws StunException
     {
         int dataLength = getDataLength();
-        if (pad)
-            dataLength = padTo4(dataLength);
-        byte binMsg[] = new byte[HEADER_LENGTH + dataLength];
-        int offset = 0;
+        int paddedLength = pad ? padTo4(dataLength) : dataLength;
+        byte binMsg[] = new byte[HEADER_LENGTH + paddedLength];
+
+        writeHeader(binMsg, 0, channelNumber, dataLength);
+        if (data != null)
+        {
+            System.arraycopy(
+                    data, dataOffset, binMsg, HEADER_LENGTH, dataLength);
+        }
+
+        return binMsg;
+    }
+
+    /**
+     * Determines whether this message can be encoded in place by
+     * {@link #encodeInPlace(boolean)}, i.e. whether its data array has room
+     * for the header before the data and, if padding is requested, for the
+     * padding after it.
+     *
+     * @param pad determine if we pad this message
+     * @return <tt>true</tt> if this message can be encoded in place
+     */
+    public boolean canEncodeInPlace(boolean pad)
+    {
+        if (data == null || dataOffset < HEADER_LENGTH)
+            return false;
+
+        int end = dataOffset + (pad ? padTo4(dataLength) : dataLength);
+
+        return end <= data.length;
+    }
+
+    /**
+     * Encodes this message in its data array without copying the data: writes
+     * the header in the {@link #HEADER_LENGTH} bytes before the data and, if
+     * requested, zeroes the padding after it. The encoded message starts at
+     * {@link #getDataOffset()} minus {@link #HEADER_LENGTH} in the array
+     * returned by {@link #getData()}.
+     *
+     * @param pad determine if we pad this message
+     * @return the length of the encoded message
+     * @throws StunException if the channel number is invalid or if this
+     * message can not be encoded in place
+     * @see #canEncodeInPlace(boolean)
+     */
+    public int encodeInPlace(boolean pad) throws StunException
+    {
+        if (!canEncodeInPlace(pad))
+        {
+            throw new StunException(StunException.ILLEGAL_ARGUMENT, "No room for the header or padding");
+        }
+
+        return encodeInPlace(data, dataOffset, dataLength, channelNumber, pad);
+    }
+
+    /**
+     * Encodes a ChannelData message around data which is already in place:
+     * writes the header in the {@link #HEADER_LENGTH} bytes before the data
+     * and, if requested, zeroes the padding after it.
+     *
+     * @param buffer the array which contains the data
+     * @param dataOffset the offset of the data in <tt>buffer</tt>, at least
+     * {@link #HEADER_LENGTH}
+     * @param dataLength the length of the data
+     * @param channelNumber the channel number
+     * @param pad determine if we pad the message
+     * @return the length of the encoded message, which starts at
+     * <tt>dataOffset - HEADER_LENGTH</tt>
+     * @throws StunException if the channel number is invalid
+     */
+    private static int encodeInPlace(
+            byte[] buffer,
+            int dataOffset,
+            int dataLength,
+            char channelNumber,
+            boolean pad)
+        throws StunException
+    {
+        int paddedLength = pad ? padTo4(dataLength) : dataLength;
+
+        writeHeader(buffer, dataOffset - HEADER_LENGTH, channelNumber, dataLength);
+        for (int i = dataOffset + dataLength, end = dataOffset + paddedLength;
+                i < end;
+                i++)
+        {
+            buffer[i] = 0;
+        }
+        return HEADER_LENGTH + paddedLength;
+    }
+
+    /**
+     * Turns a <tt>DatagramPacket</tt> which contains application data into a
+     * ChannelData message without copying the data: the header is written in
+     * the {@link #HEADER_LENGTH} bytes which the caller has reserved before
+     * the offset of the packet, and the offset and length of the packet are
+     * adjusted to span the whole message.
+     *
+     * @param p the packet which contains the application data and has at
+     * least {@link #HEADER_LENGTH} bytes of headroom
+     * @param channelNumber the channel number
+     * @param pad determine if we pad the message
+     * @throws StunException if the channel number is invalid or if there is
+     * not enough room for the header or padding
+     */
+    public static void encodeInPlace(
+            DatagramPacket p,
+            char channelNumber,
+            boolean pad)
+        throws StunException
+    {
+        byte[] buffer = p.getData();
+        int dataOffset = p.getOffset();
+        int dataLength = p.getLength();
+
+        if (dataOffset < HEADER_LENGTH
+                || dataOffset + (pad ? padTo4(dataLength) : dataLength)
+                    > buffer.length)
+        {
+            throw new StunException(StunException.ILLEGAL_ARGUMENT, "No room for the header or padding");
+        }
+
+        int length
+            = encodeInPlace(buffer, dataOffset, dataLength, channelNumber, pad);
+
+        p.setData(buffer, dataOffset - HEADER_LENGTH, length);
+    }
+
+    /**
+     * Strips the header of a ChannelData message contained in a
+     * <tt>DatagramPacket</tt> without copying the data: the offset and length
+     * of the packet are adjusted to span the application data only (without
+     * padding).
+     *
+     * @param p the packet which contains a ChannelData message
+     * @return the channel number of the message
+     * @throws StunException if the packet does not contain a valid ChannelData
+     * message
+     */
+    public static char decodeInPlace(DatagramPacket p) throws StunException
+    {
+        byte[] buffer = p.getData();
+        int offset = p.getOffset();
+        int length = p.getLength();
+
+        if (length < HEADER_LENGTH)
+        {
+            throw new StunException(StunException.ILLEGAL_ARGUMENT, "Size too short");
+        }
+
+        char channelNumber = (char)((buffer[offset]<<8) | (buffer[offset + 1]&0xFF));
 
         if (!validateChannelNumber(channelNumber))
         {
             throw new StunException(StunException.ILLEGAL_ARGUMENT, "Channel number invalid");
         }
 
-        /* channel number */
-        binMsg[offset++] = (byte)(channelNumber >> 8);
-        binMsg[offset++] = (byte)(channelNumber & 0xff);
+        int dataLength = ((buffer[offset + 2]&0xFF)<<8) | (buffer[offset + 3]&0xFF);
 
-        /* length */
-        binMsg[offset++] = (byte)((data != null) ? data.length >> 8 : 0);
-        binMsg[offset++] = (byte)((data != null) ? data.length & 0xff : 0);
+        if (dataLength > length - HEADER_LENGTH)
+        {
+            throw new StunException(StunException.ILLEGAL_ARGUMENT, "Size mismatch");
+        }
 
-        if (data != null)
+        p.setData(buffer, offset + HEADER_LENGTH, dataLength);
+        return channelNumber;
+    }
+
+    /**
+     * Writes the header of a ChannelData message.
+     *
+     * @param buffer the array to write the header to
+     * @param offset the offset at which to write the header
+     * @param channelNumber the channel number
+     * @param dataLength the length of the application data
+     * @throws StunException if the channel number or the length is invalid
+     */
+    private static void writeHeader(
+            byte[] buffer,
+            int offset,
+            char channelNumber,
+            int dataLength)
+        throws StunException
+    {
+        if (!validateChannelNumber(channelNumber))
+        {
+            throw new StunException(StunException.ILLEGAL_ARGUMENT, "Channel number invalid");
+        }
+        if (dataLength > 0xFFFF)
         {
-            System.arraycopy(data, 0, binMsg, offset, data.length);
+            throw new StunException(StunException.ILLEGAL_ARGUMENT, "Data too long");
         }
 
-        return binMsg;
+        /* channel number */
+        buffer[offset++] = (byte)(channelNumber >> 8);
+        buffer[offset++] = (byte)(channelNumber & 0xff);
+
+        /* length */
+        buffer[offset++] = (byte)(dataLength >> 8);
+        buffer[offset] = (byte)(dataLength & 0xff);
     }
 
     /**
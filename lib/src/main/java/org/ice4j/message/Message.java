@@ -1064,9 +1064,9 @@ public abstract class Message
         throws StunException
     {
         int originalOffset = offset;
-        arrayLen = Math.min(binMessage.length, arrayLen);
+        arrayLen = Math.min(binMessage.length - offset, arrayLen);
 
-        if (arrayLen - offset < Message.HEADER_LENGTH)
+        if (arrayLen < Message.HEADER_LENGTH)
         {
             throw new StunException( StunException.ILLEGAL_ARGUMENT,
                          "The given binary array is not a valid StunMessage");
@@ -1102,7 +1102,7 @@ public abstract class Message
             rfc3489Compat = true;
         }
 
-        if (arrayLen - offset - TRANSACTION_ID_LENGTH < length)
+        if (arrayLen - Message.HEADER_LENGTH < length)
         {
             throw
                 new StunException(
@@ -1113,7 +1113,7 @@ public abstract class Message
                             + " bytes of "
                             + message.getName()
                             + " but expecting "
-                            + (offset + TRANSACTION_ID_LENGTH + length));
+                            + (Message.HEADER_LENGTH + length));
         }
 
         byte[] tranID = new byte[TRANSACTION_ID_LENGTH];
@@ -1142,13 +1142,13 @@ public abstract class Message
 
         offset += TRANSACTION_ID_LENGTH;
 
-        while (offset - Message.HEADER_LENGTH < length)
+        while (offset - originalOffset - Message.HEADER_LENGTH < length)
         {
             Attribute att = AttributeDecoder.decode(
-                binMessage, offset, (char)(length - offset));
+                binMessage, offset, (char)(length - (offset - originalOffset)));
 
             performAttributeSpecificActions(att, binMessage,
-                originalOffset, offset);
+                originalOffset, offset - originalOffset);
 
             message.putAttribute(att);
             offset += att.getDataLength() + Attribute.HEADER_LENGTH;
@@ -0,0 +1,177 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ * A bounded first-in, first-out queue which may be offered to and polled by
+ * multiple threads at once without locking or allocating.
+ *
+ * @param <E> the type of the elements.
+ */
+class ConcurrentRing<E>
+{
+    /**
+     * The slots of the ring.
+     */
+    private final Object[] slots;
+
+    /**
+     * The sequence number of each of {@link #slots}. A slot may be written by
+     * the offer with position <tt>p</tt> when its sequence is <tt>p</tt>, and
+     * read by the poll with position <tt>p</tt> when its sequence is
+     * <tt>p + 1</tt>.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The position of the next element to be polled.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The position of the next element to be offered.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Initializes a new {@code ConcurrentRing} instance.
+     *
+     * @param capacity the maximum number of elements in the new instance.
+     */
+    ConcurrentRing(int capacity)
+    {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity " + capacity);
+
+        slots = new Object[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++)
+        {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Checks whether this ring is empty.
+     *
+     * @return <tt>true</tt> if this ring is empty; otherwise, <tt>false</tt>
+     */
+    boolean isEmpty()
+    {
+        long position = head.get();
+
+        return sequences.get(index(position)) != position + 1;
+    }
+
+    /**
+     * Gets the number of elements in this ring.
+     *
+     * @return the number of elements in this ring.
+     */
+    int size()
+    {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Adds an element at the end of this ring unless it is full.
+     *
+     * @param e the element to add.
+     * @return <tt>true</tt> if <tt>e</tt> was added; <tt>false</tt> if this
+     * ring is full.
+     */
+    boolean offer(E e)
+    {
+        long position = tail.get();
+
+        while (true)
+        {
+            int index = index(position);
+            long difference = sequences.get(index) - position;
+
+            if (difference == 0)
+            {
+                if (tail.compareAndSet(position, position + 1))
+                {
+                    slots[index] = e;
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            }
+            else if (difference < 0)
+            {
+                return false;
+            }
+            else
+            {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Removes the first element of this ring.
+     *
+     * @return the first element of this ring, or <tt>null</tt> if it is
+     * empty.
+     */
+    @SuppressWarnings("unchecked")
+    E poll()
+    {
+        long position = head.get();
+
+        while (true)
+        {
+            int index = index(position);
+            long difference = sequences.get(index) - (position + 1);
+
+            if (difference == 0)
+            {
+                if (head.compareAndSet(position, position + 1))
+                {
+                    E e = (E) slots[index];
+
+                    slots[index] = null;
+                    sequences.set(index, position + slots.length);
+                    return e;
+                }
+                position = head.get();
+            }
+            else if (difference < 0)
+            {
+                return null;
+            }
+            else
+            {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Gets the index in {@link #slots} of a specific position.
+     *
+     * @param position the position.
+     * @return the index in {@link #slots} of <tt>position</tt>.
+     */
+    private int index(long position)
+    {
+        return (int) (position % slots.length);
+    }
+}
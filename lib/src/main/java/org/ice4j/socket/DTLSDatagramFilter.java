@@ -69,4 +69,13 @@ public class DTLSDatagramFilter
     {
         return isDTLS(p);
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean mayAccept(DemuxPacketType type)
+    {
+        return type == DemuxPacketType.DTLS;
+    }
 }
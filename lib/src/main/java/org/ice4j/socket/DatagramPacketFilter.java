@@ -39,4 +39,22 @@ public interface DatagramPacketFilter
      * <tt>false</tt>
      */
     public boolean accept(DatagramPacket p);
+
+    /**
+     * Determines whether this filter may accept <tt>DatagramPacket</tt>s of a
+     * specific {@link DemuxPacketType}. Demultiplexing sockets only ask the
+     * filters which may accept the type of a received packet whether they
+     * accept it. A filter which declares specific types must not accept
+     * packets of other types, so subclasses which widen {@link #accept} have
+     * to widen this method too. The default implementation returns
+     * <tt>true</tt> for all types.
+     *
+     * @param type the type of packets.
+     * @return <tt>true</tt> if this filter may accept packets of the specified
+     * <tt>type</tt>; otherwise, <tt>false</tt>
+     */
+    public default boolean mayAccept(DemuxPacketType type)
+    {
+        return true;
+    }
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A pool of <tt>DatagramPacket</tt>s with buffers of a few size classes,
+ * shared by the multiplexing sockets to receive from the network without
+ * allocating.
+ * <p>
+ * A packet obtained with {@link #acquire(int)} is owned by the caller, who
+ * either hands it over to another owner (e.g. a receive buffer) or returns it
+ * with {@link #release(DatagramPacket)} once it does not use it anymore. A
+ * released packet must not be referenced anywhere else.
+ * </p>
+ */
+public class DatagramPacketPool
+{
+    /**
+     * The sizes in bytes of the buffers of the pooled packets. The largest is
+     * the size of the packets into which the multiplexing sockets receive.
+     */
+    private static final int[] SIZE_CLASSES = { 128, 256, 512, 1024, 1500 };
+
+    /**
+     * The maximum number of packets pooled for each size class.
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The pool shared by the multiplexing sockets.
+     */
+    private static final DatagramPacketPool DEFAULT
+        = new DatagramPacketPool(DEFAULT_CAPACITY);
+
+    /**
+     * Gets the pool shared by the multiplexing sockets.
+     *
+     * @return the pool shared by the multiplexing sockets.
+     */
+    public static DatagramPacketPool getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * The pooled packets of each of {@link #SIZE_CLASSES}.
+     */
+    private final List<ConcurrentRing<DatagramPacket>> pools;
+
+    /**
+     * The number of packets acquired from the pool.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of packets allocated because the pool had none.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Initializes a new {@code DatagramPacketPool} instance.
+     *
+     * @param capacity the maximum number of packets to pool for each size
+     * class.
+     */
+    DatagramPacketPool(int capacity)
+    {
+        pools = new ArrayList<>(SIZE_CLASSES.length);
+        for (int i = 0; i < SIZE_CLASSES.length; i++)
+        {
+            pools.add(new ConcurrentRing<>(capacity));
+        }
+    }
+
+    /**
+     * Gets the largest size of the buffers of the packets in this pool.
+     *
+     * @return the largest size in bytes of the buffers of the packets in this
+     * pool.
+     */
+    public int getMaxSize()
+    {
+        return SIZE_CLASSES[SIZE_CLASSES.length - 1];
+    }
+
+    /**
+     * Acquires a packet with a buffer of at least a specific size. The
+     * offset of the returned packet is <tt>0</tt> and its length is the size
+     * of its buffer.
+     *
+     * @param size the minimum size in bytes of the buffer.
+     * @return a packet whose buffer is at least <tt>size</tt> bytes long,
+     * which the caller owns.
+     */
+    public DatagramPacket acquire(int size)
+    {
+        int sizeClass = getSizeClass(size);
+
+        if (sizeClass < 0)
+        {
+            // Too large to be pooled.
+            misses.incrementAndGet();
+            return new DatagramPacket(new byte[size], size);
+        }
+
+        DatagramPacket p = pools.get(sizeClass).poll();
+
+        if (p == null)
+        {
+            misses.incrementAndGet();
+            size = SIZE_CLASSES[sizeClass];
+            return new DatagramPacket(new byte[size], size);
+        }
+
+        hits.incrementAndGet();
+        p.setData(p.getData(), 0, SIZE_CLASSES[sizeClass]);
+        return p;
+    }
+
+    /**
+     * Returns a packet to this pool. Packets whose buffer does not have the
+     * size of a size class, or which do not fit in the pool, are left to the
+     * garbage collector.
+     *
+     * @param p the packet to return, which must not be referenced anywhere
+     * else.
+     */
+    public void release(DatagramPacket p)
+    {
+        byte[] data = p.getData();
+
+        if (data == null)
+            return;
+
+        int sizeClass = getSizeClass(data.length);
+
+        if (sizeClass >= 0 && SIZE_CLASSES[sizeClass] == data.length)
+        {
+            pools.get(sizeClass).offer(p);
+        }
+    }
+
+    /**
+     * Gets the number of packets which have been acquired from this pool.
+     *
+     * @return the number of packets which have been acquired from this pool.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * Gets the number of packets which have been allocated because this pool
+     * had none of the requested size.
+     *
+     * @return the number of packets which have been allocated because this
+     * pool had none of the requested size.
+     */
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Gets the number of packets in this pool.
+     *
+     * @return the number of packets in this pool.
+     */
+    public int size()
+    {
+        int size = 0;
+
+        for (ConcurrentRing<DatagramPacket> pool : pools)
+        {
+            size += pool.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the index in {@link #SIZE_CLASSES} of the smallest size class
+     * which is at least a specific size.
+     *
+     * @param size the size in bytes.
+     * @return the index of the smallest size class which is at least
+     * <tt>size</tt>, or <tt>-1</tt> if <tt>size</tt> is larger than all.
+     */
+    private static int getSizeClass(int size)
+    {
+        for (int i = 0; i < SIZE_CLASSES.length; i++)
+        {
+            if (size <= SIZE_CLASSES[i])
+                return i;
+        }
+        return -1;
+    }
+}
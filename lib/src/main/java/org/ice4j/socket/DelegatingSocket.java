@@ -21,7 +21,6 @@ import org.ice4j.stack.*;
 
 import java.io.*;
 import java.net.*;
-import java.nio.*;
 import java.nio.channels.*;
 
 /**
@@ -118,11 +117,21 @@ public class DelegatingSocket
     private final DelegatingSocket delegateAsDelegatingSocket;
 
     /**
-     * The <tt>ByteBuffer</tt> instance used in
-     * {@link #receiveFromChannel(java.nio.channels.SocketChannel,
-     * java.net.DatagramPacket)} to read the 2-byte length field into.
+     * The decoder which {@link #receiveFromChannel(SocketChannel,
+     * DatagramPacket)} reads the RFC 4571 frames with. It reads ahead from the
+     * channel, so that a single read from the network returns as many frames
+     * as are available. Access synchronized via {@link #receiveSyncRoot}.
      */
-    private final ByteBuffer frameLengthByteBuffer = ByteBuffer.allocate(2);
+    private final TCPFrameDecoder receiveDecoder
+        = TCPFrameDecoder.createReadAhead();
+
+    /**
+     * The <tt>Object</tt> which synchronizes the reading of frames from the
+     * channel. It is not <tt>this</tt>, so that a thread which is blocked
+     * reading does not hold the monitor of the socket, which subclasses and
+     * users may synchronize on.
+     */
+    private final Object receiveSyncRoot = new Object();
 
     /**
      * InputStream for this socket.
@@ -667,55 +676,50 @@ public class DelegatingSocket
      * Receives an RFC4571-formatted frame from <tt>channel</tt> into
      * <tt>p</tt>, and sets <tt>p</tt>'s port and address to the remote port
      * and address of this <tt>Socket</tt>.
+     * <p>
+     * The frame is copied into the buffer of <tt>p</tt> at its offset. A new
+     * buffer is allocated only if the buffer of <tt>p</tt> is too small for
+     * the frame.
+     * </p>
      *
-     * @param channel
-     * @param p
-     * @throws IOException
+     * @param channel the <tt>SocketChannel</tt> to read from
+     * @param p the <tt>DatagramPacket</tt> to receive the frame into
+     * @throws IOException if reading from <tt>channel</tt> fails or reaches
+     * the end of the stream
      */
-    private synchronized void receiveFromChannel(
+    private void receiveFromChannel(
             SocketChannel channel,
             DatagramPacket p)
         throws IOException
     {
-        while (frameLengthByteBuffer.hasRemaining())
+        synchronized (receiveSyncRoot)
         {
-            int read = channel.read(frameLengthByteBuffer);
-
-            if (read == -1)
+            try
             {
-                throw new SocketException(
-                        "Failed to receive data from socket.");
+                receiveDecoder.receive(channel, p);
             }
-        }
-        frameLengthByteBuffer.flip();
-
-        int b0 = frameLengthByteBuffer.get();
-        int b1 = frameLengthByteBuffer.get();
-        int frameLength = ((b0 & 0xFF) << 8) | (b1 & 0xFF);
-
-        frameLengthByteBuffer.flip();
-
-        byte[] data = p.getData();
-
-        if (data == null || data.length < frameLength)
-            data = new byte[frameLength];
-
-        ByteBuffer byteBuffer = ByteBuffer.wrap(data, 0, frameLength);
-
-        while (byteBuffer.hasRemaining())
-        {
-            int read = channel.read(byteBuffer);
-
-            if (read == -1)
+            catch (EOFException eofe)
             {
                 throw new SocketException(
                         "Failed to receive data from socket.");
             }
+
+            p.setAddress(getInetAddress());
+            p.setPort(getPort());
         }
+    }
 
-        p.setAddress(getInetAddress());
-        p.setData(data, 0, frameLength);
-        p.setPort(getPort());
+    /**
+     * Gets the <tt>SocketChannel</tt> which this socket reads RFC 4571
+     * frames from and writes them to directly, i.e. without going through a
+     * <tt>DelegatingSocket</tt> which it delegates to.
+     *
+     * @return the <tt>SocketChannel</tt> which this socket reads frames from
+     * and writes them to directly, or <tt>null</tt>
+     */
+    protected SocketChannel getFramingChannel()
+    {
+        return (delegateAsDelegatingSocket == null) ? getChannel() : null;
     }
 
     /**
@@ -0,0 +1,106 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import java.net.*;
+
+/**
+ * The types of packets multiplexed on one port, as told apart by their first
+ * byte according to RFC 7983.
+ */
+public enum DemuxPacketType
+{
+    /**
+     * STUN, with a first byte in [0, 3].
+     */
+    STUN,
+
+    /**
+     * ZRTP, with a first byte in [16, 19].
+     */
+    ZRTP,
+
+    /**
+     * DTLS, with a first byte in [20, 63].
+     */
+    DTLS,
+
+    /**
+     * TURN ChannelData, with a first byte in [64, 79].
+     */
+    TURN_CHANNEL,
+
+    /**
+     * RTP and RTCP, with a first byte in [128, 191].
+     */
+    RTP,
+
+    /**
+     * Anything else, including empty packets.
+     */
+    OTHER;
+
+    /**
+     * The types by first byte.
+     */
+    private static final DemuxPacketType[] TYPES = new DemuxPacketType[256];
+
+    static
+    {
+        for (int b = 0; b < TYPES.length; b++)
+        {
+            DemuxPacketType type;
+
+            if (b <= 3)
+                type = STUN;
+            else if (16 <= b && b <= 19)
+                type = ZRTP;
+            else if (20 <= b && b <= 63)
+                type = DTLS;
+            else if (64 <= b && b <= 79)
+                type = TURN_CHANNEL;
+            else if (128 <= b && b <= 191)
+                type = RTP;
+            else
+                type = OTHER;
+            TYPES[b] = type;
+        }
+    }
+
+    /**
+     * Determines the type of a specific packet.
+     *
+     * @param p the packet.
+     * @return the type of <tt>p</tt>.
+     */
+    public static DemuxPacketType classify(DatagramPacket p)
+    {
+        return classify(p.getData(), p.getOffset(), p.getLength());
+    }
+
+    /**
+     * Determines the type of a specific packet.
+     *
+     * @param data the array which contains the packet.
+     * @param off the offset of the packet in <tt>data</tt>.
+     * @param len the length of the packet.
+     * @return the type of the packet.
+     */
+    public static DemuxPacketType classify(byte[] data, int off, int len)
+    {
+        return (len > 0) ? TYPES[data[off] & 0xff] : OTHER;
+    }
+}
@@ -290,7 +290,12 @@ public class MultiplexingSocket
         throws IOException
     {
         if (outputStream == null)
-            outputStream = new TCPOutputStream(super.getOutputStream());
+        {
+            outputStream
+                = new TCPOutputStream(
+                        super.getOutputStream(),
+                        getFramingChannel());
+        }
         return outputStream;
     }
 
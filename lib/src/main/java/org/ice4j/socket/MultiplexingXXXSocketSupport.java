@@ -20,7 +20,6 @@ package org.ice4j.socket;
 import java.io.*;
 import java.net.*;
 import java.util.*;
-import java.util.concurrent.*;
 import java.util.logging.*;
 
 /**
@@ -188,23 +187,14 @@ abstract class MultiplexingXXXSocketSupport
         }
     }
 
-    /**
-     * The max number of {@link DatagramPacket}'s stored in the receive pool.
-     */
-    private static final int RECEIVE_DATAGRAM_PACKETS_POOL_SIZE = 64;
-
-    /**
-     * The buffer size of pooled datagram packet used to read from
-     * underlying socket.
-     */
-    private static final int POOLED_DATAGRAM_PACKET_SIZE = 1500;
-
     /**
      * A pool of {@link DatagramPacket}s used to receive data from unrelying
-     * socket.
+     * socket. The packets are owned by the {@link SocketReceiveBuffer} they
+     * are added to until they are polled, copied out and released in
+     * {@link #receive(SocketReceiveBuffer, DatagramPacket, int)} or dropped.
      */
-    private final BlockingQueue<DatagramPacket> receiveDatagramPacketsPool
-        = new ArrayBlockingQueue<>(RECEIVE_DATAGRAM_PACKETS_POOL_SIZE);
+    private final DatagramPacketPool receiveDatagramPacketsPool
+        = DatagramPacketPool.getDefault();
 
     /**
      * The indicator which determines whether this <tt>DatagramSocket</tt> is
@@ -239,17 +229,29 @@ abstract class MultiplexingXXXSocketSupport
      */
     private final List<MultiplexedXXXSocketT> sockets = new ArrayList<>();
 
+    /**
+     * The multiplexed sockets whose filters may accept each
+     * {@link DemuxPacketType}, indexed by the ordinal of the type. Replaced
+     * (under the protection of {@link #sockets}) whenever {@link #sockets}
+     * changes, so that received packets are dispatched without locking.
+     */
+    private volatile List<List<MultiplexedXXXSocketT>> dispatchTable
+        = Collections.emptyList();
+
     /**
      * Initializes a new {@code MultiplexingXXXSocketSupport} instance.
      */
     protected MultiplexingXXXSocketSupport()
     {
+        updateDispatchTable();
     }
 
     /**
      * Accepts a {@code DatagramPacket} received by this socket and queues it
      * for receipt through either this multiplexing socket or its multiplexed
-     * sockets whose {@code DatagramPacketFilter}s accept {@code p}.
+     * sockets whose {@code DatagramPacketFilter}s accept {@code p}. The packet
+     * is classified once and only offered to the multiplexed sockets whose
+     * filters may accept its type.
      *
      * @param p the {@code DatagramPacket} to be accepted by either this
      * multiplexing socket or its multiplexed sockets whose
@@ -257,39 +259,98 @@ abstract class MultiplexingXXXSocketSupport
      */
     private void acceptBySocketsOrThis(DatagramPacket p)
     {
-        synchronized (sockets)
-        {
-            boolean accepted = false;
+        int type = DemuxPacketType.classify(p).ordinal();
+        List<List<MultiplexedXXXSocketT>> dispatchTable = this.dispatchTable;
 
-            for (MultiplexedXXXSocketT socket : sockets)
+        while (!acceptBySockets(p, dispatchTable.get(type)))
+        {
+            synchronized (sockets)
             {
-                if (getFilter(socket).accept(p))
+                // A multiplexed socket which accepts p may have been created
+                // after we read the dispatch table. If it has not, add p to
+                // this socket before any such socket can be created, so that
+                // moveReceivedFromThisToSocket will find it.
+                if (dispatchTable == this.dispatchTable)
                 {
-                    SocketReceiveBuffer socketReceived = getReceived(socket);
-
-                    synchronized (socketReceived)
-                    {
-                        socketReceived.add(
-                                accepted ? clone(p, /* arraycopy */ true) : p);
-                        socketReceived.notifyAll();
-                    }
-                    accepted = true;
-
-                    // Emil Ivov: Don't break because we want all
-                    // filtering sockets to get the received packet.
+                    getReceived().add(p);
+                    return;
                 }
+                dispatchTable = this.dispatchTable;
             }
-            if (!accepted)
+        }
+    }
+
+    /**
+     * Queues a {@code DatagramPacket} received by this socket for receipt
+     * through those of specific multiplexed sockets whose
+     * {@code DatagramPacketFilter}s accept it.
+     *
+     * @param p the {@code DatagramPacket} to be accepted
+     * @param sockets the multiplexed sockets to offer {@code p} to
+     * @return {@code true} if at least one of {@code sockets} accepted
+     * {@code p}; otherwise, {@code false}
+     */
+    private boolean acceptBySockets(
+            DatagramPacket p,
+            List<MultiplexedXXXSocketT> sockets)
+    {
+        boolean accepted = false;
+
+        for (int i = 0, count = sockets.size(); i < count; i++)
+        {
+            MultiplexedXXXSocketT socket = sockets.get(i);
+
+            if (getFilter(socket).accept(p))
             {
-                SocketReceiveBuffer thisReceived = getReceived();
+                // Each receive buffer owns the packets added to it, so only one
+                // of them may get p and the others get pooled copies.
+                getReceived(socket).add(accepted ? pooledCopy(p) : p);
+                accepted = true;
 
-                synchronized (thisReceived)
-                {
-                    thisReceived.add(p);
-                    thisReceived.notifyAll();
-                }
+                // Emil Ivov: Don't break because we want all
+                // filtering sockets to get the received packet.
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Copies a {@code DatagramPacket} into one acquired from
+     * {@link #receiveDatagramPacketsPool}.
+     *
+     * @param p the {@code DatagramPacket} to copy
+     * @return a pooled copy of {@code p}
+     */
+    private DatagramPacket pooledCopy(DatagramPacket p)
+    {
+        DatagramPacket c = receiveDatagramPacketsPool.acquire(p.getLength());
+
+        copy(p, c);
+        return c;
+    }
+
+    /**
+     * Rebuilds {@link #dispatchTable} from {@link #sockets}. Must be invoked
+     * under the protection of {@link #sockets}.
+     */
+    private void updateDispatchTable()
+    {
+        DemuxPacketType[] types = DemuxPacketType.values();
+        List<List<MultiplexedXXXSocketT>> dispatchTable
+            = new ArrayList<>(types.length);
+
+        for (DemuxPacketType type : types)
+        {
+            List<MultiplexedXXXSocketT> socketsOfType = new ArrayList<>();
+
+            for (MultiplexedXXXSocketT socket : sockets)
+            {
+                if (getFilter(socket).mayAccept(type))
+                    socketsOfType.add(socket);
             }
+            dispatchTable.add(socketsOfType);
         }
+        this.dispatchTable = dispatchTable;
     }
 
     /**
@@ -303,7 +364,19 @@ abstract class MultiplexingXXXSocketSupport
     {
         synchronized (sockets)
         {
-            sockets.remove(multiplexed);
+            if (sockets.remove(multiplexed))
+            {
+                updateDispatchTable();
+
+                // Nobody is going to receive the packets which the closed
+                // socket owns.
+                DatagramPacket p;
+
+                while ((p = getReceived(multiplexed).poll()) != null)
+                {
+                    receiveDatagramPacketsPool.release(p);
+                }
+            }
 
             return !sockets.isEmpty();
         }
@@ -455,19 +528,19 @@ abstract class MultiplexingXXXSocketSupport
             if (socket != null)
             {
                 sockets.add(socket);
+                updateDispatchTable();
 
                 // A multiplexed socket may be created after packets matching
                 // its filter have been received. Pull them out of the
                 // multiplexing socket and into the newly-created multiplexed
                 // socket.
 
-                // XXX The fields received of both the multiplexed and the
-                // multiplexing sockets are used as synchronization roots (e.g.
-                // the method acceptBySocketsOrThis). In order to preserve the
-                // order of acquiring synchronization roots, perform the
-                // following procedure under the protection of the field
-                // socketsSyncRoot even though the field sockets will not be
-                // accessed.
+                // XXX The method acceptBySocketsOrThis only adds packets to the
+                // multiplexing socket under the protection of the field
+                // sockets, after checking that the dispatch table has not
+                // changed. Perform the following procedure under the same
+                // protection so that no packet accepted by the new socket is
+                // left behind.
                 moveReceivedFromThisToSocket(socket);
             }
 
@@ -490,12 +563,9 @@ abstract class MultiplexingXXXSocketSupport
         // the specified multiplexed socket out of the multiplexing socket.
         final SocketReceiveBuffer thisReceived = getReceived();
         final DatagramPacketFilter socketFilter = getFilter(socket);
-        final List<DatagramPacket> toMove;
-
-        synchronized (thisReceived)
-        {
-            toMove = thisReceived.scan(socketFilter);
-        }
+        // Packets are only added to thisReceived under the protection of
+        // sockets, so they are not added while it is being scanned.
+        final List<DatagramPacket> toMove = thisReceived.scan(socketFilter);
 
         // Push the packets which have been accepted already and are accepted by
         // the specified multiplexed socket into the multiplexed socket in
@@ -504,16 +574,8 @@ abstract class MultiplexingXXXSocketSupport
         {
             final SocketReceiveBuffer socketReceived = getReceived(socket);
 
-            synchronized (socketReceived)
-            {
-                for (DatagramPacket datagramPacket : toMove) {
-                    socketReceived.add(datagramPacket);
-                }
-                // The notifyAll will practically likely be unnecessary because
-                // the specified socket will likely be a newly-created one to
-                // which noone else has a reference. Anyway, dp the invocation
-                // for the purposes of consistency, clarity, and such.
-                socketReceived.notifyAll();
+            for (DatagramPacket datagramPacket : toMove) {
+                socketReceived.add(datagramPacket);
             }
         }
     }
@@ -551,12 +613,9 @@ abstract class MultiplexingXXXSocketSupport
             // is to merely be received from the list of received
             // DatagramPackets, then let it be received and do not throw a
             // SocketTimeoutException.
-            synchronized (received)
-            {
-                receivedPacket = received.poll();
-                if (receivedPacket != null)
-                    break;
-            }
+            receivedPacket = received.poll();
+            if (receivedPacket != null)
+                break;
 
             // Throw a SocketTimeoutException if the timeout is over/up.
             long remainingTimeout;
@@ -597,38 +656,15 @@ abstract class MultiplexingXXXSocketSupport
                 {
                     // The caller will wait for a previous caller to receive
                     // from the network.
-                    synchronized (received)
-                    {
-                        if (received.isEmpty())
-                        {
-                            try
-                            {
-                                received.wait(remainingTimeout);
-                            }
-                            catch (InterruptedException ie)
-                            {
-                            }
-                        }
-                        else
-                        {
-                            received.notifyAll();
-                        }
-                    }
+                    received.await(remainingTimeout);
                     continue;
                 }
 
                 // The pooled datagram packet instance will be used to receive
                 // from the network.
                 DatagramPacket receivePacket
-                    = receiveDatagramPacketsPool.poll();
-                if (receivePacket == null)
-                {
-                    receivePacket = new DatagramPacket(
-                        new byte[POOLED_DATAGRAM_PACKET_SIZE],
-                        POOLED_DATAGRAM_PACKET_SIZE);
-                }
-
-                receivePacket.setLength(POOLED_DATAGRAM_PACKET_SIZE);
+                    = receiveDatagramPacketsPool.acquire(
+                            receiveDatagramPacketsPool.getMaxSize());
 
                 synchronized (receiveSyncRoot)
                 {
@@ -646,9 +682,18 @@ abstract class MultiplexingXXXSocketSupport
                         }
                     }
                 }
-                doReceive(receivePacket);
+                try
+                {
+                    doReceive(receivePacket);
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    // E.g. a SocketTimeoutException, so nobody owns the packet.
+                    receiveDatagramPacketsPool.release(receivePacket);
+                    throw e;
+                }
 
-                // The caller received from the network. Copy/add the packet to
+                // The caller received from the network. Add the packet to
                 // the receive list of the sockets which accept it.
                 acceptBySocketsOrThis(receivePacket);
             }
@@ -665,10 +710,11 @@ abstract class MultiplexingXXXSocketSupport
 
         copy(receivedPacket, p);
 
-        // receivePacket is a datagram packet retrieved from SocketReceiveBuffer
-        // SocketReceiveBuffers only store datagrams borrowed from pool,
-        // so return datagram back to pool.
-        receiveDatagramPacketsPool.offer(receivedPacket);
+        // receivedPacket is a datagram packet retrieved from
+        // SocketReceiveBuffer. SocketReceiveBuffers only store datagrams
+        // borrowed from pool, and the caller now owns it, so return datagram
+        // back to pool.
+        receiveDatagramPacketsPool.release(receivedPacket);
     }
 
     /**
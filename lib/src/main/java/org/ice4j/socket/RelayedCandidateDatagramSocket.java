@@ -20,6 +20,8 @@ package org.ice4j.socket;
 import java.io.*;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
 import java.util.logging.*;
 
 import org.ice4j.*;
@@ -94,6 +96,30 @@ public class RelayedCandidateDatagramSocket
     private static final long PERMISSION_LIFETIME_LEEWAY
         = 60 /* seconds */ * 1000L;
 
+    /**
+     * The time in milliseconds after a TURN permission (and channel binding)
+     * has been installed or refreshed that a
+     * <tt>RelayedCandidateDatagramSocket</tt> refreshes it off the data path,
+     * i.e. before the <tt>Channel</tt> stops being considered bound and the
+     * data sent through it has to wait for it to be reinstalled.
+     */
+    private static final long PERMISSION_REFRESH_INTERVAL
+        = PERMISSION_LIFETIME - 2 * PERMISSION_LIFETIME_LEEWAY;
+
+    /**
+     * The time in milliseconds after a failed refresh of a TURN permission
+     * that a <tt>RelayedCandidateDatagramSocket</tt> is to retry it.
+     */
+    private static final long PERMISSION_REFRESH_RETRY_INTERVAL
+        = 15 /* seconds */ * 1000L;
+
+    /**
+     * The maximum number of <tt>DatagramPacket</tt>s which {@link #sendThread}
+     * sends through a single <tt>Channel</tt> before it moves on to the next
+     * one, so that a peer with a large backlog does not delay the others.
+     */
+    private static final int MAX_PACKETS_TO_SEND_PER_CHANNEL = 64;
+
     /**
      * The <tt>DatagramSocket</tt> through which this
      * <tt>RelayedCandidateDatagramSocket</tt> actually sends and receives the
@@ -108,17 +134,33 @@ public class RelayedCandidateDatagramSocket
     private final DatagramSocket channelDataSocket;
 
     /**
-     * The list of per-peer <tt>Channel</tt>s through which this
+     * The per-peer <tt>Channel</tt>s through which this
      * <tt>RelayedCandidateDatagramSocket</tt>s relays data send to it to
-     * peer <tt>TransportAddress</tt>es.
+     * peer <tt>TransportAddress</tt>es, mapped by the keys returned by
+     * {@link #getPeerKey(InetAddress, int)}.
+     */
+    private final Map<Object, Channel> channels = new ConcurrentHashMap<>();
+
+    /**
+     * The <tt>Channel</tt>s which have been allocated a channel number,
+     * indexed by their channel number minus {@link #MIN_CHANNEL_NUMBER}.
+     * Replaced (and never modified) when a channel number is allocated, so
+     * that {@link #receiveChannelDataThread} can read it without locking.
      */
-    private final List<Channel> channels = new LinkedList<>();
+    private volatile Channel[] channelsByNumber = new Channel[0];
+
+    /**
+     * The <tt>Channel</tt>s which have <tt>DatagramPacket</tt>s queued to be
+     * sent through them. Accessed by {@link #sendThread} only.
+     */
+    private final Set<Channel> channelsWithPacketsToSend
+        = new LinkedHashSet<>();
 
     /**
      * The indicator which determines whether this instance has started
      * executing or has executed its {@link #close()} method.
      */
-    private boolean closed = false;
+    private volatile boolean closed = false;
 
     /**
      * The <tt>DatagramPacketFilter</tt> which is able to determine whether a
@@ -145,13 +187,35 @@ public class RelayedCandidateDatagramSocket
      */
     private final List<DatagramPacket> packetsToReceive = new LinkedList<>();
 
+    /**
+     * The <tt>RefreshService</tt> which refreshes the permissions and channel
+     * bindings of the <tt>Channel</tt>s of this instance. Also the source of
+     * time for the lifetimes of the permissions.
+     */
+    private final RefreshService refreshService;
+
+    /**
+     * The registration of {@link #refreshChannels()} with
+     * {@link #refreshService}.
+     */
+    private final RefreshService.Registration refreshRegistration;
+
     /**
      * The <tt>DatagramSocket</tt>s which have been sent through this
      * <tt>DatagramSocket</tt> using its {@link #send(DatagramPacket)} method
-     * and which are to be relayed through its associated TURN server in the
-     * form of Send indications.
+     * and which are to be relayed through its associated TURN server by
+     * {@link #sendThread}. The callers of <tt>send</tt> only ever add to this
+     * queue, so they do not wait for the network I/O or for each other.
+     */
+    private final Queue<DatagramPacket> packetsToSend
+        = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The <tt>Channel</tt> through which {@link #sendThread} queued the last
+     * <tt>DatagramPacket</tt>. Caches the lookup in {@link #channels} for the
+     * common case of consecutive packets to the same peer.
      */
-    private final List<DatagramPacket> packetsToSend = new LinkedList<>();
+    private Channel lastChannel;
 
     /**
      * The <tt>Thread</tt> which receives <tt>DatagramPacket</tt>s from
@@ -169,7 +233,12 @@ public class RelayedCandidateDatagramSocket
      * The <tt>Thread</tt> which is to send the {@link #packetsToSend} to the
      * associated TURN server.
      */
-    private Thread sendThread;
+    private volatile Thread sendThread;
+
+    /**
+     * Controls the creation of {@link #sendThread}.
+     */
+    private final Object sendThreadSyncRoot = new Object();
 
     /**
      * The <tt>TurnCandidateHarvest</tt> which has harvested
@@ -199,6 +268,9 @@ public class RelayedCandidateDatagramSocket
         this.relayedCandidate = relayedCandidate;
         this.turnCandidateHarvest = turnCandidateHarvest;
 
+        refreshService = turnCandidateHarvest.harvester.getRefreshService();
+        refreshRegistration = refreshService.register(this::refreshChannels);
+
         this.turnCandidateHarvest
                 .harvester
                     .getStunStack()
@@ -229,6 +301,16 @@ public class RelayedCandidateDatagramSocket
                             {
                                 return channelDataSocketAcceptMethod(method);
                             }
+
+                            @Override
+                            public boolean mayAccept(DemuxPacketType type)
+                            {
+                                // ChannelData messages are recognized by any
+                                // first byte outside [0, 63], which includes
+                                // the channel numbers reserved for the future.
+                                return type != DemuxPacketType.ZRTP
+                                    && type != DemuxPacketType.DTLS;
+                            }
                         });
         }
         else
@@ -342,10 +424,8 @@ public class RelayedCandidateDatagramSocket
         {
             packetsToReceive.notifyAll();
         }
-        synchronized (packetsToSend)
-        {
-            packetsToSend.notifyAll();
-        }
+        wakeUpSendThread();
+        refreshRegistration.cancel();
         turnCandidateHarvest.harvester.getStunStack().removeIndicationListener(
                 turnCandidateHarvest.hostCandidate.getTransportAddress(),
                 this);
@@ -407,35 +487,54 @@ public class RelayedCandidateDatagramSocket
      */
     private void createSendThread()
     {
-        sendThread
-            = new Thread()
-            {
-                @Override
-                public void run()
+        synchronized (sendThreadSyncRoot)
+        {
+            if (closed || (sendThread != null))
+                return;
+
+            sendThread
+                = new Thread()
                 {
-                    try
-                    {
-                        runInSendThread();
-                    }
-                    finally
+                    @Override
+                    public void run()
                     {
-                        /*
-                         * If sendThread is dying and there are packetsToSend,
-                         * then spawn a new sendThread.
-                         */
-                        synchronized (packetsToSend)
+                        try
                         {
-                            if (sendThread == Thread.currentThread())
-                                sendThread = null;
-                            if ((sendThread == null)
-                                    && !closed
-                                    && !packetsToSend.isEmpty())
+                            runInSendThread();
+                        }
+                        finally
+                        {
+                            synchronized (sendThreadSyncRoot)
+                            {
+                                if (sendThread == Thread.currentThread())
+                                    sendThread = null;
+                            }
+                            /*
+                             * If sendThread is dying and there are
+                             * packetsToSend, then spawn a new sendThread.
+                             */
+                            if (!closed
+                                    && (!packetsToSend.isEmpty()
+                                        || !channelsWithPacketsToSend
+                                                .isEmpty()))
                                 createSendThread();
                         }
                     }
-                }
-            };
-        sendThread.start();
+                };
+            sendThread.start();
+        }
+    }
+
+    /**
+     * Wakes up {@link #sendThread} (if it exists) because there are new
+     * {@link #packetsToSend} or the state of a <tt>Channel</tt> has changed.
+     */
+    private void wakeUpSendThread()
+    {
+        Thread sendThread = this.sendThread;
+
+        if (sendThread != null)
+            LockSupport.unpark(sendThread);
     }
 
     /**
@@ -494,6 +593,73 @@ public class RelayedCandidateDatagramSocket
         return getRelayedCandidate().getTransportAddress();
     }
 
+    /**
+     * Gets the <tt>Channel</tt> which has been allocated a specific channel
+     * number.
+     *
+     * @param channelNumber the channel number
+     * @return the <tt>Channel</tt> which has been allocated
+     * <tt>channelNumber</tt> or <tt>null</tt>
+     */
+    private Channel getChannel(char channelNumber)
+    {
+        Channel[] channelsByNumber = this.channelsByNumber;
+        int index = channelNumber - MIN_CHANNEL_NUMBER;
+
+        return
+            ((index >= 0) && (index < channelsByNumber.length))
+                ? channelsByNumber[index]
+                : null;
+    }
+
+    /**
+     * Gets the <tt>Channel</tt> to the peer which is to receive a specific
+     * <tt>DatagramPacket</tt> and creates it if it does not exist yet. Runs in
+     * {@link #sendThread} only.
+     *
+     * @param p the <tt>DatagramPacket</tt> to be sent
+     * @return the <tt>Channel</tt> through which <tt>p</tt> is to be sent
+     */
+    private Channel getChannel(DatagramPacket p)
+    {
+        InetAddress address = p.getAddress();
+        int port = p.getPort();
+        Channel channel = lastChannel;
+
+        if ((channel == null) || !channel.peerAddressEquals(address, port))
+        {
+            Object peerKey = getPeerKey(address, port);
+
+            channel = channels.get(peerKey);
+            if (channel == null)
+            {
+                channel
+                    = new Channel(
+                            new TransportAddress(address, port, Transport.UDP));
+                channels.put(peerKey, channel);
+            }
+            lastChannel = channel;
+        }
+        return channel;
+    }
+
+    /**
+     * Gets the key in {@link #channels} of the <tt>Channel</tt> to a specific
+     * peer. See {@link Channel#peerAddressEquals(InetAddress, int)}.
+     *
+     * @param address the IP address of the peer
+     * @param port the port of the peer
+     * @return the key in {@link #channels} of the <tt>Channel</tt> to the
+     * specified peer
+     */
+    private Object getPeerKey(InetAddress address, int port)
+    {
+        return
+            (channelDataSocket != null)
+                ? new InetSocketAddress(address, port)
+                : address;
+    }
+
     /**
      * Gets the next free channel number to be allocated to a <tt>Channel</tt>
      * and marked as non-free.
@@ -649,6 +815,9 @@ public class RelayedCandidateDatagramSocket
      */
     public boolean processErrorOrFailure(Response response, Request request)
     {
+        if (setRefreshed(request, false))
+            return false;
+
         switch (request.getMessageType())
         {
         case Message.CHANNELBIND_REQUEST:
@@ -674,6 +843,9 @@ public class RelayedCandidateDatagramSocket
      */
     public void processSuccess(Response response, Request request)
     {
+        if (setRefreshed(request, true))
+            return;
+
         switch (request.getMessageType())
         {
         case Message.CHANNELBIND_REQUEST:
@@ -687,6 +859,212 @@ public class RelayedCandidateDatagramSocket
         }
     }
 
+    /**
+     * Runs in {@link #refreshService} to refresh the permissions and channel
+     * bindings which are about to expire, before the <tt>Channel</tt>s stop
+     * being considered bound. A <tt>Channel</tt> which has a confirmed channel
+     * number is refreshed with a ChannelBind request, which also refreshes
+     * the permission for the IP address of its peer. The permissions of the
+     * other <tt>Channel</tt>s are refreshed with one CreatePermission request
+     * per peer IP address (which is what a permission is installed for), and
+     * not at all if a ChannelBind request refreshes it already.
+     * <tt>Channel</tt>s through which no data has been sent since their last
+     * refresh are left to expire.
+     *
+     * @return the delay in milliseconds until the next permission or channel
+     * binding is to be refreshed or {@link RefreshService#NOT_SCHEDULED} if
+     * none is
+     */
+    private long refreshChannels()
+    {
+        if (closed)
+            return RefreshService.NOT_SCHEDULED;
+
+        long now = refreshService.currentTimeMillis();
+        long nextRefreshTime = Long.MAX_VALUE;
+        List<Channel> channelBindsToRefresh = new ArrayList<>();
+        Map<InetAddress, List<Channel>> permissionsToRefresh
+            = new LinkedHashMap<>();
+
+        for (Channel channel : channels.values())
+        {
+            if (!channel.isBound() || channel.isRefreshing())
+                continue;
+
+            long refreshTime
+                = channel.bindingTimeStamp + PERMISSION_REFRESH_INTERVAL;
+
+            if (refreshTime > now)
+            {
+                nextRefreshTime = Math.min(nextRefreshTime, refreshTime);
+            }
+            else if (channel.used)
+            {
+                if (channel.isChannelNumberConfirmed())
+                {
+                    channelBindsToRefresh.add(channel);
+                }
+                else
+                {
+                    permissionsToRefresh
+                        .computeIfAbsent(
+                                channel.peerAddress.getAddress(),
+                                k -> new ArrayList<>())
+                        .add(channel);
+                }
+            }
+        }
+
+        for (Channel channel : channelBindsToRefresh)
+        {
+            byte[] transactionID
+                = TransactionID.createNewTransactionID().getBytes();
+            Request request
+                = MessageFactory.createChannelBindRequest(
+                        channel.channelNumber,
+                        channel.peerAddress,
+                        transactionID);
+            List<Channel> refreshed = new ArrayList<>();
+
+            refreshed.add(channel);
+
+            List<Channel> permissions
+                = permissionsToRefresh.remove(
+                        channel.peerAddress.getAddress());
+
+            if (permissions != null)
+                refreshed.addAll(permissions);
+            sendRefreshRequest(request, transactionID, refreshed, now);
+        }
+        for (List<Channel> refreshed : permissionsToRefresh.values())
+        {
+            byte[] transactionID
+                = TransactionID.createNewTransactionID().getBytes();
+            Request request
+                = MessageFactory.createCreatePermissionRequest(
+                        refreshed.get(0).peerAddress,
+                        transactionID);
+
+            sendRefreshRequest(request, transactionID, refreshed, now);
+        }
+
+        /*
+         * The Channels which are being refreshed reschedule the refresh when
+         * the responses arrive.
+         */
+        return
+            (nextRefreshTime == Long.MAX_VALUE)
+                ? RefreshService.NOT_SCHEDULED
+                : (nextRefreshTime - now);
+    }
+
+    /**
+     * Sends a CreatePermission or ChannelBind <tt>Request</tt> which refreshes
+     * the permissions of specific <tt>Channel</tt>s. Runs in
+     * {@link #refreshService} only.
+     *
+     * @param request the <tt>Request</tt> to send
+     * @param transactionID the ID of the transaction of <tt>request</tt>
+     * @param channels the <tt>Channel</tt>s which <tt>request</tt> refreshes
+     * @param now the time at which <tt>request</tt> is sent
+     */
+    private void sendRefreshRequest(
+            Request request,
+            byte[] transactionID,
+            List<Channel> channels,
+            long now)
+    {
+        /*
+         * The response may arrive (in another thread) before sendRequest
+         * returns, so the Channels have to be refreshing before the request is
+         * sent.
+         */
+        for (Channel channel : channels)
+        {
+            channel.refreshTimeStamp = now;
+            channel.refreshTransactionID = transactionID;
+            channel.used = false;
+        }
+        try
+        {
+            request.setTransactionID(transactionID);
+            turnCandidateHarvest.sendRequest(this, request);
+            refreshService.refreshSent();
+        }
+        catch (StunException sex)
+        {
+            logger.log(
+                    Level.INFO,
+                    "Failed to refresh TURN permission for "
+                        + channels.get(0).peerAddress,
+                    sex);
+            for (Channel channel : channels)
+            {
+                channel.refreshTransactionID = null;
+                channel.used = true;
+            }
+            refreshRegistration.schedule(PERMISSION_REFRESH_RETRY_INTERVAL);
+        }
+    }
+
+    /**
+     * Notifies the <tt>Channel</tt>s which have sent a specific refresh
+     * <tt>Request</tt> about its result.
+     *
+     * @param request the <tt>Request</tt>
+     * @param success <tt>true</tt> if <tt>request</tt> has received a success
+     * <tt>Response</tt>; otherwise, <tt>false</tt>
+     * @return <tt>true</tt> if <tt>request</tt> is a refresh
+     * <tt>Request</tt> sent by {@link #refreshChannels()}; otherwise,
+     * <tt>false</tt>
+     */
+    private boolean setRefreshed(Request request, boolean success)
+    {
+        char messageType = request.getMessageType();
+
+        if ((messageType != Message.CREATEPERMISSION_REQUEST)
+                && (messageType != Message.CHANNELBIND_REQUEST))
+        {
+            return false;
+        }
+
+        byte[] transactionID = request.getTransactionID();
+        long refreshTimeStamp = -1;
+
+        for (Channel channel : channels.values())
+        {
+            if (Arrays.equals(channel.refreshTransactionID, transactionID))
+            {
+                refreshTimeStamp = channel.refreshTimeStamp;
+                if (success)
+                {
+                    channel.bindingTimeStamp
+                        = Math.max(channel.bindingTimeStamp, refreshTimeStamp);
+                }
+                else
+                {
+                    // Try again with the next refresh.
+                    channel.used = true;
+                }
+                channel.refreshTransactionID = null;
+            }
+        }
+        if (refreshTimeStamp == -1)
+            return false;
+
+        if (success)
+        {
+            refreshService.refreshSucceeded(refreshTimeStamp);
+            refreshRegistration.schedule(PERMISSION_REFRESH_INTERVAL);
+        }
+        else
+        {
+            refreshService.refreshFailed();
+            refreshRegistration.schedule(PERMISSION_REFRESH_RETRY_INTERVAL);
+        }
+        return true;
+    }
+
     /**
      * Receives a datagram packet from this socket. When this method returns,
      * the <tt>DatagramPacket</tt>'s buffer is filled with the data received.
@@ -761,6 +1139,11 @@ public class RelayedCandidateDatagramSocket
             // read one datagram a time
             int receiveBufferSize = 1500;
 
+            /*
+             * A received ChannelData message is queued in packetsToReceive as
+             * it is (with its header stripped by adjusting the offset), so a
+             * new DatagramPacket is needed after each queued one.
+             */
             if (p == null)
             {
                 p
@@ -770,12 +1153,7 @@ public class RelayedCandidateDatagramSocket
             }
             else
             {
-                byte[] pData = p.getData();
-
-                if ((pData == null) || (pData.length < receiveBufferSize))
-                    p.setData(new byte[receiveBufferSize]);
-                else
-                    p.setLength(receiveBufferSize);
+                p.setData(p.getData(), 0, receiveBufferSize);
             }
 
             try
@@ -818,65 +1196,30 @@ public class RelayedCandidateDatagramSocket
             if (closed)
                 break;
 
-            int channelDataLength = p.getLength();
-
-            if (channelDataLength
-                    < (CHANNELDATA_CHANNELNUMBER_LENGTH
-                            + CHANNELDATA_LENGTH_LENGTH))
-                continue;
-
-            byte[] channelData = p.getData();
-            int channelDataOffset = p.getOffset();
-            char channelNumber
-                = (char)
-                    ((channelData[channelDataOffset++] << 8)
-                            | (channelData[channelDataOffset++] & 0xFF));
-
-            channelDataLength -= CHANNELDATA_CHANNELNUMBER_LENGTH;
-
-            char length
-                = (char)
-                    ((channelData[channelDataOffset++] << 8)
-                            | (channelData[channelDataOffset++] & 0xFF));
+            char channelNumber;
 
-            channelDataLength -= CHANNELDATA_LENGTH_LENGTH;
-            if (length > channelDataLength)
-                continue;
-
-            TransportAddress peerAddress = null;
-
-            synchronized (packetsToSend)
+            try
             {
-                int channelCount = channels.size();
-
-                for (int channelIndex = 0;
-                        channelIndex < channelCount;
-                        channelIndex++)
-                {
-                    Channel channel = channels.get(channelIndex);
-
-                    if (channel.channelNumberEquals(channelNumber))
-                    {
-                        peerAddress = channel.peerAddress;
-                        break;
-                    }
-                }
+                channelNumber = ChannelData.decodeInPlace(p);
             }
-            if (peerAddress == null)
+            catch (StunException sex)
+            {
                 continue;
+            }
 
-            byte[] data = new byte[length];
+            Channel channel = getChannel(channelNumber);
 
-            System.arraycopy(channelData, channelDataOffset, data, 0, length);
+            if (channel == null)
+                continue;
 
-            DatagramPacket packetToReceive
-                = new DatagramPacket(data, 0, length, peerAddress);
+            p.setSocketAddress(channel.peerAddress);
 
             synchronized (packetsToReceive)
             {
-                packetsToReceive.add(packetToReceive);
+                packetsToReceive.add(p);
                 packetsToReceive.notifyAll();
             }
+            p = null;
         }
     }
 
@@ -886,172 +1229,165 @@ public class RelayedCandidateDatagramSocket
      */
     private void runInSendThread()
     {
-        synchronized (packetsToSend)
+        while (!closed)
         {
-            while (!closed)
-            {
-                if (packetsToSend.isEmpty())
-                {
-                    try
-                    {
-                        packetsToSend.wait();
-                    }
-                    catch (InterruptedException iex)
-                    {
-                    }
-                    continue;
-                }
+            /*
+             * If no packetToSend has been queued or sent by the current
+             * iteration, then we must be waiting for new packetsToSend or for
+             * the state of a Channel to change in order to be able to send.
+             */
+            if (!processPacketsToSend())
+                LockSupport.park(this);
+        }
+    }
 
-                int packetToSendCount = packetsToSend.size();
+    /**
+     * Moves the {@link #packetsToSend} to the queues of the <tt>Channel</tt>s
+     * to the respective peers and sends as many of them as possible. Runs in
+     * {@link #sendThread} only.
+     *
+     * @return <tt>true</tt> if any <tt>DatagramPacket</tt> has been queued,
+     * sent or dropped; otherwise, <tt>false</tt>
+     */
+    private boolean processPacketsToSend()
+    {
+        boolean progress = false;
+        DatagramPacket packetToSend;
 
-                for (int packetToSendIndex = 0;
-                        packetToSendIndex < packetToSendCount;
-                        packetToSendIndex++)
-                {
-                    DatagramPacket packetToSend
-                        = packetsToSend.get(packetToSendIndex);
+        while ((packetToSend = packetsToSend.poll()) != null)
+        {
+            Channel channel = getChannel(packetToSend);
 
-                    /*
-                     * Get a channel to the peer which is to receive the
-                     * packetToSend.
-                     */
-                    int channelCount = channels.size();
-                    TransportAddress peerAddress
-                        = new TransportAddress(
-                                packetToSend.getAddress(),
-                                packetToSend.getPort(),
-                                Transport.UDP);
-                    Channel channel = null;
+            channel.packetsToSend.add(packetToSend);
+            channelsWithPacketsToSend.add(channel);
+            progress = true;
+        }
 
-                    for (int channelIndex = 0;
-                            channelIndex < channelCount;
-                            channelIndex++)
-                    {
-                        Channel aChannel = channels.get(channelIndex);
+        for (Iterator<Channel> i = channelsWithPacketsToSend.iterator();
+                i.hasNext();)
+        {
+            Channel channel = i.next();
 
-                        if (aChannel.peerAddressEquals(peerAddress))
-                        {
-                            channel = aChannel;
-                            break;
-                        }
-                    }
-                    if (channel == null)
-                    {
-                        channel = new Channel(peerAddress);
-                        channels.add(channel);
-                    }
+            if (sendPacketsToSend(channel))
+                progress = true;
+            if (channel.packetsToSend.isEmpty())
+                i.remove();
+        }
+        return progress;
+    }
 
-                    /*
-                     * RFC 5245 says that "it is RECOMMENDED that the agent
-                     * defer creation of a TURN channel until ICE completes."
-                     * RelayedCandidateDatagramSocket is not explicitly told
-                     * from the outside that ICE has completed so it tries to
-                     * determine it by assuming that connectivity checks send
-                     * only STUN messages and ICE has completed by the time a
-                     * non-STUN message is to be sent.
-                     */
-                    boolean forceBind = false;
+    /**
+     * Sends the <tt>DatagramPacket</tt>s queued for a specific
+     * <tt>Channel</tt> through it (in order), or binds it if it is not bound.
+     * A <tt>Channel</tt> which is binding does not delay the
+     * <tt>DatagramPacket</tt>s queued for other <tt>Channel</tt>s. Runs in
+     * {@link #sendThread} only.
+     *
+     * @param channel the <tt>Channel</tt>
+     * @return <tt>true</tt> if any <tt>DatagramPacket</tt> has been sent or
+     * dropped; otherwise, <tt>false</tt>
+     */
+    private boolean sendPacketsToSend(Channel channel)
+    {
+        int count = 0;
+        DatagramPacket packetToSend;
+
+        while ((count < MAX_PACKETS_TO_SEND_PER_CHANNEL)
+                && ((packetToSend = channel.packetsToSend.peek()) != null))
+        {
+            /*
+             * RFC 5245 says that "it is RECOMMENDED that the agent defer
+             * creation of a TURN channel until ICE completes."
+             * RelayedCandidateDatagramSocket is not explicitly told from the
+             * outside that ICE has completed so it tries to determine it by
+             * assuming that connectivity checks send only STUN messages and ICE
+             * has completed by the time a non-STUN message is to be sent.
+             */
+            boolean forceBind = false;
+
+            if ((channelDataSocket != null)
+                    && !channel.getChannelDataIsPreferred()
+                    && !connectivityCheckRecognizer.accept(packetToSend))
+            {
+                channel.setChannelDataIsPreferred(true);
+                forceBind = true;
+            }
 
-                    if ((channelDataSocket != null)
-                            && !channel.getChannelDataIsPreferred()
-                            && !connectivityCheckRecognizer.accept(
-                                    packetToSend))
+            /*
+             * Either bind the channel or send the packetToSend through it.
+             */
+            if (!forceBind && channel.isBound())
+            {
+                channel.packetsToSend.poll();
+                count++;
+                try
+                {
+                    channel.send(packetToSend);
+                }
+                catch (StunException sex)
+                {
+                    if (logger.isLoggable(Level.INFO))
                     {
-                        channel.setChannelDataIsPreferred(true);
-                        forceBind = true;
+                        logger.log(
+                                Level.INFO,
+                                "Failed to send through "
+                                    + RelayedCandidateDatagramSocket.class
+                                            .getSimpleName()
+                                    + " channel." ,
+                                sex);
                     }
-
-                    /*
-                     * Either bind the channel or send the packetToSend through
-                     * it.
-                     */
-                    if (!forceBind && channel.isBound())
+                }
+            }
+            else
+            {
+                if (forceBind || !channel.isBinding())
+                {
+                    try
                     {
-                        packetsToSend.remove(packetToSendIndex);
-                        try
-                        {
-                            channel.send(packetToSend, peerAddress);
-                        }
-                        catch (StunException sex)
-                        {
-                            if (logger.isLoggable(Level.INFO))
-                            {
-                                logger.log(
-                                        Level.INFO,
-                                        "Failed to send through "
-                                            + RelayedCandidateDatagramSocket
-                                                    .class.getSimpleName()
-                                            + " channel." ,
-                                        sex);
-                            }
-                        }
-                        break;
+                        channel.bind();
                     }
-                    else if (forceBind || !channel.isBinding())
+                    catch (StunException sex)
                     {
-                        try
+                        if (logger.isLoggable(Level.INFO))
                         {
-                            channel.bind();
-                        }
-                        catch (StunException sex)
-                        {
-                            if (logger.isLoggable(Level.INFO))
-                            {
-                                logger.log(
-                                        Level.INFO,
-                                        "Failed to bind "
-                                            + RelayedCandidateDatagramSocket
-                                                    .class.getSimpleName()
-                                            + " channel." ,
-                                        sex);
-                            }
-                            /*
-                             * Well, it may not be the fault of the packetToSend
-                             * but it happened while we were trying to send it
-                             * and we don't have a way to report an error so
-                             * just drop packetToSend in order to change
-                             * something and not just go again trying the same
-                             * thing.
-                             */
-                            packetsToSend.remove(packetToSendIndex);
-                            break;
+                            logger.log(
+                                    Level.INFO,
+                                    "Failed to bind "
+                                        + RelayedCandidateDatagramSocket.class
+                                                .getSimpleName()
+                                        + " channel." ,
+                                    sex);
                         }
                         /*
-                         * If the Channel was bound but #bind() was forced on
-                         * it, we cannot continue with the next packetToSend
-                         * because it may be for the same Channel and then
-                         * #bind() will not be forced and the Channel will be
-                         * bound already so the send order of the packetsToSend
-                         * will be disrupted.
+                         * Well, it may not be the fault of the packetToSend but
+                         * it happened while we were trying to send it and we
+                         * don't have a way to report an error so just drop
+                         * packetToSend in order to change something and not
+                         * just go again trying the same thing.
                          */
-                        if (forceBind)
-                            break;
+                        channel.packetsToSend.poll();
+                        count++;
                     }
                 }
-
                 /*
-                 * If no packetToSend has been sent by the current iteration,
-                 * then we must be waiting for some condition to change in order
-                 * to be able to send.
+                 * The remaining packetsToSend of the channel have to wait for
+                 * the binding to complete in order to preserve their send
+                 * order.
                  */
-                if (packetsToSend.size() == packetToSendCount)
-                {
-                    try
-                    {
-                        packetsToSend.wait();
-                    }
-                    catch (InterruptedException iex)
-                    {
-                    }
-                }
+                break;
             }
         }
+        return count > 0;
     }
 
     /**
      * Sends a datagram packet from this socket. The <tt>DatagramPacket</tt>
      * includes information indicating the data to be sent, its length, the IP
      * address of the remote host, and the port number on the remote host.
+     * <p>
+     * The packet is queued and relayed asynchronously, so the method does not
+     * block on the network I/O to the TURN server.
+     * </p>
      *
      * @param p the <tt>DatagramPacket</tt> to be sent
      * @throws IOException if an I/O error occurs
@@ -1061,23 +1397,44 @@ public class RelayedCandidateDatagramSocket
     public void send(DatagramPacket p)
         throws IOException
     {
-        synchronized (packetsToSend)
+        if (closed)
         {
-            if (closed)
-            {
-                throw
-                    new IOException(
-                            RelayedCandidateDatagramSocket.class.getSimpleName()
-                                + " has been closed.");
-            }
-            else
-            {
-                packetsToSend.add(MultiplexingXXXSocketSupport.clone(p));
-                if (sendThread == null)
-                    createSendThread();
-                else
-                    packetsToSend.notifyAll();
-            }
+            throw
+                new IOException(
+                        RelayedCandidateDatagramSocket.class.getSimpleName()
+                            + " has been closed.");
+        }
+
+        packetsToSend.add(cloneWithHeadroom(p));
+        if (sendThread == null)
+            createSendThread();
+        else
+            wakeUpSendThread();
+    }
+
+    /**
+     * Clones a <tt>DatagramPacket</tt> which is to be sent, reserving
+     * {@link ChannelData#HEADER_LENGTH} bytes in front of its data so that
+     * the TURN ChannelData header can be written in place.
+     *
+     * @param p the <tt>DatagramPacket</tt> to clone
+     * @return a clone of <tt>p</tt> with room for a ChannelData header
+     */
+    private static DatagramPacket cloneWithHeadroom(DatagramPacket p)
+    {
+        synchronized (p)
+        {
+            int length = p.getLength();
+            byte[] data = new byte[ChannelData.HEADER_LENGTH + length];
+
+            System.arraycopy(
+                    p.getData(), p.getOffset(),
+                    data, ChannelData.HEADER_LENGTH,
+                    length);
+            return
+                new DatagramPacket(
+                        data, ChannelData.HEADER_LENGTH, length,
+                        p.getAddress(), p.getPort());
         }
     }
 
@@ -1098,24 +1455,16 @@ public class RelayedCandidateDatagramSocket
         byte[] transactionID = request.getTransactionID();
         TransportAddress peerAddress
             = peerAddressAttribute.getAddress(transactionID);
+        Channel channel
+            = channels.get(
+                    getPeerKey(peerAddress.getAddress(), peerAddress.getPort()));
 
-        synchronized (packetsToSend)
+        if (channel != null)
         {
-            int channelCount = channels.size();
-
-            for (int channelIndex = 0;
-                    channelIndex < channelCount;
-                    channelIndex++)
-            {
-                Channel channel = channels.get(channelIndex);
-
-                if (channel.peerAddressEquals(peerAddress))
-                {
-                    channel.setBound(bound, transactionID);
-                    packetsToSend.notifyAll();
-                    break;
-                }
-            }
+            channel.setBound(bound, transactionID);
+            if (bound)
+                refreshRegistration.schedule(PERMISSION_REFRESH_INTERVAL);
+            wakeUpSendThread();
         }
     }
 
@@ -1139,29 +1488,39 @@ public class RelayedCandidateDatagramSocket
         byte[] transactionID = request.getTransactionID();
         TransportAddress peerAddress
             = peerAddressAttribute.getAddress(transactionID);
+        Channel channel
+            = channels.get(
+                    getPeerKey(peerAddress.getAddress(), peerAddress.getPort()));
 
-        synchronized (packetsToSend)
+        if (channel != null)
         {
-            int channelCount = channels.size();
-
-            for (int channelIndex = 0;
-                    channelIndex < channelCount;
-                    channelIndex++)
-            {
-                Channel channel = channels.get(channelIndex);
-
-                if (channel.peerAddressEquals(peerAddress))
-                {
-                    channel.setChannelNumberIsConfirmed(
-                            channelNumberIsConfirmed,
-                            transactionID);
-                    packetsToSend.notifyAll();
-                    break;
-                }
-            }
+            channel.setChannelNumberIsConfirmed(
+                    channelNumberIsConfirmed,
+                    transactionID);
+            wakeUpSendThread();
         }
     }
 
+    /**
+     * Makes a specific <tt>Channel</tt> available to
+     * {@link #getChannel(char)} under its channel number. Runs in
+     * {@link #sendThread} only.
+     *
+     * @param channel the <tt>Channel</tt> which has been allocated a channel
+     * number
+     */
+    private void setChannelNumber(Channel channel)
+    {
+        int index = channel.channelNumber - MIN_CHANNEL_NUMBER;
+        Channel[] channelsByNumber
+            = Arrays.copyOf(
+                    this.channelsByNumber,
+                    Math.max(this.channelsByNumber.length, index + 1));
+
+        channelsByNumber[index] = channel;
+        this.channelsByNumber = channelsByNumber;
+    }
+
     /**
      * Represents a channel which relays data sent through this
      * <tt>RelayedCandidateDatagramSocket</tt> to a specific
@@ -1174,25 +1533,39 @@ public class RelayedCandidateDatagramSocket
          * The time stamp in milliseconds at which {@link #bindingTransactionID}
          * has been used to bind/install this <tt>Channel</tt>.
          */
-        private long bindingTimeStamp = -1;
+        private volatile long bindingTimeStamp = -1;
 
         /**
          * The ID of the transaction with which a CreatePermission
          * <tt>Request</tt> has been sent to bind/install this <tt>Channel</tt>.
          */
-        private byte[] bindingTransactionID;
+        private volatile byte[] bindingTransactionID;
 
         /**
-         * The indication which determines whether a confirmation has been
-         * received that this <tt>Channel</tt> has been bound.
+         * The ID of the transaction with which a CreatePermission or
+         * ChannelBind <tt>Request</tt> has been sent to refresh this
+         * <tt>Channel</tt>, or <tt>null</tt> if it is not being refreshed.
+         */
+        private volatile byte[] refreshTransactionID;
+
+        /**
+         * The time stamp in milliseconds at which
+         * {@link #refreshTransactionID} has been sent.
          */
-        private boolean bound = false;
+        private volatile long refreshTimeStamp = -1;
 
         /**
-         * The value of the <tt>data</tt> property of
-         * {@link #channelDataPacket}.
+         * The indicator which determines whether data has been sent through
+         * this <tt>Channel</tt> since it was last refreshed, i.e. whether its
+         * permission is to be refreshed before it expires.
          */
-        private byte[] channelData;
+        private volatile boolean used = false;
+
+        /**
+         * The indication which determines whether a confirmation has been
+         * received that this <tt>Channel</tt> has been bound.
+         */
+        private volatile boolean bound = false;
 
         /**
          * The indicator which determines whether this <tt>Channel</tt> is set
@@ -1201,25 +1574,18 @@ public class RelayedCandidateDatagramSocket
          */
         private boolean channelDataIsPreferred = false;
 
-        /**
-         * The <tt>DatagramPacket</tt> in which this <tt>Channel</tt> sends TURN
-         * ChannelData messages through
-         * {@link RelayedCandidateDatagramSocket#channelDataSocket}.
-         */
-        private DatagramPacket channelDataPacket;
-
         /**
          * The TURN channel number of this <tt>Channel</tt> which is to be or
          * has been allocated using a ChannelBind <tt>Request</tt>.
          */
-        private char channelNumber = CHANNEL_NUMBER_NOT_SPECIFIED;
+        private volatile char channelNumber = CHANNEL_NUMBER_NOT_SPECIFIED;
 
         /**
          * The indicator which determines whether the associated TURN server has
          * confirmed the allocation of {@link #channelNumber} by us receiving a
          * success <tt>Response</tt> to our ChannelBind <tt>Request</tt>.
          */
-        private boolean channelNumberIsConfirmed;
+        private volatile boolean channelNumberIsConfirmed;
 
         /**
          * The <tt>TransportAddress</tt> of the peer to which this
@@ -1228,6 +1594,12 @@ public class RelayedCandidateDatagramSocket
          */
         public final TransportAddress peerAddress;
 
+        /**
+         * The <tt>DatagramPacket</tt>s which are queued to be sent through
+         * this <tt>Channel</tt>. Accessed by {@link #sendThread} only.
+         */
+        private final Deque<DatagramPacket> packetsToSend = new ArrayDeque<>();
+
         /**
          * Initializes a new <tt>Channel</tt> instance which is to provide this
          * <tt>RelayedCandidateDatagramSocket</tt> with a permission to send
@@ -1262,12 +1634,28 @@ public class RelayedCandidateDatagramSocket
 
             createPermissionRequest.setTransactionID(
                     createPermissionTransactionID);
-            turnCandidateHarvest.sendRequest(
-                    RelayedCandidateDatagramSocket.this,
-                    createPermissionRequest);
+
+            /*
+             * The response may arrive (in another thread) before sendRequest
+             * returns, so this Channel has to be binding before the request is
+             * sent.
+             */
+            long oldBindingTimeStamp = bindingTimeStamp;
 
             bindingTransactionID = createPermissionTransactionID;
-            bindingTimeStamp = System.currentTimeMillis();
+            bindingTimeStamp = refreshService.currentTimeMillis();
+            try
+            {
+                turnCandidateHarvest.sendRequest(
+                        RelayedCandidateDatagramSocket.this,
+                        createPermissionRequest);
+            }
+            catch (StunException sex)
+            {
+                bindingTransactionID = null;
+                bindingTimeStamp = oldBindingTimeStamp;
+                throw sex;
+            }
 
             if (channelDataIsPreferred)
             {
@@ -1278,6 +1666,8 @@ public class RelayedCandidateDatagramSocket
                 }
                 if (channelNumber != CHANNEL_NUMBER_NOT_SPECIFIED)
                 {
+                    setChannelNumber(this);
+
                     byte[] channelBindTransactionID
                         = TransactionID.createNewTransactionID().getBytes();
                     Request channelBindRequest
@@ -1308,20 +1698,6 @@ public class RelayedCandidateDatagramSocket
             }
         }
 
-        /**
-         * Determines whether the channel number of this <tt>Channel</tt> is
-         * value equal to a specific channel number.
-         *
-         * @param channelNumber the channel number to be compared to the channel
-         * number of this <tt>Channel</tt> for value equality
-         * @return <tt>true</tt> if the specified <tt>channelNumber</tt> is
-         * equal to the channel number of this <tt>Channel</tt>
-         */
-        public boolean channelNumberEquals(char channelNumber)
-        {
-            return (this.channelNumber == channelNumber);
-        }
-
         /**
          * Gets the indicator which determines whether this <tt>Channel</tt> is
          * set to prefer sending <tt>DatagramPacket</tt>s using TURN ChannelData
@@ -1363,24 +1739,54 @@ public class RelayedCandidateDatagramSocket
                     || (bindingTimeStamp
                                 + PERMISSION_LIFETIME
                                 - PERMISSION_LIFETIME_LEEWAY)
-                            < System.currentTimeMillis())
+                            < refreshService.currentTimeMillis())
                 return false;
             return (bindingTransactionID == null) && bound;
         }
 
+        /**
+         * Gets the indicator which determines whether this <tt>Channel</tt>
+         * sends data in ChannelData messages through a channel number which
+         * the associated TURN server has confirmed.
+         *
+         * @return <tt>true</tt> if this <tt>Channel</tt> has a confirmed
+         * channel number; otherwise, <tt>false</tt>
+         */
+        public boolean isChannelNumberConfirmed()
+        {
+            return
+                channelDataIsPreferred
+                    && (channelNumber != CHANNEL_NUMBER_NOT_SPECIFIED)
+                    && channelNumberIsConfirmed;
+        }
+
+        /**
+         * Gets the indicator which determines whether this instance has sent
+         * a request to refresh its permission and has not received the
+         * response yet.
+         *
+         * @return <tt>true</tt> if this instance is being refreshed;
+         * otherwise, <tt>false</tt>
+         */
+        public boolean isRefreshing()
+        {
+            return (refreshTransactionID != null);
+        }
+
         /**
          * Determines whether the <tt>peerAddress</tt> property of this instance
          * is considered by this <tt>Channel</tt> to be equal to a specific
-         * <tt>TransportAddress</tt>.
+         * IP address and port.
          *
-         * @param peerAddress the <tt>TransportAddress</tt> which is to be
-         * checked for equality (as defined by this <tt>Channel</tt> and not
-         * necessarily by the <tt>TransportAddress</tt> class)
-         * @return <tt>true</tt> if the specified <tt>TransportAddress</tt> is
+         * @param address the IP address which is to be checked for equality
+         * (as defined by this <tt>Channel</tt> and not necessarily by the
+         * <tt>TransportAddress</tt> class)
+         * @param port the port which is to be checked for equality
+         * @return <tt>true</tt> if the specified IP address and port are
          * considered by this <tt>Channel</tt> to be equal to its
          * <tt>peerAddress</tt> property; otherwise, <tt>false</tt>
          */
-        public boolean peerAddressEquals(TransportAddress peerAddress)
+        public boolean peerAddressEquals(InetAddress address, int port)
         {
             /*
              * CreatePermission installs a permission for the IP address and the
@@ -1390,90 +1796,41 @@ public class RelayedCandidateDatagramSocket
              * CreatePermission more often than really necessary (as a side
              * effect).
              */
-            if (channelDataSocket != null)
-                return this.peerAddress.equals(peerAddress);
+            if ((channelDataSocket != null) && (peerAddress.getPort() != port))
+                return false;
             else
-            {
-                return
-                    this.peerAddress.getAddress().equals(
-                            peerAddress.getAddress());
-            }
+                return peerAddress.getAddress().equals(address);
         }
 
         /**
          * Sends a specific <tt>DatagramPacket</tt> through this
-         * <tt>Channel</tt> to a specific peer <tt>TransportAddress</tt>.
+         * <tt>Channel</tt> to the peer it is addressed to.
          *
-         * @param p the <tt>DatagramPacket</tt> to be sent
-         * @param peerAddress the <tt>TransportAddress</tt> of the peer to which
-         * the <tt>DatagramPacket</tt> is to be sent
+         * @param p the <tt>DatagramPacket</tt> to be sent, which has been
+         * created by {@link #cloneWithHeadroom(DatagramPacket)}. It is
+         * modified in place to carry the TURN ChannelData message.
          * @throws StunException if anything goes wrong while sending the
-         * specified <tt>DatagramPacket</tt> to the specified peer
-         * <tt>TransportAddress</tt>
+         * specified <tt>DatagramPacket</tt> to its peer
          */
-        public void send(DatagramPacket p, TransportAddress peerAddress)
+        public void send(DatagramPacket p)
             throws StunException
         {
-            byte[] pData = p.getData();
-            int pOffset = p.getOffset();
-            int pLength = p.getLength();
-            byte[] data;
-
-            if ((pOffset == 0) && (pLength == pData.length))
-                data = pData;
-            else
-            {
-                data = new byte[pLength];
-                System.arraycopy(pData, pOffset, data, 0, pLength);
-            }
+            if (!used)
+                used = true;
 
-            if (channelDataIsPreferred
-                    && (channelNumber != CHANNEL_NUMBER_NOT_SPECIFIED)
-                    && channelNumberIsConfirmed)
+            if (isChannelNumberConfirmed())
             {
-                char length = (char) data.length;
-                int channelDataLength
-                    = CHANNELDATA_CHANNELNUMBER_LENGTH
-                        + CHANNELDATA_LENGTH_LENGTH
-                        + length;
-
-                if ((channelData == null)
-                        || (channelData.length < channelDataLength))
-                {
-                    channelData = new byte[channelDataLength];
-                    if (channelDataPacket != null)
-                        channelDataPacket.setData(channelData);
-                }
-
-                // Channel Number
-                channelData[0] = (byte) (channelNumber >> 8);
-                channelData[1] = (byte) (channelNumber & 0xFF);
-                // Length
-                channelData[2] = (byte) (length >> 8);
-                channelData[3] = (byte) (length & 0xFF);
-                // Application Data
-                System.arraycopy(
-                        data,
-                        0,
-                        channelData,
-                        CHANNELDATA_CHANNELNUMBER_LENGTH
-                            + CHANNELDATA_LENGTH_LENGTH,
-                        length);
+                /*
+                 * Write the ChannelData header in the headroom in front of the
+                 * application data instead of copying the data into a new
+                 * message.
+                 */
+                ChannelData.encodeInPlace(p, channelNumber, false);
+                p.setSocketAddress(turnCandidateHarvest.harvester.stunServer);
 
                 try
                 {
-                    if (channelDataPacket == null)
-                    {
-                        channelDataPacket
-                            = new DatagramPacket(
-                                    channelData, 0, channelDataLength,
-                                    turnCandidateHarvest.harvester.stunServer);
-                    }
-                    else
-                        channelDataPacket.setData(channelData, 0,
-                                channelDataLength);
-
-                    channelDataSocket.send(channelDataPacket);
+                    channelDataSocket.send(p);
                 }
                 catch (IOException ioex)
                 {
@@ -1486,6 +1843,23 @@ public class RelayedCandidateDatagramSocket
             }
             else
             {
+                byte[] data
+                    = Arrays.copyOfRange(
+                            p.getData(),
+                            p.getOffset(),
+                            p.getOffset() + p.getLength());
+                /*
+                 * Without a channelDataSocket, a Channel is shared by the
+                 * ports of a peer IP address so the packet may be addressed to
+                 * a port other than the one of peerAddress.
+                 */
+                TransportAddress peerAddress
+                    = (p.getPort() == this.peerAddress.getPort())
+                        ? this.peerAddress
+                        : new TransportAddress(
+                                p.getAddress(),
+                                p.getPort(),
+                                Transport.UDP);
                 byte[] transactionID
                     = TransactionID.createNewTransactionID().getBytes();
                 Indication sendIndication
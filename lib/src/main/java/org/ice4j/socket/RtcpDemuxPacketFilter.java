@@ -91,4 +91,13 @@ public class RtcpDemuxPacketFilter
         return isRtcpPacket(p);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean mayAccept(DemuxPacketType type)
+    {
+        return type == DemuxPacketType.RTP;
+    }
+
 }
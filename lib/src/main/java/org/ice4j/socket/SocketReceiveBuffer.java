@@ -20,12 +20,25 @@ package org.ice4j.socket;
 import java.net.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
 
 /**
  * Implements a buffer of <tt>DatagramPacket</tt>s received by a
  * <tt>DatagramSocket</tt> or a <tt>Socket</tt>. The list enforces the
  * <tt>SO_RCVBUF</tt> option for the associated <tt>DatagramSocket</tt> or
  * <tt>Socket</tt>.
+ * <p>
+ * The buffer is a lock-free bounded ring which may be added to and polled by
+ * multiple threads at once. When it is full, or the total length of the
+ * buffered datagrams exceeds <tt>SO_RCVBUF</tt>, the oldest datagrams are
+ * dropped. Threads which wait for datagrams are parked rather than waiting on
+ * a monitor.
+ * </p>
+ * <p>
+ * The buffer owns the datagrams added to it until they are polled, and
+ * returns the ones it drops to the {@link DatagramPacketPool}.
+ * </p>
  *
  * @author Lyubomir Marinov
  * @author Yura Yaroshevich
@@ -44,16 +57,54 @@ class SocketReceiveBuffer
     private static final int DATAGRAMS_BUFFER_CAPACITY = 10000;
 
     /**
-     * Queue to store received datagrams.
+     * The number of datagrams added between two reads of the receive buffer
+     * size of the associated socket.
      */
-    private final BlockingQueue<DatagramPacket> buffer
-        = new ArrayBlockingQueue<>(DATAGRAMS_BUFFER_CAPACITY);
+    private static final int RECEIVE_BUFFER_SIZE_REFRESH_INTERVAL = 1000;
 
     /**
-     * An instance of datagram size tracker to compute total number of bytes
-     * stored in datagrams witin {@link #buffer}.
+     * The ring which stores the received datagrams.
      */
-    private final DatagramSizeTracker tracker;
+    private final ConcurrentRing<DatagramPacket> ring;
+
+    /**
+     * The total length in bytes of the datagrams in this buffer.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Counts total number of datagrams added to buffer.
+     */
+    private final AtomicLong added = new AtomicLong();
+
+    /**
+     * The number of datagrams dropped because this buffer was full.
+     */
+    private final AtomicLong droppedPackets = new AtomicLong();
+
+    /**
+     * The total length in bytes of the datagrams dropped because this buffer
+     * was full.
+     */
+    private final AtomicLong droppedBytes = new AtomicLong();
+
+    /**
+     * The threads which wait for a datagram to be added to this buffer.
+     */
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The value of the <tt>SO_RCVBUF</tt> option for the associated
+     * <tt>DatagramSocket</tt> or <tt>Socket</tt>. Cached for the sake of
+     * performance.
+     */
+    private volatile int cachedReceiveBufferSize;
+
+    /**
+     * A user provided getter of receive buffer size, might
+     * fail with {@link Exception} when called.
+     */
+    private final Callable<Integer> receiveBufferSizeSupplier;
 
     /**
      * Constructs {@link SocketReceiveBuffer} with user-provided
@@ -62,7 +113,22 @@ class SocketReceiveBuffer
      */
     public SocketReceiveBuffer(Callable<Integer> receiveBufferSizeSupplier)
     {
-        this.tracker = new DatagramSizeTracker(receiveBufferSizeSupplier);
+        this(receiveBufferSizeSupplier, DATAGRAMS_BUFFER_CAPACITY);
+    }
+
+    /**
+     * Constructs {@link SocketReceiveBuffer} with user-provided
+     * @param receiveBufferSizeSupplier a function to obtain receive buffer
+     * size from associated socket.
+     * @param capacity the maximum number of datagrams to store regardless of
+     * their total size in bytes.
+     */
+    SocketReceiveBuffer(
+            Callable<Integer> receiveBufferSizeSupplier,
+            int capacity)
+    {
+        this.receiveBufferSizeSupplier = receiveBufferSizeSupplier;
+        ring = new ConcurrentRing<>(capacity);
     }
 
     /**
@@ -71,27 +137,85 @@ class SocketReceiveBuffer
      */
     public boolean isEmpty()
     {
-        return buffer.isEmpty();
+        return ring.isEmpty();
+    }
+
+    /**
+     * Gets the number of datagrams in this buffer.
+     *
+     * @return the number of datagrams in this buffer.
+     */
+    public int size()
+    {
+        return ring.size();
+    }
+
+    /**
+     * Gets the total length in bytes of the datagrams in this buffer.
+     *
+     * @return the total length in bytes of the datagrams in this buffer.
+     */
+    public long getByteSize()
+    {
+        return bytes.get();
     }
 
     /**
-     * Adds {@link DatagramPacket} at the end of the socket receive buffer.
+     * Gets the number of datagrams which have been dropped because this buffer
+     * was full or exceeded <tt>SO_RCVBUF</tt>.
+     *
+     * @return the number of dropped datagrams.
+     */
+    public long getDroppedPackets()
+    {
+        return droppedPackets.get();
+    }
+
+    /**
+     * Gets the total length in bytes of the datagrams which have been dropped
+     * because this buffer was full or exceeded <tt>SO_RCVBUF</tt>.
+     *
+     * @return the total length in bytes of the dropped datagrams.
+     */
+    public long getDroppedBytes()
+    {
+        return droppedBytes.get();
+    }
+
+    /**
+     * Adds {@link DatagramPacket} at the end of the socket receive buffer and
+     * wakes up the threads waiting in {@link #await(long)}.
      * @param p datagram to add into receive buffer
      */
     public void add(DatagramPacket p)
     {
-        while (!buffer.offer(p))
+        // Account for p before it can be polled, so that bytes never goes
+        // negative.
+        long length = length(p);
+
+        bytes.addAndGet(length);
+        while (!ring.offer(p))
         {
             // ensure buffer capacity restriction enforced
-            poll();
+            drop(poll());
         }
 
-        tracker.trackDatagramAdded(p);
+        // If the added packet is the only element of this list, do not drop
+        // it because of the enforcement of SO_RCVBUF.
+        long receiveBufferSize = getReceiveBufferSize();
 
-        while (tracker.isExceedReceiveBufferSize() && buffer.size() > 1)
+        while (bytes.get() > receiveBufferSize && size() > 1)
         {
             // enforce SO_RCVBUF restriction
-            poll();
+            drop(poll());
+        }
+
+        if (!waiters.isEmpty())
+        {
+            for (Thread waiter : waiters)
+            {
+                LockSupport.unpark(waiter);
+            }
         }
     }
 
@@ -102,21 +226,56 @@ class SocketReceiveBuffer
      */
     public DatagramPacket poll()
     {
-        DatagramPacket p = buffer.poll();
+        DatagramPacket p = ring.poll();
 
         // Keep track of the (total) size in bytes of this receive buffer in
         // order to be able to enforce SO_RCVBUF restriction.
         if (p != null)
         {
-            tracker.trackDatagramRemoved(p);
+            bytes.addAndGet(-length(p));
         }
 
         return p;
     }
 
+    /**
+     * Waits until this buffer is not empty, the specified time elapses or the
+     * current thread is interrupted. May also return spuriously, so the caller
+     * has to check this buffer again. An interrupt is cleared, like a
+     * monitor wait which has thrown an {@code InterruptedException} would.
+     *
+     * @param timeout the maximum time in milliseconds to wait.
+     */
+    public void await(long timeout)
+    {
+        Thread thread = Thread.currentThread();
+
+        waiters.add(thread);
+        try
+        {
+            // add() reads waiters after publishing a datagram, and we check
+            // whether one was published after we became a waiter, so that
+            // either we see it or add() unparks us.
+            if (isEmpty())
+            {
+                LockSupport.parkNanos(
+                        this,
+                        TimeUnit.MILLISECONDS.toNanos(timeout));
+                Thread.interrupted();
+            }
+        }
+        finally
+        {
+            waiters.remove(thread);
+        }
+    }
+
     /**
      * Scans buffer of received {@link DatagramPacket}s and move
-     * datagrams which matches the {@code filter} into returned list.
+     * datagrams which matches the {@code filter} into returned list. The
+     * datagrams which do not match keep their order. Must not be invoked
+     * concurrently with {@link #add(DatagramPacket)}, and concurrent
+     * {@link #poll()}s may miss the datagrams which are being scanned.
      * @param filter a predicate to filter {@link DatagramPacket} stored
      * in receive buffer.
      * @return list of datagrams matched to {@code filter}.
@@ -124,12 +283,11 @@ class SocketReceiveBuffer
     public List<DatagramPacket> scan(DatagramPacketFilter filter)
     {
         List<DatagramPacket> matchedDatagrams = null;
-        final Iterator<DatagramPacket> it = buffer.iterator();
+        List<DatagramPacket> unmatchedDatagrams = null;
+        DatagramPacket p;
 
-        while (it.hasNext())
+        while ((p = poll()) != null)
         {
-            final DatagramPacket p = it.next();
-
             if (filter.accept(p))
             {
                 if (matchedDatagrams == null)
@@ -137,10 +295,23 @@ class SocketReceiveBuffer
                     matchedDatagrams = new ArrayList<>();
                 }
                 matchedDatagrams.add(p);
+            }
+            else
+            {
+                if (unmatchedDatagrams == null)
+                {
+                    unmatchedDatagrams = new ArrayList<>();
+                }
+                unmatchedDatagrams.add(p);
+            }
+        }
 
-                it.remove();
-
-                tracker.trackDatagramRemoved(p);
+        if (unmatchedDatagrams != null)
+        {
+            for (DatagramPacket unmatched : unmatchedDatagrams)
+            {
+                bytes.addAndGet(length(unmatched));
+                ring.offer(unmatched);
             }
         }
 
@@ -152,136 +323,79 @@ class SocketReceiveBuffer
     }
 
     /**
-     * A helper class to keep track of total size in bytes of all
-     * {@link DatagramPacket} instances stored in {@link #buffer} to
-     * be able to enforce SO_RCVBUF.
+     * Counts a datagram which has been dropped from this buffer and returns
+     * it to the pool.
+     *
+     * @param p the dropped datagram or <tt>null</tt> if another thread polled
+     * the datagram which was to be dropped.
      */
-    private final class DatagramSizeTracker
+    private void drop(DatagramPacket p)
     {
-        /**
-         * The value of the <tt>SO_RCVBUF</tt> option for the associated
-         * <tt>DatagramSocket</tt> or <tt>Socket</tt>. Cached for the sake of
-         * performance.
-         */
-        private int cachedReceiveBufferSize;
-
-        /**
-         * The (total) size in bytes of this receive buffer.
-         */
-        private int totalBuffersByteSize;
-
-        /**
-         * Counts total number of datagrams added to buffer.
-         */
-        private int totalDatagramsAdded;
-
-        /**
-         * A user provided getter of receive buffer size, might
-         * fail with {@link Exception} when called.
-         */
-        private final Callable<Integer> receiveBufferSizeSupplier;
-
-        /**
-         * Create a tracker of datagram packet size stored in buffer.
-         * @param receiveBufferSizeSupplier a function to obtain receive buffer
-         * size from associated socket.
-         */
-        public DatagramSizeTracker(
-            Callable<Integer> receiveBufferSizeSupplier)
+        if (p != null)
         {
-            this.receiveBufferSizeSupplier = receiveBufferSizeSupplier;
-        }
+            droppedPackets.incrementAndGet();
+            droppedBytes.addAndGet(length(p));
 
-        /**
-         * Check if total bytes stored in {@link #buffer} exceeds socket's
-         * receive buffer size.
-         * @return true if size exceeded, false - otherwise
-         */
-        boolean isExceedReceiveBufferSize()
-        {
-            return totalBuffersByteSize > cachedReceiveBufferSize;
+            // This buffer owns the datagrams added to it, and nobody is going
+            // to receive p anymore.
+            DatagramPacketPool.getDefault().release(p);
         }
+    }
 
-        /**
-         * Updates computed value of total datagrams size in bytes
-         * stored in {@link #buffer} with datagram just added to buffer.
-         * @param p datagram packed added to {@link #buffer}
-         */
-        void trackDatagramAdded(DatagramPacket p)
-        {
-            ++totalDatagramsAdded;
+    /**
+     * Gets the value of <tt>SO_RCVBUF</tt> to enforce. For the sake of
+     * performance, do not invoke the method getReceiveBufferSize() of
+     * DatagramSocket or Socket on every packet added to this buffer.
+     *
+     * @return the maximum total size in bytes of the datagrams in this buffer.
+     */
+    private int getReceiveBufferSize()
+    {
+        int receiveBufferSize = this.cachedReceiveBufferSize;
 
-            final int pSize = p.getLength();
-            if (pSize <= 0)
+        if ((added.incrementAndGet() % RECEIVE_BUFFER_SIZE_REFRESH_INTERVAL
+                    == 0)
+                || (receiveBufferSize <= 0))
+        {
+            try
             {
-                return;
+                receiveBufferSize = this.receiveBufferSizeSupplier.call();
             }
-
-            totalBuffersByteSize += pSize;
-
-            // If the added packet is the only element of this list, do not
-            // drop it because of the enforcement of SO_RCVBUF.
-            if (buffer.size() > 1)
+            catch (Exception e)
             {
-                // For the sake of performance, do not invoke the method
-                // getReceiveBufferSize() of DatagramSocket or Socket on
-                // every packet added to this buffer.
-                int receiveBufferSize = this.cachedReceiveBufferSize;
-
-                if ((receiveBufferSize <= 0)
-                    || (totalDatagramsAdded % 1000 == 0))
-                {
-                    try
-                    {
-                        receiveBufferSize
-                            = this.receiveBufferSizeSupplier.call();
-                    }
-                    catch (Exception e)
-                    {
-                        // nothing to do
-                    }
-
-                    if (receiveBufferSize <= 0)
-                    {
-                        receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
-                    }
-                    else if (receiveBufferSize
-                        < DEFAULT_RECEIVE_BUFFER_SIZE)
-                    {
-                        // Well, a manual page on SO_RCVBUF talks about
-                        // doubling. In order to stay on the safe side and
-                        // given that there was no limit on the size of the
-                        // buffer before, double the receive buffer size.
-                        receiveBufferSize *= 2;
-                        if (receiveBufferSize <= 0)
-                        {
-                            receiveBufferSize
-                                = DEFAULT_RECEIVE_BUFFER_SIZE;
-                        }
-                    }
-                    this.cachedReceiveBufferSize = receiveBufferSize;
-                }
+                // nothing to do
             }
-        }
 
-        /**
-         * Updates computed value of total datagrams size in bytes
-         * stored in {@link #buffer} with datagram just removed from buffer.
-         * @param p datagram packed removed from {@link #buffer}
-         */
-        void trackDatagramRemoved(DatagramPacket p)
-        {
-            final int pSize = p.getLength();
-            if (pSize <= 0)
+            if (receiveBufferSize <= 0)
             {
-                return;
+                receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
             }
-
-            totalBuffersByteSize -= pSize;
-            if (totalBuffersByteSize < 0)
+            else if (receiveBufferSize < DEFAULT_RECEIVE_BUFFER_SIZE)
             {
-                totalBuffersByteSize = 0;
+                // Well, a manual page on SO_RCVBUF talks about doubling. In
+                // order to stay on the safe side and given that there was no
+                // limit on the size of the buffer before, double the receive
+                // buffer size.
+                receiveBufferSize *= 2;
+                if (receiveBufferSize <= 0)
+                {
+                    receiveBufferSize = DEFAULT_RECEIVE_BUFFER_SIZE;
+                }
             }
+            this.cachedReceiveBufferSize = receiveBufferSize;
         }
+        return receiveBufferSize;
+    }
+
+    /**
+     * Gets the length in bytes of a datagram which is accounted for in
+     * {@link #bytes}.
+     *
+     * @param p the datagram.
+     * @return the length of <tt>p</tt>, or <tt>0</tt> if it is negative.
+     */
+    private static long length(DatagramPacket p)
+    {
+        return Math.max(0, p.getLength());
     }
 }
@@ -103,6 +103,19 @@ public class StunDatagramPacketFilter
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The STUN methods which are accepted by this filter and its subclasses
+     * all have a first byte of <tt>0</tt> or <tt>1</tt>.
+     * </p>
+     */
+    @Override
+    public boolean mayAccept(DemuxPacketType type)
+    {
+        return type == DemuxPacketType.STUN;
+    }
+
     /**
      * Determines whether this <tt>DatagramPacketFilter</tt> accepts a
      * <tt>DatagramPacket</tt> which represents a STUN message with a specific
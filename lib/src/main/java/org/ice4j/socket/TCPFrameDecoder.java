@@ -0,0 +1,423 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+
+/**
+ * Decodes RFC 4571 frames (a 2-byte length field followed by the data)
+ * incrementally from a <tt>ReadableByteChannel</tt> into a reusable buffer.
+ * <p>
+ * A decoder either reads ahead, i.e. reads as many bytes as are available so
+ * that a single read from the network can return several frames, or reads
+ * exactly the bytes which it has been asked for, so that the channel can be
+ * handed over to another reader after a frame without losing the bytes which
+ * follow it. The buffers of the latter are taken from a shared pool and
+ * have to be returned with {@link #release()}; they are meant for the short
+ * time between the accepting of a connection and the handing over of its
+ * channel, during which many connections may be pending.
+ * </p>
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class TCPFrameDecoder
+{
+    /**
+     * The size in bytes of the buffers of decoders which read ahead.
+     */
+    private static final int READ_AHEAD_BUFFER_SIZE = 8192;
+
+    /**
+     * The size in bytes of the pooled buffers.
+     */
+    static final int POOLED_BUFFER_SIZE = 2048;
+
+    /**
+     * The maximum number of buffers kept in {@link #pool}.
+     */
+    private static final int POOL_CAPACITY = 256;
+
+    /**
+     * The buffers which are not used by any decoder.
+     */
+    private static final BlockingQueue<ByteBuffer> pool
+        = new ArrayBlockingQueue<>(POOL_CAPACITY);
+
+    /**
+     * Creates a decoder which reads ahead.
+     *
+     * @return a decoder which reads ahead.
+     */
+    public static TCPFrameDecoder createReadAhead()
+    {
+        return new TCPFrameDecoder(true);
+    }
+
+    /**
+     * Creates a decoder which reads exactly the bytes it has been asked for
+     * and uses a pooled buffer. Its buffer has to be returned with
+     * {@link #release()}.
+     *
+     * @return a decoder which reads exactly the bytes it has been asked for.
+     */
+    public static TCPFrameDecoder createExact()
+    {
+        return new TCPFrameDecoder(false);
+    }
+
+    /**
+     * Whether this decoder reads as many bytes as are available, or exactly
+     * the bytes which it has been asked for.
+     */
+    private final boolean readAhead;
+
+    /**
+     * The bytes which have been read and not consumed yet, in read mode
+     * (i.e. flipped), or <tt>null</tt> if no buffer has been allocated or
+     * it has been released.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Whether {@link #buffer} has been taken from {@link #pool}.
+     */
+    private boolean bufferPooled = false;
+
+    /**
+     * Initializes a new <tt>TCPFrameDecoder</tt>.
+     *
+     * @param readAhead whether to read as many bytes as are available, or
+     * exactly the bytes which have been asked for.
+     */
+    private TCPFrameDecoder(boolean readAhead)
+    {
+        this.readAhead = readAhead;
+    }
+
+    /**
+     * Returns the number of bytes which have been read and not consumed yet.
+     *
+     * @return the number of bytes which have been read and not consumed yet.
+     */
+    public int remaining()
+    {
+        return (buffer == null) ? 0 : buffer.remaining();
+    }
+
+    /**
+     * Reads from a channel, once, until at least a specific number of bytes
+     * are buffered. Does not block if <tt>channel</tt> is non-blocking.
+     *
+     * @param channel the channel to read from.
+     * @param count the number of bytes which are to be buffered.
+     * @return <tt>true</tt> if at least <tt>count</tt> bytes are buffered.
+     * @throws IOException if reading from <tt>channel</tt> fails or reaches
+     * the end of the stream.
+     */
+    public boolean fill(ReadableByteChannel channel, int count)
+        throws IOException
+    {
+        ByteBuffer buffer = ensureCapacity(count);
+
+        if (buffer.remaining() >= count)
+        {
+            return true;
+        }
+
+        buffer.compact();
+        if (!readAhead)
+        {
+            buffer.limit(count);
+        }
+        try
+        {
+            if (channel.read(buffer) == -1)
+            {
+                throw new EOFException("End of stream!");
+            }
+        }
+        finally
+        {
+            buffer.flip();
+        }
+        return buffer.remaining() >= count;
+    }
+
+    /**
+     * Reads from a channel until a complete frame is buffered. Does not block
+     * if <tt>channel</tt> is non-blocking.
+     *
+     * @param channel the channel to read from.
+     * @return <tt>true</tt> if a complete frame is buffered.
+     * @throws IOException if reading from <tt>channel</tt> fails or reaches
+     * the end of the stream.
+     */
+    public boolean fillFrame(ReadableByteChannel channel)
+        throws IOException
+    {
+        return fill(channel, 2) && fill(channel, 2 + getFrameLength());
+    }
+
+    /**
+     * Returns whether the buffered bytes may be the beginning of a specific
+     * sequence of bytes, i.e. they do not differ from it.
+     *
+     * @param prefix the sequence of bytes.
+     * @return <tt>true</tt> if the buffered bytes do not differ from
+     * <tt>prefix</tt>.
+     */
+    public boolean mayStartWith(byte[] prefix)
+    {
+        int length = Math.min(prefix.length, remaining());
+
+        for (int i = 0; i < length; i++)
+        {
+            if (buffer.get(buffer.position() + i) != prefix[i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Consumes a specific number of buffered bytes.
+     *
+     * @param count the number of bytes to consume.
+     */
+    public void skip(int count)
+    {
+        buffer.position(buffer.position() + count);
+    }
+
+    /**
+     * Returns the length of the frame at the head of the buffered bytes.
+     *
+     * @return the length of the frame at the head of the buffered bytes, or
+     * <tt>-1</tt> if its length field has not been read yet.
+     */
+    public int getFrameLength()
+    {
+        if (remaining() < 2)
+        {
+            return -1;
+        }
+
+        int position = buffer.position();
+
+        return ((buffer.get(position) & 0xFF) << 8)
+            | (buffer.get(position + 1) & 0xFF);
+    }
+
+    /**
+     * Returns whether the frame at the head of the buffered bytes is
+     * complete.
+     *
+     * @return whether the frame at the head of the buffered bytes is
+     * complete.
+     */
+    public boolean hasFrame()
+    {
+        int frameLength = getFrameLength();
+
+        return frameLength != -1 && remaining() >= 2 + frameLength;
+    }
+
+    /**
+     * Returns the array which holds the buffered bytes. The data of the frame
+     * at the head of the buffered bytes starts at {@link #getFrameOffset()}.
+     * Valid until the next call to a method which reads or consumes.
+     *
+     * @return the array which holds the buffered bytes.
+     */
+    public byte[] getData()
+    {
+        return buffer.array();
+    }
+
+    /**
+     * Returns the offset in {@link #getData()} of the data of the frame at the
+     * head of the buffered bytes.
+     *
+     * @return the offset in {@link #getData()} of the data of the frame at the
+     * head of the buffered bytes.
+     */
+    public int getFrameOffset()
+    {
+        return buffer.arrayOffset() + buffer.position() + 2;
+    }
+
+    /**
+     * Consumes the complete frame at the head of the buffered bytes, if any,
+     * and copies it into a <tt>DatagramPacket</tt> at its offset. A new buffer
+     * is allocated for the packet only if its buffer is too small for the
+     * frame.
+     *
+     * @param p the <tt>DatagramPacket</tt> to copy the frame into.
+     * @return <tt>true</tt> if a frame has been copied into <tt>p</tt>.
+     */
+    public boolean pollFrame(DatagramPacket p)
+    {
+        if (!hasFrame())
+        {
+            return false;
+        }
+
+        int frameLength = getFrameLength();
+
+        buffer.position(buffer.position() + 2);
+        copyInto(p, frameLength);
+        return true;
+    }
+
+    /**
+     * Reads a frame from a blocking channel into a <tt>DatagramPacket</tt> at
+     * its offset. The part of the frame which has been read ahead is copied;
+     * the rest is read directly into the buffer of the packet. A new buffer is
+     * allocated for the packet only if its buffer is too small for the frame.
+     *
+     * @param channel the blocking channel to read from.
+     * @param p the <tt>DatagramPacket</tt> to read the frame into.
+     * @throws IOException if reading from <tt>channel</tt> fails or reaches
+     * the end of the stream.
+     */
+    public void receive(ReadableByteChannel channel, DatagramPacket p)
+        throws IOException
+    {
+        while (!fill(channel, 2));
+
+        int frameLength = getFrameLength();
+
+        buffer.position(buffer.position() + 2);
+
+        int buffered = copyInto(p, frameLength);
+
+        if (buffered < frameLength)
+        {
+            ByteBuffer byteBuffer
+                = ByteBuffer.wrap(
+                        p.getData(),
+                        p.getOffset() + buffered,
+                        frameLength - buffered);
+
+            while (byteBuffer.hasRemaining())
+            {
+                if (channel.read(byteBuffer) == -1)
+                {
+                    throw new EOFException("End of stream!");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the buffer of this decoder to the pool, if it has been taken
+     * from it, and drops the bytes which have not been consumed.
+     */
+    public void release()
+    {
+        ByteBuffer buffer = this.buffer;
+
+        this.buffer = null;
+        if (buffer != null && bufferPooled)
+        {
+            buffer.clear();
+            pool.offer(buffer);
+        }
+        bufferPooled = false;
+    }
+
+    /**
+     * Consumes up to <tt>frameLength</tt> buffered bytes and copies them into
+     * a <tt>DatagramPacket</tt> at its offset, and sets the length of the
+     * packet to <tt>frameLength</tt>.
+     *
+     * @param p the <tt>DatagramPacket</tt> to copy into.
+     * @param frameLength the length of the frame.
+     * @return the number of bytes copied.
+     */
+    private int copyInto(DatagramPacket p, int frameLength)
+    {
+        byte[] data = p.getData();
+        int offset = p.getOffset();
+
+        if (data == null || data.length - offset < frameLength)
+        {
+            data = new byte[frameLength];
+            offset = 0;
+        }
+
+        int buffered = Math.min(frameLength, buffer.remaining());
+
+        buffer.get(data, offset, buffered);
+        p.setData(data, offset, frameLength);
+        return buffered;
+    }
+
+    /**
+     * Makes sure that {@link #buffer} can hold a specific number of bytes,
+     * allocating or growing it if necessary.
+     *
+     * @param capacity the number of bytes.
+     * @return {@link #buffer}.
+     */
+    private ByteBuffer ensureCapacity(int capacity)
+    {
+        ByteBuffer buffer = this.buffer;
+
+        if (buffer == null)
+        {
+            if (readAhead)
+            {
+                buffer
+                    = ByteBuffer.allocate(
+                            Math.max(capacity, READ_AHEAD_BUFFER_SIZE));
+            }
+            else if (capacity <= POOLED_BUFFER_SIZE)
+            {
+                buffer = pool.poll();
+                if (buffer == null)
+                {
+                    buffer = ByteBuffer.allocate(POOLED_BUFFER_SIZE);
+                }
+                bufferPooled = true;
+            }
+            else
+            {
+                buffer = ByteBuffer.allocate(capacity);
+            }
+            buffer.flip();
+            this.buffer = buffer;
+        }
+        else if (buffer.capacity() < capacity)
+        {
+            // Only frames larger than the buffer get here, which are rare.
+            ByteBuffer newBuffer = ByteBuffer.allocate(capacity);
+
+            newBuffer.put(buffer);
+            newBuffer.flip();
+            release();
+            buffer = newBuffer;
+            this.buffer = buffer;
+        }
+        return buffer;
+    }
+}
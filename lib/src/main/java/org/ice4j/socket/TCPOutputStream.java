@@ -18,6 +18,8 @@
 package org.ice4j.socket;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
 
 /**
  * TCP output stream for TCP socket. It is used to multiplex sockets and keep
@@ -41,12 +43,49 @@ public class TCPOutputStream
      */
     private final OutputStream outputStream;
 
+    /**
+     * The <tt>SocketChannel</tt> which {@link #outputStream} writes to, if
+     * known. The frames are written to it directly with gathering writes, so
+     * that the data does not have to be copied to prepend the 2-byte length
+     * field.
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The <tt>ByteBuffer</tt>s of the frame which is being written to
+     * {@link #channel}: the 2-byte length field and the data. Reused for all
+     * frames; access synchronized via <tt>this</tt>.
+     */
+    private final ByteBuffer[] frameBuffers = new ByteBuffer[2];
+
+    /**
+     * The buffer into which a frame is assembled in order to be written to
+     * {@link #outputStream} in a single write when {@link #channel} is
+     * <tt>null</tt>. Grown as needed; access synchronized via <tt>this</tt>.
+     */
+    private byte[] frameBuffer;
+
     /**
      * Initializes a new <tt>TCPOutputStream</tt>.
      *
      * @param outputStream original <tt>OutputStream</tt>
      */
     public TCPOutputStream(OutputStream outputStream)
+    {
+        this(outputStream, null);
+    }
+
+    /**
+     * Initializes a new <tt>TCPOutputStream</tt> which writes the frames
+     * directly to the <tt>SocketChannel</tt> of a specific
+     * <tt>OutputStream</tt>.
+     *
+     * @param outputStream original <tt>OutputStream</tt>
+     * @param channel the blocking <tt>SocketChannel</tt> which
+     * <tt>outputStream</tt> writes to without transforming the data, or
+     * <tt>null</tt> if it is not known
+     */
+    public TCPOutputStream(OutputStream outputStream, SocketChannel channel)
     {
         this.outputStream = outputStream;
 
@@ -55,6 +94,9 @@ public class TCPOutputStream
         frame
             = !(outputStream
                     instanceof GoogleRelayedCandidateSocket.TCPOutputStream);
+        this.channel = frame ? channel : null;
+        if (this.channel != null)
+            frameBuffers[0] = ByteBuffer.allocate(2);
     }
 
     /**
@@ -84,20 +126,85 @@ public class TCPOutputStream
     public void write(byte[] b, int off, int len)
         throws IOException
     {
-        if (frame)
+        if (!frame)
         {
-            int newLen = len + 2;
-            byte newB[] = new byte[newLen];
-
-            newB[0] = (byte) ((len >> 8) & 0xFF);
-            newB[1] = (byte) (len & 0xFF);
-            System.arraycopy(b, off, newB, 2, len);
-            outputStream.write(newB, 0, newLen);
+            outputStream.write(b, off, len);
+        }
+        else if (len > 0xFFFF)
+        {
+            throw new IOException(
+                    "Frame too long for RFC 4571 framing: " + len);
+        }
+        else if (channel != null)
+        {
+            writeToChannel(b, off, len);
         }
         else
         {
-            outputStream.write(b, off, len);
+            writeToOutputStream(b, off, len);
+        }
+    }
+
+    /**
+     * Writes a frame to {@link #channel} with a gathering write of the length
+     * field and the data.
+     *
+     * @param b the data
+     * @param off the offset of the data in <tt>b</tt>
+     * @param len the length of the data
+     * @throws IOException if writing to <tt>channel</tt> fails
+     */
+    private synchronized void writeToChannel(byte[] b, int off, int len)
+        throws IOException
+    {
+        ByteBuffer header = frameBuffers[0];
+        ByteBuffer data = frameBuffers[1];
+
+        header.clear();
+        header.put((byte) ((len >> 8) & 0xFF));
+        header.put((byte) (len & 0xFF));
+        header.flip();
+
+        // Callers usually send from the same buffer, so reuse its wrapper.
+        if ((data == null) || (data.array() != b))
+        {
+            data = ByteBuffer.wrap(b);
+            frameBuffers[1] = data;
+        }
+        data.limit(off + len);
+        data.position(off);
+
+        // A blocking channel writes everything at once, but be safe.
+        while (header.hasRemaining() || data.hasRemaining())
+        {
+            channel.write(frameBuffers);
+        }
+    }
+
+    /**
+     * Writes a frame to {@link #outputStream} in a single write, assembling
+     * it in a reusable buffer.
+     *
+     * @param b the data
+     * @param off the offset of the data in <tt>b</tt>
+     * @param len the length of the data
+     * @throws IOException if writing to <tt>outputStream</tt> fails
+     */
+    private synchronized void writeToOutputStream(byte[] b, int off, int len)
+        throws IOException
+    {
+        int frameLen = len + 2;
+        byte[] frameBuffer = this.frameBuffer;
+
+        if ((frameBuffer == null) || (frameBuffer.length < frameLen))
+        {
+            frameBuffer = new byte[Math.max(frameLen, 1500)];
+            this.frameBuffer = frameBuffer;
         }
+        frameBuffer[0] = (byte) ((len >> 8) & 0xFF);
+        frameBuffer[1] = (byte) (len & 0xFF);
+        System.arraycopy(b, off, frameBuffer, 2, len);
+        outputStream.write(frameBuffer, 0, frameLen);
     }
 
     /**
@@ -25,6 +25,7 @@ import java.util.logging.*;
 
 import org.ice4j.*;
 import org.ice4j.socket.*;
+import org.ice4j.util.*;
 
 /**
  * The Network Access Point is the most outward part of the stack. It is
@@ -210,6 +211,7 @@ class Connector
                 if (!running)
                     return;
 
+                Ice4jMetrics.STUN_PACKETS_RECEIVED.increment();
                 if (logger.isLoggable(Level.FINEST))
                 {
                     logger.finest("received datagram packet - addr: "
@@ -322,14 +324,35 @@ class Connector
      */
     void sendMessage(byte[] message, TransportAddress address)
         throws IOException
+    {
+        sendMessage(message, 0, message.length, address);
+    }
+
+    /**
+     * Makes the access point send a range of <tt>message</tt> to the specified
+     * <tt>address</tt>.
+     *
+     * @param message the array which contains the bytes to send.
+     * @param offset the offset of the bytes to send in <tt>message</tt>.
+     * @param length the number of bytes to send.
+     * @param address the destination of the message.
+     * @throws IOException if an error occurs while sending the message.
+     */
+    void sendMessage(
+            byte[] message,
+            int offset,
+            int length,
+            TransportAddress address)
+        throws IOException
     {
         DatagramPacket datagramPacket
-            = new DatagramPacket(message, 0, message.length, address);
+            = new DatagramPacket(message, offset, length, address);
 
         IceSocketWrapper sock = this.sock;
         if (sock != null)
         {
             sock.send(datagramPacket);
+            Ice4jMetrics.STUN_PACKETS_SENT.increment();
         }
         else
         {
@@ -23,6 +23,7 @@ import java.util.logging.*;
 
 import org.ice4j.*;
 import org.ice4j.message.*;
+import org.ice4j.util.*;
 
 /**
  * The class is used to parse and dispatch incoming messages by being
@@ -77,6 +78,12 @@ class MessageProcessingTask
      */
     private Consumer<MessageProcessingTask> rawMessageProcessedHandler;
 
+    /**
+     * The value of {@link System#nanoTime()} when {@link #rawMessage} was
+     * assigned, or -1 if {@link Ice4jMetrics} are disabled.
+     */
+    private long enqueuedNanos = -1;
+
     /**
      * Creates a Message processor.
      *
@@ -126,6 +133,7 @@ class MessageProcessingTask
         }
         rawMessage = message;
         rawMessageProcessedHandler = onProcessed;
+        enqueuedNanos = Ice4jMetrics.isEnabled() ? System.nanoTime() : -1;
     }
 
     /**
@@ -136,6 +144,7 @@ class MessageProcessingTask
         cancelled.set(false);
         rawMessage = null;
         rawMessageProcessedHandler = null;
+        enqueuedNanos = -1;
     }
 
     /**
@@ -164,6 +173,12 @@ class MessageProcessingTask
             }
             rawMessage = null;
             rawMessageProcessedHandler = null;
+            if (enqueuedNanos != -1)
+            {
+                Ice4jMetrics.STUN_PROCESSING_LAG.record(
+                    (System.nanoTime() - enqueuedNanos) / 1000);
+                enqueuedNanos = -1;
+            }
 
             if (cancelled.get())
             {
@@ -182,6 +197,7 @@ class MessageProcessingTask
             }
             catch (StunException ex)
             {
+                Ice4jMetrics.STUN_DECODE_FAILURES.increment();
                 errorHandler.handleError(
                     "Failed to decode a stun message!",
                     ex);
@@ -20,6 +20,7 @@ package org.ice4j.stack;
 import org.ice4j.*;
 import org.ice4j.message.*;
 import org.ice4j.socket.*;
+import org.ice4j.util.*;
 import org.jitsi.utils.concurrent.*;
 
 import java.io.*;
@@ -147,6 +148,7 @@ public class NetAccessManager
         = messageProcessingTask -> {
 
         activeTasks.remove(messageProcessingTask);
+        Ice4jMetrics.STUN_QUEUED_MESSAGES.add(-1);
 
         final boolean isAdded = taskPool.offer(messageProcessingTask);
         if (!isAdded && logger.isLoggable(Level.FINEST))
@@ -552,6 +554,7 @@ public class NetAccessManager
         messageProcessingTask.setMessage(message, onRawMessageProcessed);
 
         activeTasks.add(messageProcessingTask);
+        Ice4jMetrics.STUN_QUEUED_MESSAGES.add(1);
 
         // Use overload which does not return Future object to avoid
         // unnecessary allocation
@@ -603,7 +606,24 @@ public class NetAccessManager
     {
         boolean pad = srcAddr.getTransport() == Transport.TCP
             || srcAddr.getTransport() == Transport.TLS;
-        sendMessage(channelData.encode(pad), srcAddr, remoteAddr);
+
+        if (channelData.canEncodeInPlace(pad))
+        {
+            // The caller has reserved room for the header before the data, so
+            // there is no need to copy it.
+            int length = channelData.encodeInPlace(pad);
+
+            sendMessage(
+                    channelData.getData(),
+                    channelData.getDataOffset() - ChannelData.HEADER_LENGTH,
+                    length,
+                    srcAddr,
+                    remoteAddr);
+        }
+        else
+        {
+            sendMessage(channelData.encode(pad), srcAddr, remoteAddr);
+        }
     }
 
     /**
@@ -624,6 +644,32 @@ public class NetAccessManager
             TransportAddress remoteAddr)
         throws IllegalArgumentException,
                IOException
+    {
+        sendMessage(bytes, 0, bytes.length, srcAddr, remoteAddr);
+    }
+
+    /**
+     * Sends a range of the specified bytes through the specified access point.
+     *
+     * @param bytes the array which contains the bytes to send.
+     * @param offset the offset of the bytes to send in <tt>bytes</tt>.
+     * @param length the number of bytes to send.
+     * @param srcAddr the access point to use to send the bytes.
+     * @param remoteAddr the destination of the message.
+     *
+     * @throws IllegalArgumentException if the apDescriptor references an
+     * access point that had not been installed,
+     * @throws IOException  if an error occurs while sending message bytes
+     * through the network socket.
+     */
+    void sendMessage(
+            byte[] bytes,
+            int offset,
+            int length,
+            TransportAddress srcAddr,
+            TransportAddress remoteAddr)
+        throws IllegalArgumentException,
+               IOException
     {
         Connector ap = getConnector(srcAddr, remoteAddr);
         if (ap == null)
@@ -631,7 +677,7 @@ public class NetAccessManager
             throw new SocketNotFoundException("No socket found for " + srcAddr + "->" + remoteAddr);
         }
 
-        ap.sendMessage(bytes, remoteAddr);
+        ap.sendMessage(bytes, offset, length, remoteAddr);
     }
 
     public class SocketNotFoundException extends IllegalArgumentException
@@ -0,0 +1,147 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.stack;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.ice4j.*;
+import org.ice4j.util.*;
+
+/**
+ * Caches the retransmission timeout (RTO) of the paths to the remote addresses
+ * that a <tt>StunStack</tt> sends requests to, as RFC 5389 (Section 7.2.1)
+ * suggests, so that new client transactions can be seeded with it. An estimate
+ * which has not been updated for {@link #EXPIRATION_NANOS} is discarded.
+ */
+class RtoCache
+{
+    /**
+     * The time after which an estimate that has not been updated is
+     * discarded. RFC 5389 recommends 10 minutes.
+     */
+    static final long EXPIRATION_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /**
+     * The maximum number of remote addresses to cache estimates for.
+     */
+    static final int MAX_SIZE = 4096;
+
+    /**
+     * The estimates mapped against the remote addresses they are for.
+     */
+    private final Map<TransportAddress, Entry> entries
+        = new ConcurrentHashMap<>();
+
+    /**
+     * Updates the estimate for a remote address with a round trip time sample.
+     *
+     * @param remoteAddress the remote address the sample is for.
+     * @param rttNanos the round trip time in nanoseconds. Negative values
+     * (i.e. unknown round trip times) are ignored.
+     */
+    void update(TransportAddress remoteAddress, long rttNanos)
+    {
+        if (rttNanos < 0)
+            return;
+
+        long now = System.nanoTime();
+        Entry entry = entries.get(remoteAddress);
+
+        if (entry == null || entry.isExpired(now))
+        {
+            if (entry == null && entries.size() >= MAX_SIZE)
+            {
+                expire(now);
+                if (entries.size() >= MAX_SIZE)
+                    return;
+            }
+            entry = new Entry();
+            entries.put(remoteAddress, entry);
+        }
+        entry.estimator.update(rttNanos);
+        entry.lastUpdateNanos = now;
+    }
+
+    /**
+     * Returns the retransmission timeout for a remote address.
+     *
+     * @param remoteAddress the remote address to get the retransmission
+     * timeout for.
+     * @return the retransmission timeout in nanoseconds, or
+     * {@link RttEstimator#UNKNOWN} if there is no (current) estimate for
+     * <tt>remoteAddress</tt>.
+     */
+    long getRtoNanos(TransportAddress remoteAddress)
+    {
+        Entry entry = entries.get(remoteAddress);
+
+        if (entry == null || entry.isExpired(System.nanoTime()))
+            return RttEstimator.UNKNOWN;
+
+        return entry.estimator.getRtoNanos();
+    }
+
+    /**
+     * Returns the round trip time estimator for a remote address.
+     *
+     * @param remoteAddress the remote address to get the estimator for.
+     * @return the estimator for <tt>remoteAddress</tt>, or <tt>null</tt> if
+     * there is no (current) estimate.
+     */
+    RttEstimator getRttEstimator(TransportAddress remoteAddress)
+    {
+        Entry entry = entries.get(remoteAddress);
+
+        if (entry == null || entry.isExpired(System.nanoTime()))
+            return null;
+
+        return entry.estimator;
+    }
+
+    /**
+     * Discards all estimates.
+     */
+    void clear()
+    {
+        entries.clear();
+    }
+
+    /**
+     * Discards the estimates which have expired.
+     *
+     * @param now the current value of {@link System#nanoTime()}.
+     */
+    private void expire(long now)
+    {
+        entries.values().removeIf(entry -> entry.isExpired(now));
+    }
+
+    /**
+     * The estimate for a single remote address.
+     */
+    private static class Entry
+    {
+        final RttEstimator estimator = new RttEstimator();
+
+        volatile long lastUpdateNanos = System.nanoTime();
+
+        boolean isExpired(long now)
+        {
+            return now - lastUpdateNanos > EXPIRATION_NANOS;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.ice4j.stack;
 
 import org.ice4j.*;
 import org.ice4j.message.*;
+import org.ice4j.util.Ice4jMetrics;
 import org.ice4j.util.PeriodicRunnable;
 import org.jitsi.utils.concurrent.*;
 
@@ -76,12 +77,11 @@ public class StunClientTransaction
     public static final int DEFAULT_ORIGINAL_WAIT_INTERVAL = 100;
 
     /**
-     * The pool of <tt>Thread</tt>s which schedules retransmission of
-     * <tt>StunClientTransaction</tt>s.
+     * The minimum number of milliseconds a client should wait before
+     * retransmitting when the wait intervals are derived from the round trip
+     * time measured to the destination.
      */
-    private static final ScheduledExecutorService retransmissionTimer
-        = ExecutorFactory.createSingleThreadScheduledExecutor(
-            "ice4j.StunClientTransaction-timer-", 60, TimeUnit.SECONDS);
+    public static final int MIN_ADAPTIVE_WAIT_INTERVAL = 50;
 
     /**
      * The pool of <tt>Thread</tt>s which retransmits
@@ -153,6 +153,17 @@ public class StunClientTransaction
      */
     private final Retransmitter retransmitter;
 
+    /**
+     * The value of {@link System#nanoTime()} when the request was first sent.
+     */
+    private volatile long sendTimeNanos;
+
+    /**
+     * Whether the request has been retransmitted, in which case the round trip
+     * time of the transaction is unknown.
+     */
+    private volatile boolean retransmitted;
+
     /**
      * Creates a client transaction.
      *
@@ -242,6 +253,10 @@ public class StunClientTransaction
         logger.fine(
                 "sending STUN " + " tid " + transactionID + " from "
                     + localAddress + " to " + requestDestination);
+        // The wait intervals may have been changed since the retransmitter
+        // was created.
+        retransmitter.nextRetransmissionDelay = originalWaitInterval;
+        sendTimeNanos = System.nanoTime();
         sendRequest0();
 
         this.retransmitter.schedule();
@@ -271,6 +286,97 @@ public class StunClientTransaction
         }
     }
 
+    /**
+     * Derives the wait intervals of this transaction from the retransmission
+     * timeout (RTO) of the path to its destination. The RTO (clamped to
+     * [{@link #MIN_ADAPTIVE_WAIT_INTERVAL}, {@link #maxWaitInterval}] and
+     * never below a smaller configured original wait interval) becomes
+     * the original wait interval.
+     * <p>
+     * By default the maximum wait interval is scaled by the same factor (but
+     * never beyond its current value) so that the whole transaction times out
+     * proportionally sooner on fast paths, and the number of retransmissions
+     * is not changed. If the duration of the transaction is to be kept (e.g.
+     * because its timers were chosen by the application, as for consent
+     * freshness), the maximum wait interval is not changed and retransmissions
+     * are added until the transaction lasts at least as long as it did with
+     * its original timers. Must be called before the request is sent.
+     * </p>
+     *
+     * @param rtoNanos the retransmission timeout in nanoseconds.
+     * @param keepDuration <tt>true</tt> to keep the duration of the
+     * transaction, <tt>false</tt> to scale it with the RTO.
+     */
+    void setRetransmissionTimeout(long rtoNanos, boolean keepDuration)
+    {
+        if (originalWaitInterval <= 0 || maxWaitInterval <= 0)
+            return;
+
+        long rto = TimeUnit.NANOSECONDS.toMillis(rtoNanos + 999_999);
+        int newOriginalWaitInterval
+            = (int) Math.max(
+                    Math.min(MIN_ADAPTIVE_WAIT_INTERVAL, originalWaitInterval),
+                    Math.min(rto, maxWaitInterval));
+
+        if (keepDuration)
+        {
+            long duration
+                = getDuration(
+                    originalWaitInterval,
+                    maxWaitInterval,
+                    maxRetransmissions);
+
+            while (getDuration(
+                        newOriginalWaitInterval,
+                        maxWaitInterval,
+                        maxRetransmissions)
+                    < duration)
+            {
+                maxRetransmissions++;
+            }
+        }
+        else
+        {
+            long scaledMaxWaitInterval
+                = (long) maxWaitInterval * newOriginalWaitInterval
+                    / originalWaitInterval;
+
+            maxWaitInterval
+                = (int) Math.max(
+                        newOriginalWaitInterval,
+                        Math.min(scaledMaxWaitInterval, maxWaitInterval));
+        }
+        originalWaitInterval = newOriginalWaitInterval;
+    }
+
+    /**
+     * Returns the time from the first transmission of a request until its
+     * transaction times out if no response is received.
+     *
+     * @param originalWaitInterval the wait interval before the first
+     * retransmission.
+     * @param maxWaitInterval the maximum wait interval.
+     * @param maxRetransmissions the number of retransmissions.
+     * @return the duration of the transaction in milliseconds.
+     */
+    private static long getDuration(
+            int originalWaitInterval,
+            int maxWaitInterval,
+            int maxRetransmissions)
+    {
+        long duration = 0;
+        int waitInterval = originalWaitInterval;
+
+        // The transaction times out one wait interval after the last
+        // retransmission.
+        for (int i = 0; i <= maxRetransmissions; i++)
+        {
+            duration += waitInterval;
+            waitInterval = Math.min(maxWaitInterval, 2 * waitInterval);
+        }
+        return duration;
+    }
+
     /**
      * Returns the request that was the reason for creating this transaction.
      *
@@ -311,13 +417,21 @@ public class StunClientTransaction
             cancel();
         }
 
+        long roundTripTimeNanos
+            = retransmitted ? -1 : System.nanoTime() - sendTimeNanos;
+
+        stackCallback.roundTripTimeMeasured(
+            requestDestination,
+            roundTripTimeNanos);
+
         responseCollector.processResponse(
             new StunResponseEvent(
                 stackCallback,
                 evt.getRawMessage(),
                 (Response) evt.getMessage(),
                 request,
-                transactionID));
+                transactionID,
+                roundTripTimeNanos));
     }
 
     /**
@@ -442,7 +556,7 @@ public class StunClientTransaction
 
         protected Retransmitter()
         {
-            super(retransmissionTimer, retransmissionExecutor);
+            super(stackCallback.getTasksScheduler(), retransmissionExecutor);
         }
 
         @Override
@@ -470,6 +584,8 @@ public class StunClientTransaction
                             + " waited " + curWaitInterval + " ms retrans "
                             + retransmissionCounter + " of "
                             + maxRetransmissions);
+                    retransmitted = true;
+                    Ice4jMetrics.STUN_RETRANSMISSIONS.increment();
                     sendRequest0();
                 }
                 catch (Exception ex)
@@ -484,6 +600,7 @@ public class StunClientTransaction
             }
             else
             {
+                Ice4jMetrics.STUN_TRANSACTION_TIMEOUTS.increment();
                 stackCallback.removeClientTransaction(
                     StunClientTransaction.this);
 
@@ -22,7 +22,11 @@ import org.ice4j.attribute.*;
 import org.ice4j.message.*;
 import org.ice4j.security.*;
 import org.ice4j.socket.*;
-import org.jitsi.utils.concurrent.*;
+import org.ice4j.util.Ice4jMetrics;
+import org.ice4j.util.PeriodicRunnable;
+import org.ice4j.util.PeriodicTaskMetrics;
+import org.ice4j.util.RttEstimator;
+import org.ice4j.util.ShardedScheduler;
 
 import javax.crypto.*;
 import java.io.*;
@@ -61,11 +65,10 @@ public class StunStack
 
     /**
      *  The ScheduledExecutorService to execute StunStack scheduled tasks,
-     *  in particular - expired server transactions collector.
+     *  in particular - expired server transactions collector and client
+     *  transaction retransmissions.
      */
-    private static final ScheduledExecutorService tasksScheduler
-        = ExecutorFactory.createSingleThreadScheduledExecutor(
-            "ice4j.StunStack-", 60, TimeUnit.SECONDS);
+    private final ScheduledExecutorService tasksScheduler;
 
     /**
      * Our network gateway.
@@ -112,6 +115,19 @@ public class StunStack
      */
     private static PacketLogger packetLogger;
 
+    /**
+     * The retransmission timeouts of the paths to the remote addresses that
+     * this stack sends requests to.
+     */
+    private final RtoCache rtoCache = new RtoCache();
+
+    /**
+     * Whether new client transactions derive their retransmission timers from
+     * the round trip times measured to their destination.
+     */
+    private volatile boolean adaptiveRetransmissions
+        = Boolean.getBoolean(StackProperties.ADAPTIVE_CTRAN_RETRANSMISSIONS);
+
     /**
      * Creates and starts a Network Access Point (Connector) based on the
      * specified socket.
@@ -374,6 +390,33 @@ public class StunStack
     public StunStack(PeerUdpMessageEventHandler peerUdpMessageEventHandler,
             ChannelDataEventHandler channelDataEventHandler)
     {
+        this(peerUdpMessageEventHandler, channelDataEventHandler, null);
+    }
+
+    /**
+     * Initializes a new <tt>StunStack</tt> instance with given
+     * peerUdpMessageEventHandler, channelDataEventHandler and scheduler.
+     *
+     * @param peerUdpMessageEventHandler the <tt>PeerUdpMessageEventHandler</tt>
+     *            that will handle incoming UDP messages which are not STUN
+     *            messages and ChannelData messages.
+     * @param channelDataEventHandler the <tt>ChannelDataEventHandler</tt> that
+     *            will handle incoming UDP messages which are ChannelData
+     *            messages.
+     * @param tasksScheduler the <tt>ScheduledExecutorService</tt> to run the
+     *            timers of the new instance on (e.g. the one of the
+     *            <tt>Agent</tt> which owns it), or <tt>null</tt> to assign it
+     *            to a shard of the default {@link ShardedScheduler}.
+     */
+    public StunStack(PeerUdpMessageEventHandler peerUdpMessageEventHandler,
+            ChannelDataEventHandler channelDataEventHandler,
+            ScheduledExecutorService tasksScheduler)
+    {
+        this.tasksScheduler
+            = tasksScheduler != null
+                ? tasksScheduler
+                : ShardedScheduler.getDefault().shardFor(this);
+
         /*
          * The Mac instantiation used in MessageIntegrityAttribute could take
          * several hundred milliseconds so we don't want it instantiated only
@@ -407,7 +450,75 @@ public class StunStack
     {
         this(null, null);
     }
+
+    /**
+     * Returns the <tt>ScheduledExecutorService</tt> which runs the timers of
+     * this <tt>StunStack</tt> and of its client transactions.
+     *
+     * @return the <tt>ScheduledExecutorService</tt> which runs the timers of
+     * this <tt>StunStack</tt>.
+     */
+    public ScheduledExecutorService getTasksScheduler()
+    {
+        return tasksScheduler;
+    }
     
+    /**
+     * Sets whether new client transactions of this stack derive their
+     * retransmission timers from the round trip times measured to their
+     * destination (see {@link StunClientTransaction#setRetransmissionTimeout})
+     * rather than using fixed ones. Disabling it discards the measurements.
+     *
+     * @param adaptiveRetransmissions <tt>true</tt> to enable adaptive
+     * retransmission timers, <tt>false</tt> to use fixed ones.
+     */
+    public void setAdaptiveRetransmissions(boolean adaptiveRetransmissions)
+    {
+        this.adaptiveRetransmissions = adaptiveRetransmissions;
+        if (!adaptiveRetransmissions)
+            rtoCache.clear();
+    }
+
+    /**
+     * Determines whether new client transactions of this stack derive their
+     * retransmission timers from the round trip times measured to their
+     * destination.
+     *
+     * @return <tt>true</tt> if adaptive retransmission timers are enabled.
+     */
+    public boolean isAdaptiveRetransmissions()
+    {
+        return adaptiveRetransmissions;
+    }
+
+    /**
+     * Returns the round trip time estimate of the path to a remote address,
+     * which is only maintained when adaptive retransmission timers are
+     * enabled.
+     *
+     * @param remoteAddress the remote address to get the estimate for.
+     * @return the round trip time estimate of the path to
+     * <tt>remoteAddress</tt>, or <tt>null</tt> if there is no current one.
+     */
+    public RttEstimator getRttEstimator(TransportAddress remoteAddress)
+    {
+        return rtoCache.getRttEstimator(remoteAddress);
+    }
+
+    /**
+     * Notifies this stack that a client transaction has measured the round
+     * trip time to its destination.
+     *
+     * @param remoteAddress the destination of the transaction.
+     * @param rttNanos the round trip time in nanoseconds, or a negative value
+     * if it is unknown (e.g. because the request was retransmitted).
+     */
+    void roundTripTimeMeasured(TransportAddress remoteAddress, long rttNanos)
+    {
+        if (adaptiveRetransmissions)
+            rtoCache.update(remoteAddress, rttNanos);
+    }
+
     /**
      * Returns the currently active instance of NetAccessManager.
      * @return the currently active instance of NetAccessManager.
@@ -638,6 +749,14 @@ public class StunStack
      * @param maxRetransmissions Maximum number of retransmissions. Once this
      * number is reached and if no response is received after maxWaitInterval
      * milliseconds the request is considered unanswered.
+     * <p>
+     * If adaptive retransmission timers are enabled and the round trip time to
+     * <tt>sendTo</tt> has been measured, the wait intervals are then derived
+     * from it (see {@link #setAdaptiveRetransmissions(boolean)}). If
+     * <tt>originalWaitInterval</tt> is specified, the transaction still lasts
+     * at least as long as with the specified timers, with more
+     * retransmissions if needed.
+     * </p>
      * @return the <tt>TransactionID</tt> of the <tt>StunClientTransaction</tt>
      * that we used in order to send the request.
      *
@@ -672,6 +791,19 @@ public class StunStack
             clientTransaction.maxWaitInterval = maxWaitInterval;
         if (maxRetransmissions >= 0)
             clientTransaction.maxRetransmissions = maxRetransmissions;
+        if (adaptiveRetransmissions)
+        {
+            long rtoNanos = rtoCache.getRtoNanos(sendTo);
+
+            // An explicit original wait interval (e.g. of consent freshness)
+            // comes with a duration which the RTO must not shorten.
+            if (rtoNanos != RttEstimator.UNKNOWN)
+            {
+                clientTransaction.setRetransmissionTimeout(
+                        rtoNanos,
+                        originalWaitInterval > 0);
+            }
+        }
 
         clientTransactions.put(
                 clientTransaction.getTransactionID(),
@@ -1105,6 +1237,7 @@ public class StunStack
         for (StunServerTransaction tran : serverTransactionsToExpire)
             tran.expire();
 
+        rtoCache.clear();
         netAccessManager.stop();
     }
 
@@ -1269,6 +1402,7 @@ public class StunStack
                 logger.log(Level.FINE, "Received a message with an improperly "
                         +"formatted username");
             }
+            Ice4jMetrics.STUN_INTEGRITY_FAILURES.increment();
             return false;
         }
 
@@ -1278,7 +1412,10 @@ public class StunStack
         byte[] key = getCredentialsManager().getLocalKey(username);
 
         if (key == null)
+        {
+            Ice4jMetrics.STUN_INTEGRITY_FAILURES.increment();
             return false;
+        }
 
         /*
          * Now check whether the SHA1 matches. Using
@@ -1334,6 +1471,7 @@ public class StunStack
                             + ", received: "
                             + toHexString(msgIntHmacSha1Content));
             }
+            Ice4jMetrics.STUN_INTEGRITY_FAILURES.increment();
             return false;
         }
 
@@ -1523,6 +1661,12 @@ public class StunStack
             @Override
             public void run()
             {
+                PeriodicTaskMetrics metrics = PeriodicRunnable.getMetrics();
+                long startNanos
+                    = metrics == PeriodicTaskMetrics.NO_OP
+                        ? 0
+                        : System.nanoTime();
+
                 try
                 {
                     synchronized (serverTransactions)
@@ -1567,9 +1711,49 @@ public class StunStack
                     logger.log(Level.FINE,
                         "Failed to expire server transactions", t);
                 }
+                finally
+                {
+                    if (metrics != PeriodicTaskMetrics.NO_OP)
+                    {
+                        long endNanos = System.nanoTime();
+                        long scheduledNanos = nextRunNanos;
+
+                        metrics.taskExecuted(
+                            METRICS_NAME,
+                            scheduledNanos == 0
+                                ? 0
+                                : startNanos - scheduledNanos,
+                            endNanos - startNanos);
+                        nextRunNanos
+                            = endNanos
+                                + TimeUnit.MILLISECONDS.toNanos(
+                                    StunServerTransaction.LIFETIME);
+                    }
+                }
             }
         };
 
+        /**
+         * The name under which the collector reports to the
+         * {@link PeriodicTaskMetrics} of {@link PeriodicRunnable}.
+         */
+        private static final String METRICS_NAME
+            = "ExpiredServerTransactionsCollector";
+
+        /**
+         * The value of {@link System#nanoTime()} at which the next execution
+         * of {@link #collector} is due. Only maintained while metrics are
+         * enabled.
+         */
+        private volatile long nextRunNanos;
+
+        /**
+         * The {@link PeriodicTaskMetrics} which was notified that the
+         * collector started, or <tt>null</tt> if it is not scheduled.
+         * Access synchronized via {@link #serverTransactions}.
+         */
+        private PeriodicTaskMetrics startedMetrics;
+
         /**
          * Scheduled execution of {@link #collector} runnable.
          * Access synchronized via {@link #serverTransactions}.
@@ -1593,6 +1777,21 @@ public class StunStack
                             StunServerTransaction.LIFETIME,
                             StunServerTransaction.LIFETIME,
                             TimeUnit.MILLISECONDS);
+
+                    PeriodicTaskMetrics metrics
+                        = PeriodicRunnable.getMetrics();
+                    if (metrics != PeriodicTaskMetrics.NO_OP)
+                    {
+                        nextRunNanos
+                            = System.nanoTime()
+                                + TimeUnit.MILLISECONDS.toNanos(
+                                    StunServerTransaction.LIFETIME);
+                        if (startedMetrics == null)
+                        {
+                            startedMetrics = metrics;
+                            metrics.taskStarted(METRICS_NAME);
+                        }
+                    }
                 }
             }
         }
@@ -1610,6 +1809,11 @@ public class StunStack
                     scheduledCollectorFuture.cancel(false);
                     scheduledCollectorFuture = null;
                 }
+                if (startedMetrics != null)
+                {
+                    startedMetrics.taskStopped(METRICS_NAME);
+                    startedMetrics = null;
+                }
             }
         }
     }
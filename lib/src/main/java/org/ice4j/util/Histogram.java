@@ -0,0 +1,269 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A lock-free histogram with fixed bucket boundaries. A value <tt>v</tt> is
+ * counted in the first bucket whose upper bound is greater than or equal to
+ * <tt>v</tt>, or in the last (overflow) bucket if <tt>v</tt> is greater than
+ * all bounds. Recording a value does not allocate.
+ */
+public class Histogram
+{
+    /**
+     * Bucket upper bounds suitable for durations expressed in milliseconds.
+     */
+    public static final long[] DEFAULT_MILLIS_BOUNDS
+        = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000 };
+
+    /**
+     * Bucket upper bounds suitable for durations expressed in microseconds.
+     */
+    public static final long[] DEFAULT_MICROS_BOUNDS
+        = {
+            100, 200, 500,
+            1_000, 2_000, 5_000,
+            10_000, 20_000, 50_000,
+            100_000, 200_000, 500_000,
+            1_000_000, 2_000_000, 5_000_000
+        };
+
+    /**
+     * The (inclusive) upper bounds of the buckets, in ascending order.
+     */
+    private final long[] bounds;
+
+    /**
+     * The number of values in each bucket. Has one more element than
+     * {@link #bounds} for values greater than the last bound.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * The total number of recorded values.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * The sum of all recorded values.
+     */
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * The maximum recorded value.
+     */
+    private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Initializes a new <tt>Histogram</tt> with
+     * {@link #DEFAULT_MILLIS_BOUNDS}.
+     */
+    public Histogram()
+    {
+        this(DEFAULT_MILLIS_BOUNDS);
+    }
+
+    /**
+     * Initializes a new <tt>Histogram</tt> with the given bucket bounds.
+     *
+     * @param bounds the (inclusive) upper bounds of the buckets, in strictly
+     * ascending order.
+     */
+    public Histogram(long[] bounds)
+    {
+        for (int i = 1; i < bounds.length; i++)
+        {
+            if (bounds[i] <= bounds[i - 1])
+            {
+                throw new IllegalArgumentException(
+                    "bounds must be strictly ascending");
+            }
+        }
+        this.bounds = bounds.clone();
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value the value to record.
+     */
+    public void record(long value)
+    {
+        counts.incrementAndGet(bucketIndex(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+
+        long m;
+        do
+        {
+            m = max.get();
+        }
+        while (value > m && !max.compareAndSet(m, value));
+    }
+
+    /**
+     * Returns the index of the bucket the given value belongs to.
+     *
+     * @param value the value.
+     * @return the index of the bucket <tt>value</tt> belongs to.
+     */
+    private int bucketIndex(long value)
+    {
+        int low = 0, high = bounds.length;
+
+        while (low < high)
+        {
+            int mid = (low + high) >>> 1;
+
+            if (bounds[mid] < value)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * Returns the total number of recorded values.
+     *
+     * @return the total number of recorded values.
+     */
+    public long getCount()
+    {
+        return count.get();
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return the sum of all recorded values.
+     */
+    public long getSum()
+    {
+        return sum.get();
+    }
+
+    /**
+     * Returns the maximum recorded value, or 0 if no values have been
+     * recorded.
+     *
+     * @return the maximum recorded value.
+     */
+    public long getMax()
+    {
+        long m = max.get();
+
+        return m == Long.MIN_VALUE ? 0 : m;
+    }
+
+    /**
+     * Returns the average of the recorded values, or 0 if no values have been
+     * recorded.
+     *
+     * @return the average of the recorded values.
+     */
+    public double getAverage()
+    {
+        long c = count.get();
+
+        return c == 0 ? 0 : ((double) sum.get()) / c;
+    }
+
+    /**
+     * Returns a copy of the (inclusive) upper bounds of the buckets.
+     *
+     * @return a copy of the upper bounds of the buckets.
+     */
+    public long[] getBucketBounds()
+    {
+        return bounds.clone();
+    }
+
+    /**
+     * Returns a snapshot of the number of values in each bucket. The last
+     * element is the number of values greater than the last bound.
+     *
+     * @return a snapshot of the number of values in each bucket.
+     */
+    public long[] getBucketCounts()
+    {
+        long[] result = new long[counts.length()];
+
+        for (int i = 0; i < result.length; i++)
+        {
+            result[i] = counts.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns an estimate of the given percentile, i.e. the upper bound of the
+     * bucket which contains it. For the overflow bucket the maximum recorded
+     * value is returned.
+     *
+     * @param percentile the percentile in the range [0, 100].
+     * @return an estimate of the given percentile, or 0 if no values have been
+     * recorded.
+     */
+    public long getPercentile(double percentile)
+    {
+        long[] snapshot = getBucketCounts();
+        long total = 0;
+
+        for (long c : snapshot)
+        {
+            total += c;
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100D);
+        long seen = 0;
+
+        for (int i = 0; i < snapshot.length; i++)
+        {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0)
+            {
+                return i < bounds.length ? bounds[i] : getMax();
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns a string representation of this histogram.
+     *
+     * @return a string representation of this histogram.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+        long[] snapshot = getBucketCounts();
+
+        s.append("count=").append(getCount())
+            .append(" max=").append(getMax())
+            .append(" buckets=").append(Arrays.toString(snapshot));
+        return s.toString();
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A {@link PeriodicTaskMetrics} implementation which keeps, per task name, the
+ * number of active tasks and histograms (in milliseconds) of the firing lag
+ * and the execution time.
+ * <p>
+ * Install it with {@link PeriodicRunnable#setMetrics(PeriodicTaskMetrics)}.
+ * </p>
+ */
+public class HistogramPeriodicTaskMetrics
+    implements PeriodicTaskMetrics
+{
+    /**
+     * The statistics for each task name.
+     */
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the statistics for the given task name, creating them if
+     * necessary.
+     *
+     * @param name the name of the task.
+     * @return the statistics for <tt>name</tt>.
+     */
+    public Stats getStats(String name)
+    {
+        Stats s = stats.get(name);
+
+        return s != null ? s : stats.computeIfAbsent(name, n -> new Stats());
+    }
+
+    /**
+     * Returns the names of all tasks which have reported to this instance.
+     *
+     * @return the names of all tasks which have reported to this instance.
+     */
+    public Set<String> getNames()
+    {
+        return Collections.unmodifiableSet(stats.keySet());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void taskStarted(String name)
+    {
+        getStats(name).active.incrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void taskStopped(String name)
+    {
+        getStats(name).active.decrementAndGet();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void taskExecuted(String name, long lagNanos, long executionNanos)
+    {
+        Stats s = getStats(name);
+
+        s.lag.record(TimeUnit.NANOSECONDS.toMillis(Math.max(0, lagNanos)));
+        s.executionTime.record(TimeUnit.NANOSECONDS.toMillis(executionNanos));
+    }
+
+    /**
+     * Returns a string representation of the statistics of all tasks.
+     *
+     * @return a string representation of the statistics of all tasks.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder();
+
+        for (Map.Entry<String, Stats> e : stats.entrySet())
+        {
+            s.append(e.getKey()).append(": ").append(e.getValue()).append('\n');
+        }
+        return s.toString();
+    }
+
+    /**
+     * The statistics of the tasks with a specific name.
+     */
+    public static class Stats
+    {
+        /**
+         * The number of currently active tasks.
+         */
+        private final AtomicInteger active = new AtomicInteger();
+
+        /**
+         * The histogram of the firing lag in milliseconds.
+         */
+        private final Histogram lag = new Histogram();
+
+        /**
+         * The histogram of the execution time in milliseconds.
+         */
+        private final Histogram executionTime = new Histogram();
+
+        /**
+         * Returns the number of currently active tasks.
+         *
+         * @return the number of currently active tasks.
+         */
+        public int getActiveCount()
+        {
+            return active.get();
+        }
+
+        /**
+         * Returns the histogram of the difference between the actual and the
+         * scheduled firing time, in milliseconds.
+         *
+         * @return the histogram of the firing lag in milliseconds.
+         */
+        public Histogram getLag()
+        {
+            return lag;
+        }
+
+        /**
+         * Returns the histogram of the execution time in milliseconds.
+         *
+         * @return the histogram of the execution time in milliseconds.
+         */
+        public Histogram getExecutionTime()
+        {
+            return executionTime;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "active=" + getActiveCount()
+                + " lagMs={" + lag + "}"
+                + " executionMs={" + executionTime + "}";
+        }
+    }
+}
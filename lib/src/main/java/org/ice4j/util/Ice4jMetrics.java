@@ -0,0 +1,479 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.ice4j.util.MetricsRegistry.*;
+
+/**
+ * The instruments which ice4j reports its measurements to, and the
+ * {@link MetricsRegistry} which backs them.
+ * <p>
+ * The instruments are constants which forward to the instruments of the same
+ * name created by the current registry, so they can be used in static fields
+ * before a registry is installed. While the registry is
+ * {@link MetricsRegistry#NO_OP} (the default) they cost a volatile read and
+ * an empty call, and measurements which need more work than that (e.g. reading
+ * the clock) are skipped, see {@link #isEnabled()}.
+ * </p>
+ * <p>
+ * Installing a registry also reports the {@link PeriodicRunnable}s, e.g. the
+ * STUN retransmitters and the ICE pace makers: the number of active ones to
+ * the gauge <tt>ice4j.periodic.&lt;Task&gt;.active</tt> and their lag and
+ * execution time to the distributions
+ * <tt>ice4j.periodic.&lt;Task&gt;.lag_us</tt> and
+ * <tt>ice4j.periodic.&lt;Task&gt;.execution_us</tt>.
+ * </p>
+ * Durations are in microseconds.
+ */
+public final class Ice4jMetrics
+{
+    /**
+     * The instruments created with {@link #counter(String)},
+     * {@link #gauge(String)} and {@link #distribution(String)}, bound to
+     * {@link #registry}.
+     */
+    private static final List<Instrument<?>> instruments
+        = new CopyOnWriteArrayList<>();
+
+    /**
+     * The registry which backs the instruments.
+     */
+    private static volatile MetricsRegistry registry = MetricsRegistry.NO_OP;
+
+    /**
+     * The STUN packets received by the sockets of the <tt>StunStack</tt>s.
+     */
+    public static final Counter STUN_PACKETS_RECEIVED
+        = counter("ice4j.stun.packets_received");
+
+    /**
+     * The STUN packets sent by the <tt>StunStack</tt>s, including
+     * retransmissions.
+     */
+    public static final Counter STUN_PACKETS_SENT
+        = counter("ice4j.stun.packets_sent");
+
+    /**
+     * The received packets which could not be decoded as STUN messages.
+     */
+    public static final Counter STUN_DECODE_FAILURES
+        = counter("ice4j.stun.decode_failures");
+
+    /**
+     * The received messages whose MESSAGE-INTEGRITY could not be verified.
+     */
+    public static final Counter STUN_INTEGRITY_FAILURES
+        = counter("ice4j.stun.integrity_failures");
+
+    /**
+     * The retransmissions of requests by client transactions.
+     */
+    public static final Counter STUN_RETRANSMISSIONS
+        = counter("ice4j.stun.retransmissions");
+
+    /**
+     * The client transactions which timed out without a response.
+     */
+    public static final Counter STUN_TRANSACTION_TIMEOUTS
+        = counter("ice4j.stun.transaction_timeouts");
+
+    /**
+     * The received messages waiting for or being processed by the message
+     * processing executors of the <tt>StunStack</tt>s.
+     */
+    public static final Gauge STUN_QUEUED_MESSAGES
+        = gauge("ice4j.stun.queued_messages");
+
+    /**
+     * The time received messages waited for a message processing thread.
+     */
+    public static final Distribution STUN_PROCESSING_LAG
+        = distribution("ice4j.stun.processing_lag_us");
+
+    /**
+     * The connectivity checks sent, not including retransmissions.
+     */
+    public static final Counter ICE_CHECKS_SENT
+        = counter("ice4j.ice.checks_sent");
+
+    /**
+     * The connectivity checks received.
+     */
+    public static final Counter ICE_CHECKS_RECEIVED
+        = counter("ice4j.ice.checks_received");
+
+    /**
+     * The round trip times of the connectivity checks which succeeded without
+     * retransmissions.
+     */
+    public static final Distribution ICE_CHECK_RTT
+        = distribution("ice4j.ice.check_rtt_us");
+
+    /**
+     * The packets sent through <tt>SocketPool</tt>s.
+     */
+    public static final Counter SOCKET_POOL_PACKETS_SENT
+        = counter("ice4j.socket_pool.packets_sent");
+
+    /**
+     * The packets received by the single-port UDP listeners.
+     */
+    public static final Counter UDP_LISTENER_PACKETS_RECEIVED
+        = counter("ice4j.udp_listener.packets_received");
+
+    /**
+     * The packets which the single-port UDP listeners dropped because the
+     * queue of their session was full.
+     */
+    public static final Counter UDP_LISTENER_PACKETS_DROPPED
+        = counter("ice4j.udp_listener.packets_dropped");
+
+    /**
+     * The packets which the single-port UDP listeners ignored because they
+     * came from an unknown address and were not a STUN Binding request for a
+     * known local username fragment.
+     */
+    public static final Counter UDP_LISTENER_PACKETS_UNKNOWN
+        = counter("ice4j.udp_listener.packets_unknown");
+
+    /**
+     * The sessions, i.e. remote addresses, of the single-port UDP listeners.
+     */
+    public static final Gauge UDP_LISTENER_SESSIONS
+        = gauge("ice4j.udp_listener.sessions");
+
+    /**
+     * The connections accepted by the ICE-TCP listeners.
+     */
+    public static final Counter TCP_LISTENER_CONNECTIONS_ACCEPTED
+        = counter("ice4j.tcp_listener.connections_accepted");
+
+    /**
+     * The accepted connections which the ICE-TCP listeners closed without
+     * handing them over, e.g. because their first frame was not a STUN
+     * Binding request for a known local username fragment.
+     */
+    public static final Counter TCP_LISTENER_CONNECTIONS_DROPPED
+        = counter("ice4j.tcp_listener.connections_dropped");
+
+    /**
+     * Reports the measurements of the {@link PeriodicRunnable}s to
+     * {@link #registry}, or <tt>null</tt> if it is
+     * {@link MetricsRegistry#NO_OP} or if the application installed its own
+     * {@link PeriodicTaskMetrics}.
+     */
+    private static PeriodicTaskMetrics periodicTaskMetrics;
+
+    private Ice4jMetrics()
+    {
+    }
+
+    /**
+     * Sets the registry which backs the instruments of ice4j. Unless the
+     * application installed its own {@link PeriodicTaskMetrics} with
+     * {@link PeriodicRunnable#setMetrics(PeriodicTaskMetrics)}, the
+     * measurements of the periodic tasks are reported to the registry too.
+     *
+     * @param registry the registry to report to, or <tt>null</tt> to stop
+     * reporting.
+     */
+    public static synchronized void setRegistry(MetricsRegistry registry)
+    {
+        if (registry == null)
+            registry = MetricsRegistry.NO_OP;
+
+        Ice4jMetrics.registry = registry;
+        for (Instrument<?> instrument : instruments)
+        {
+            instrument.bind(registry);
+        }
+
+        // Only replace the PeriodicTaskMetrics which we installed, if any,
+        // and leave one installed by the application alone.
+        PeriodicTaskMetrics current = PeriodicRunnable.getMetrics();
+        boolean owned
+            = current == PeriodicTaskMetrics.NO_OP
+                || (periodicTaskMetrics != null
+                    && current == periodicTaskMetrics);
+
+        if (registry == MetricsRegistry.NO_OP)
+        {
+            if (owned)
+            {
+                PeriodicRunnable.setMetrics(null);
+            }
+            periodicTaskMetrics = null;
+        }
+        else if (owned)
+        {
+            periodicTaskMetrics = new RegistryPeriodicTaskMetrics(registry);
+            PeriodicRunnable.setMetrics(periodicTaskMetrics);
+        }
+        else
+        {
+            periodicTaskMetrics = null;
+        }
+    }
+
+    /**
+     * Gets the registry which backs the instruments of ice4j.
+     *
+     * @return the registry which backs the instruments of ice4j.
+     */
+    public static MetricsRegistry getRegistry()
+    {
+        return registry;
+    }
+
+    /**
+     * Determines whether a registry other than {@link MetricsRegistry#NO_OP}
+     * is installed, i.e. whether measurements are worth taking.
+     *
+     * @return <tt>true</tt> if a registry other than
+     * {@link MetricsRegistry#NO_OP} is installed.
+     */
+    public static boolean isEnabled()
+    {
+        return registry != MetricsRegistry.NO_OP;
+    }
+
+    /**
+     * Creates a counter which forwards to the counter of a specific name of
+     * the current registry.
+     *
+     * @param name the name of the counter.
+     * @return a counter which forwards to the counter named <tt>name</tt> of
+     * the current registry.
+     */
+    public static Counter counter(String name)
+    {
+        BoundCounter counter = new BoundCounter(name);
+
+        register(counter);
+        return counter;
+    }
+
+    /**
+     * Creates a gauge which forwards to the gauge of a specific name of the
+     * current registry.
+     *
+     * @param name the name of the gauge.
+     * @return a gauge which forwards to the gauge named <tt>name</tt> of the
+     * current registry.
+     */
+    public static Gauge gauge(String name)
+    {
+        BoundGauge gauge = new BoundGauge(name);
+
+        register(gauge);
+        return gauge;
+    }
+
+    /**
+     * Creates a distribution which forwards to the distribution of a specific
+     * name of the current registry.
+     *
+     * @param name the name of the distribution.
+     * @return a distribution which forwards to the distribution named
+     * <tt>name</tt> of the current registry.
+     */
+    public static Distribution distribution(String name)
+    {
+        BoundDistribution distribution = new BoundDistribution(name);
+
+        register(distribution);
+        return distribution;
+    }
+
+    /**
+     * Binds an instrument to the current registry and to the ones installed
+     * later.
+     *
+     * @param instrument the instrument to bind.
+     */
+    private static synchronized void register(Instrument<?> instrument)
+    {
+        instrument.bind(registry);
+        instruments.add(instrument);
+    }
+
+    /**
+     * An instrument which forwards to the instrument of the same name of a
+     * registry.
+     *
+     * @param <T> the type of the instrument.
+     */
+    private static abstract class Instrument<T>
+    {
+        final String name;
+
+        volatile T delegate;
+
+        Instrument(String name)
+        {
+            this.name = name;
+        }
+
+        abstract void bind(MetricsRegistry registry);
+    }
+
+    private static class BoundCounter
+        extends Instrument<Counter>
+        implements Counter
+    {
+        BoundCounter(String name)
+        {
+            super(name);
+        }
+
+        @Override
+        void bind(MetricsRegistry registry)
+        {
+            delegate = registry.counter(name);
+        }
+
+        @Override
+        public void add(long delta)
+        {
+            delegate.add(delta);
+        }
+    }
+
+    private static class BoundGauge
+        extends Instrument<Gauge>
+        implements Gauge
+    {
+        BoundGauge(String name)
+        {
+            super(name);
+        }
+
+        @Override
+        void bind(MetricsRegistry registry)
+        {
+            delegate = registry.gauge(name);
+        }
+
+        @Override
+        public void add(long delta)
+        {
+            delegate.add(delta);
+        }
+    }
+
+    private static class BoundDistribution
+        extends Instrument<Distribution>
+        implements Distribution
+    {
+        BoundDistribution(String name)
+        {
+            super(name);
+        }
+
+        @Override
+        void bind(MetricsRegistry registry)
+        {
+            delegate = registry.distribution(name);
+        }
+
+        @Override
+        public void record(long value)
+        {
+            delegate.record(value);
+        }
+    }
+
+    /**
+     * Reports the measurements of the {@link PeriodicRunnable}s to the
+     * instruments of a registry.
+     */
+    private static class RegistryPeriodicTaskMetrics
+        implements PeriodicTaskMetrics
+    {
+        private final MetricsRegistry registry;
+
+        /**
+         * The instruments of each task name.
+         */
+        private final Map<String, TaskInstruments> instruments
+            = new ConcurrentHashMap<>();
+
+        RegistryPeriodicTaskMetrics(MetricsRegistry registry)
+        {
+            this.registry = registry;
+        }
+
+        private TaskInstruments getInstruments(String name)
+        {
+            TaskInstruments i = instruments.get(name);
+
+            return
+                i != null
+                    ? i
+                    : instruments.computeIfAbsent(
+                        name,
+                        n -> new TaskInstruments(registry, n));
+        }
+
+        @Override
+        public void taskStarted(String name)
+        {
+            getInstruments(name).active.add(1);
+        }
+
+        @Override
+        public void taskStopped(String name)
+        {
+            getInstruments(name).active.add(-1);
+        }
+
+        @Override
+        public void taskExecuted(
+                String name,
+                long lagNanos,
+                long executionNanos)
+        {
+            TaskInstruments i = getInstruments(name);
+
+            i.lag.record(TimeUnit.NANOSECONDS.toMicros(lagNanos));
+            i.execution.record(TimeUnit.NANOSECONDS.toMicros(executionNanos));
+        }
+    }
+
+    /**
+     * The instruments of the {@link PeriodicRunnable}s with a specific name.
+     */
+    private static class TaskInstruments
+    {
+        final Gauge active;
+
+        final Distribution lag;
+
+        final Distribution execution;
+
+        TaskInstruments(MetricsRegistry registry, String name)
+        {
+            String prefix = "ice4j.periodic." + name;
+
+            active = registry.gauge(prefix + ".active");
+            lag = registry.distribution(prefix + ".lag_us");
+            execution = registry.distribution(prefix + ".execution_us");
+        }
+    }
+}
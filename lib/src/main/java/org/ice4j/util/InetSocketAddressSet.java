@@ -0,0 +1,280 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import java.net.*;
+import java.util.*;
+
+/**
+ * An immutable set of IP address and port pairs, optimized for
+ * {@link #contains(InetAddress, int)} being called for every received packet.
+ * <p>
+ * The set is an open-addressing hash table with linear probing, keyed on the
+ * address and the port as separate fields, so a lookup for the source of a
+ * <tt>DatagramPacket</tt> does not need to allocate an
+ * <tt>InetSocketAddress</tt> (as <tt>DatagramPacket.getSocketAddress()</tt>
+ * does) and does not need to compute its hash code. The hash of an IPv4
+ * address is its raw 32-bit value, and the hash of an IPv6 address is
+ * computed over its raw bytes without copying them.
+ * </p>
+ * <p>
+ * Instances are immutable: {@link #add(InetSocketAddress)} returns a new set,
+ * so that a reference to the current set can be published through a
+ * <tt>volatile</tt> field and read without locking.
+ * </p>
+ */
+public final class InetSocketAddressSet
+{
+    /**
+     * The empty set.
+     */
+    public static final InetSocketAddressSet EMPTY
+        = new InetSocketAddressSet(
+            new InetAddress[4], new int[4], new int[4], 0);
+
+    /**
+     * The addresses in the table, <tt>null</tt> for empty slots.
+     */
+    private final InetAddress[] addresses;
+
+    /**
+     * The hash codes of the addresses in the table, at the same indices as
+     * {@link #addresses}. For IPv4 these are the raw addresses.
+     */
+    private final int[] hashes;
+
+    /**
+     * The ports in the table, at the same indices as {@link #addresses}.
+     */
+    private final int[] ports;
+
+    /**
+     * The number of elements in the set.
+     */
+    private final int size;
+
+    /**
+     * Initializes a new set with the given table.
+     *
+     * @param addresses the addresses in the table. The length must be a power
+     * of two.
+     * @param hashes the hash codes of the addresses in the table.
+     * @param ports the ports in the table.
+     * @param size the number of elements in the table.
+     */
+    private InetSocketAddressSet(
+        InetAddress[] addresses,
+        int[] hashes,
+        int[] ports,
+        int size)
+    {
+        this.addresses = addresses;
+        this.hashes = hashes;
+        this.ports = ports;
+        this.size = size;
+    }
+
+    /**
+     * Returns the slot at which to start probing for an address and a port.
+     *
+     * @param hash the hash code of the address.
+     * @param port the port.
+     * @param mask the table length minus one.
+     * @return the slot at which to start probing.
+     */
+    private static int slot(int hash, int port, int mask)
+    {
+        int h = hash * 31 + port;
+
+        h *= 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Checks whether this set contains a specific address and port.
+     *
+     * @param address the address.
+     * @param port the port.
+     * @return <tt>true</tt> if this set contains <tt>address</tt> and
+     * <tt>port</tt>.
+     */
+    public boolean contains(InetAddress address, int port)
+    {
+        if (address == null || size == 0)
+        {
+            return false;
+        }
+
+        InetAddress[] addresses = this.addresses;
+        int mask = addresses.length - 1;
+        int hash = address.hashCode();
+        // The hash code of an IPv4 address is the address itself, so equal
+        // hash codes of two IPv4 addresses imply equal addresses.
+        boolean ipv4 = address instanceof Inet4Address;
+
+        for (int i = slot(hash, port, mask);; i = (i + 1) & mask)
+        {
+            InetAddress a = addresses[i];
+
+            if (a == null)
+            {
+                return false;
+            }
+            if (hashes[i] == hash
+                && ports[i] == port
+                && ((ipv4 && a instanceof Inet4Address) || a.equals(address)))
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Checks whether this set contains a specific socket address.
+     *
+     * @param address the socket address.
+     * @return <tt>true</tt> if this set contains <tt>address</tt>.
+     */
+    public boolean contains(SocketAddress address)
+    {
+        if (!(address instanceof InetSocketAddress))
+        {
+            return false;
+        }
+
+        InetSocketAddress a = (InetSocketAddress) address;
+
+        return contains(a.getAddress(), a.getPort());
+    }
+
+    /**
+     * Returns a set which contains the elements of this set and a specific
+     * socket address.
+     *
+     * @param address the socket address to add. It must be resolved.
+     * @return a set which contains the elements of this set and
+     * <tt>address</tt>, or this set if it already contains <tt>address</tt>.
+     */
+    public InetSocketAddressSet add(InetSocketAddress address)
+    {
+        InetAddress inetAddress = address.getAddress();
+
+        if (inetAddress == null)
+        {
+            throw new IllegalArgumentException(
+                "Unresolved address: " + address);
+        }
+
+        int port = address.getPort();
+
+        if (contains(inetAddress, port))
+        {
+            return this;
+        }
+
+        // Keep the load factor at or below 0.5.
+        int capacity = addresses.length;
+
+        while ((size + 1) * 2 > capacity)
+        {
+            capacity <<= 1;
+        }
+
+        InetAddress[] newAddresses = new InetAddress[capacity];
+        int[] newHashes = new int[capacity];
+        int[] newPorts = new int[capacity];
+
+        for (int i = 0; i < addresses.length; i++)
+        {
+            if (addresses[i] != null)
+            {
+                insert(
+                    newAddresses, newHashes, newPorts,
+                    addresses[i], ports[i]);
+            }
+        }
+        insert(newAddresses, newHashes, newPorts, inetAddress, port);
+
+        return
+            new InetSocketAddressSet(
+                newAddresses, newHashes, newPorts,
+                size + 1);
+    }
+
+    /**
+     * Inserts an address and a port in a table which does not contain them.
+     *
+     * @param addresses the addresses of the table.
+     * @param hashes the hash codes of the addresses of the table.
+     * @param ports the ports of the table.
+     * @param address the address to insert.
+     * @param port the port to insert.
+     */
+    private static void insert(
+        InetAddress[] addresses,
+        int[] hashes,
+        int[] ports,
+        InetAddress address,
+        int port)
+    {
+        int mask = addresses.length - 1;
+        int hash = address.hashCode();
+        int i = slot(hash, port, mask);
+
+        while (addresses[i] != null)
+        {
+            i = (i + 1) & mask;
+        }
+        addresses[i] = address;
+        hashes[i] = hash;
+        ports[i] = port;
+    }
+
+    /**
+     * Returns the number of elements in this set.
+     *
+     * @return the number of elements in this set.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the elements of this set as a new <tt>Set</tt>.
+     *
+     * @return the elements of this set.
+     */
+    public Set<InetSocketAddress> toSet()
+    {
+        Set<InetSocketAddress> set = new HashSet<>();
+
+        for (int i = 0; i < addresses.length; i++)
+        {
+            if (addresses[i] != null)
+            {
+                set.add(new InetSocketAddress(addresses[i], ports[i]));
+            }
+        }
+        return set;
+    }
+
+    @Override
+    public String toString()
+    {
+        return toSet().toString();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+/**
+ * Creates the instruments which the STUN stack, the ICE agents and the
+ * sockets report their measurements to, so that an application can export
+ * them to its own metrics system.
+ * <p>
+ * Instruments are identified by a name (e.g.
+ * <tt>ice4j.stun.packets_received</tt>), see {@link Ice4jMetrics} for the
+ * list. They are created once, when the registry is installed with
+ * {@link Ice4jMetrics#setRegistry(MetricsRegistry)}, and then used from any
+ * thread, so implementations of the instruments must be thread-safe and
+ * cheap.
+ * </p>
+ * <p>
+ * The default is {@link #NO_OP}, whose instruments ignore everything.
+ * </p>
+ */
+public interface MetricsRegistry
+{
+    /**
+     * An implementation whose instruments ignore all measurements.
+     */
+    MetricsRegistry NO_OP = new MetricsRegistry() {};
+
+    /**
+     * Gets the counter with a specific name.
+     *
+     * @param name the name of the counter.
+     * @return the counter named <tt>name</tt>.
+     */
+    default Counter counter(String name)
+    {
+        return Counter.NO_OP;
+    }
+
+    /**
+     * Gets the gauge with a specific name.
+     *
+     * @param name the name of the gauge.
+     * @return the gauge named <tt>name</tt>.
+     */
+    default Gauge gauge(String name)
+    {
+        return Gauge.NO_OP;
+    }
+
+    /**
+     * Gets the distribution with a specific name.
+     *
+     * @param name the name of the distribution.
+     * @return the distribution named <tt>name</tt>.
+     */
+    default Distribution distribution(String name)
+    {
+        return Distribution.NO_OP;
+    }
+
+    /**
+     * A monotonically increasing count, e.g. of packets.
+     */
+    interface Counter
+    {
+        /**
+         * A counter which ignores all increments.
+         */
+        Counter NO_OP = delta -> {};
+
+        /**
+         * Adds to this counter.
+         *
+         * @param delta the non-negative amount to add.
+         */
+        void add(long delta);
+
+        /**
+         * Adds one to this counter.
+         */
+        default void increment()
+        {
+            add(1);
+        }
+    }
+
+    /**
+     * A value which goes up and down, e.g. the number of queued packets.
+     */
+    interface Gauge
+    {
+        /**
+         * A gauge which ignores all changes.
+         */
+        Gauge NO_OP = delta -> {};
+
+        /**
+         * Adds to the value of this gauge.
+         *
+         * @param delta the amount to add, negative to decrease the value.
+         */
+        void add(long delta);
+    }
+
+    /**
+     * A distribution of values, e.g. of round trip times.
+     */
+    interface Distribution
+    {
+        /**
+         * A distribution which ignores all values.
+         */
+        Distribution NO_OP = value -> {};
+
+        /**
+         * Records a value.
+         *
+         * @param value the value to record.
+         */
+        void record(long value);
+    }
+}
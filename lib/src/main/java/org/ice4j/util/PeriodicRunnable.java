@@ -18,6 +18,37 @@ public abstract class PeriodicRunnable
      */
     private final static Logger logger = new EmptyLogger();
 
+    /**
+     * The {@link PeriodicTaskMetrics} which all {@link PeriodicRunnable}s
+     * report to. When it is {@link PeriodicTaskMetrics#NO_OP} no measurements
+     * are taken.
+     */
+    private static volatile PeriodicTaskMetrics metrics
+        = PeriodicTaskMetrics.NO_OP;
+
+    /**
+     * Sets the {@link PeriodicTaskMetrics} which all
+     * {@link PeriodicRunnable}s report to.
+     * @param metrics the {@link PeriodicTaskMetrics} to report to, or
+     *                <tt>null</tt> to disable the measurements.
+     */
+    public static void setMetrics(PeriodicTaskMetrics metrics)
+    {
+        PeriodicRunnable.metrics
+            = metrics == null ? PeriodicTaskMetrics.NO_OP : metrics;
+    }
+
+    /**
+     * Gets the {@link PeriodicTaskMetrics} which all
+     * {@link PeriodicRunnable}s report to.
+     * @return the {@link PeriodicTaskMetrics} which all
+     * {@link PeriodicRunnable}s report to.
+     */
+    public static PeriodicTaskMetrics getMetrics()
+    {
+        return metrics;
+    }
+
     /**
      * A timer to perform periodic scheduling of {@link #run()} execution
      * on {@link #executor}'s thread.
@@ -51,6 +82,25 @@ public abstract class PeriodicRunnable
      */
     private Future<?> submittedExecute;
 
+    /**
+     * The name under which this instance reports to {@link #metrics}, i.e.
+     * the simple name of its class.
+     */
+    private final String metricsName;
+
+    /**
+     * The {@link PeriodicTaskMetrics} which was notified that this instance
+     * started, or <tt>null</tt> if it is not active. Access synchronized via
+     * {@link #syncRoot}.
+     */
+    private PeriodicTaskMetrics startedMetrics;
+
+    /**
+     * The value of {@link System#nanoTime()} at which the next execution of
+     * {@link #run()} is due. Only maintained while metrics are enabled.
+     */
+    private volatile long nextRunNanos;
+
     /**
      * Create instance of {@link PeriodicRunnable} with specified timer and
      * executor.
@@ -73,6 +123,12 @@ public abstract class PeriodicRunnable
         }
         this.timer = timer;
         this.executor = executor;
+
+        String simpleName = getClass().getSimpleName();
+        this.metricsName
+            = simpleName.isEmpty()
+                ? PeriodicRunnable.class.getSimpleName()
+                : simpleName;
     }
 
     /**
@@ -133,6 +189,8 @@ public abstract class PeriodicRunnable
                     submittedExecute.cancel(true);
                     submittedExecute = null;
                 }
+
+                reportStopped();
             }
         }
     }
@@ -158,11 +216,27 @@ public abstract class PeriodicRunnable
                 running = false;
                 scheduledSubmit = null;
                 submittedExecute = null;
+                reportStopped();
                 return;
             }
 
             running = true;
 
+            PeriodicTaskMetrics metrics = PeriodicRunnable.metrics;
+            if (metrics != PeriodicTaskMetrics.NO_OP)
+            {
+                if (startedMetrics == null)
+                {
+                    startedMetrics = metrics;
+                    metrics.taskStarted(metricsName);
+                }
+                nextRunNanos = System.nanoTime() + delay.toNanos();
+            }
+            else if (nextRunNanos != 0)
+            {
+                nextRunNanos = 0;
+            }
+
             if (delay.isZero())
             {
                 submitExecuteRun();
@@ -208,6 +282,10 @@ public abstract class PeriodicRunnable
             return;
         }
 
+        PeriodicTaskMetrics metrics = PeriodicRunnable.metrics;
+        long startNanos
+            = metrics == PeriodicTaskMetrics.NO_OP ? 0 : System.nanoTime();
+
         try
         {
             this.run();
@@ -218,6 +296,16 @@ public abstract class PeriodicRunnable
         }
         finally
         {
+            if (metrics != PeriodicTaskMetrics.NO_OP)
+            {
+                long scheduledNanos = nextRunNanos;
+
+                metrics.taskExecuted(
+                    metricsName,
+                    scheduledNanos == 0 ? 0 : startNanos - scheduledNanos,
+                    System.nanoTime() - startNanos);
+            }
+
             if (running)
             {
                 final Duration delayMillis =
@@ -228,6 +316,20 @@ public abstract class PeriodicRunnable
         }
     }
 
+    /**
+     * Notifies the {@link PeriodicTaskMetrics} which was notified that this
+     * instance started (if any) that it is no longer active. Must be called
+     * with {@link #syncRoot} held.
+     */
+    private void reportStopped()
+    {
+        if (startedMetrics != null)
+        {
+            startedMetrics.taskStopped(metricsName);
+            startedMetrics = null;
+        }
+    }
+
     /**
      * Constructs {@link PeriodicRunnable} for {@link Runnable} with provided
      * timer, executor and fixed delay.
@@ -0,0 +1,70 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+/**
+ * Receives measurements from periodically executed tasks such as
+ * {@link PeriodicRunnable}s: how many of them are active, how late they fire
+ * compared to the time they were scheduled for and how long they execute.
+ * <p>
+ * Tasks are identified by a name, which for {@link PeriodicRunnable}s is the
+ * simple name of the subclass (e.g. <tt>PaceMaker</tt> or
+ * <tt>Retransmitter</tt>). Implementations must be thread-safe.
+ * </p>
+ * <p>
+ * The default is {@link #NO_OP}, and tasks do not take any measurements at
+ * all while it is installed.
+ * </p>
+ */
+public interface PeriodicTaskMetrics
+{
+    /**
+     * An implementation which ignores all measurements.
+     */
+    PeriodicTaskMetrics NO_OP = new PeriodicTaskMetrics() {};
+
+    /**
+     * Notifies that a task with the given name has been scheduled and is now
+     * active.
+     *
+     * @param name the name of the task.
+     */
+    default void taskStarted(String name)
+    {
+    }
+
+    /**
+     * Notifies that a task with the given name has been cancelled or has
+     * stopped rescheduling itself and is no longer active.
+     *
+     * @param name the name of the task.
+     */
+    default void taskStopped(String name)
+    {
+    }
+
+    /**
+     * Notifies that a task with the given name has executed once.
+     *
+     * @param name the name of the task.
+     * @param lagNanos the difference in nanoseconds between the time the
+     * execution actually started and the time it was scheduled for.
+     * @param executionNanos the time in nanoseconds the execution took.
+     */
+    default void taskExecuted(String name, long lagNanos, long executionNanos)
+    {
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+/**
+ * Estimates the round trip time of a path from samples, e.g. the round trip
+ * times of STUN transactions, the way RFC 6298 (Section 2) does for TCP: it
+ * keeps the smoothed round trip time (SRTT) and the round trip time variation
+ * (RTTVAR), as well as the minimum and the latest sample. The retransmission
+ * timeout derived from them is SRTT + max(G, 4 * RTTVAR).
+ * <p>
+ * Samples should only be taken from transactions which were not
+ * retransmitted (Karn's algorithm). Updating the estimate does not allocate.
+ * </p>
+ */
+public class RttEstimator
+{
+    /**
+     * The value returned by the getters when there are no samples.
+     */
+    public static final long UNKNOWN = -1;
+
+    /**
+     * The clock granularity (G) used to compute the retransmission timeout.
+     * Retransmissions are scheduled with millisecond precision.
+     */
+    private static final long CLOCK_GRANULARITY_NANOS = 1_000_000;
+
+    /**
+     * The smoothed round trip time in nanoseconds, or {@link #UNKNOWN}.
+     */
+    private long smoothedRttNanos = UNKNOWN;
+
+    /**
+     * The round trip time variation in nanoseconds, or {@link #UNKNOWN}.
+     */
+    private long rttVariationNanos = UNKNOWN;
+
+    /**
+     * The minimum sample in nanoseconds, or {@link #UNKNOWN}.
+     */
+    private long minRttNanos = UNKNOWN;
+
+    /**
+     * The latest sample in nanoseconds, or {@link #UNKNOWN}.
+     */
+    private long latestRttNanos = UNKNOWN;
+
+    /**
+     * The number of samples.
+     */
+    private long sampleCount = 0;
+
+    /**
+     * Updates the estimate with a new sample.
+     *
+     * @param rttNanos the round trip time in nanoseconds. Negative values
+     * (i.e. unknown round trip times) are ignored.
+     */
+    public synchronized void update(long rttNanos)
+    {
+        if (rttNanos < 0)
+            return;
+
+        if (sampleCount == 0)
+        {
+            smoothedRttNanos = rttNanos;
+            rttVariationNanos = rttNanos / 2;
+            minRttNanos = rttNanos;
+        }
+        else
+        {
+            // RTTVAR <- (1 - 1/4) * RTTVAR + 1/4 * |SRTT - R'|
+            // SRTT <- (1 - 1/8) * SRTT + 1/8 * R'
+            rttVariationNanos
+                = (3 * rttVariationNanos
+                        + Math.abs(smoothedRttNanos - rttNanos))
+                    / 4;
+            smoothedRttNanos = (7 * smoothedRttNanos + rttNanos) / 8;
+            minRttNanos = Math.min(minRttNanos, rttNanos);
+        }
+        latestRttNanos = rttNanos;
+        sampleCount++;
+    }
+
+    /**
+     * Returns the smoothed round trip time.
+     *
+     * @return the smoothed round trip time in nanoseconds, or {@link #UNKNOWN}
+     * if there are no samples.
+     */
+    public synchronized long getSmoothedRttNanos()
+    {
+        return smoothedRttNanos;
+    }
+
+    /**
+     * Returns the round trip time variation.
+     *
+     * @return the round trip time variation in nanoseconds, or
+     * {@link #UNKNOWN} if there are no samples.
+     */
+    public synchronized long getRttVariationNanos()
+    {
+        return rttVariationNanos;
+    }
+
+    /**
+     * Returns the minimum round trip time.
+     *
+     * @return the minimum round trip time in nanoseconds, or {@link #UNKNOWN}
+     * if there are no samples.
+     */
+    public synchronized long getMinRttNanos()
+    {
+        return minRttNanos;
+    }
+
+    /**
+     * Returns the latest round trip time.
+     *
+     * @return the latest round trip time in nanoseconds, or {@link #UNKNOWN}
+     * if there are no samples.
+     */
+    public synchronized long getLatestRttNanos()
+    {
+        return latestRttNanos;
+    }
+
+    /**
+     * Returns the retransmission timeout (RTO) for the path, i.e.
+     * SRTT + max(G, 4 * RTTVAR).
+     *
+     * @return the retransmission timeout in nanoseconds, or {@link #UNKNOWN}
+     * if there are no samples.
+     */
+    public synchronized long getRtoNanos()
+    {
+        if (sampleCount == 0)
+            return UNKNOWN;
+
+        return
+            smoothedRttNanos
+                + Math.max(CLOCK_GRANULARITY_NANOS, 4 * rttVariationNanos);
+    }
+
+    /**
+     * Returns the number of samples the estimate is based on.
+     *
+     * @return the number of samples the estimate is based on.
+     */
+    public synchronized long getSampleCount()
+    {
+        return sampleCount;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "srttUs=" + toMicros(smoothedRttNanos)
+            + " rttvarUs=" + toMicros(rttVariationNanos)
+            + " minUs=" + toMicros(minRttNanos)
+            + " samples=" + sampleCount;
+    }
+
+    private static long toMicros(long nanos)
+    {
+        return nanos == UNKNOWN ? UNKNOWN : nanos / 1000;
+    }
+}
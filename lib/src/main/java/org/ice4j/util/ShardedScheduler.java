@@ -0,0 +1,464 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import org.ice4j.*;
+import org.jitsi.utils.concurrent.*;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A scheduler which is split into a number of independent single-threaded
+ * shards. Every object which needs timers (e.g. an <tt>Agent</tt> or a
+ * <tt>StunStack</tt>) is hashed to one shard and keeps all of its scheduled
+ * tasks there, so that a slow task only delays the sessions which happen to
+ * share its shard rather than every session in the JVM.
+ * <p>
+ * Each shard keeps track of how late its tasks fire compared to the time they
+ * were scheduled for (i.e. the scheduling lag).
+ * </p>
+ */
+public class ShardedScheduler
+{
+    /**
+     * The number of seconds an idle shard thread is kept alive.
+     */
+    private static final int KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The scheduler shared by all <tt>Agent</tt>s, <tt>StunStack</tt>s and
+     * <tt>StunClientTransaction</tt>s in this JVM.
+     */
+    private static final ShardedScheduler defaultScheduler
+        = new ShardedScheduler(
+            "ice4j.Scheduler-",
+            StackProperties.getInt(StackProperties.SCHEDULER_SHARDS, 0));
+
+    /**
+     * Returns the scheduler shared by all <tt>Agent</tt>s and
+     * <tt>StunStack</tt>s in this JVM.
+     *
+     * @return the scheduler shared by all <tt>Agent</tt>s and
+     * <tt>StunStack</tt>s in this JVM.
+     */
+    public static ShardedScheduler getDefault()
+    {
+        return defaultScheduler;
+    }
+
+    /**
+     * The shards of this scheduler.
+     */
+    private final Shard[] shards;
+
+    /**
+     * Initializes a new <tt>ShardedScheduler</tt>.
+     *
+     * @param namePrefix the prefix of the names of the shard threads.
+     * @param shardCount the number of shards. If zero or negative, one shard
+     * per available processor is created.
+     */
+    public ShardedScheduler(String namePrefix, int shardCount)
+    {
+        if (shardCount <= 0)
+        {
+            shardCount = Runtime.getRuntime().availableProcessors();
+        }
+
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++)
+        {
+            shards[i] = new Shard(i, namePrefix + i + "-");
+        }
+    }
+
+    /**
+     * Returns the shard which the specified key is assigned to. The same key
+     * is always assigned to the same shard.
+     *
+     * @param key the object (e.g. an <tt>Agent</tt>) to get the shard for.
+     * @return the shard which <tt>key</tt> is assigned to.
+     */
+    public Shard shardFor(Object key)
+    {
+        return shards[indexFor(key, shards.length)];
+    }
+
+    /**
+     * Returns the index of the shard which the specified key is assigned to
+     * when there are a specific number of shards. Allows state which is kept
+     * per shard (e.g. a {@link TimingWheel}) to be looked up with the same
+     * assignment as {@link #shardFor(Object)}.
+     *
+     * @param key the object (e.g. an <tt>Agent</tt>) to get the index for.
+     * @param shardCount the number of shards.
+     * @return the index of the shard which <tt>key</tt> is assigned to.
+     */
+    public static int indexFor(Object key, int shardCount)
+    {
+        int h = key == null ? 0 : key.hashCode();
+
+        // Spread the higher bits, identity hash codes and String hash codes
+        // are often poorly distributed in the lower bits.
+        h ^= (h >>> 16);
+        h *= 0x45d9f3b;
+        h ^= (h >>> 16);
+
+        return (h & 0x7fffffff) % shardCount;
+    }
+
+    /**
+     * Returns the number of shards of this scheduler.
+     *
+     * @return the number of shards of this scheduler.
+     */
+    public int getShardCount()
+    {
+        return shards.length;
+    }
+
+    /**
+     * Returns the shard with the specified index.
+     *
+     * @param index the index of the shard.
+     * @return the shard with the specified index.
+     */
+    public Shard getShard(int index)
+    {
+        return shards[index];
+    }
+
+    /**
+     * Returns an unmodifiable list of the shards of this scheduler.
+     *
+     * @return an unmodifiable list of the shards of this scheduler.
+     */
+    public List<Shard> getShards()
+    {
+        return Collections.unmodifiableList(Arrays.asList(shards));
+    }
+
+    /**
+     * Shuts down all shards of this scheduler.
+     */
+    public void shutdown()
+    {
+        for (Shard shard : shards)
+        {
+            shard.shutdown();
+        }
+    }
+
+    /**
+     * Returns a string representation of the lag statistics of all shards.
+     *
+     * @return a string representation of the lag statistics of all shards.
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder s = new StringBuilder("ShardedScheduler[");
+        for (int i = 0; i < shards.length; i++)
+        {
+            if (i > 0)
+            {
+                s.append(", ");
+            }
+            s.append(shards[i]);
+        }
+        return s.append(']').toString();
+    }
+
+    /**
+     * A single-threaded shard of a {@link ShardedScheduler} which records the
+     * lag of the tasks it executes.
+     */
+    public static final class Shard
+        extends ScheduledThreadPoolExecutor
+    {
+        /**
+         * The index of this shard in its scheduler.
+         */
+        private final int index;
+
+        /**
+         * The lag (in nanoseconds) of the most recently executed task.
+         */
+        private volatile long lastLagNanos = 0;
+
+        /**
+         * The maximum lag (in nanoseconds) observed since the last call to
+         * {@link #resetMaxLag()}.
+         */
+        private final AtomicLong maxLagNanos = new AtomicLong();
+
+        /**
+         * The sum of the lags (in nanoseconds) of all executed tasks.
+         */
+        private final AtomicLong totalLagNanos = new AtomicLong();
+
+        /**
+         * The number of task executions on this shard.
+         */
+        private final AtomicLong executedTaskCount = new AtomicLong();
+
+        /**
+         * Initializes a new <tt>Shard</tt>.
+         *
+         * @param index the index of the shard in its scheduler.
+         * @param name the prefix of the name of the shard's thread.
+         */
+        private Shard(int index, String name)
+        {
+            super(1, new CustomizableThreadFactory(name, true));
+            this.index = index;
+
+            setKeepAliveTime(KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+            allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected <V> RunnableScheduledFuture<V> decorateTask(
+            Runnable runnable,
+            RunnableScheduledFuture<V> task)
+        {
+            return new LagRecordingTask<>(task);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected <V> RunnableScheduledFuture<V> decorateTask(
+            Callable<V> callable,
+            RunnableScheduledFuture<V> task)
+        {
+            return new LagRecordingTask<>(task);
+        }
+
+        /**
+         * Records the lag of a task which is about to be executed.
+         *
+         * @param lagNanos the lag in nanoseconds.
+         */
+        private void recordLag(long lagNanos)
+        {
+            if (lagNanos < 0)
+            {
+                lagNanos = 0;
+            }
+
+            lastLagNanos = lagNanos;
+            totalLagNanos.addAndGet(lagNanos);
+            executedTaskCount.incrementAndGet();
+
+            long max;
+            do
+            {
+                max = maxLagNanos.get();
+            }
+            while (lagNanos > max
+                && !maxLagNanos.compareAndSet(max, lagNanos));
+        }
+
+        /**
+         * Returns the index of this shard in its scheduler.
+         *
+         * @return the index of this shard in its scheduler.
+         */
+        public int getIndex()
+        {
+            return index;
+        }
+
+        /**
+         * Returns the lag of the most recently executed task, i.e. how much
+         * later than scheduled it started executing.
+         *
+         * @return the lag of the most recently executed task.
+         */
+        public Duration getLastLag()
+        {
+            return Duration.ofNanos(lastLagNanos);
+        }
+
+        /**
+         * Returns the maximum lag observed since this shard was created or
+         * since the last call to {@link #resetMaxLag()}.
+         *
+         * @return the maximum observed lag.
+         */
+        public Duration getMaxLag()
+        {
+            return Duration.ofNanos(maxLagNanos.get());
+        }
+
+        /**
+         * Resets the maximum observed lag and returns its previous value.
+         *
+         * @return the maximum lag observed before the reset.
+         */
+        public Duration resetMaxLag()
+        {
+            return Duration.ofNanos(maxLagNanos.getAndSet(0));
+        }
+
+        /**
+         * Returns the average lag of all tasks executed by this shard.
+         *
+         * @return the average lag of all tasks executed by this shard.
+         */
+        public Duration getAverageLag()
+        {
+            long count = executedTaskCount.get();
+
+            return count == 0
+                ? Duration.ZERO
+                : Duration.ofNanos(totalLagNanos.get() / count);
+        }
+
+        /**
+         * Returns the number of task executions on this shard.
+         *
+         * @return the number of task executions on this shard.
+         */
+        public long getExecutedTaskCount()
+        {
+            return executedTaskCount.get();
+        }
+
+        /**
+         * Returns the number of tasks waiting in the queue of this shard.
+         *
+         * @return the number of tasks waiting in the queue of this shard.
+         */
+        public int getQueueSize()
+        {
+            return getQueue().size();
+        }
+
+        /**
+         * Returns a string representation of the lag statistics of this
+         * shard.
+         *
+         * @return a string representation of the lag statistics of this
+         * shard.
+         */
+        @Override
+        public String toString()
+        {
+            return "shard" + index
+                + ": tasks=" + getExecutedTaskCount()
+                + " queue=" + getQueueSize()
+                + " lastLagMs=" + getLastLag().toMillis()
+                + " maxLagMs=" + getMaxLag().toMillis()
+                + " avgLagMs=" + getAverageLag().toMillis();
+        }
+
+        /**
+         * Wraps a task scheduled on a {@link Shard} and records its lag right
+         * before each execution. The remaining delay of a task which is due is
+         * non-positive and its absolute value is the lag.
+         *
+         * @param <V> the result type of the task.
+         */
+        private final class LagRecordingTask<V>
+            implements RunnableScheduledFuture<V>
+        {
+            /**
+             * The wrapped task.
+             */
+            private final RunnableScheduledFuture<V> task;
+
+            private LagRecordingTask(RunnableScheduledFuture<V> task)
+            {
+                this.task = task;
+            }
+
+            @Override
+            public void run()
+            {
+                if (!task.isCancelled())
+                {
+                    recordLag(-task.getDelay(TimeUnit.NANOSECONDS));
+                }
+                task.run();
+            }
+
+            @Override
+            public boolean isPeriodic()
+            {
+                return task.isPeriodic();
+            }
+
+            @Override
+            public long getDelay(TimeUnit unit)
+            {
+                return task.getDelay(unit);
+            }
+
+            @Override
+            public int compareTo(Delayed o)
+            {
+                if (o instanceof LagRecordingTask)
+                {
+                    o = ((LagRecordingTask<?>) o).task;
+                }
+                return task.compareTo(o);
+            }
+
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning)
+            {
+                return task.cancel(mayInterruptIfRunning);
+            }
+
+            @Override
+            public boolean isCancelled()
+            {
+                return task.isCancelled();
+            }
+
+            @Override
+            public boolean isDone()
+            {
+                return task.isDone();
+            }
+
+            @Override
+            public V get()
+                throws InterruptedException, ExecutionException
+            {
+                return task.get();
+            }
+
+            @Override
+            public V get(long timeout, TimeUnit unit)
+                throws InterruptedException,
+                       ExecutionException,
+                       TimeoutException
+            {
+                return task.get(timeout, unit);
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A {@link MetricsRegistry} which keeps the values of its instruments in
+ * memory, for applications which poll them (e.g. to include them in their
+ * own statistics) and for tests.
+ * <p>
+ * Distributions are {@link Histogram}s with
+ * {@link Histogram#DEFAULT_MICROS_BOUNDS}.
+ * </p>
+ */
+public class SimpleMetricsRegistry
+    implements MetricsRegistry
+{
+    private final Map<String, SimpleCounter> counters
+        = new ConcurrentHashMap<>();
+
+    private final Map<String, SimpleGauge> gauges = new ConcurrentHashMap<>();
+
+    private final Map<String, SimpleDistribution> distributions
+        = new ConcurrentHashMap<>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Counter counter(String name)
+    {
+        return counters.computeIfAbsent(name, n -> new SimpleCounter());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Gauge gauge(String name)
+    {
+        return gauges.computeIfAbsent(name, n -> new SimpleGauge());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Distribution distribution(String name)
+    {
+        return
+            distributions.computeIfAbsent(
+                name,
+                n -> new SimpleDistribution());
+    }
+
+    /**
+     * Returns the value of a counter.
+     *
+     * @param name the name of the counter.
+     * @return the value of the counter named <tt>name</tt>, or 0 if it has
+     * not been created.
+     */
+    public long getCount(String name)
+    {
+        SimpleCounter counter = counters.get(name);
+
+        return counter == null ? 0 : counter.value.sum();
+    }
+
+    /**
+     * Returns the value of a gauge.
+     *
+     * @param name the name of the gauge.
+     * @return the value of the gauge named <tt>name</tt>, or 0 if it has not
+     * been created.
+     */
+    public long getGauge(String name)
+    {
+        SimpleGauge gauge = gauges.get(name);
+
+        return gauge == null ? 0 : gauge.value.get();
+    }
+
+    /**
+     * Returns the histogram of a distribution.
+     *
+     * @param name the name of the distribution.
+     * @return the histogram of the distribution named <tt>name</tt>, or
+     * <tt>null</tt> if it has not been created.
+     */
+    public Histogram getDistribution(String name)
+    {
+        SimpleDistribution distribution = distributions.get(name);
+
+        return distribution == null ? null : distribution.histogram;
+    }
+
+    /**
+     * Returns the names of all counters, gauges and distributions created by
+     * this registry.
+     *
+     * @return the names of all instruments created by this registry.
+     */
+    public Set<String> getNames()
+    {
+        Set<String> names = new TreeSet<>(counters.keySet());
+
+        names.addAll(gauges.keySet());
+        names.addAll(distributions.keySet());
+        return names;
+    }
+
+    private static class SimpleCounter
+        implements Counter
+    {
+        final LongAdder value = new LongAdder();
+
+        @Override
+        public void add(long delta)
+        {
+            value.add(delta);
+        }
+    }
+
+    private static class SimpleGauge
+        implements Gauge
+    {
+        final AtomicLong value = new AtomicLong();
+
+        @Override
+        public void add(long delta)
+        {
+            value.addAndGet(delta);
+        }
+    }
+
+    private static class SimpleDistribution
+        implements Distribution
+    {
+        final Histogram histogram
+            = new Histogram(Histogram.DEFAULT_MICROS_BOUNDS);
+
+        @Override
+        public void record(long value)
+        {
+            histogram.record(value);
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import java.util.logging.*;
+
+/**
+ * A hashed timing wheel which keeps a large number of coarse-grained
+ * {@link Timeout}s with a single periodic task on a timer (typically a
+ * {@link ShardedScheduler.Shard}), instead of a scheduled task per timeout.
+ * <p>
+ * Each timeout is placed in a bucket according to the tick at which it is
+ * due. Every tick the due timeouts are removed from their buckets and handed
+ * in one list to the handler of the wheel, on the thread of the timer and
+ * without any lock of the wheel held, so that the handler may schedule them
+ * again. The periodic task only runs while timeouts are scheduled. Services
+ * which are used by many sessions keep one wheel per shard, so that neither
+ * the thread nor the lock of a wheel is shared by all sessions in the JVM.
+ * </p>
+ *
+ * @param <T> the type of the timeouts of the wheel.
+ */
+public class TimingWheel<T extends TimingWheel.Timeout>
+{
+    /**
+     * The <tt>Logger</tt> used by the <tt>TimingWheel</tt> class for logging
+     * output.
+     */
+    private static final Logger logger
+        = Logger.getLogger(TimingWheel.class.getName());
+
+    /**
+     * The value of {@link Timeout#dueTick} of a timeout which is not
+     * scheduled.
+     */
+    private static final long NOT_SCHEDULED = -1;
+
+    /**
+     * The name of this wheel, under which it reports to the
+     * {@link PeriodicTaskMetrics} of {@link PeriodicRunnable}.
+     */
+    private final String name;
+
+    /**
+     * The timer which drives this wheel.
+     */
+    private final ScheduledExecutorService timer;
+
+    /**
+     * The source of time.
+     */
+    private final Clock clock;
+
+    /**
+     * The duration of a tick in milliseconds.
+     */
+    private final long tickMillis;
+
+    /**
+     * The handler of the timeouts which are due.
+     */
+    private final Consumer<List<T>> handler;
+
+    /**
+     * The buckets of this wheel. Access synchronized via {@link #syncRoot}.
+     */
+    private final List<List<T>> buckets;
+
+    /**
+     * Synchronizes access to the state of this wheel.
+     */
+    private final Object syncRoot = new Object();
+
+    /**
+     * The last tick which has been processed. Access synchronized via
+     * {@link #syncRoot}.
+     */
+    private long lastTick;
+
+    /**
+     * The number of timeouts which are scheduled. Access synchronized via
+     * {@link #syncRoot}.
+     */
+    private int scheduledCount = 0;
+
+    /**
+     * The scheduled execution of {@link #tick()}, or <tt>null</tt> if no
+     * timeout is scheduled. Access synchronized via {@link #syncRoot}.
+     */
+    private ScheduledFuture<?> tickFuture;
+
+    /**
+     * The value of {@link System#nanoTime()} at which the next execution of
+     * {@link #tick()} is due. Only maintained while metrics are enabled.
+     */
+    private volatile long nextTickNanos;
+
+    /**
+     * The {@link PeriodicTaskMetrics} which was notified that this wheel
+     * started, or <tt>null</tt> if it is not running. Access synchronized via
+     * {@link #syncRoot}.
+     */
+    private PeriodicTaskMetrics startedMetrics;
+
+    /**
+     * Initializes a new <tt>TimingWheel</tt>.
+     *
+     * @param name the name under which the wheel reports to the
+     * {@link PeriodicTaskMetrics} of {@link PeriodicRunnable}.
+     * @param timer the timer which drives the wheel.
+     * @param clock the source of time.
+     * @param tickMillis the duration of a tick in milliseconds.
+     * @param wheelSize the number of buckets. Timeouts which are due further
+     * in the future than the span of the wheel stay in their bucket for more
+     * than one revolution.
+     * @param handler the handler of the timeouts which are due.
+     */
+    public TimingWheel(
+        String name,
+        ScheduledExecutorService timer,
+        Clock clock,
+        long tickMillis,
+        int wheelSize,
+        Consumer<List<T>> handler)
+    {
+        this.name = name;
+        this.timer = timer;
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.handler = handler;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++)
+        {
+            buckets.add(new ArrayList<>());
+        }
+        this.lastTick = currentTick();
+    }
+
+    /**
+     * Schedules a timeout to be due after a specific delay, unless it is
+     * already due earlier or it has been cancelled. The delay is rounded up to
+     * the next tick, so that a timeout is never due early.
+     *
+     * @param timeout the timeout.
+     * @param delayMillis the delay in milliseconds.
+     */
+    public void schedule(T timeout, long delayMillis)
+    {
+        Timeout t = timeout;
+
+        synchronized (syncRoot)
+        {
+            if (t.cancelled)
+            {
+                return;
+            }
+            if (tickFuture == null)
+            {
+                start();
+            }
+
+            long tick
+                = Math.max(
+                    lastTick + 1,
+                    (clock.millis() + Math.max(0, delayMillis) + tickMillis - 1)
+                        / tickMillis);
+
+            if (t.dueTick != NOT_SCHEDULED)
+            {
+                if (t.dueTick <= tick)
+                {
+                    return;
+                }
+                bucket(t.dueTick).remove(timeout);
+                scheduledCount--;
+            }
+
+            t.dueTick = tick;
+            bucket(tick).add(timeout);
+            scheduledCount++;
+        }
+    }
+
+    /**
+     * Cancels a timeout. It is removed from this wheel and is not scheduled
+     * again. A timeout which has already been handed to the handler remains
+     * there, so the handler should check {@link Timeout#isCancelled()}.
+     *
+     * @param timeout the timeout.
+     */
+    public void cancel(T timeout)
+    {
+        Timeout t = timeout;
+
+        synchronized (syncRoot)
+        {
+            t.cancelled = true;
+            if (t.dueTick != NOT_SCHEDULED)
+            {
+                bucket(t.dueTick).remove(timeout);
+                t.dueTick = NOT_SCHEDULED;
+                scheduledCount--;
+                stopIfIdle();
+            }
+        }
+    }
+
+    /**
+     * Returns whether a timeout is scheduled.
+     *
+     * @param timeout the timeout.
+     * @return whether <tt>timeout</tt> is scheduled.
+     */
+    public boolean isScheduled(T timeout)
+    {
+        Timeout t = timeout;
+
+        synchronized (syncRoot)
+        {
+            return t.dueTick != NOT_SCHEDULED;
+        }
+    }
+
+    /**
+     * Returns the number of timeouts which are scheduled.
+     *
+     * @return the number of timeouts which are scheduled.
+     */
+    public int getScheduledCount()
+    {
+        synchronized (syncRoot)
+        {
+            return scheduledCount;
+        }
+    }
+
+    /**
+     * Returns the bucket of a specific tick. Must be called with
+     * {@link #syncRoot} held.
+     *
+     * @param tick the tick.
+     * @return the bucket of <tt>tick</tt>.
+     */
+    private List<T> bucket(long tick)
+    {
+        return buckets.get((int) (tick % buckets.size()));
+    }
+
+    /**
+     * Returns the current tick.
+     *
+     * @return the current tick.
+     */
+    private long currentTick()
+    {
+        return clock.millis() / tickMillis;
+    }
+
+    /**
+     * Starts the periodic execution of {@link #tick()}. Must be called with
+     * {@link #syncRoot} held.
+     */
+    private void start()
+    {
+        lastTick = currentTick();
+        tickFuture
+            = timer.scheduleAtFixedRate(
+                this::tick,
+                tickMillis,
+                tickMillis,
+                TimeUnit.MILLISECONDS);
+
+        PeriodicTaskMetrics metrics = PeriodicRunnable.getMetrics();
+
+        if (metrics != PeriodicTaskMetrics.NO_OP)
+        {
+            nextTickNanos
+                = System.nanoTime()
+                    + TimeUnit.MILLISECONDS.toNanos(tickMillis);
+            startedMetrics = metrics;
+            metrics.taskStarted(name);
+        }
+    }
+
+    /**
+     * Stops the periodic execution of {@link #tick()} if no timeout is
+     * scheduled. Must be called with {@link #syncRoot} held.
+     */
+    private void stopIfIdle()
+    {
+        if (scheduledCount == 0 && tickFuture != null)
+        {
+            tickFuture.cancel(false);
+            tickFuture = null;
+            if (startedMetrics != null)
+            {
+                startedMetrics.taskStopped(name);
+                startedMetrics = null;
+            }
+        }
+    }
+
+    /**
+     * Hands the timeouts in all buckets which became due since the last tick
+     * to the handler.
+     */
+    private void tick()
+    {
+        PeriodicTaskMetrics metrics = PeriodicRunnable.getMetrics();
+        long startNanos
+            = metrics == PeriodicTaskMetrics.NO_OP ? 0 : System.nanoTime();
+        List<T> due = new ArrayList<>();
+
+        synchronized (syncRoot)
+        {
+            long now = currentTick();
+
+            for (long tick = lastTick + 1; tick <= now; tick++)
+            {
+                for (Iterator<T> i = bucket(tick).iterator(); i.hasNext();)
+                {
+                    T timeout = i.next();
+                    Timeout t = timeout;
+
+                    if (t.dueTick <= now)
+                    {
+                        i.remove();
+                        t.dueTick = NOT_SCHEDULED;
+                        scheduledCount--;
+                        due.add(timeout);
+                    }
+                }
+                if (tick - lastTick >= buckets.size())
+                {
+                    // Any further tick maps to a bucket visited above.
+                    break;
+                }
+            }
+            lastTick = now;
+        }
+
+        if (!due.isEmpty())
+        {
+            try
+            {
+                handler.accept(due);
+            }
+            catch (Throwable t)
+            {
+                logger.log(Level.WARNING, "Failed to handle timeouts", t);
+            }
+        }
+
+        // Only stop once the handler had the chance to schedule the due
+        // timeouts again.
+        synchronized (syncRoot)
+        {
+            stopIfIdle();
+        }
+
+        if (metrics != PeriodicTaskMetrics.NO_OP)
+        {
+            long scheduledNanos = nextTickNanos;
+
+            metrics.taskExecuted(
+                name,
+                scheduledNanos == 0 ? 0 : startNanos - scheduledNanos,
+                System.nanoTime() - startNanos);
+            // The wheel is driven at a fixed rate, so the next tick is due
+            // one tick after this one was due rather than after it ran.
+            nextTickNanos
+                = (scheduledNanos == 0 ? startNanos : scheduledNanos)
+                    + TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        }
+    }
+
+    /**
+     * A timeout which can be scheduled with a {@link TimingWheel}. A timeout
+     * is scheduled with at most one wheel.
+     */
+    public static class Timeout
+    {
+        /**
+         * The tick at which this timeout is due, or {@link #NOT_SCHEDULED}.
+         * Access synchronized via the <tt>syncRoot</tt> of the wheel.
+         */
+        private long dueTick = NOT_SCHEDULED;
+
+        /**
+         * Whether this timeout has been cancelled.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Returns whether this timeout has been cancelled.
+         *
+         * @return whether this timeout has been cancelled.
+         */
+        public boolean isCancelled()
+        {
+            return cancelled;
+        }
+    }
+}
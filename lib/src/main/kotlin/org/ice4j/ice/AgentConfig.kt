@@ -27,10 +27,66 @@ class AgentConfig {
 
     var maxConsentFreshnessRetransmissions: Int = 30
 
+    /**
+     * The time without a response to a consent freshness check after which consent for a pair is considered lost and
+     * keep-alives for it stop (RFC 7675 Section 5.1).
+     */
+    var consentExpiry = 30 * 1000
+
     var terminationDelay = 3 * 1000
 
     var maxCheckListSize: Int = 100
 
+    /**
+     * The maximum aggregate number of connectivity checks per second sent by all agents sharing the default
+     * [CheckPacer]. Zero or less means that the aggregate rate is not limited and each check list is only paced by Ta.
+     */
+    var maxChecksPerSecond: Int = 0
+
+    /** The maximum number of checks the default [CheckPacer] lets through at once after a quiet period. */
+    var checkPacerBurst: Int = 50
+
+    /**
+     * Whether agents use the low-latency connectivity profile by default (the default value can be overridden with
+     * [Agent.setFastConnectivity]). The profile nominates the first valid pair with an acceptable round trip time, keeps
+     * several checks in flight, gives up on checks sooner once another pair has been validated and derives the
+     * retransmission timers of checks from the measured round trip times.
+     */
+    var fastConnectivity: Boolean = false
+
+    /**
+     * With the low-latency profile, the highest round trip time in milliseconds of a valid pair which is nominated as
+     * soon as it is validated.
+     */
+    var fastConnectivityAcceptableRtt = 150
+
+    /**
+     * With the low-latency profile, the time in milliseconds to wait for a valid pair with an acceptable round trip
+     * time before nominating the valid pair with the lowest round trip time.
+     */
+    var fastConnectivityNominationTimeout = 500
+
+    /** With the low-latency profile, the number of ordinary checks of a check list which may be in flight at once. */
+    var fastConnectivityParallelChecks = 4
+
+    /**
+     * With the low-latency profile, the maximum wait interval in milliseconds of the checks which are sent once another
+     * pair of the same component has been validated.
+     */
+    var fastConnectivityCheckMaxWaitInterval = 200
+
+    /**
+     * With the low-latency profile, the maximum number of retransmissions of the checks which are sent once another
+     * pair of the same component has been validated.
+     */
+    var fastConnectivityCheckMaxRetransmissions = 2
+
+    /**
+     * With the low-latency profile, the time in milliseconds after all checks of a check list have completed without a
+     * valid pair for each component after which the check list fails (instead of 5 seconds).
+     */
+    var fastConnectivityFailureDelay = 1000
+
     /** The value of the SOFTWARE attribute that ice4j should include in all outgoing messages. */
     var software: String? = "ice4j.org"
 
@@ -17,6 +17,7 @@
 package org.ice4j.ice.harvest
 
 import java.net.InetAddress
+import java.time.Duration
 
 class HarvestConfig {
 
@@ -30,6 +31,31 @@ class HarvestConfig {
 
     fun udpSocketPoolSize() = udpSocketPoolSize
 
+    /**
+     * The number of UDP sockets the host harvester keeps bound in advance for each local address and port range.
+     * Zero or less disables the pre-bound socket pool.
+     */
+    var udpPreBoundSocketPoolSize: Int = 0
+    fun udpPreBoundSocketPoolSize() = udpPreBoundSocketPoolSize
+
+    /**
+     * The number of threads which read the first datagram of accepted ICE-TCP connections, each with its own
+     * selector. Every listener starts its own threads, so the default is one. Zero or less means one.
+     */
+    var tcpReadThreads: Int = 1
+    fun tcpReadThreads() = tcpReadThreads
+
+    /** The backlog of pending ICE-TCP connections to request from the OS. Zero or less means the JDK default. */
+    var tcpAcceptBacklog: Int = 0
+    fun tcpAcceptBacklog() = tcpAcceptBacklog
+
+    /**
+     * The age after which the cached snapshot of the network interfaces and their addresses is enumerated again.
+     * Zero means that the interfaces are enumerated every time they are needed.
+     */
+    var networkInterfaceRefreshInterval: Duration = Duration.ofSeconds(10)
+    fun networkInterfaceRefreshInterval() = networkInterfaceRefreshInterval
+
     var useIpv6: Boolean = true
     fun useIpv6() = useIpv6
 
@@ -42,6 +68,13 @@ class HarvestConfig {
     var stunMappingCandidateHarvesterAddresses: List<String> = arrayListOf()
     fun stunMappingCandidateHarvesterAddresses() = stunMappingCandidateHarvesterAddresses
 
+    /**
+     * How long the server reflexive address learned from a STUN server for a local address is reused by other
+     * harvests through the same local address and server. Zero disables the cache.
+     */
+    var stunMappingCacheTtl: Duration = Duration.ZERO
+    fun stunMappingCacheTtl() = stunMappingCacheTtl
+
     var enableAwsHarvester: Boolean = false
     fun enableAwsHarvester() = enableAwsHarvester
 
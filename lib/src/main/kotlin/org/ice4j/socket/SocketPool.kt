@@ -15,6 +15,7 @@
  */
 package org.ice4j.socket
 
+import org.ice4j.util.Ice4jMetrics
 import org.ice4j.util.minBy
 import java.net.DatagramPacket
 import java.net.DatagramSocket
@@ -88,6 +89,7 @@ class SocketPool(
         val sendSocket = getSendSocket()
         sendSocket.socket.send(packet)
         returnSocket(sendSocket)
+        Ice4jMetrics.SOCKET_POOL_PACKETS_SENT.increment()
     }
 
     /** Gets a socket on which packets can be sent, chosen from among all the available send sockets. */
@@ -0,0 +1,107 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.ice4j.*;
+import org.junit.jupiter.api.*;
+
+public class CandidatePairRttTest
+{
+    private Agent agent;
+
+    private IceMediaStream stream;
+
+    private Component component;
+
+    private LocalCandidate local;
+
+    @BeforeEach
+    public void setUp()
+    {
+        agent = new Agent();
+        stream = agent.createMediaStream("audio");
+        component
+            = stream.createComponent(KeepAliveStrategy.SELECTED_ONLY, false);
+        local
+            = new HostCandidate(
+                new TransportAddress("192.0.2.1", 10000, Transport.UDP),
+                component);
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        agent.free();
+    }
+
+    @Test
+    public void validPairWithLowestRtt()
+    {
+        assertNull(stream.getValidPairWithLowestRtt(component));
+
+        CandidatePair high = createPair(1, 3000);
+        CandidatePair medium = createPair(2, 2000);
+        CandidatePair low = createPair(3, 1000);
+        CandidatePair unknown = createPair(4, 4000);
+
+        high.checkAnswered(30_000_000);
+        medium.checkAnswered(10_000_000);
+        low.checkAnswered(10_000_000);
+
+        stream.addToValidList(high);
+        stream.addToValidList(medium);
+        stream.addToValidList(low);
+        stream.addToValidList(unknown);
+
+        // Equal round trip times are ordered by priority, unknown ones last.
+        assertSame(medium, stream.getValidPairWithLowestRtt(component));
+        assertSame(unknown, stream.getValidPair(component));
+    }
+
+    @Test
+    public void checkCounters()
+    {
+        CandidatePair pair = createPair(1, 1000);
+
+        pair.checkSent();
+        pair.checkSent();
+        pair.checkAnswered(-1);
+        pair.checkLost();
+
+        assertEquals(2, pair.getChecksSent());
+        assertEquals(1, pair.getChecksAnswered());
+        assertEquals(1, pair.getChecksLost());
+        // The answer came after a retransmission, so there is no sample.
+        assertEquals(0, pair.getRttEstimator().getSampleCount());
+        assertNull(component.getSelectedPairRttEstimator());
+    }
+
+    private CandidatePair createPair(int port, long priority)
+    {
+        RemoteCandidate remote
+            = new RemoteCandidate(
+                new TransportAddress("198.51.100.1", port, Transport.UDP),
+                component,
+                CandidateType.HOST_CANDIDATE,
+                Integer.toString(port),
+                priority,
+                null);
+
+        return new CandidatePair(local, remote);
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ice4j.ice;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link CheckPacer} by simulating many agents which start their
+ * connectivity checks at the same time, each pacing its check list by Ta.
+ */
+public class CheckPacerTest
+{
+    private static final long TA_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private static final int CHECKS_PER_SECOND = 500;
+
+    private static final int BURST = 50;
+
+    /**
+     * The simulated time in nanoseconds.
+     */
+    private long now = 0;
+
+    private CheckPacer pacer;
+
+    @BeforeEach
+    void beforeEach()
+    {
+        now = 0;
+        pacer = new CheckPacer(CHECKS_PER_SECOND, BURST, () -> now);
+    }
+
+    @Test
+    public void aggregateRateIsLimited()
+    {
+        int agents = 1000;
+        long duration = TimeUnit.SECONDS.toNanos(2);
+        List<Long> sendTimes = new ArrayList<>();
+
+        simulate(agents, duration, (agent, t) -> sendTimes.add(t), -1);
+
+        // Without pacing every agent would send a check at t=0 and then one
+        // every Ta, i.e. 100000 checks.
+        assertTrue(
+            sendTimes.size() <= CHECKS_PER_SECOND * 2 + BURST,
+            "Too many checks: " + sendTimes.size());
+        assertTrue(
+            sendTimes.size() >= CHECKS_PER_SECOND * 2 * 9 / 10,
+            "Too few checks: " + sendTimes.size());
+
+        // No 100ms window may exceed the rate plus the burst.
+        long window = TimeUnit.MILLISECONDS.toNanos(100);
+        int start = 0;
+        for (int end = 0; end < sendTimes.size(); end++)
+        {
+            while (sendTimes.get(end) - sendTimes.get(start) >= window)
+            {
+                start++;
+            }
+            assertTrue(end - start + 1 <= CHECKS_PER_SECOND / 10 + BURST);
+        }
+    }
+
+    @Test
+    public void agentsGetFairShares()
+    {
+        int agents = 100;
+        int[] sent = new int[agents];
+
+        simulate(
+            agents,
+            TimeUnit.SECONDS.toNanos(4),
+            (agent, t) -> sent[agent]++,
+            -1);
+
+        // Each agent wants 50 checks/s but only gets ~5 checks/s.
+        int min = Arrays.stream(sent).min().getAsInt();
+        int max = Arrays.stream(sent).max().getAsInt();
+        assertTrue(min >= 15, "min=" + min);
+        assertTrue(max <= 25, "max=" + max);
+    }
+
+    @Test
+    public void triggeredChecksArePrioritized()
+    {
+        int agents = 100;
+        int[] sent = new int[agents];
+
+        // Agent 0 only sends triggered checks.
+        simulate(
+            agents,
+            TimeUnit.SECONDS.toNanos(1),
+            (agent, t) -> sent[agent]++,
+            0);
+
+        // Agent 0 is not limited by its fair share (5 checks/s) and gets
+        // most of its 50 checks/s even though the pacer is saturated.
+        assertTrue(sent[0] >= 40, "triggered=" + sent[0]);
+        assertTrue(sent[1] < 10, "ordinary=" + sent[1]);
+    }
+
+    @Test
+    public void unregisteredOwnersAreRemoved()
+    {
+        Object owner = new Object();
+
+        pacer.register(owner);
+        pacer.register(owner);
+        assertEquals(1, pacer.getOwnerCount());
+        pacer.unregister(owner);
+        assertEquals(1, pacer.getOwnerCount());
+        pacer.unregister(owner);
+        assertEquals(0, pacer.getOwnerCount());
+    }
+
+    /**
+     * Simulates <tt>agents</tt> pace makers which all start at time 0 and
+     * behave like <tt>ConnectivityCheckClient.PaceMaker</tt>: every Ta they
+     * try to send a check, and when denied by the pacer they retry after the
+     * delay it returns.
+     */
+    private void simulate(
+        int agents,
+        long duration,
+        SendListener listener,
+        int triggeredAgent)
+    {
+        PriorityQueue<long[]> events
+            = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+        Integer[] owners = new Integer[agents];
+
+        for (int i = 0; i < agents; i++)
+        {
+            owners[i] = i;
+            pacer.register(owners[i]);
+            events.add(new long[] { 0, i });
+        }
+
+        while (!events.isEmpty())
+        {
+            long[] event = events.poll();
+            if (event[0] > duration)
+            {
+                break;
+            }
+
+            now = event[0];
+            int agent = (int) event[1];
+            long wait = pacer.tryAcquire(owners[agent], agent == triggeredAgent);
+
+            if (wait == 0)
+            {
+                listener.checkSent(agent, now);
+                events.add(new long[] { now + TA_NANOS, agent });
+            }
+            else
+            {
+                events.add(new long[] { now + wait, agent });
+            }
+        }
+
+        for (Integer owner : owners)
+        {
+            pacer.unregister(owner);
+        }
+    }
+
+    private interface SendListener
+    {
+        void checkSent(int agent, long time);
+    }
+}
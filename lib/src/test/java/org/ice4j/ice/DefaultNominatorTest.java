@@ -0,0 +1,73 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice;
+
+import static org.mockito.Mockito.*;
+
+import java.beans.*;
+import java.util.*;
+import org.jitsi.utils.logging2.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link DefaultNominator} with mocked agents and streams.
+ */
+public class DefaultNominatorTest
+{
+    @Test
+    public void bestRttSkipsComponentsWhichHaveANominee()
+    {
+        Agent agent = mock(Agent.class);
+        when(agent.getLogger()).thenReturn(new LoggerImpl("test"));
+        when(agent.isControlling()).thenReturn(true);
+
+        IceMediaStream stream = mock(IceMediaStream.class);
+        CheckList checkList = mock(CheckList.class);
+        when(checkList.allChecksCompleted()).thenReturn(true);
+        when(stream.getCheckList()).thenReturn(checkList);
+
+        Component rtp = mock(Component.class);
+        Component rtcp = mock(Component.class);
+        when(rtp.getParentStream()).thenReturn(stream);
+        when(rtcp.getParentStream()).thenReturn(stream);
+        when(stream.getComponents()).thenReturn(Arrays.asList(rtp, rtcp));
+
+        CandidatePair rtpPair = mock(CandidatePair.class);
+        CandidatePair rtcpPair = mock(CandidatePair.class);
+        when(rtpPair.getParentComponent()).thenReturn(rtp);
+        when(rtcpPair.getParentComponent()).thenReturn(rtcp);
+        when(stream.getValidPairWithLowestRtt(rtp)).thenReturn(rtpPair);
+        when(stream.getValidPairWithLowestRtt(rtcp)).thenReturn(rtcpPair);
+
+        // The second component was nominated already, e.g. by an earlier
+        // event.
+        when(stream.validListContainsNomineeForComponent(rtcp))
+            .thenReturn(true);
+
+        DefaultNominator nominator = new DefaultNominator(agent);
+
+        nominator.setStrategy(NominationStrategy.NOMINATE_BEST_RTT);
+        nominator.propertyChange(
+            new PropertyChangeEvent(
+                rtpPair,
+                IceMediaStream.PROPERTY_PAIR_VALIDATED,
+                false,
+                true));
+
+        verify(agent).nominate(rtpPair);
+        verify(agent, never()).nominate(rtcpPair);
+    }
+}
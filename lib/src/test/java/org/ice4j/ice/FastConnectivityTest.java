@@ -0,0 +1,501 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice;
+
+import static org.ice4j.ice.AgentConfig.config;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.ice4j.*;
+import org.ice4j.attribute.*;
+import org.ice4j.message.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests the low-latency connectivity profile of {@link Agent}.
+ */
+public class FastConnectivityTest
+{
+    private final List<Agent> agents = new ArrayList<>();
+
+    private final List<DatagramSocket> sockets = new ArrayList<>();
+
+    private int acceptableRtt;
+
+    private int nominationTimeout;
+
+    private int parallelChecks;
+
+    @BeforeEach
+    public void setUp()
+    {
+        acceptableRtt = config.getFastConnectivityAcceptableRtt();
+        nominationTimeout = config.getFastConnectivityNominationTimeout();
+        parallelChecks = config.getFastConnectivityParallelChecks();
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        agents.forEach(Agent::free);
+        sockets.forEach(DatagramSocket::close);
+        config.setFastConnectivityAcceptableRtt(acceptableRtt);
+        config.setFastConnectivityNominationTimeout(nominationTimeout);
+        config.setFastConnectivityParallelChecks(parallelChecks);
+    }
+
+    @Test
+    public void profileCanBeToggled()
+    {
+        Agent agent = new Agent();
+
+        agents.add(agent);
+        assertFalse(agent.isFastConnectivity());
+        assertFalse(agent.getStunStack().isAdaptiveRetransmissions());
+
+        agent.setFastConnectivity(true);
+        assertEquals(
+            NominationStrategy.NOMINATE_FIRST_ACCEPTABLE_RTT,
+            agent.getNominationStrategy());
+        assertTrue(agent.getStunStack().isAdaptiveRetransmissions());
+
+        agent.setFastConnectivity(false);
+        assertEquals(
+            NominationStrategy.NOMINATE_FIRST_VALID,
+            agent.getNominationStrategy());
+        assertFalse(agent.getStunStack().isAdaptiveRetransmissions());
+    }
+
+    @Test
+    public void disablingTheProfileRestoresTheStrategy()
+    {
+        Agent agent = new Agent();
+
+        agents.add(agent);
+        agent.setNominationStrategy(NominationStrategy.NOMINATE_BEST_RTT);
+        agent.setFastConnectivity(true);
+        agent.setFastConnectivity(true);
+        agent.setFastConnectivity(false);
+        assertEquals(
+            NominationStrategy.NOMINATE_BEST_RTT,
+            agent.getNominationStrategy());
+
+        // A strategy set while the profile is on is kept.
+        agent.setFastConnectivity(true);
+        agent.setNominationStrategy(NominationStrategy.NOMINATE_HIGHEST_PRIO);
+        agent.setFastConnectivity(false);
+        assertEquals(
+            NominationStrategy.NOMINATE_HIGHEST_PRIO,
+            agent.getNominationStrategy());
+    }
+
+    @Test
+    public void establishesConnectivity()
+        throws Exception
+    {
+        Agent controlling = createAgent(true);
+        Agent controlled = createAgent(false);
+        CountDownLatch established = new CountDownLatch(2);
+
+        for (Agent agent : agents)
+        {
+            agent.setFastConnectivity(true);
+            agent.addStateChangeListener(evt ->
+            {
+                if (evt.getNewValue() == IceProcessingState.COMPLETED)
+                    established.countDown();
+            });
+        }
+        exchangeCredentials(controlling, controlled);
+        exchangeCandidates(controlling, controlled);
+
+        controlling.startConnectivityEstablishment();
+        controlled.startConnectivityEstablishment();
+
+        assertTrue(established.await(10, TimeUnit.SECONDS));
+
+        for (Agent agent : agents)
+        {
+            Component component = getComponent(agent);
+            CandidatePair selectedPair = component.getSelectedPair();
+
+            assertNotNull(selectedPair);
+            assertTrue(selectedPair.isNominated());
+        }
+
+        // The selected pair was nominated with the round trip time of the
+        // check which validated it.
+        assertNotNull(getComponent(controlling).getSelectedPairRttEstimator());
+        assertTrue(
+            getComponent(controlling).getSelectedPairRttEstimator()
+                    .getSampleCount() > 0);
+    }
+
+    @Test
+    public void lowestRttIsNominatedAfterTimeout()
+        throws Exception
+    {
+        // No round trip time is acceptable.
+        config.setFastConnectivityAcceptableRtt(0);
+        config.setFastConnectivityNominationTimeout(300);
+
+        Agent controlling = createAgent(true);
+        Agent controlled = createAgent(false);
+
+        exchangeCredentials(controlling, controlled);
+        exchangeCandidates(controlling, controlled);
+        // A remote candidate which never answers and is checked first, so
+        // that the checks do not complete before the timeout.
+        addSilentRemoteCandidate(
+            getComponent(controlling), "silent", Integer.MAX_VALUE);
+
+        CompletableFuture<Boolean> allChecksCompleted
+            = whenCompleted(controlling);
+        long start = System.nanoTime();
+
+        startConnectivityEstablishment();
+
+        assertFalse(allChecksCompleted.get(5, TimeUnit.SECONDS));
+        assertTrue(
+            System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+        assertTrue(getComponent(controlling).getSelectedPair().isNominated());
+    }
+
+    @Test
+    public void lowestRttIsNominatedOnceAllChecksComplete()
+        throws Exception
+    {
+        // No round trip time is acceptable, and the timeout never fires.
+        config.setFastConnectivityAcceptableRtt(0);
+        config.setFastConnectivityNominationTimeout(60_000);
+
+        Agent controlling = createAgent(true);
+        Agent controlled = createAgent(false);
+
+        exchangeCredentials(controlling, controlled);
+        exchangeCandidates(controlling, controlled);
+
+        CompletableFuture<Boolean> allChecksCompleted
+            = whenCompleted(controlling);
+
+        startConnectivityEstablishment();
+
+        allChecksCompleted.get(10, TimeUnit.SECONDS);
+        assertTrue(getComponent(controlling).getSelectedPair().isNominated());
+    }
+
+    @Test
+    public void checksGiveUpSoonerOnceAPairIsValid()
+        throws Exception
+    {
+        // Nominate once all checks completed, and check the pairs one by
+        // one so that the check of the silent pair starts after another
+        // pair was validated.
+        config.setFastConnectivityAcceptableRtt(0);
+        config.setFastConnectivityNominationTimeout(60_000);
+        config.setFastConnectivityParallelChecks(1);
+
+        Agent controlling = createAgent(true);
+        Agent controlled = createAgent(false);
+
+        exchangeCredentials(controlling, controlled);
+        exchangeCandidates(controlling, controlled);
+
+        DatagramSocket silent
+            = addSilentRemoteCandidate(getComponent(controlling), "silent", 1);
+        CompletableFuture<Boolean> allChecksCompleted
+            = whenCompleted(controlling);
+
+        startConnectivityEstablishment();
+
+        // The check of the silent pair times out after 100 + 200 + 200 ms
+        // rather than after 9.5 s with the default timers.
+        allChecksCompleted.get(5, TimeUnit.SECONDS);
+
+        for (CandidatePair pair
+                : getComponent(controlling).getParentStream().getCheckList())
+        {
+            if (pair.getRemoteCandidate().getTransportAddress().getPort()
+                    == silent.getLocalPort())
+            {
+                assertEquals(CandidatePairState.FAILED, pair.getState());
+            }
+        }
+    }
+
+    @Test
+    public void checkListFailsAfterFailureDelay()
+        throws Exception
+    {
+        Agent agent = createAgent(true);
+        Component component = getComponent(agent);
+        IceMediaStream stream = component.getParentStream();
+        CompletableFuture<Void> failed = new CompletableFuture<>();
+
+        agent.setFastConnectivity(true);
+        agent.addStateChangeListener(evt ->
+        {
+            if (evt.getNewValue() == IceProcessingState.FAILED)
+                failed.complete(null);
+        });
+        stream.setRemoteUfrag("remoteufrag");
+        stream.setRemotePassword("remotepasswordremotepassword");
+        // The only remote candidate rejects all checks right away.
+        respondWithErrors(
+            addSilentRemoteCandidate(component, "error", Integer.MAX_VALUE));
+
+        long start = System.nanoTime();
+
+        agent.startConnectivityEstablishment();
+
+        // The check list fails 1 s after its checks completed rather than
+        // after 5 s.
+        failed.get(10, TimeUnit.SECONDS);
+
+        long elapsedMillis
+            = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis >= 1000, "elapsed " + elapsedMillis);
+        assertTrue(elapsedMillis < 4000, "elapsed " + elapsedMillis);
+    }
+
+    @Test
+    public void parallelChecks()
+        throws Exception
+    {
+        assertEquals(4, checksInFlightAfterFirstRun(true));
+    }
+
+    @Test
+    public void oneCheckPerRunByDefault()
+        throws Exception
+    {
+        assertEquals(1, checksInFlightAfterFirstRun(false));
+    }
+
+    /**
+     * Starts checks towards remote candidates which never answer, with a
+     * <tt>Ta</tt> long enough for the pace maker to run only once, and returns
+     * the number of checks in flight then.
+     */
+    private int checksInFlightAfterFirstRun(boolean fastConnectivity)
+        throws Exception
+    {
+        Agent agent = createAgent(true);
+        Component component = getComponent(agent);
+        IceMediaStream stream = component.getParentStream();
+
+        agent.setFastConnectivity(fastConnectivity);
+        agent.setTa(10_000);
+        stream.setRemoteUfrag("remoteufrag");
+        stream.setRemotePassword("remotepasswordremotepassword");
+        for (int i = 0; i < 6; i++)
+        {
+            addSilentRemoteCandidate(component, Integer.toString(i), 1000 + i);
+        }
+
+        agent.startConnectivityEstablishment();
+
+        CheckList checkList = stream.getCheckList();
+
+        waitFor(() -> checkList.getInProgressCount() > 0);
+        // Let the first run complete.
+        Thread.sleep(200);
+        return checkList.getInProgressCount();
+    }
+
+    /**
+     * Adds a remote candidate to a component, on the address of its first
+     * local candidate, which never answers (unless told to with
+     * {@link #respondWithErrors(DatagramSocket)}).
+     *
+     * @return the socket of the remote candidate.
+     */
+    private DatagramSocket addSilentRemoteCandidate(
+            Component component,
+            String foundation,
+            long priority)
+        throws SocketException
+    {
+        InetAddress address
+            = component.getLocalCandidates().get(0).getTransportAddress()
+                .getAddress();
+        DatagramSocket socket = new DatagramSocket(0, address);
+
+        sockets.add(socket);
+        component.addRemoteCandidate(
+            new RemoteCandidate(
+                new TransportAddress(
+                    address,
+                    socket.getLocalPort(),
+                    Transport.UDP),
+                component,
+                CandidateType.HOST_CANDIDATE,
+                foundation,
+                priority,
+                null));
+        return socket;
+    }
+
+    /**
+     * Answers all Binding requests received on a socket with a 400 (Bad
+     * Request) error response, which fails the check.
+     */
+    private static void respondWithErrors(DatagramSocket socket)
+    {
+        Thread thread = new Thread(() ->
+        {
+            DatagramPacket p = new DatagramPacket(new byte[1500], 1500);
+
+            while (!socket.isClosed())
+            {
+                try
+                {
+                    socket.receive(p);
+
+                    Message request
+                        = Message.decode(
+                            p.getData(), p.getOffset(), p.getLength());
+                    Response response
+                        = MessageFactory.createBindingErrorResponse(
+                            ErrorCodeAttribute.BAD_REQUEST);
+
+                    response.setTransactionID(request.getTransactionID());
+
+                    byte[] data = response.encode(null);
+
+                    socket.send(
+                        new DatagramPacket(
+                            data, data.length, p.getSocketAddress()));
+                }
+                catch (Exception e)
+                {
+                    // The socket was closed or the packet was not a request.
+                }
+            }
+        }, "ErrorResponder");
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns a future completed when an agent completes, with whether all
+     * checks of its check list were completed then.
+     */
+    private static CompletableFuture<Boolean> whenCompleted(Agent agent)
+    {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        agent.addStateChangeListener(evt ->
+        {
+            if (evt.getNewValue() == IceProcessingState.COMPLETED)
+            {
+                future.complete(
+                    getComponent(agent).getParentStream().getCheckList()
+                        .allChecksCompleted());
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Enables the low-latency profile of all agents and starts their
+     * connectivity establishment.
+     */
+    private void startConnectivityEstablishment()
+    {
+        for (Agent agent : agents)
+        {
+            agent.setFastConnectivity(true);
+        }
+        for (Agent agent : agents)
+        {
+            agent.startConnectivityEstablishment();
+        }
+    }
+
+    private Agent createAgent(boolean controlling)
+        throws IOException
+    {
+        Agent agent = new Agent();
+
+        agents.add(agent);
+        agent.setControlling(controlling);
+        agent.createComponent(
+            agent.createMediaStream("audio"),
+            0x400, 0x400, 0xFFFF,
+            KeepAliveStrategy.SELECTED_ONLY,
+            false);
+        return agent;
+    }
+
+    private static Component getComponent(Agent agent)
+    {
+        return agent.getStream("audio").getComponents().get(0);
+    }
+
+    private static void exchangeCredentials(Agent agent1, Agent agent2)
+    {
+        IceMediaStream stream1 = agent1.getStream("audio");
+        IceMediaStream stream2 = agent2.getStream("audio");
+
+        stream1.setRemoteUfrag(agent2.getLocalUfrag());
+        stream1.setRemotePassword(agent2.getLocalPassword());
+        stream2.setRemoteUfrag(agent1.getLocalUfrag());
+        stream2.setRemotePassword(agent1.getLocalPassword());
+    }
+
+    private static void exchangeCandidates(Agent agent1, Agent agent2)
+    {
+        copyRemoteCandidates(getComponent(agent1), getComponent(agent2));
+        copyRemoteCandidates(getComponent(agent2), getComponent(agent1));
+    }
+
+    private static void copyRemoteCandidates(
+            Component localComponent,
+            Component remoteComponent)
+    {
+        for (LocalCandidate candidate : remoteComponent.getLocalCandidates())
+        {
+            localComponent.addRemoteCandidate(
+                new RemoteCandidate(
+                    candidate.getTransportAddress(),
+                    localComponent,
+                    candidate.getType(),
+                    candidate.getFoundation(),
+                    candidate.getPriority(),
+                    null));
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.ice4j.ice;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.ice4j.util.PeriodicRunnable;
+import org.ice4j.util.PeriodicTaskMetrics;
+import org.jitsi.utils.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link KeepAliveService} with mocked agents and a fake clock.
+ */
+public class KeepAliveServiceTest
+{
+    private FakeScheduledExecutorService timer;
+
+    private KeepAliveService service;
+
+    @BeforeEach
+    void beforeEach()
+    {
+        timer = new FakeScheduledExecutorService();
+        ExecutorService executor = mock(ExecutorService.class);
+        doAnswer(a ->
+        {
+            ((Runnable) a.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+
+        service
+            = new KeepAliveService(
+                Collections.singletonList(timer),
+                executor,
+                timer.getClock());
+    }
+
+    @AfterEach
+    void afterEach()
+    {
+        PeriodicRunnable.setMetrics(null);
+    }
+
+    private void elapse(Duration duration)
+    {
+        long ticks = duration.toMillis() / KeepAliveService.TICK_MILLIS;
+        for (long i = 0; i < ticks; i++)
+        {
+            timer.getClock().elapse(
+                Duration.ofMillis(KeepAliveService.TICK_MILLIS));
+            timer.run();
+        }
+    }
+
+    private static Agent mockAgent(
+        boolean consentFreshness,
+        Set<CandidatePair> pairs)
+    {
+        Component component = mock(Component.class);
+        when(component.getKeepAlivePairs()).thenReturn(pairs);
+        IceMediaStream stream = mock(IceMediaStream.class);
+        when(stream.getComponents())
+            .thenReturn(Collections.singletonList(component));
+
+        Agent agent = mock(Agent.class);
+        when(agent.getStreams())
+            .thenReturn(Collections.singletonList(stream));
+        when(agent.shouldRunStunKeepAlive()).thenReturn(true);
+        when(agent.getPerformConsentFreshness()).thenReturn(consentFreshness);
+        return agent;
+    }
+
+    private static CandidatePair mockPair()
+    {
+        CandidatePair pair = mock(CandidatePair.class);
+        when(pair.getLocalCandidate()).thenReturn(mock(LocalCandidate.class));
+        when(pair.getConsentFreshness())
+            .thenReturn(CandidatePair.CONSENT_FRESHNESS_UNKNOWN);
+        return pair;
+    }
+
+    @Test
+    public void keepAlivesAreSentWithinTheRandomizedInterval()
+    {
+        CandidatePair pair = mockPair();
+        Agent agent
+            = mockAgent(false, new HashSet<>(Collections.singleton(pair)));
+
+        service.register(agent);
+        elapse(Duration.ofMillis(100));
+
+        // The first keep-alive is sent right away.
+        verify(agent, times(1)).sendKeepAlive(pair);
+
+        // The next one is due between 0.8 and 1.2 of the interval.
+        long interval = AgentConfig.config.getConsentFreshnessInterval();
+        elapse(Duration.ofMillis((long) (interval * 0.8) - 200));
+        verify(agent, times(1)).sendKeepAlive(pair);
+        elapse(Duration.ofMillis((long) (interval * 0.4) + 400));
+        verify(agent, times(2)).sendKeepAlive(pair);
+
+        assertEquals(1, service.getAgentCount());
+        assertEquals(1, service.getPairCount());
+    }
+
+    @Test
+    public void manyAgentsShareOneTimer()
+    {
+        List<Agent> agents = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            Agent agent = mockAgent(
+                false,
+                new HashSet<>(Collections.singleton(mockPair())));
+            agents.add(agent);
+            service.register(agent);
+        }
+
+        assertEquals(1, timer.numPendingJobs());
+        elapse(Duration.ofSeconds(1));
+        assertEquals(1000, service.getKeepAlivesSent());
+
+        for (Agent agent : agents)
+        {
+            service.unregister(agent);
+        }
+        assertEquals(0, service.getAgentCount());
+    }
+
+    @Test
+    public void removedPairsAreNoLongerKeptAlive()
+    {
+        CandidatePair pair = mockPair();
+        Set<CandidatePair> pairs = new HashSet<>(Collections.singleton(pair));
+        Agent agent = mockAgent(false, pairs);
+
+        service.register(agent);
+        elapse(Duration.ofMillis(100));
+        verify(agent, times(1)).sendKeepAlive(pair);
+
+        pairs.clear();
+        elapse(Duration.ofSeconds(60));
+        verify(agent, times(1)).sendKeepAlive(pair);
+        assertEquals(0, service.getPairCount());
+    }
+
+    @Test
+    public void ticksAreReportedToMetrics()
+    {
+        PeriodicTaskMetrics metrics = mock(PeriodicTaskMetrics.class);
+        PeriodicRunnable.setMetrics(metrics);
+
+        Agent agent = mockAgent(
+            false,
+            new HashSet<>(Collections.singleton(mockPair())));
+
+        service.register(agent);
+        verify(metrics).taskStarted("KeepAliveService");
+
+        elapse(Duration.ofSeconds(1));
+        verify(metrics, times(10))
+            .taskExecuted(eq("KeepAliveService"), anyLong(), anyLong());
+
+        service.unregister(agent);
+        verify(metrics).taskStopped("KeepAliveService");
+    }
+
+    @Test
+    public void consentExpiryIsReportedAndKeepAlivesContinue()
+    {
+        CandidatePair pair = mockPair();
+        Agent agent
+            = mockAgent(true, new HashSet<>(Collections.singleton(pair)));
+
+        service.register(agent);
+        elapse(Duration.ofSeconds(
+            AgentConfig.config.getConsentExpiry() / 1000 + 20));
+
+        assertEquals(1, service.getConsentExpirations());
+        verify(pair).setConsentExpired(true);
+        long sent = service.getKeepAlivesSent();
+
+        elapse(Duration.ofSeconds(60));
+        assertTrue(service.getKeepAlivesSent() > sent);
+        assertEquals(1, service.getConsentExpirations());
+        assertEquals(1, service.getPairCount());
+
+        // A response regains consent.
+        when(pair.getConsentFreshness())
+            .thenReturn(timer.getClock().millis());
+        // The next check is at most the (randomized) interval away.
+        elapse(Duration.ofMillis(
+            2 * AgentConfig.config.getConsentFreshnessInterval()));
+        verify(pair).setConsentExpired(false);
+    }
+
+    @Test
+    public void agentsAreSpreadOverTheTimers()
+    {
+        FakeScheduledExecutorService timer2
+            = new FakeScheduledExecutorService(timer.getClock());
+        ExecutorService executor = mock(ExecutorService.class);
+
+        service
+            = new KeepAliveService(
+                Arrays.asList(timer, timer2),
+                executor,
+                timer.getClock());
+        for (int i = 0; i < 100; i++)
+        {
+            service.register(mockAgent(
+                false,
+                new HashSet<>(Collections.singleton(mockPair()))));
+        }
+
+        assertEquals(1, timer.numPendingJobs());
+        assertEquals(1, timer2.numPendingJobs());
+    }
+
+    @Test
+    public void agentIsUnregisteredWhenItNoLongerNeedsKeepAlives()
+    {
+        Agent agent = mockAgent(
+            false,
+            new HashSet<>(Collections.singleton(mockPair())));
+
+        service.register(agent);
+        elapse(Duration.ofMillis(100));
+        assertEquals(1, service.getAgentCount());
+
+        when(agent.shouldRunStunKeepAlive()).thenReturn(false);
+        elapse(Duration.ofSeconds(20));
+        assertEquals(0, service.getAgentCount());
+    }
+}
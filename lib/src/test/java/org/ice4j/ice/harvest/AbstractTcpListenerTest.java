@@ -0,0 +1,290 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.ice4j.*;
+import org.ice4j.attribute.*;
+import org.ice4j.message.*;
+import org.ice4j.socket.*;
+import org.ice4j.stack.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests the reading of the first frame of ICE-TCP sessions by
+ * {@link AbstractTcpListener} and its pushing back into the session.
+ */
+public class AbstractTcpListenerTest
+{
+    /**
+     * The number of connections opened at once by
+     * {@link #burstOfConnectionsIsSpreadOverReadThreads()}.
+     */
+    private static final int BURST_SIZE = 2000;
+
+    private InetSocketAddress address;
+
+    private Listener listener;
+
+    private SocketChannel client;
+
+    private final List<SocketChannel> clients = new ArrayList<>();
+
+    @BeforeEach
+    void beforeEach()
+        throws Exception
+    {
+        try (ServerSocket s = new ServerSocket(0))
+        {
+            address
+                = new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(),
+                    s.getLocalPort());
+        }
+    }
+
+    @AfterEach
+    void afterEach()
+        throws IOException
+    {
+        HarvestConfig.config.setTcpReadThreads(1);
+        HarvestConfig.config.setTcpAcceptBacklog(0);
+        listener.close();
+        for (SocketChannel client : clients)
+        {
+            client.close();
+        }
+
+        Socket socket;
+
+        while ((socket = listener.sessions.poll()) != null)
+        {
+            socket.close();
+        }
+
+        TCPFrameDecoder pushback;
+
+        while ((pushback = listener.pushbacks.poll()) != null)
+        {
+            pushback.release();
+        }
+    }
+
+    private void start()
+        throws IOException
+    {
+        listener
+            = new Listener(
+                Collections.singletonList(
+                    new TransportAddress(
+                        address.getAddress(),
+                        address.getPort(),
+                        Transport.TCP)));
+        client = connect();
+    }
+
+    private SocketChannel connect()
+        throws IOException
+    {
+        SocketChannel client = SocketChannel.open(address);
+
+        clients.add(client);
+        return client;
+    }
+
+    private static byte[] bindingRequest(String username)
+        throws Exception
+    {
+        Request request = MessageFactory.createBindingRequest();
+
+        request.setTransactionID(
+            TransactionID.createNewTransactionID().getBytes());
+        request.putAttribute(
+            AttributeFactory.createUsernameAttribute(username));
+        return request.encode(null);
+    }
+
+    private static void writeFrames(SocketChannel client, byte[]... frames)
+        throws IOException
+    {
+        int length = 0;
+
+        for (byte[] frame : frames)
+        {
+            length += 2 + frame.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+
+        for (byte[] frame : frames)
+        {
+            buffer.putShort((short) frame.length).put(frame);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            client.write(buffer);
+        }
+    }
+
+    private void assertFramesPushedBack(byte[]... frames)
+        throws Exception
+    {
+        Socket socket = listener.sessions.poll(10, TimeUnit.SECONDS);
+        TCPFrameDecoder pushback = listener.pushbacks.poll();
+
+        assertNotNull(socket);
+        assertEquals("local", listener.ufrags.poll());
+
+        IceSocketWrapper wrapper
+            = new AbstractTcpListener.PushBackIceSocketWrapper(
+                new IceTcpSocketWrapper(new DelegatingSocket(socket)),
+                pushback);
+
+        for (byte[] frame : frames)
+        {
+            byte[] buffer = new byte[1500];
+            DatagramPacket p = new DatagramPacket(buffer, 10, 1490);
+
+            wrapper.receive(p);
+            assertEquals(10, p.getOffset());
+            assertArrayEquals(
+                frame,
+                Arrays.copyOfRange(
+                    p.getData(), p.getOffset(), p.getOffset() + p.getLength()));
+            assertEquals(
+                client.getLocalAddress(),
+                new InetSocketAddress(p.getAddress(), p.getPort()));
+        }
+        listener.sessions.add(socket);
+    }
+
+    @Test
+    public void firstFrameIsPushedBack()
+        throws Exception
+    {
+        byte[] request = bindingRequest("local:remote");
+        byte[] next = { 1, 2, 3 };
+
+        // The next frame arrives with the first one and has to be left to
+        // the session.
+        start();
+        writeFrames(client, request, next);
+        assertFramesPushedBack(request, next);
+    }
+
+    @Test
+    public void pseudoSslHandshakeIsAnswered()
+        throws Exception
+    {
+        byte[] request = bindingRequest("local:remote");
+
+        start();
+
+        ByteBuffer clientHandshake
+            = ByteBuffer.wrap(
+                GoogleTurnSSLCandidateHarvester.SSL_CLIENT_HANDSHAKE);
+        while (clientHandshake.hasRemaining())
+        {
+            client.write(clientHandshake);
+        }
+
+        ByteBuffer serverHandshake
+            = ByteBuffer.allocate(
+                GoogleTurnSSLCandidateHarvester.SSL_SERVER_HANDSHAKE.length);
+        while (serverHandshake.hasRemaining())
+        {
+            assertNotEquals(-1, client.read(serverHandshake));
+        }
+        assertArrayEquals(
+            GoogleTurnSSLCandidateHarvester.SSL_SERVER_HANDSHAKE,
+            serverHandshake.array());
+
+        writeFrames(client, request);
+        assertFramesPushedBack(request);
+    }
+
+    @Test
+    public void burstOfConnectionsIsSpreadOverReadThreads()
+        throws Exception
+    {
+        HarvestConfig.config.setTcpReadThreads(4);
+        HarvestConfig.config.setTcpAcceptBacklog(BURST_SIZE);
+        start();
+
+        byte[] request = bindingRequest("local:remote");
+
+        writeFrames(client, request);
+        for (int i = 1; i < BURST_SIZE; i++)
+        {
+            writeFrames(connect(), request);
+        }
+
+        long deadline = System.currentTimeMillis() + 30_000;
+
+        while (listener.sessions.size() < BURST_SIZE
+            && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(BURST_SIZE, listener.sessions.size());
+        assertEquals(4, listener.readThreadNames.size());
+    }
+
+    private static class Listener
+        extends AbstractTcpListener
+    {
+        final BlockingQueue<Socket> sessions = new LinkedBlockingQueue<>();
+
+        final Queue<String> ufrags = new ConcurrentLinkedQueue<>();
+
+        final Queue<TCPFrameDecoder> pushbacks
+            = new ConcurrentLinkedQueue<>();
+
+        final Set<String> readThreadNames = ConcurrentHashMap.newKeySet();
+
+        Listener(List<TransportAddress> transportAddresses)
+            throws IOException
+        {
+            super(transportAddresses);
+        }
+
+        @Override
+        protected void addLocalAddresses(
+                List<TransportAddress> transportAddresses)
+        {
+            // Allow the loopback address.
+            localAddresses.addAll(transportAddresses);
+        }
+
+        @Override
+        protected void acceptSession(
+                Socket socket, String ufrag, TCPFrameDecoder pushback)
+        {
+            readThreadNames.add(Thread.currentThread().getName());
+            ufrags.add(ufrag);
+            pushbacks.add(pushback);
+            sessions.add(socket);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.ice4j.*;
+import org.ice4j.attribute.*;
+import org.ice4j.message.*;
+import org.ice4j.stack.*;
+import org.ice4j.util.*;
+import org.junit.jupiter.api.*;
+
+public class AbstractUdpListenerTest
+{
+    private TestListener listener;
+
+    private DatagramSocket sender;
+
+    @BeforeEach
+    public void setUp()
+        throws IOException
+    {
+        listener
+            = new TestListener(
+                new TransportAddress("127.0.0.1", 0, Transport.UDP));
+        sender = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        sender.close();
+        listener.close();
+    }
+
+    @Test
+    public void queueStatistics()
+        throws Exception
+    {
+        int count = 200;
+
+        send(createBindingRequest());
+        for (int i = 1; i < count; i++)
+        {
+            send(new byte[100]);
+        }
+
+        UdpQueueStatistics statistics = listener.getQueueStatistics();
+
+        waitFor(() -> statistics.getEnqueued() == count);
+
+        AbstractUdpListener.MySocket socket = listener.session.get();
+        UdpQueueStatistics sessionStatistics = socket.getQueueStatistics();
+
+        // The session is not read from, so its queue overflows.
+        assertEquals(count, sessionStatistics.getEnqueued());
+        assertEquals(count - 128, sessionStatistics.getDropped());
+        assertEquals(128, sessionStatistics.getMaxDepth());
+        assertEquals(count - 128, statistics.getDropped());
+        assertEquals(128, statistics.getMaxDepth());
+
+        DatagramPacket p = new DatagramPacket(new byte[1500], 1500);
+
+        for (int i = 0; i < 10; i++)
+        {
+            socket.receive(p);
+        }
+        assertEquals(10, sessionStatistics.getDequeued());
+        assertEquals(10, sessionStatistics.getTimeInQueue().getCount());
+        assertEquals(10, statistics.getDequeued());
+        assertEquals(10, statistics.getTimeInQueue().getCount());
+    }
+
+    private void send(byte[] data)
+        throws IOException
+    {
+        sender.send(
+            new DatagramPacket(
+                data,
+                data.length,
+                listener.getLocalAddress()));
+    }
+
+    private static byte[] createBindingRequest()
+        throws StunException
+    {
+        Request request = MessageFactory.createBindingRequest();
+
+        request.putAttribute(
+            AttributeFactory.createUsernameAttribute("local:remote"));
+        request.setTransactionID(
+            TransactionID.createNewTransactionID().getBytes());
+        return request.encode(null);
+    }
+
+    private static void waitFor(BooleanSupplier condition)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Accepts a session for every STUN Binding request from a new address.
+     */
+    private static class TestListener
+        extends AbstractUdpListener
+    {
+        final CompletableFuture<MySocket> session = new CompletableFuture<>();
+
+        TestListener(TransportAddress localAddress)
+            throws IOException
+        {
+            super(localAddress);
+        }
+
+        @Override
+        protected MySocket maybeAcceptNewSession(
+                Buffer buf,
+                InetSocketAddress remoteAddress,
+                String ufrag)
+        {
+            try
+            {
+                MySocket socket = addSocket(remoteAddress, ufrag, b -> {});
+
+                session.complete(socket);
+                return socket;
+            }
+            catch (SocketException e)
+            {
+                return null;
+            }
+        }
+    }
+}
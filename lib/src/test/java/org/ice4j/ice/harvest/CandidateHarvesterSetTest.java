@@ -0,0 +1,192 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.ice4j.ice.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests the deadline and the early trickling of {@link CandidateHarvesterSet}.
+ */
+public class CandidateHarvesterSetTest
+{
+    private static final int TIMEOUT = 500;
+
+    private final Component component = mock(Component.class);
+
+    private final LocalCandidate first = mock(LocalCandidate.class);
+
+    private final LocalCandidate second = mock(LocalCandidate.class);
+
+    private final BlockingQueue<LocalCandidate> trickled
+        = new LinkedBlockingQueue<>();
+
+    private final TrickleCallback trickleCallback
+        = iceCandidates ->
+        {
+            if (iceCandidates != null)
+                trickled.addAll(iceCandidates);
+        };
+
+    private final CandidateHarvesterSet harvesters
+        = new CandidateHarvesterSet();
+
+    @BeforeEach
+    void beforeEach()
+    {
+        HarvestConfig.config.setTimeout(TIMEOUT);
+    }
+
+    @AfterEach
+    void afterEach()
+    {
+        HarvestConfig.config.setTimeout(90 * 1000);
+    }
+
+    private void harvestAsync(CompletableFuture<Void> done)
+    {
+        new Thread(() ->
+        {
+            harvesters.harvest(
+                Collections.singletonList(component),
+                trickleCallback);
+            done.complete(null);
+        }).start();
+    }
+
+    @Test
+    public void candidatesAreTrickledAsSoonAsTheyAreFound()
+        throws Exception
+    {
+        CountDownLatch release = new CountDownLatch(1);
+
+        harvesters.add(
+            new FakeHarvester()
+            {
+                @Override
+                public Collection<LocalCandidate> harvest(
+                    Component component,
+                    TrickleCallback trickleCallback)
+                {
+                    trickleCallback.onIceCandidates(
+                        Collections.singletonList(first));
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                    return Arrays.asList(first, second);
+                }
+            });
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        harvestAsync(done);
+        assertSame(first, trickled.poll(5, TimeUnit.SECONDS));
+        assertFalse(done.isDone());
+
+        release.countDown();
+        done.get(5, TimeUnit.SECONDS);
+
+        // The candidates which were returned are only trickled once.
+        assertEquals(Collections.singletonList(second), new ArrayList<>(trickled));
+        assertTrue(harvesters.getTimeToFirstCandidate() >= 0);
+        assertTrue(
+            harvesters.getTimeToFirstCandidate()
+                <= harvesters.getTimeToAllCandidates());
+    }
+
+    @Test
+    public void slowHarvestersAreCancelledAtTheDeadline()
+        throws Exception
+    {
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        harvesters.add(
+            new FakeHarvester()
+            {
+                @Override
+                public Collection<LocalCandidate> harvest(Component component)
+                {
+                    return Collections.singletonList(first);
+                }
+            });
+
+        FakeHarvester slow
+            = new FakeHarvester()
+            {
+                @Override
+                public Collection<LocalCandidate> harvest(Component component)
+                {
+                    try
+                    {
+                        Thread.sleep(60_000);
+                    }
+                    catch (InterruptedException ie)
+                    {
+                        interrupted.countDown();
+                    }
+                    return Collections.emptyList();
+                }
+            };
+
+        harvesters.add(slow);
+
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        harvestAsync(done);
+        done.get(5, TimeUnit.SECONDS);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(first), new ArrayList<>(trickled));
+        assertTrue(harvesters.getTimeToAllCandidates() >= TIMEOUT);
+        assertTrue(
+            harvesters.getTimeToFirstCandidate()
+                < harvesters.getTimeToAllCandidates());
+    }
+
+    private static class FakeHarvester
+        implements CandidateHarvester
+    {
+        private final HarvestStatistics harvestStatistics
+            = new HarvestStatistics();
+
+        @Override
+        public Collection<LocalCandidate> harvest(Component component)
+        {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public HarvestStatistics getHarvestStatistics()
+        {
+            return harvestStatistics;
+        }
+
+        @Override
+        public boolean isHostHarvester()
+        {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import org.jitsi.utils.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link NetworkInterfaceCache} with a fake enumerator and clock.
+ */
+public class NetworkInterfaceCacheTest
+{
+    private static final Duration REFRESH_INTERVAL = Duration.ofSeconds(10);
+
+    private FakeScheduledExecutorService timer;
+
+    private final AtomicInteger enumerations = new AtomicInteger();
+
+    private volatile List<NetworkInterfaceCache.InterfaceInfo> interfaces;
+
+    private volatile boolean failing = false;
+
+    private NetworkInterfaceCache cache;
+
+    @BeforeEach
+    void beforeEach()
+        throws Exception
+    {
+        timer = new FakeScheduledExecutorService();
+        interfaces
+            = Arrays.asList(
+                iface("eth0", true, "10.0.0.1", "fe80::1"),
+                iface("eth1", false, "10.1.0.1"));
+        cache = createCache(REFRESH_INTERVAL);
+    }
+
+    private NetworkInterfaceCache createCache(Duration refreshInterval)
+    {
+        return new NetworkInterfaceCache(
+            () ->
+            {
+                enumerations.incrementAndGet();
+                if (failing)
+                {
+                    throw new IOException("netlink failure");
+                }
+                return interfaces;
+            },
+            timer,
+            timer.getClock(),
+            refreshInterval);
+    }
+
+    private static NetworkInterfaceCache.InterfaceInfo iface(
+            String name,
+            boolean up,
+            String... addresses)
+        throws UnknownHostException
+    {
+        List<InetAddress> inetAddresses = new ArrayList<>();
+
+        for (String address : addresses)
+        {
+            inetAddresses.add(InetAddress.getByName(address));
+        }
+        return new NetworkInterfaceCache.InterfaceInfo(
+            null, name, name, up, false, false, inetAddresses);
+    }
+
+    @Test
+    public void snapshotIsCachedUntilStale()
+    {
+        NetworkInterfaceCache.Snapshot snapshot = cache.getSnapshot();
+
+        assertEquals(2, snapshot.getInterfaces().size());
+        assertSame(snapshot, cache.getSnapshot());
+        timer.getClock().elapse(REFRESH_INTERVAL.minusMillis(1));
+        assertSame(snapshot, cache.getSnapshot());
+        assertEquals(1, enumerations.get());
+
+        timer.getClock().elapse(Duration.ofMillis(1));
+        assertNotSame(snapshot, cache.getSnapshot());
+        assertEquals(2, enumerations.get());
+    }
+
+    @Test
+    public void zeroIntervalDisablesCaching()
+    {
+        cache = createCache(Duration.ZERO);
+        cache.getSnapshot();
+        cache.getSnapshot();
+        assertEquals(2, enumerations.get());
+    }
+
+    @Test
+    public void listenersAreNotifiedOfChanges()
+        throws Exception
+    {
+        List<NetworkInterfaceCache.Snapshot> changes = new ArrayList<>();
+
+        NetworkInterfaceCache.Listener listener
+            = (previous, current) ->
+            {
+                changes.add(previous);
+                changes.add(current);
+            };
+
+        cache.getSnapshot();
+        cache.addListener(listener);
+
+        // Same interfaces in a different order.
+        interfaces = Arrays.asList(interfaces.get(1), interfaces.get(0));
+        timer.getClock().elapse(REFRESH_INTERVAL);
+        timer.run();
+        assertEquals(2, enumerations.get());
+        assertTrue(changes.isEmpty());
+
+        interfaces
+            = Arrays.asList(
+                iface("eth0", true, "10.0.0.2", "fe80::1"),
+                iface("eth1", false, "10.1.0.1"));
+        timer.getClock().elapse(REFRESH_INTERVAL);
+        timer.run();
+        assertEquals(3, enumerations.get());
+        assertEquals(2, changes.size());
+        assertTrue(
+            changes.get(0).getAddresses().contains(
+                InetAddress.getByName("10.0.0.1")));
+        assertTrue(
+            changes.get(1).getAddresses().contains(
+                InetAddress.getByName("10.0.0.2")));
+
+        // No more periodic refreshes without listeners.
+        cache.removeListener(listener);
+        timer.getClock().elapse(REFRESH_INTERVAL);
+        timer.run();
+        assertEquals(3, enumerations.get());
+    }
+
+    @Test
+    public void failedEnumerationKeepsTheSnapshot()
+    {
+        List<NetworkInterfaceCache.Snapshot> changes = new ArrayList<>();
+
+        cache.getSnapshot();
+        cache.addListener((previous, current) -> changes.add(current));
+
+        failing = true;
+        timer.getClock().elapse(REFRESH_INTERVAL);
+        timer.run();
+        assertEquals(2, enumerations.get());
+        assertTrue(changes.isEmpty());
+        assertEquals(2, cache.getSnapshot().getInterfaces().size());
+
+        // Retried once the kept snapshot is stale again.
+        timer.getClock().elapse(REFRESH_INTERVAL);
+        failing = false;
+        cache.getSnapshot();
+        assertEquals(3, enumerations.get());
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void failedFirstEnumerationIsNotCached()
+    {
+        failing = true;
+        assertTrue(cache.getSnapshot().getInterfaces().isEmpty());
+
+        failing = false;
+        assertEquals(2, cache.getSnapshot().getInterfaces().size());
+        assertEquals(2, enumerations.get());
+    }
+
+    @Test
+    public void downAndLoopbackInterfacesAreNotAllowed()
+        throws Exception
+    {
+        NetworkInterfaceCache.InterfaceInfo loopback
+            = new NetworkInterfaceCache.InterfaceInfo(
+                null,
+                "lo",
+                "lo",
+                true,
+                true,
+                false,
+                Collections.singletonList(InetAddress.getLoopbackAddress()));
+
+        assertTrue(
+            HostCandidateHarvester.isInterfaceAllowed(interfaces.get(0)));
+        assertFalse(
+            HostCandidateHarvester.isInterfaceAllowed(interfaces.get(1)));
+        assertFalse(HostCandidateHarvester.isInterfaceAllowed(loopback));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.net.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link PreBoundSocketPool} with a fake socket factory and an executor
+ * which runs the replenishments on demand.
+ */
+public class PreBoundSocketPoolTest
+{
+    private static final int MIN_PORT = 10000;
+
+    private static final int MAX_PORT = 10009;
+
+    private final InetAddress address = InetAddress.getLoopbackAddress();
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+    /**
+     * The ports which the fake factory fails to bind.
+     */
+    private final Set<Integer> busyPorts = new HashSet<>();
+
+    /**
+     * The ports which the fake factory has been asked to bind, in order.
+     */
+    private final List<Integer> boundPorts = new ArrayList<>();
+
+    private final List<DatagramSocket> sockets = new ArrayList<>();
+
+    private PreBoundSocketPool pool;
+
+    @BeforeEach
+    void beforeEach()
+    {
+        pool = new PreBoundSocketPool(3, tasks::add, this::createSocket);
+    }
+
+    private DatagramSocket createSocket(int port, InetAddress address)
+        throws SocketException
+    {
+        if (busyPorts.contains(port))
+        {
+            throw new BindException("Address already in use");
+        }
+        boundPorts.add(port);
+
+        DatagramSocket socket = mock(DatagramSocket.class);
+
+        when(socket.getLocalPort()).thenReturn(port);
+        sockets.add(socket);
+        return socket;
+    }
+
+    private void runTasks()
+    {
+        Runnable task;
+
+        while ((task = tasks.poll()) != null)
+        {
+            task.run();
+        }
+    }
+
+    @Test
+    public void coldPoolIsReplenishedInTheBackground()
+    {
+        assertNull(pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT));
+        assertTrue(boundPorts.isEmpty());
+        assertEquals(1, tasks.size());
+
+        // Only one replenishment is pending at a time.
+        assertNull(pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT));
+        assertEquals(1, tasks.size());
+
+        runTasks();
+        assertEquals(3, pool.getIdleCount(address, MIN_PORT, MAX_PORT));
+        assertEquals(Arrays.asList(10000, 10001, 10002), boundPorts);
+
+        DatagramSocket socket
+            = pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT);
+
+        assertNotNull(socket);
+        assertEquals(10000, socket.getLocalPort());
+        runTasks();
+        assertEquals(3, pool.getIdleCount(address, MIN_PORT, MAX_PORT));
+        assertEquals(10003, boundPorts.get(boundPorts.size() - 1));
+    }
+
+    @Test
+    public void busyPortsAreSkipped()
+    {
+        busyPorts.add(10001);
+        busyPorts.add(10002);
+        pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT);
+        runTasks();
+        assertEquals(Arrays.asList(10000, 10003, 10004), boundPorts);
+    }
+
+    @Test
+    public void portsOfOpenSocketsAreNotBoundAgain()
+    {
+        for (int port = MIN_PORT; port <= MAX_PORT; port++)
+        {
+            busyPorts.add(port);
+        }
+        busyPorts.remove(10008);
+        pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT);
+        runTasks();
+
+        // The whole range has been tried once.
+        assertEquals(Collections.singletonList(10008), boundPorts);
+        assertEquals(1, pool.getIdleCount(address, MIN_PORT, MAX_PORT));
+
+        // The next sweep tries the busy ports again, but not the port of the
+        // socket which was taken and is still open.
+        busyPorts.remove(10002);
+
+        DatagramSocket socket
+            = pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT);
+
+        assertEquals(10008, socket.getLocalPort());
+        runTasks();
+        assertEquals(Arrays.asList(10008, 10002), boundPorts);
+
+        // Once the socket is closed, its port is bound again.
+        when(socket.isClosed()).thenReturn(true);
+        when(socket.getLocalPort()).thenReturn(-1);
+        assertEquals(
+            10002,
+            pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT)
+                .getLocalPort());
+        runTasks();
+        assertEquals(Arrays.asList(10008, 10002, 10008), boundPorts);
+    }
+
+    @Test
+    public void socketClosestToThePreferredPortIsHandedOut()
+    {
+        assertNull(pool.acquire(address, 10005, MIN_PORT, MAX_PORT));
+        runTasks();
+
+        // Binding starts at the preferred port of the first harvest.
+        assertEquals(Arrays.asList(10005, 10006, 10007), boundPorts);
+        assertEquals(
+            10006,
+            pool.acquire(address, 10006, MIN_PORT, MAX_PORT).getLocalPort());
+
+        // Without an idle socket on the preferred port, the next one upwards.
+        assertEquals(
+            10007,
+            pool.acquire(address, 10006, MIN_PORT, MAX_PORT).getLocalPort());
+    }
+
+    @Test
+    public void ephemeralPortsAreRequestedForEmptyRange()
+    {
+        pool.acquire(address, 0, 0, 0);
+        runTasks();
+        assertEquals(Arrays.asList(0, 0, 0), boundPorts);
+    }
+
+    @Test
+    public void idleSocketsAreClosed()
+    {
+        pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT);
+        runTasks();
+
+        DatagramSocket socket
+            = pool.acquire(address, MIN_PORT, MIN_PORT, MAX_PORT);
+
+        pool.retainAddresses(Collections.emptySet());
+        assertEquals(0, pool.getIdleCount(address, MIN_PORT, MAX_PORT));
+
+        // The pending replenishment does not bind after closing.
+        runTasks();
+        assertEquals(3, boundPorts.size());
+        verify(socket, never()).close();
+        verify(sockets.get(1)).close();
+        verify(sockets.get(2)).close();
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.jitsi.utils.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link RefreshService} with a fake clock.
+ */
+public class RefreshServiceTest
+{
+    private FakeScheduledExecutorService timer;
+
+    private RefreshService service;
+
+    @BeforeEach
+    void beforeEach()
+    {
+        timer = new FakeScheduledExecutorService();
+        ExecutorService executor = mock(ExecutorService.class);
+        doAnswer(a ->
+        {
+            ((Runnable) a.getArgument(0)).run();
+            return null;
+        }).when(executor).execute(any(Runnable.class));
+
+        service
+            = new RefreshService(
+                Collections.singletonList(timer),
+                executor,
+                timer.getClock());
+    }
+
+    private void elapse(Duration duration)
+    {
+        long ticks = duration.toMillis() / RefreshService.TICK_MILLIS;
+        for (long i = 0; i < ticks; i++)
+        {
+            timer.getClock().elapse(
+                Duration.ofMillis(RefreshService.TICK_MILLIS));
+            timer.run();
+        }
+    }
+
+    @Test
+    public void tasksRunWhenDueAndReschedule()
+    {
+        AtomicInteger runs = new AtomicInteger();
+        RefreshService.Registration registration
+            = service.register(() ->
+            {
+                runs.incrementAndGet();
+                return Duration.ofMinutes(3).toMillis();
+            });
+
+        registration.schedule(Duration.ofMinutes(3).toMillis());
+        elapse(Duration.ofSeconds(179));
+        assertEquals(0, runs.get());
+        // Due times are rounded up to the next tick.
+        elapse(Duration.ofSeconds(2));
+        assertEquals(1, runs.get());
+
+        // Longer than the span of the wheel.
+        elapse(Duration.ofMinutes(9).plusSeconds(10));
+        assertEquals(4, runs.get());
+        assertTrue(registration.isScheduled());
+    }
+
+    @Test
+    public void earliestScheduleWins()
+    {
+        AtomicInteger runs = new AtomicInteger();
+        RefreshService.Registration registration
+            = service.register(() ->
+            {
+                runs.incrementAndGet();
+                return RefreshService.NOT_SCHEDULED;
+            });
+
+        registration.schedule(Duration.ofMinutes(3).toMillis());
+        registration.schedule(Duration.ofSeconds(10).toMillis());
+        registration.schedule(Duration.ofMinutes(1).toMillis());
+        elapse(Duration.ofSeconds(11));
+        assertEquals(1, runs.get());
+
+        // The task did not reschedule itself.
+        elapse(Duration.ofMinutes(5));
+        assertEquals(1, runs.get());
+        assertFalse(registration.isScheduled());
+        assertEquals(0, service.getScheduledCount());
+    }
+
+    @Test
+    public void cancelledTasksDoNotRun()
+    {
+        AtomicInteger runs = new AtomicInteger();
+        RefreshService.Registration registration
+            = service.register(() ->
+            {
+                runs.incrementAndGet();
+                return 1000;
+            });
+
+        registration.schedule(1000);
+        elapse(Duration.ofSeconds(3));
+
+        int runsBeforeCancel = runs.get();
+
+        assertTrue(runsBeforeCancel >= 2);
+        registration.cancel();
+        registration.schedule(1000);
+        elapse(Duration.ofSeconds(3));
+        assertEquals(runsBeforeCancel, runs.get());
+        assertEquals(0, service.getScheduledCount());
+    }
+
+    @Test
+    public void failingTaskIsNotRescheduled()
+    {
+        AtomicInteger runs = new AtomicInteger();
+        RefreshService.Registration registration
+            = service.register(() ->
+            {
+                runs.incrementAndGet();
+                throw new IllegalStateException();
+            });
+
+        registration.schedule(0);
+        elapse(Duration.ofSeconds(5));
+        assertEquals(1, runs.get());
+        assertFalse(registration.isScheduled());
+    }
+
+    @Test
+    public void refreshLatencyIsRecorded()
+    {
+        long sent = service.currentTimeMillis();
+
+        service.refreshSent();
+        timer.getClock().elapse(Duration.ofMillis(40));
+        service.refreshSucceeded(sent);
+        service.refreshSent();
+        service.refreshFailed();
+
+        assertEquals(2, service.getRefreshesSent());
+        assertEquals(1, service.getRefreshFailures());
+        assertEquals(1, service.getRefreshLatency().getCount());
+        assertEquals(40, service.getRefreshLatency().getMax());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.ice.harvest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.*;
+import java.time.*;
+import java.util.*;
+import org.ice4j.*;
+import org.jitsi.utils.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link ServerReflexiveMappingCache} with a fake clock.
+ */
+public class ServerReflexiveMappingCacheTest
+{
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private final FakeScheduledExecutorService timer
+        = new FakeScheduledExecutorService();
+
+    private final ServerReflexiveMappingCache cache
+        = new ServerReflexiveMappingCache(timer.getClock(), TTL);
+
+    private final TransportAddress local
+        = new TransportAddress("10.0.0.1", 10000, Transport.UDP);
+
+    private final TransportAddress server
+        = new TransportAddress("192.0.2.1", 3478, Transport.UDP);
+
+    private final TransportAddress mapped
+        = new TransportAddress("198.51.100.1", 20000, Transport.UDP);
+
+    @Test
+    public void mappingsExpire()
+    {
+        assertNull(cache.get(local, server));
+
+        cache.put(local, server, mapped);
+        timer.getClock().elapse(TTL.minusMillis(1));
+        assertEquals(mapped, cache.get(local, server));
+
+        timer.getClock().elapse(Duration.ofMillis(1));
+        assertNull(cache.get(local, server));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void mappingsAreKeyedByLocalAddressAndServer()
+    {
+        cache.put(local, server, mapped);
+
+        assertNull(
+            cache.get(
+                new TransportAddress("10.0.0.1", 10001, Transport.UDP),
+                server));
+        assertNull(
+            cache.get(
+                new TransportAddress("10.0.0.1", 10000, Transport.TCP),
+                server));
+        assertNull(
+            cache.get(
+                local,
+                new TransportAddress("192.0.2.2", 3478, Transport.UDP)));
+        assertEquals(
+            mapped,
+            cache.get(
+                new TransportAddress("10.0.0.1", 10000, Transport.UDP),
+                new TransportAddress("192.0.2.1", 3478, Transport.UDP)));
+    }
+
+    @Test
+    public void mappingsOfRemovedAddressesAreForgotten()
+        throws Exception
+    {
+        TransportAddress otherLocal
+            = new TransportAddress("10.0.0.2", 10000, Transport.UDP);
+
+        cache.put(local, server, mapped);
+        cache.put(otherLocal, server, mapped);
+        cache.retainAddresses(
+            Collections.singleton(InetAddress.getByName("10.0.0.2")));
+
+        assertNull(cache.get(local, server));
+        assertEquals(mapped, cache.get(otherLocal, server));
+    }
+}
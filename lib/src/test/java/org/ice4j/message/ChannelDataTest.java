@@ -0,0 +1,135 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.message;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.*;
+import java.util.*;
+import org.ice4j.*;
+import org.junit.jupiter.api.*;
+
+public class ChannelDataTest
+{
+    private static final char CHANNEL_NUMBER = 0x4001;
+
+    @Test
+    public void encodeInPlaceMatchesEncode()
+        throws StunException
+    {
+        byte[] payload = { 1, 2, 3, 4, 5 };
+        ChannelData copying = new ChannelData();
+
+        copying.setChannelNumber(CHANNEL_NUMBER);
+        copying.setData(payload);
+
+        for (boolean pad : new boolean[] { false, true })
+        {
+            byte[] buffer = new byte[ChannelData.HEADER_LENGTH + 8];
+
+            System.arraycopy(
+                payload, 0, buffer, ChannelData.HEADER_LENGTH, payload.length);
+
+            ChannelData inPlace = new ChannelData();
+
+            inPlace.setChannelNumber(CHANNEL_NUMBER);
+            inPlace.setData(
+                buffer, ChannelData.HEADER_LENGTH, payload.length);
+            assertTrue(inPlace.canEncodeInPlace(pad));
+
+            int length = inPlace.encodeInPlace(pad);
+
+            assertArrayEquals(
+                copying.encode(pad),
+                Arrays.copyOfRange(buffer, 0, length));
+        }
+    }
+
+    @Test
+    public void encodeInPlaceRequiresHeadroom()
+    {
+        ChannelData channelData = new ChannelData();
+
+        channelData.setChannelNumber(CHANNEL_NUMBER);
+        channelData.setData(new byte[10], 2, 8);
+        assertFalse(channelData.canEncodeInPlace(false));
+        assertThrows(StunException.class, () -> channelData.encodeInPlace(false));
+
+        // Room for the header but not for the padding.
+        channelData.setData(new byte[10], 4, 5);
+        assertTrue(channelData.canEncodeInPlace(false));
+        assertFalse(channelData.canEncodeInPlace(true));
+    }
+
+    @Test
+    public void packetRoundTrip()
+        throws StunException
+    {
+        byte[] buffer = new byte[ChannelData.HEADER_LENGTH + 3];
+        DatagramPacket p
+            = new DatagramPacket(buffer, ChannelData.HEADER_LENGTH, 3);
+
+        buffer[4] = 7;
+        buffer[5] = 8;
+        buffer[6] = 9;
+
+        ChannelData.encodeInPlace(p, CHANNEL_NUMBER, false);
+        assertSame(buffer, p.getData());
+        assertEquals(0, p.getOffset());
+        assertEquals(7, p.getLength());
+        assertEquals(0x40, buffer[0]);
+        assertEquals(0x01, buffer[1]);
+        assertEquals(0, buffer[2]);
+        assertEquals(3, buffer[3]);
+
+        assertEquals(CHANNEL_NUMBER, ChannelData.decodeInPlace(p));
+        assertSame(buffer, p.getData());
+        assertEquals(ChannelData.HEADER_LENGTH, p.getOffset());
+        assertEquals(3, p.getLength());
+    }
+
+    @Test
+    public void decodeInPlaceStripsPadding()
+        throws StunException
+    {
+        byte[] buffer = { 0x40, 0x01, 0, 2, 1, 2, 0, 0 };
+        DatagramPacket p = new DatagramPacket(buffer, buffer.length);
+
+        assertEquals(CHANNEL_NUMBER, ChannelData.decodeInPlace(p));
+        assertEquals(4, p.getOffset());
+        assertEquals(2, p.getLength());
+    }
+
+    @Test
+    public void decodeInPlaceRejectsInvalidMessages()
+    {
+        // Invalid channel number.
+        assertThrows(
+            StunException.class,
+            () -> ChannelData.decodeInPlace(
+                new DatagramPacket(new byte[] { 0x00, 0x01, 0, 0 }, 4)));
+        // Length larger than the packet.
+        assertThrows(
+            StunException.class,
+            () -> ChannelData.decodeInPlace(
+                new DatagramPacket(new byte[] { 0x40, 0x01, 0, 9, 1 }, 5)));
+        // Too short.
+        assertThrows(
+            StunException.class,
+            () -> ChannelData.decodeInPlace(
+                new DatagramPacket(new byte[] { 0x40, 0x01 }, 2)));
+    }
+}
@@ -203,6 +203,29 @@ public class MessageTest
             "A binding response was not properly decoded");
     }
 
+    /**
+     * Decodes a binding response which does not start at the beginning of the
+     * binary array and is followed by other data.
+     *
+     * @throws Exception java.lang.Exception if we fail
+     */
+    @Test
+    public void testDecodeAtOffset()
+        throws Exception
+    {
+        byte[] binMessage = msgFixture.bindingResponse;
+        byte[] buffer = new byte[binMessage.length + 10];
+
+        java.util.Arrays.fill(buffer, (byte) 0x55);
+        System.arraycopy(binMessage, 0, buffer, 5, binMessage.length);
+
+        Message actualReturn
+            = Message.decode(buffer, 5, binMessage.length);
+
+        assertEquals(bindingResponse, actualReturn,
+            "A binding response at an offset was not properly decoded");
+    }
+
     /**
      * Tests the equals method against a null, a different and an identical
      * object.
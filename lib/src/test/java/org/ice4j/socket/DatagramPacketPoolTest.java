@@ -0,0 +1,78 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link DatagramPacketPool}.
+ */
+public class DatagramPacketPoolTest
+{
+    private final DatagramPacketPool pool = new DatagramPacketPool(2);
+
+    @Test
+    public void packetsAreAcquiredBySizeClass()
+    {
+        DatagramPacket small = pool.acquire(100);
+        DatagramPacket large = pool.acquire(1500);
+
+        assertEquals(128, small.getData().length);
+        assertEquals(128, small.getLength());
+        assertEquals(1500, large.getData().length);
+        assertEquals(2, pool.getMisses());
+        assertEquals(0, pool.getHits());
+
+        small.setData(small.getData(), 10, 20);
+        pool.release(small);
+        pool.release(large);
+
+        DatagramPacket reused = pool.acquire(65);
+
+        assertSame(small, reused);
+        assertEquals(0, reused.getOffset());
+        assertEquals(128, reused.getLength());
+        assertSame(large, pool.acquire(1200));
+        assertEquals(2, pool.getHits());
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void packetsOfOtherSizesAreNotPooled()
+    {
+        DatagramPacket huge = pool.acquire(2000);
+
+        assertEquals(2000, huge.getData().length);
+        pool.release(huge);
+        pool.release(new DatagramPacket(new byte[100], 100));
+
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void poolIsBounded()
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            pool.release(new DatagramPacket(new byte[256], 256));
+        }
+
+        assertEquals(2, pool.size());
+    }
+}
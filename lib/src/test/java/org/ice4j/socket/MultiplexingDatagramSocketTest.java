@@ -0,0 +1,173 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests the demultiplexing of packets received by a
+ * {@link MultiplexingDatagramSocket} on the loopback interface.
+ */
+public class MultiplexingDatagramSocketTest
+{
+    private static final int TIMEOUT_MS = 5000;
+
+    private static final byte[] DTLS = { 22, (byte) 0xfe, (byte) 0xfd, 0 };
+
+    private static final byte[] RTCP = { (byte) 0x80, (byte) 200, 0, 1 };
+
+    private static final byte[] RTP = { (byte) 0x80, 96, 0, 1, 2, 3 };
+
+    private static final byte[] OTHER = { 100, 1, 2, 3 };
+
+    private MultiplexingDatagramSocket multiplexing;
+
+    private DatagramSocket sender;
+
+    @BeforeEach
+    public void setUp()
+        throws Exception
+    {
+        multiplexing
+            = new MultiplexingDatagramSocket(
+                    0,
+                    InetAddress.getLoopbackAddress());
+        multiplexing.setSoTimeout(TIMEOUT_MS);
+        sender = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        sender.close();
+        multiplexing.close();
+    }
+
+    @Test
+    public void packetsAreDispatchedByType()
+        throws Exception
+    {
+        MultiplexedDatagramSocket dtlsSocket
+            = multiplexing.getSocket(new DTLSDatagramFilter());
+        MultiplexedDatagramSocket rtcpSocket
+            = multiplexing.getSocket(new RtcpDemuxPacketFilter());
+        // A filter which declares no types, and accepts RTCP as well.
+        MultiplexedDatagramSocket rtpSocket
+            = multiplexing.getSocket(p -> (p.getData()[p.getOffset()] & 0xc0) == 0x80);
+
+        multiplexing.getSocket(new StunDatagramPacketFilter());
+
+        send(OTHER);
+        send(RTCP);
+        send(DTLS);
+        send(RTP);
+
+        assertArrayEquals(DTLS, receive(dtlsSocket));
+        assertArrayEquals(RTCP, receive(rtcpSocket));
+        assertArrayEquals(RTCP, receive(rtpSocket));
+        assertArrayEquals(RTP, receive(rtpSocket));
+        assertArrayEquals(OTHER, receive(multiplexing));
+    }
+
+    @Test
+    public void packetsReceivedBeforeSocketIsCreatedAreMoved()
+        throws Exception
+    {
+        MultiplexedDatagramSocket rtcpSocket
+            = multiplexing.getSocket(new RtcpDemuxPacketFilter());
+
+        send(DTLS);
+        send(RTCP);
+
+        assertArrayEquals(RTCP, receive(rtcpSocket));
+
+        MultiplexedDatagramSocket dtlsSocket
+            = multiplexing.getSocket(new DTLSDatagramFilter());
+
+        assertArrayEquals(DTLS, receive(dtlsSocket));
+    }
+
+    @Test
+    public void packetsAreNotDispatchedToClosedSockets()
+        throws Exception
+    {
+        MultiplexedDatagramSocket dtlsSocket
+            = multiplexing.getSocket(new DTLSDatagramFilter());
+        MultiplexedDatagramSocket rtcpSocket
+            = multiplexing.getSocket(new RtcpDemuxPacketFilter());
+
+        dtlsSocket.close();
+        send(DTLS);
+        send(RTCP);
+
+        assertArrayEquals(RTCP, receive(rtcpSocket));
+        assertArrayEquals(DTLS, receive(multiplexing));
+    }
+
+    @Test
+    public void steadyStateReceiveDoesNotAllocatePackets()
+        throws Exception
+    {
+        MultiplexedDatagramSocket rtcpSocket
+            = multiplexing.getSocket(new RtcpDemuxPacketFilter());
+        // Accepts RTCP as well, so every packet is also copied.
+        MultiplexedDatagramSocket rtpSocket
+            = multiplexing.getSocket(p -> (p.getData()[p.getOffset()] & 0xc0) == 0x80);
+        DatagramPacketPool pool = DatagramPacketPool.getDefault();
+
+        // Warm the pool up.
+        send(RTCP);
+        receive(rtcpSocket);
+        receive(rtpSocket);
+
+        long misses = pool.getMisses();
+
+        for (int i = 0; i < 100; i++)
+        {
+            send(RTCP);
+            assertArrayEquals(RTCP, receive(rtcpSocket));
+            assertArrayEquals(RTCP, receive(rtpSocket));
+        }
+
+        assertEquals(misses, pool.getMisses());
+    }
+
+    private void send(byte[] data)
+        throws Exception
+    {
+        sender.send(
+            new DatagramPacket(
+                data,
+                data.length,
+                multiplexing.getLocalSocketAddress()));
+    }
+
+    private static byte[] receive(DatagramSocket socket)
+        throws Exception
+    {
+        DatagramPacket p = new DatagramPacket(new byte[1500], 1500);
+
+        socket.receive(p);
+
+        byte[] data = new byte[p.getLength()];
+
+        System.arraycopy(p.getData(), p.getOffset(), data, 0, data.length);
+        return data;
+    }
+}
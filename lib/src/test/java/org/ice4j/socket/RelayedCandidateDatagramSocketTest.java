@@ -0,0 +1,492 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.net.*;
+import java.time.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+import org.ice4j.*;
+import org.ice4j.attribute.*;
+import org.ice4j.ice.*;
+import org.ice4j.ice.harvest.*;
+import org.ice4j.message.*;
+import org.ice4j.stack.*;
+import org.jitsi.utils.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests the data path of {@link RelayedCandidateDatagramSocket} against a
+ * local TURN stand-in: CreatePermission and ChannelBind requests are answered
+ * in-process, and ChannelData messages are received by a UDP socket on the
+ * loopback interface.
+ */
+public class RelayedCandidateDatagramSocketTest
+{
+    private static final TransportAddress PEER_A
+        = new TransportAddress("192.0.2.1", 5000, Transport.UDP);
+
+    private static final TransportAddress PEER_B
+        = new TransportAddress("192.0.2.2", 5000, Transport.UDP);
+
+    private DatagramSocket turnServer;
+
+    private MultiplexingDatagramSocket hostSocket;
+
+    private ExecutorService responder;
+
+    private RelayedCandidateDatagramSocket socket;
+
+    private FakeScheduledExecutorService refreshTimer;
+
+    private ExecutorService refreshExecutor;
+
+    private RefreshService refreshService;
+
+    /**
+     * The peer addresses for which the stand-in does not answer
+     * CreatePermission requests.
+     */
+    private final Set<InetAddress> blockedPeers
+        = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The requests which the stand-in has not answered.
+     */
+    private final List<Request> heldRequests = new CopyOnWriteArrayList<>();
+
+    /**
+     * The CreatePermission requests which the stand-in answers together with
+     * the ChannelBind requests for the same peers.
+     */
+    private final Map<InetAddress, Request> pendingPermissions
+        = new ConcurrentHashMap<>();
+
+    /**
+     * The number of Send indications sent through the stand-in.
+     */
+    private final AtomicInteger sendIndications = new AtomicInteger();
+
+    /**
+     * The number of CreatePermission requests sent to the stand-in.
+     */
+    private final AtomicInteger createPermissions = new AtomicInteger();
+
+    /**
+     * The number of ChannelBind requests sent to the stand-in.
+     */
+    private final AtomicInteger channelBinds = new AtomicInteger();
+
+    /**
+     * The number of ChannelData messages received by the stand-in, per peer
+     * id.
+     */
+    private final AtomicInteger[] received
+        = { new AtomicInteger(), new AtomicInteger() };
+
+    /**
+     * Whether the ChannelData messages for each peer were received in order.
+     */
+    private final boolean[] inOrder = { true, true };
+
+    private Thread turnServerThread;
+
+    @BeforeEach
+    void beforeEach()
+        throws Exception
+    {
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+
+        turnServer = new DatagramSocket(new InetSocketAddress(loopback, 0));
+        turnServer.setReceiveBufferSize(4 * 1024 * 1024);
+        hostSocket
+            = new MultiplexingDatagramSocket(new InetSocketAddress(loopback, 0));
+        responder = Executors.newSingleThreadExecutor();
+
+        turnServerThread = new Thread(this::runTurnServer);
+        turnServerThread.start();
+
+        TransportAddress turnServerAddress
+            = new TransportAddress(
+                loopback, turnServer.getLocalPort(), Transport.UDP);
+        StunStack stunStack = mock(StunStack.class);
+
+        doAnswer(a -> sendIndications.incrementAndGet())
+            .when(stunStack).sendIndication(any(), any(), any());
+        HostCandidate hostCandidate = mock(HostCandidate.class);
+
+        when(hostCandidate.getTransportAddress())
+            .thenReturn(
+                new TransportAddress(
+                    loopback, hostSocket.getLocalPort(), Transport.UDP));
+        when(hostCandidate.getCandidateIceSocketWrapper())
+            .thenReturn(new IceUdpSocketWrapper(hostSocket));
+
+        refreshTimer = new FakeScheduledExecutorService();
+        refreshExecutor = Executors.newSingleThreadExecutor();
+        refreshService
+            = new RefreshService(
+                Collections.singletonList(refreshTimer),
+                refreshExecutor,
+                refreshTimer.getClock());
+
+        TurnCandidateHarvester harvester
+            = new TurnCandidateHarvester(turnServerAddress)
+            {
+                @Override
+                public StunStack getStunStack()
+                {
+                    return stunStack;
+                }
+
+                @Override
+                public RefreshService getRefreshService()
+                {
+                    return refreshService;
+                }
+            };
+        TurnCandidateHarvest harvest
+            = new TurnCandidateHarvest(harvester, hostCandidate)
+            {
+                @Override
+                public byte[] sendRequest(
+                    RelayedCandidateDatagramSocket socket,
+                    Request request)
+                {
+                    handleRequest(request);
+                    return request.getTransactionID();
+                }
+
+                @Override
+                public void close(RelayedCandidateDatagramSocket socket)
+                {
+                }
+            };
+
+        socket
+            = new RelayedCandidateDatagramSocket(
+                mock(RelayedCandidate.class),
+                harvest);
+    }
+
+    @AfterEach
+    void afterEach()
+        throws Exception
+    {
+        socket.close();
+        hostSocket.close();
+        turnServer.close();
+        turnServerThread.join();
+        responder.shutdownNow();
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Answers a CreatePermission or ChannelBind request with a success
+     * response, asynchronously, unless its peer is blocked. The
+     * CreatePermission request is answered after the ChannelBind request
+     * which follows it, so that the data is relayed in ChannelData messages
+     * as soon as the channel is bound.
+     */
+    private void handleRequest(Request request)
+    {
+        XorPeerAddressAttribute peerAddressAttribute
+            = (XorPeerAddressAttribute)
+                request.getAttribute(Attribute.XOR_PEER_ADDRESS);
+        InetAddress peer
+            = peerAddressAttribute
+                .getAddress(request.getTransactionID()).getAddress();
+
+        if (request.getMessageType() == Message.CREATEPERMISSION_REQUEST)
+        {
+            createPermissions.incrementAndGet();
+        }
+        else
+        {
+            channelBinds.incrementAndGet();
+        }
+
+        if (blockedPeers.contains(peer))
+        {
+            heldRequests.add(request);
+        }
+        else if (request.getMessageType() == Message.CREATEPERMISSION_REQUEST)
+        {
+            pendingPermissions.put(peer, request);
+        }
+        else
+        {
+            responder.execute(() ->
+            {
+                socket.processSuccess(null, request);
+
+                Request createPermission = pendingPermissions.remove(peer);
+
+                if (createPermission != null)
+                {
+                    socket.processSuccess(null, createPermission);
+                }
+            });
+        }
+    }
+
+    /**
+     * Releases the requests held for blocked peers.
+     */
+    private void unblockPeers()
+    {
+        blockedPeers.clear();
+        for (Request request : heldRequests)
+        {
+            handleRequest(request);
+        }
+        heldRequests.clear();
+    }
+
+    private void runTurnServer()
+    {
+        DatagramPacket p = new DatagramPacket(new byte[1500], 1500);
+        int[] lastSeq = { -1, -1 };
+
+        while (!turnServer.isClosed())
+        {
+            try
+            {
+                turnServer.receive(p);
+            }
+            catch (Exception e)
+            {
+                break;
+            }
+
+            byte[] data = p.getData();
+            int offset = p.getOffset();
+
+            // ChannelData: channel number (0x4000-0x7FFF) and length.
+            if (p.getLength() < 9 || (data[offset] & 0xC0) != 0x40)
+            {
+                continue;
+            }
+
+            int peer = data[offset + 4] & 0x01;
+            int seq
+                = ((data[offset + 5] & 0xFF) << 24)
+                    | ((data[offset + 6] & 0xFF) << 16)
+                    | ((data[offset + 7] & 0xFF) << 8)
+                    | (data[offset + 8] & 0xFF);
+
+            if (seq <= lastSeq[peer])
+            {
+                inOrder[peer] = false;
+            }
+            lastSeq[peer] = seq;
+            received[peer].incrementAndGet();
+        }
+    }
+
+    /**
+     * Creates an RTP-like (i.e. non-STUN) packet for a peer with a sequence
+     * number.
+     */
+    private static DatagramPacket createPacket(
+        TransportAddress peerAddress,
+        int peer,
+        int seq,
+        int length)
+    {
+        byte[] data = new byte[length];
+
+        data[0] = (byte) (0x80 | peer);
+        data[1] = (byte) (seq >> 24);
+        data[2] = (byte) (seq >> 16);
+        data[3] = (byte) (seq >> 8);
+        data[4] = (byte) seq;
+        return new DatagramPacket(data, length, peerAddress);
+    }
+
+    private static boolean waitFor(AtomicInteger counter, int count)
+        throws InterruptedException
+    {
+        return waitFor(() -> counter.get() >= count);
+    }
+
+    private static boolean waitFor(BooleanSupplier condition)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 10_000;
+
+        while (!condition.getAsBoolean())
+        {
+            if (System.currentTimeMillis() > deadline)
+            {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    @Test
+    public void burstsAreRelayedInOrder()
+        throws Exception
+    {
+        // Bind the channel first.
+        socket.send(createPacket(PEER_A, 0, 0, 200));
+        assertTrue(waitFor(received[0], 1), "The channel was not bound");
+
+        // Send in bursts which fit in the receive buffer of the stand-in, so
+        // that the loopback interface does not drop any of them.
+        int bursts = 40;
+        int burstSize = 500;
+        int seq = 0;
+
+        for (int burst = 0; burst < bursts; burst++)
+        {
+            for (int i = 0; i < burstSize; i++)
+            {
+                socket.send(createPacket(PEER_A, 0, ++seq, 200));
+            }
+            assertTrue(
+                waitFor(received[0], seq + 1),
+                "Only " + received[0].get() + " of " + (seq + 1)
+                    + " were relayed");
+        }
+
+        assertTrue(inOrder[0], "Packets were relayed out of order");
+        assertEquals(0, sendIndications.get());
+    }
+
+    @Test
+    public void receiveChannelData()
+        throws Exception
+    {
+        // Bind the channel, which is allocated the first channel number.
+        socket.send(createPacket(PEER_A, 0, 0, 200));
+        assertTrue(waitFor(received[0], 1), "The channel was not bound");
+
+        // A ChannelData message with 3 bytes of data and 1 byte of padding.
+        byte[] channelData = { 0x40, 0x00, 0, 3, 7, 8, 9, 0 };
+
+        turnServer.send(
+            new DatagramPacket(
+                channelData,
+                channelData.length,
+                new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(),
+                    hostSocket.getLocalPort())));
+
+        DatagramPacket p = new DatagramPacket(new byte[1500], 1500);
+
+        socket.receive(p);
+        assertEquals(PEER_A, p.getSocketAddress());
+        assertEquals(3, p.getLength());
+        assertArrayEquals(
+            new byte[] { 7, 8, 9 },
+            Arrays.copyOfRange(p.getData(), p.getOffset(), p.getOffset() + 3));
+    }
+
+    @Test
+    public void channelIsRefreshedBeforeExpiry()
+        throws Exception
+    {
+        socket.send(createPacket(PEER_A, 0, 0, 200));
+        assertTrue(waitFor(received[0], 1), "The channel was not bound");
+        assertEquals(1, createPermissions.get());
+        assertEquals(1, channelBinds.get());
+
+        // The permission and channel binding are refreshed by a ChannelBind
+        // after 3 minutes.
+        elapseRefreshTimer(Duration.ofMinutes(3).minusSeconds(1));
+        assertEquals(1, channelBinds.get());
+        elapseRefreshTimer(Duration.ofSeconds(2));
+        assertTrue(waitFor(channelBinds, 2));
+        assertTrue(
+            waitFor(() -> refreshService.getRefreshLatency().getCount() == 1));
+        assertEquals(1, createPermissions.get());
+
+        // Data is relayed without binding again after the original
+        // permission would have expired.
+        socket.send(createPacket(PEER_A, 0, 1, 200));
+        elapseRefreshTimer(Duration.ofMinutes(2));
+        socket.send(createPacket(PEER_A, 0, 2, 200));
+        assertTrue(waitFor(received[0], 3));
+        assertEquals(1, createPermissions.get());
+        assertEquals(2, channelBinds.get());
+        assertEquals(1, refreshService.getRefreshesSent());
+        assertEquals(0, refreshService.getRefreshFailures());
+    }
+
+    @Test
+    public void idleChannelIsNotRefreshed()
+        throws Exception
+    {
+        socket.send(createPacket(PEER_A, 0, 0, 200));
+        assertTrue(waitFor(received[0], 1), "The channel was not bound");
+
+        // The channel was used after it was bound, so it is refreshed once.
+        elapseRefreshTimer(Duration.ofMinutes(3).plusSeconds(1));
+        assertTrue(waitFor(channelBinds, 2));
+        assertTrue(
+            waitFor(() -> refreshService.getRefreshLatency().getCount() == 1));
+
+        // It was not used after the refresh.
+        elapseRefreshTimer(Duration.ofMinutes(4));
+        Thread.sleep(100);
+        assertEquals(2, channelBinds.get());
+        assertEquals(1, refreshService.getRefreshesSent());
+    }
+
+    /**
+     * Advances the clock of {@link #refreshService} and runs its timer.
+     */
+    private void elapseRefreshTimer(Duration duration)
+    {
+        for (long s = 0; s < duration.getSeconds(); s++)
+        {
+            refreshTimer.getClock().elapse(Duration.ofSeconds(1));
+            refreshTimer.run();
+        }
+    }
+
+    @Test
+    public void bindingChannelDoesNotStallOtherPeers()
+        throws Exception
+    {
+        blockedPeers.add(PEER_B.getAddress());
+
+        int count = 100;
+
+        for (int seq = 0; seq < count; seq++)
+        {
+            socket.send(createPacket(PEER_B, 1, seq, 100));
+            socket.send(createPacket(PEER_A, 0, seq, 100));
+        }
+
+        assertTrue(waitFor(received[0], count));
+        assertEquals(0, received[1].get());
+
+        unblockPeers();
+        assertTrue(waitFor(received[1], count));
+        assertTrue(inOrder[0]);
+        assertTrue(inOrder[1]);
+        assertEquals(0, sendIndications.get());
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link SocketReceiveBuffer}.
+ */
+public class SocketReceiveBufferTest
+{
+    @Test
+    public void oldestPacketsAreDroppedWhenFull()
+    {
+        SocketReceiveBuffer buffer = new SocketReceiveBuffer(() -> 0, 4);
+
+        for (int i = 0; i < 6; i++)
+        {
+            buffer.add(packet(i, 10));
+        }
+
+        assertEquals(4, buffer.size());
+        assertEquals(40, buffer.getByteSize());
+        assertEquals(2, buffer.getDroppedPackets());
+        assertEquals(20, buffer.getDroppedBytes());
+        for (int i = 2; i < 6; i++)
+        {
+            assertEquals(i, buffer.poll().getData()[0]);
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.getByteSize());
+    }
+
+    @Test
+    public void oldestPacketsAreDroppedBeyondReceiveBufferSize()
+    {
+        // SO_RCVBUF is doubled, so 2000 bytes are kept.
+        SocketReceiveBuffer buffer = new SocketReceiveBuffer(() -> 1000);
+
+        for (int i = 0; i < 30; i++)
+        {
+            buffer.add(packet(i, 100));
+        }
+
+        assertEquals(20, buffer.size());
+        assertEquals(2000, buffer.getByteSize());
+        assertEquals(10, buffer.getDroppedPackets());
+        assertEquals(10, buffer.poll().getData()[0]);
+    }
+
+    @Test
+    public void onlyPacketIsNotDropped()
+    {
+        SocketReceiveBuffer buffer = new SocketReceiveBuffer(() -> 100);
+
+        buffer.add(packet(0, 1000));
+
+        assertEquals(1, buffer.size());
+        assertEquals(0, buffer.getDroppedPackets());
+    }
+
+    @Test
+    public void scanMovesMatchingPacketsAndKeepsTheOrderOfTheOthers()
+    {
+        SocketReceiveBuffer buffer = new SocketReceiveBuffer(() -> 0, 8);
+
+        for (int i = 0; i < 6; i++)
+        {
+            buffer.add(packet(i, 10));
+        }
+
+        List<DatagramPacket> even = buffer.scan(p -> p.getData()[0] % 2 == 0);
+
+        assertEquals(3, even.size());
+        assertEquals(30, buffer.getByteSize());
+        for (int i = 1; i < 6; i += 2)
+        {
+            assertEquals(i, buffer.poll().getData()[0]);
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void awaitReturnsWhenPacketIsAdded()
+        throws Exception
+    {
+        SocketReceiveBuffer buffer = new SocketReceiveBuffer(() -> 0);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try
+        {
+            Future<DatagramPacket> received = executor.submit(() ->
+            {
+                DatagramPacket p;
+
+                while ((p = buffer.poll()) == null)
+                {
+                    buffer.await(60_000);
+                }
+                return p;
+            });
+
+            Thread.sleep(100);
+            buffer.add(packet(7, 10));
+
+            assertEquals(7, received.get(5, TimeUnit.SECONDS).getData()[0]);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void packetsAreNotLostByConcurrentProducersAndConsumers()
+        throws Exception
+    {
+        int producers = 4;
+        int packetsPerProducer = 10_000;
+        SocketReceiveBuffer buffer
+            = new SocketReceiveBuffer(() -> Integer.MAX_VALUE, 1024);
+        ExecutorService executor = Executors.newFixedThreadPool(2 * producers);
+        Set<DatagramPacket> received = ConcurrentHashMap.newKeySet();
+        // await clears interrupts, so the consumers are stopped by a flag.
+        AtomicBoolean stopped = new AtomicBoolean();
+
+        try
+        {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (int i = 0; i < producers; i++)
+            {
+                futures.add(executor.submit(() ->
+                {
+                    for (int j = 0; j < packetsPerProducer; j++)
+                    {
+                        buffer.add(packet(0, 1));
+                    }
+                }));
+                futures.add(executor.submit(() ->
+                {
+                    while (!stopped.get())
+                    {
+                        DatagramPacket p = buffer.poll();
+
+                        if (p == null)
+                            buffer.await(10);
+                        else
+                            received.add(p);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i += 2)
+            {
+                futures.get(i).get(30, TimeUnit.SECONDS);
+            }
+
+            long deadline = System.currentTimeMillis() + 10_000;
+
+            while (!buffer.isEmpty() && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(10);
+            }
+            stopped.set(true);
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+            assertEquals(
+                producers * packetsPerProducer,
+                received.size() + buffer.getDroppedPackets());
+            assertEquals(0, buffer.getByteSize());
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private static DatagramPacket packet(int id, int length)
+    {
+        byte[] data = new byte[length];
+
+        data[0] = (byte) id;
+        return new DatagramPacket(data, length);
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests {@link TCPFrameDecoder} over a non-blocking <tt>Pipe</tt>.
+ */
+public class TCPFrameDecoderTest
+{
+    private Pipe pipe;
+
+    private TCPFrameDecoder decoder;
+
+    @BeforeEach
+    void beforeEach()
+        throws IOException
+    {
+        pipe = Pipe.open();
+        pipe.source().configureBlocking(false);
+    }
+
+    @AfterEach
+    void afterEach()
+        throws IOException
+    {
+        if (decoder != null)
+        {
+            decoder.release();
+        }
+        pipe.sink().close();
+        pipe.source().close();
+    }
+
+    private static byte[] frame(int length, int seed)
+    {
+        byte[] frame = new byte[2 + length];
+
+        frame[0] = (byte) (length >> 8);
+        frame[1] = (byte) length;
+        for (int i = 0; i < length; i++)
+        {
+            frame[2 + i] = (byte) (seed + i);
+        }
+        return frame;
+    }
+
+    private void write(byte[]... frames)
+        throws IOException
+    {
+        for (byte[] frame : frames)
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+
+            while (buffer.hasRemaining())
+            {
+                pipe.sink().write(buffer);
+            }
+        }
+    }
+
+    @Test
+    public void exactDecoderDoesNotReadPastFrame()
+        throws IOException
+    {
+        byte[] first = frame(100, 1);
+        byte[] second = frame(50, 2);
+
+        decoder = TCPFrameDecoder.createExact();
+        write(first, second);
+
+        assertTrue(decoder.fillFrame(pipe.source()));
+        assertEquals(100, decoder.getFrameLength());
+        assertEquals(first.length, decoder.remaining());
+        assertArrayEquals(
+            Arrays.copyOfRange(first, 2, first.length),
+            Arrays.copyOfRange(
+                decoder.getData(),
+                decoder.getFrameOffset(),
+                decoder.getFrameOffset() + decoder.getFrameLength()));
+
+        // The second frame is left in the channel.
+        ByteBuffer rest = ByteBuffer.allocate(second.length + 1);
+
+        assertEquals(second.length, pipe.source().read(rest));
+        assertArrayEquals(second, Arrays.copyOf(rest.array(), second.length));
+    }
+
+    @Test
+    public void frameTrickledInIsDecodedInTheSameBuffer()
+        throws IOException
+    {
+        byte[] frame = frame(300, 3);
+
+        decoder = TCPFrameDecoder.createExact();
+
+        byte[] data = null;
+
+        for (int i = 0; i < frame.length; i++)
+        {
+            assertFalse(decoder.fillFrame(pipe.source()));
+            write(new byte[] { frame[i] });
+            if (data == null)
+            {
+                assertFalse(decoder.fillFrame(pipe.source()));
+                data = decoder.getData();
+            }
+        }
+        assertTrue(decoder.fillFrame(pipe.source()));
+        assertSame(data, decoder.getData());
+
+        DatagramPacket p = new DatagramPacket(new byte[400], 10, 390);
+
+        assertTrue(decoder.pollFrame(p));
+        assertEquals(10, p.getOffset());
+        assertEquals(300, p.getLength());
+        assertArrayEquals(
+            Arrays.copyOfRange(frame, 2, frame.length),
+            Arrays.copyOfRange(p.getData(), 10, 310));
+        assertEquals(0, decoder.remaining());
+    }
+
+    @Test
+    public void readAheadDecoderReadsSeveralFramesAtOnce()
+        throws IOException
+    {
+        byte[][] frames = { frame(10, 4), frame(0, 5), frame(1000, 6) };
+
+        decoder = TCPFrameDecoder.createReadAhead();
+        write(frames);
+
+        assertTrue(decoder.fill(pipe.source(), 2));
+        for (byte[] frame : frames)
+        {
+            DatagramPacket p = new DatagramPacket(new byte[1500], 1500);
+
+            assertTrue(decoder.pollFrame(p));
+            assertArrayEquals(
+                Arrays.copyOfRange(frame, 2, frame.length),
+                Arrays.copyOf(p.getData(), p.getLength()));
+        }
+        assertFalse(decoder.pollFrame(new DatagramPacket(new byte[1], 1)));
+    }
+
+    @Test
+    public void frameLargerThanPooledBuffer()
+        throws IOException
+    {
+        byte[] frame = frame(TCPFrameDecoder.POOLED_BUFFER_SIZE + 100, 7);
+
+        decoder = TCPFrameDecoder.createExact();
+
+        Thread writer
+            = new Thread(() ->
+            {
+                try
+                {
+                    write(frame);
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+        writer.start();
+        while (!decoder.fillFrame(pipe.source()))
+        {
+            Thread.onSpinWait();
+        }
+        assertEquals(frame.length - 2, decoder.getFrameLength());
+        assertArrayEquals(
+            Arrays.copyOfRange(frame, 2, frame.length),
+            Arrays.copyOfRange(
+                decoder.getData(),
+                decoder.getFrameOffset(),
+                decoder.getFrameOffset() + decoder.getFrameLength()));
+    }
+
+    @Test
+    public void prefixIsMatchedIncrementally()
+        throws IOException
+    {
+        byte[] prefix = { 1, 2, 3, 4 };
+
+        decoder = TCPFrameDecoder.createExact();
+        assertTrue(decoder.mayStartWith(prefix));
+        write(new byte[] { 1, 2 });
+        assertFalse(decoder.fill(pipe.source(), prefix.length));
+        assertTrue(decoder.mayStartWith(prefix));
+        write(new byte[] { 4 });
+        assertFalse(decoder.fill(pipe.source(), prefix.length));
+        assertFalse(decoder.mayStartWith(prefix));
+    }
+
+    @Test
+    public void endOfStreamThrows()
+        throws IOException
+    {
+        decoder = TCPFrameDecoder.createExact();
+        write(new byte[] { 0 });
+        pipe.sink().close();
+        assertFalse(decoder.fillFrame(pipe.source()));
+        assertThrows(
+            EOFException.class,
+            () -> decoder.fillFrame(pipe.source()));
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests the RFC 4571 framing of {@link TCPOutputStream} and
+ * {@link DelegatingSocket#receive(DatagramPacket)} over a loopback
+ * <tt>SocketChannel</tt>.
+ */
+public class TCPFramingTest
+{
+    private ServerSocketChannel serverChannel;
+
+    private SocketChannel senderChannel;
+
+    private SocketChannel receiverChannel;
+
+    @BeforeEach
+    void beforeEach()
+        throws IOException
+    {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        senderChannel = SocketChannel.open(serverChannel.getLocalAddress());
+        receiverChannel = serverChannel.accept();
+    }
+
+    @AfterEach
+    void afterEach()
+        throws IOException
+    {
+        senderChannel.close();
+        receiverChannel.close();
+        serverChannel.close();
+    }
+
+    private static byte[] frame(int length, int seed)
+    {
+        byte[] data = new byte[length];
+
+        for (int i = 0; i < length; i++)
+        {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+
+    @Test
+    public void framesAreReceivedIntact()
+        throws Exception
+    {
+        MultiplexingSocket sender
+            = new MultiplexingSocket(senderChannel.socket());
+        DelegatingSocket receiver
+            = new DelegatingSocket(receiverChannel.socket());
+        // Smaller than, equal to and larger than the read-ahead buffer.
+        int[] lengths = { 1, 100, 1500, 0, 8190, 8192, 20000, 0xFFFF, 3 };
+        List<byte[]> frames = new ArrayList<>();
+
+        for (int i = 0; i < lengths.length; i++)
+        {
+            frames.add(frame(lengths[i], i));
+        }
+
+        Thread senderThread
+            = new Thread(() ->
+            {
+                try
+                {
+                    for (byte[] frame : frames)
+                    {
+                        // Send from an offset in a larger buffer.
+                        byte[] buffer = new byte[frame.length + 10];
+
+                        System.arraycopy(
+                            frame, 0, buffer, 5, frame.length);
+                        sender.send(
+                            new DatagramPacket(buffer, 5, frame.length));
+                    }
+                }
+                catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+        senderThread.start();
+
+        byte[] buffer = new byte[0x10000 + 7];
+
+        for (byte[] frame : frames)
+        {
+            DatagramPacket p = new DatagramPacket(buffer, 7, buffer.length - 7);
+
+            receiver.receive(p);
+            assertSame(buffer, p.getData());
+            assertEquals(7, p.getOffset());
+            assertArrayEquals(
+                frame,
+                Arrays.copyOfRange(
+                    p.getData(), p.getOffset(), p.getOffset() + p.getLength()));
+        }
+        senderThread.join();
+    }
+
+    @Test
+    public void smallPacketBufferIsReplaced()
+        throws Exception
+    {
+        TCPOutputStream out
+            = new TCPOutputStream(
+                senderChannel.socket().getOutputStream(),
+                senderChannel);
+        DelegatingSocket receiver
+            = new DelegatingSocket(receiverChannel.socket());
+        byte[] frame = frame(300, 1);
+
+        out.write(frame, 0, frame.length);
+
+        DatagramPacket p = new DatagramPacket(new byte[100], 100);
+
+        receiver.receive(p);
+        assertEquals(0, p.getOffset());
+        assertArrayEquals(
+            frame,
+            Arrays.copyOf(p.getData(), p.getLength()));
+    }
+
+    @Test
+    public void outputStreamFraming()
+        throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TCPOutputStream out = new TCPOutputStream(bytes);
+
+        out.write(new byte[] { 9, 1, 2, 3, 9 }, 1, 3);
+        out.write(new byte[] { 4 }, 0, 1);
+        assertArrayEquals(
+            new byte[] { 0, 3, 1, 2, 3, 0, 1, 4 },
+            bytes.toByteArray());
+
+        assertThrows(
+            IOException.class,
+            () -> out.write(new byte[0x10000], 0, 0x10000));
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.stack;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.ice4j.*;
+import org.ice4j.message.*;
+import org.ice4j.socket.*;
+import org.ice4j.util.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests the retransmission timers of client transactions on paths with a
+ * simulated delay.
+ */
+public class AdaptiveRetransmissionTest
+{
+    private StunStack stunStack;
+
+    private IceSocketWrapper clientSock;
+
+    private TransportAddress clientAddress;
+
+    private DelayingServer server;
+
+    @BeforeEach
+    public void setUp()
+        throws IOException
+    {
+        stunStack = new StunStack();
+        clientSock
+            = new IceUdpSocketWrapper(
+                new SafeCloseDatagramSocket(
+                    new InetSocketAddress(
+                        InetAddress.getLoopbackAddress(),
+                        0)));
+        clientAddress
+            = new TransportAddress(
+                InetAddress.getLoopbackAddress(),
+                clientSock.getLocalPort(),
+                Transport.UDP);
+        stunStack.addSocket(clientSock);
+        server = new DelayingServer();
+    }
+
+    @AfterEach
+    public void tearDown()
+    {
+        stunStack.shutDown();
+        clientSock.close();
+        server.close();
+    }
+
+    @Test
+    public void disabledByDefault()
+        throws Exception
+    {
+        assertFalse(stunStack.isAdaptiveRetransmissions());
+
+        server.delayMillis = 300;
+        assertTrue(sendRequest(1000).get(5, TimeUnit.SECONDS) >= 0);
+        assertNull(stunStack.getRttEstimator(server.address));
+
+        // The response comes after the fixed 100 ms timer fired.
+        assertEquals(-1, sendRequest(-1).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void highLatencyPathAvoidsSpuriousRetransmissions()
+        throws Exception
+    {
+        stunStack.setAdaptiveRetransmissions(true);
+
+        server.delayMillis = 300;
+        // Measure the round trip time without retransmissions.
+        long rttNanos = sendRequest(1000).get(5, TimeUnit.SECONDS);
+
+        assertTrue(rttNanos >= TimeUnit.MILLISECONDS.toNanos(300));
+
+        RttEstimator estimator = stunStack.getRttEstimator(server.address);
+
+        assertNotNull(estimator);
+        assertEquals(1, estimator.getSampleCount());
+        assertEquals(3 * rttNanos, estimator.getRtoNanos(), 2_000_000);
+
+        // The second request uses the default timers, seeded with the RTO.
+        int received = server.received.size();
+
+        assertTrue(sendRequest(-1).get(5, TimeUnit.SECONDS) >= 0);
+        assertEquals(received + 1, server.received.size());
+        assertEquals(2, estimator.getSampleCount());
+    }
+
+    @Test
+    public void lowLatencyPathFailsFaster()
+        throws Exception
+    {
+        stunStack.setAdaptiveRetransmissions(true);
+
+        assertTrue(sendRequest(-1).get(5, TimeUnit.SECONDS) >= 0);
+
+        server.drop = true;
+
+        int received = server.received.size();
+        long start = System.nanoTime();
+        CompletableFuture<Long> timeout = sendRequest(-1);
+
+        // The RTO is clamped to 50 ms, so the request is retransmitted after
+        // 50, 100, 200, 400, 800, 800 ms and times out 800 ms later instead
+        // of after 9.5 s.
+        assertThrows(
+            ExecutionException.class,
+            () -> timeout.get(8, TimeUnit.SECONDS));
+
+        long elapsedMillis
+            = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis >= 3000, "elapsed " + elapsedMillis);
+        assertTrue(elapsedMillis < 6000, "elapsed " + elapsedMillis);
+        assertEquals(received + 7, server.received.size());
+
+        // Disabling it discards the measurements.
+        stunStack.setAdaptiveRetransmissions(false);
+        assertNull(stunStack.getRttEstimator(server.address));
+    }
+
+    @Test
+    public void explicitTimersKeepTheirDuration()
+        throws Exception
+    {
+        stunStack.setAdaptiveRetransmissions(true);
+
+        assertTrue(sendRequest(-1).get(5, TimeUnit.SECONDS) >= 0);
+
+        server.drop = true;
+
+        int received = server.received.size();
+        long start = System.nanoTime();
+        // The timers of consent freshness, with fewer retransmissions: the
+        // transaction times out after 5 * 500 ms.
+        CompletableFuture<Long> timeout = sendRequest(500, 500, 4);
+
+        // The RTO is clamped to 50 ms, so the request is retransmitted after
+        // 50, 100, 200, 400, 500, 500, 500 ms and times out 500 ms later.
+        assertThrows(
+            ExecutionException.class,
+            () -> timeout.get(8, TimeUnit.SECONDS));
+
+        long elapsedMillis
+            = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMillis >= 2500, "elapsed " + elapsedMillis);
+        assertTrue(elapsedMillis < 5000, "elapsed " + elapsedMillis);
+        assertEquals(received + 8, server.received.size());
+    }
+
+    /**
+     * Sends a Binding request to the server. The default maximum wait
+     * interval and number of retransmissions are passed explicitly so that
+     * the system properties do not affect them.
+     *
+     * @param originalWaitInterval the original wait interval of the
+     * transaction, or -1 for the default.
+     * @return a future completed with the round trip time of the transaction,
+     * or completed exceptionally if it times out.
+     */
+    private CompletableFuture<Long> sendRequest(int originalWaitInterval)
+        throws IOException
+    {
+        return
+            sendRequest(
+                originalWaitInterval,
+                StunClientTransaction.DEFAULT_MAX_WAIT_INTERVAL,
+                StunClientTransaction.DEFAULT_MAX_RETRANSMISSIONS);
+    }
+
+    /**
+     * Sends a Binding request to the server.
+     *
+     * @param originalWaitInterval the original wait interval of the
+     * transaction, or -1 for the default.
+     * @param maxWaitInterval the maximum wait interval of the transaction.
+     * @param maxRetransmissions the number of retransmissions of the
+     * transaction.
+     * @return a future completed with the round trip time of the transaction,
+     * or completed exceptionally if it times out.
+     */
+    private CompletableFuture<Long> sendRequest(
+            int originalWaitInterval,
+            int maxWaitInterval,
+            int maxRetransmissions)
+        throws IOException
+    {
+        CompletableFuture<Long> future = new CompletableFuture<>();
+
+        stunStack.sendRequest(
+            MessageFactory.createBindingRequest(),
+            server.address,
+            clientAddress,
+            new ResponseCollector()
+            {
+                @Override
+                public void processResponse(StunResponseEvent event)
+                {
+                    future.complete(event.getRoundTripTimeNanos());
+                }
+
+                @Override
+                public void processTimeout(StunTimeoutEvent event)
+                {
+                    future.completeExceptionally(new TimeoutException());
+                }
+            },
+            TransactionID.createNewTransactionID(),
+            originalWaitInterval,
+            maxWaitInterval,
+            maxRetransmissions);
+        return future;
+    }
+
+    /**
+     * Answers STUN Binding requests after a configurable delay, or not at
+     * all.
+     */
+    private static class DelayingServer
+    {
+        final DatagramSocket socket;
+
+        final TransportAddress address;
+
+        final List<byte[]> received = new CopyOnWriteArrayList<>();
+
+        final ScheduledExecutorService scheduler
+            = Executors.newSingleThreadScheduledExecutor();
+
+        volatile long delayMillis = 0;
+
+        volatile boolean drop = false;
+
+        DelayingServer()
+            throws SocketException
+        {
+            socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            address
+                = new TransportAddress(
+                    InetAddress.getLoopbackAddress(),
+                    socket.getLocalPort(),
+                    Transport.UDP);
+
+            Thread thread = new Thread(this::run, "DelayingServer");
+
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void run()
+        {
+            DatagramPacket p = new DatagramPacket(new byte[1500], 1500);
+
+            while (!socket.isClosed())
+            {
+                try
+                {
+                    socket.receive(p);
+
+                    Request request
+                        = (Request) Message.decode(
+                            p.getData(), p.getOffset(), p.getLength());
+                    SocketAddress remoteAddress = p.getSocketAddress();
+
+                    received.add(request.getTransactionID());
+                    if (!drop)
+                    {
+                        scheduler.schedule(
+                            () -> respond(request, remoteAddress),
+                            delayMillis,
+                            TimeUnit.MILLISECONDS);
+                    }
+                }
+                catch (Exception e)
+                {
+                    // The socket was closed or the packet was not a request.
+                }
+            }
+        }
+
+        private void respond(Request request, SocketAddress remoteAddress)
+        {
+            try
+            {
+                InetSocketAddress remote = (InetSocketAddress) remoteAddress;
+                Response response
+                    = MessageFactory.createBindingResponse(
+                        request,
+                        new TransportAddress(remote, Transport.UDP));
+
+                response.setTransactionID(request.getTransactionID());
+
+                byte[] data = response.encode(null);
+
+                socket.send(
+                    new DatagramPacket(data, data.length, remoteAddress));
+            }
+            catch (Exception e)
+            {
+                // The socket was closed.
+            }
+        }
+
+        void close()
+        {
+            socket.close();
+            scheduler.shutdownNow();
+        }
+    }
+}
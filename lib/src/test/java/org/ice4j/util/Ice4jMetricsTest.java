@@ -0,0 +1,259 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.ice4j.*;
+import org.ice4j.message.*;
+import org.ice4j.socket.*;
+import org.ice4j.stack.*;
+import org.junit.jupiter.api.*;
+
+public class Ice4jMetricsTest
+{
+    @AfterEach
+    public void tearDown()
+    {
+        Ice4jMetrics.setRegistry(null);
+        PeriodicRunnable.setMetrics(null);
+    }
+
+    @Test
+    public void noOpByDefault()
+    {
+        assertSame(MetricsRegistry.NO_OP, Ice4jMetrics.getRegistry());
+        assertFalse(Ice4jMetrics.isEnabled());
+        assertSame(PeriodicTaskMetrics.NO_OP, PeriodicRunnable.getMetrics());
+    }
+
+    @Test
+    public void instrumentsAreRebound()
+    {
+        MetricsRegistry.Counter counter = Ice4jMetrics.counter("test.counter");
+        MetricsRegistry.Gauge gauge = Ice4jMetrics.gauge("test.gauge");
+        MetricsRegistry.Distribution distribution
+            = Ice4jMetrics.distribution("test.distribution");
+
+        // Ignored, no registry is installed yet.
+        counter.increment();
+
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+
+        Ice4jMetrics.setRegistry(registry);
+        assertTrue(Ice4jMetrics.isEnabled());
+        counter.increment();
+        counter.add(2);
+        gauge.add(5);
+        gauge.add(-2);
+        distribution.record(150);
+        distribution.record(3000);
+
+        assertEquals(3, registry.getCount("test.counter"));
+        assertEquals(3, registry.getGauge("test.gauge"));
+
+        Histogram histogram = registry.getDistribution("test.distribution");
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(3000, histogram.getMax());
+
+        Ice4jMetrics.setRegistry(null);
+        counter.increment();
+        assertEquals(3, registry.getCount("test.counter"));
+        assertEquals(0, registry.getCount("test.unknown"));
+        assertNull(registry.getDistribution("test.unknown"));
+    }
+
+    @Test
+    public void periodicTasksAreReported()
+    {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+
+        Ice4jMetrics.setRegistry(registry);
+        assertNotSame(PeriodicTaskMetrics.NO_OP, PeriodicRunnable.getMetrics());
+
+        PeriodicTaskMetrics metrics = PeriodicRunnable.getMetrics();
+
+        metrics.taskStarted("Task");
+        metrics.taskExecuted("Task", 2_000_000, 300_000);
+        metrics.taskStopped("Task");
+
+        assertEquals(0, registry.getGauge("ice4j.periodic.Task.active"));
+        assertEquals(
+            2000,
+            registry.getDistribution("ice4j.periodic.Task.lag_us").getMax());
+        assertEquals(
+            300,
+            registry.getDistribution("ice4j.periodic.Task.execution_us")
+                .getMax());
+
+        Ice4jMetrics.setRegistry(null);
+        assertSame(PeriodicTaskMetrics.NO_OP, PeriodicRunnable.getMetrics());
+    }
+
+    @Test
+    public void applicationPeriodicTaskMetricsAreKept()
+    {
+        PeriodicTaskMetrics applicationMetrics
+            = new HistogramPeriodicTaskMetrics();
+
+        PeriodicRunnable.setMetrics(applicationMetrics);
+
+        Ice4jMetrics.setRegistry(new SimpleMetricsRegistry());
+        assertSame(applicationMetrics, PeriodicRunnable.getMetrics());
+
+        Ice4jMetrics.setRegistry(null);
+        assertSame(applicationMetrics, PeriodicRunnable.getMetrics());
+    }
+
+    @Test
+    public void stunStackReportsTransactions()
+        throws Exception
+    {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+
+        Ice4jMetrics.setRegistry(registry);
+
+        StunStack stunStack = new StunStack();
+        IceSocketWrapper clientSock = createSocket();
+        IceSocketWrapper serverSock = createSocket();
+        TransportAddress clientAddress = getAddress(clientSock);
+        TransportAddress serverAddress = getAddress(serverSock);
+
+        try
+        {
+            stunStack.addSocket(clientSock);
+            stunStack.addSocket(serverSock);
+            stunStack.addRequestListener(
+                serverAddress,
+                evt ->
+                {
+                    try
+                    {
+                        stunStack.sendResponse(
+                            evt.getTransactionID().getBytes(),
+                            MessageFactory.createBindingResponse(
+                                (Request) evt.getMessage(),
+                                evt.getRemoteAddress()),
+                            serverAddress,
+                            evt.getRemoteAddress());
+                    }
+                    catch (Exception e)
+                    {
+                        throw new IllegalStateException(e);
+                    }
+                });
+
+            CompletableFuture<StunResponseEvent> response
+                = new CompletableFuture<>();
+
+            stunStack.sendRequest(
+                MessageFactory.createBindingRequest(),
+                serverAddress,
+                clientAddress,
+                new ResponseCollector()
+                {
+                    @Override
+                    public void processResponse(StunResponseEvent event)
+                    {
+                        response.complete(event);
+                    }
+
+                    @Override
+                    public void processTimeout(StunTimeoutEvent event)
+                    {
+                        response.completeExceptionally(
+                            new TimeoutException());
+                    }
+                });
+
+            StunResponseEvent event = response.get(5, TimeUnit.SECONDS);
+
+            assertTrue(event.getRoundTripTimeNanos() >= 0);
+            assertTrue(registry.getCount("ice4j.stun.packets_sent") >= 2);
+            assertTrue(registry.getCount("ice4j.stun.packets_received") >= 2);
+            assertTrue(
+                registry.getDistribution("ice4j.stun.processing_lag_us")
+                    .getCount() >= 2);
+
+            // A STUN header which announces more attributes than it carries.
+            byte[] truncated = new byte[20];
+
+            truncated[1] = 0x01;
+            truncated[3] = 0x08;
+            truncated[4] = 0x21;
+            truncated[5] = 0x12;
+            truncated[6] = (byte) 0xA4;
+            truncated[7] = 0x42;
+            try (DatagramSocket sender = new DatagramSocket(0, loopback()))
+            {
+                sender.send(
+                    new DatagramPacket(
+                        truncated,
+                        truncated.length,
+                        serverAddress));
+            }
+
+            waitFor(() -> registry.getCount("ice4j.stun.decode_failures") > 0);
+            waitFor(() -> registry.getGauge("ice4j.stun.queued_messages") == 0);
+        }
+        finally
+        {
+            stunStack.shutDown();
+            clientSock.close();
+            serverSock.close();
+        }
+    }
+
+    private static IceSocketWrapper createSocket()
+        throws SocketException
+    {
+        return
+            new IceUdpSocketWrapper(
+                new SafeCloseDatagramSocket(
+                    new InetSocketAddress(loopback(), 0)));
+    }
+
+    private static TransportAddress getAddress(IceSocketWrapper socket)
+    {
+        return
+            new TransportAddress(
+                loopback(),
+                socket.getLocalPort(),
+                Transport.UDP);
+    }
+
+    private static InetAddress loopback()
+    {
+        return InetAddress.getLoopbackAddress();
+    }
+
+    private static void waitFor(BooleanSupplier condition)
+        throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (!condition.getAsBoolean())
+        {
+            assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.*;
+import java.util.*;
+import org.junit.jupiter.api.*;
+
+public class InetSocketAddressSetTest
+{
+    @Test
+    public void emptySetContainsNothing()
+        throws Exception
+    {
+        InetSocketAddressSet set = InetSocketAddressSet.EMPTY;
+
+        assertEquals(0, set.size());
+        assertFalse(set.contains(InetAddress.getByName("10.0.0.1"), 1000));
+        assertFalse(set.contains(null, 1000));
+    }
+
+    @Test
+    public void addressAndPortMustBothMatch()
+        throws Exception
+    {
+        InetAddress address = InetAddress.getByName("10.0.0.1");
+        InetSocketAddressSet set
+            = InetSocketAddressSet.EMPTY.add(
+                new InetSocketAddress(address, 1000));
+
+        assertTrue(set.contains(address, 1000));
+        assertTrue(
+            set.contains(
+                new InetSocketAddress(
+                    InetAddress.getByName("10.0.0.1"), 1000)));
+        assertFalse(set.contains(address, 1001));
+        assertFalse(set.contains(InetAddress.getByName("10.0.0.2"), 1000));
+    }
+
+    @Test
+    public void ipv6Addresses()
+        throws Exception
+    {
+        InetAddress address = InetAddress.getByName("2001:db8::1");
+        InetSocketAddressSet set
+            = InetSocketAddressSet.EMPTY
+                .add(new InetSocketAddress(address, 5000))
+                .add(new InetSocketAddress("10.0.0.1", 5000));
+
+        assertTrue(set.contains(InetAddress.getByName("2001:db8::1"), 5000));
+        assertFalse(set.contains(InetAddress.getByName("2001:db8::2"), 5000));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void addIsCopyOnWrite()
+    {
+        InetSocketAddress address = new InetSocketAddress("10.0.0.1", 1000);
+        InetSocketAddressSet set1 = InetSocketAddressSet.EMPTY.add(address);
+        InetSocketAddressSet set2
+            = set1.add(new InetSocketAddress("10.0.0.2", 1000));
+
+        assertSame(set1, set1.add(address));
+        assertEquals(1, set1.size());
+        assertEquals(2, set2.size());
+        assertFalse(
+            set1.contains(new InetSocketAddress("10.0.0.2", 1000)));
+    }
+
+    @Test
+    public void manyAddresses()
+        throws Exception
+    {
+        Set<InetSocketAddress> expected = new HashSet<>();
+        InetSocketAddressSet set = InetSocketAddressSet.EMPTY;
+
+        for (int i = 0; i < 1000; i++)
+        {
+            InetSocketAddress address
+                = new InetSocketAddress(
+                    InetAddress.getByAddress(
+                        new byte[] { 10, 0, (byte) (i >> 8), (byte) i }),
+                    10000 + i % 7);
+
+            expected.add(address);
+            set = set.add(address);
+        }
+
+        assertEquals(expected.size(), set.size());
+        assertEquals(expected, set.toSet());
+        for (InetSocketAddress address : expected)
+        {
+            assertTrue(set.contains(address.getAddress(), address.getPort()));
+            assertFalse(
+                set.contains(address.getAddress(), address.getPort() + 7));
+        }
+    }
+}
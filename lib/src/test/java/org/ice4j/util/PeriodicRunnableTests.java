@@ -160,4 +160,46 @@ public class PeriodicRunnableTests
         }
         assertEquals(4, latch.getCount());
     }
+
+    @Test
+    public void metricsAreReportedWhenEnabled()
+    {
+        HistogramPeriodicTaskMetrics metrics
+            = new HistogramPeriodicTaskMetrics();
+        PeriodicRunnable.setMetrics(metrics);
+        try
+        {
+            final PeriodicRunnable scheduledRunnable = PeriodicRunnable.create(
+                timer,
+                executor,
+                Duration.ofMillis(100),
+                () -> {});
+            HistogramPeriodicTaskMetrics.Stats stats
+                = metrics.getStats(PeriodicRunnable.class.getSimpleName());
+
+            scheduledRunnable.schedule();
+            assertEquals(1, stats.getActiveCount());
+
+            for (int i = 0; i < 3; i++)
+            {
+                timer.getClock().elapse(Duration.ofMillis(110));
+                timer.run();
+            }
+            assertEquals(3, stats.getLag().getCount());
+            assertEquals(3, stats.getExecutionTime().getCount());
+
+            scheduledRunnable.cancel();
+            assertEquals(0, stats.getActiveCount());
+        }
+        finally
+        {
+            PeriodicRunnable.setMetrics(null);
+        }
+    }
+
+    @Test
+    public void noMetricsAreReportedByDefault()
+    {
+        assertSame(PeriodicTaskMetrics.NO_OP, PeriodicRunnable.getMetrics());
+    }
 }
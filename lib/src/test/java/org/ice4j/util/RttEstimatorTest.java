@@ -0,0 +1,97 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ice4j.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.*;
+
+public class RttEstimatorTest
+{
+    @Test
+    public void unknownWithoutSamples()
+    {
+        RttEstimator estimator = new RttEstimator();
+
+        assertEquals(RttEstimator.UNKNOWN, estimator.getSmoothedRttNanos());
+        assertEquals(RttEstimator.UNKNOWN, estimator.getRttVariationNanos());
+        assertEquals(RttEstimator.UNKNOWN, estimator.getMinRttNanos());
+        assertEquals(RttEstimator.UNKNOWN, estimator.getLatestRttNanos());
+        assertEquals(0, estimator.getSampleCount());
+    }
+
+    @Test
+    public void firstSample()
+    {
+        RttEstimator estimator = new RttEstimator();
+
+        estimator.update(100_000);
+
+        assertEquals(100_000, estimator.getSmoothedRttNanos());
+        assertEquals(50_000, estimator.getRttVariationNanos());
+        assertEquals(100_000, estimator.getMinRttNanos());
+        assertEquals(1, estimator.getSampleCount());
+    }
+
+    @Test
+    public void subsequentSamples()
+    {
+        RttEstimator estimator = new RttEstimator();
+
+        estimator.update(100_000);
+        estimator.update(180_000);
+
+        // RTTVAR = 3/4 * 50000 + 1/4 * |100000 - 180000|
+        assertEquals(57_500, estimator.getRttVariationNanos());
+        // SRTT = 7/8 * 100000 + 1/8 * 180000
+        assertEquals(110_000, estimator.getSmoothedRttNanos());
+        assertEquals(100_000, estimator.getMinRttNanos());
+        assertEquals(180_000, estimator.getLatestRttNanos());
+
+        estimator.update(20_000);
+        assertEquals(20_000, estimator.getMinRttNanos());
+        assertEquals(3, estimator.getSampleCount());
+    }
+
+    @Test
+    public void retransmissionTimeout()
+    {
+        RttEstimator estimator = new RttEstimator();
+
+        assertEquals(RttEstimator.UNKNOWN, estimator.getRtoNanos());
+
+        // SRTT + 4 * RTTVAR
+        estimator.update(100_000_000);
+        assertEquals(300_000_000, estimator.getRtoNanos());
+
+        // The clock granularity when 4 * RTTVAR is below it.
+        estimator = new RttEstimator();
+        estimator.update(100_000);
+        assertEquals(1_100_000, estimator.getRtoNanos());
+    }
+
+    @Test
+    public void unknownSamplesAreIgnored()
+    {
+        RttEstimator estimator = new RttEstimator();
+
+        estimator.update(100_000);
+        estimator.update(-1);
+
+        assertEquals(100_000, estimator.getSmoothedRttNanos());
+        assertEquals(1, estimator.getSampleCount());
+    }
+}
@@ -0,0 +1,99 @@
+package org.ice4j.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Test various aspects of {@link ShardedScheduler} implementation.
+ */
+public class ShardedSchedulerTests
+{
+    private ShardedScheduler scheduler;
+
+    @BeforeEach
+    void beforeEach()
+    {
+        scheduler = new ShardedScheduler("test-scheduler-", 4);
+    }
+
+    @AfterEach
+    void afterEach()
+    {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void sameKeyIsAlwaysAssignedToSameShard()
+    {
+        Object key = new Object();
+        ShardedScheduler.Shard shard = scheduler.shardFor(key);
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertSame(shard, scheduler.shardFor(key));
+        }
+    }
+
+    @Test
+    public void keysAreSpreadOverAllShards()
+    {
+        Set<ShardedScheduler.Shard> used = new HashSet<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            used.add(scheduler.shardFor(new Object()));
+        }
+
+        assertEquals(scheduler.getShardCount(), used.size());
+    }
+
+    @Test
+    public void lagIsRecordedForExecutedTasks()
+        throws Exception
+    {
+        ShardedScheduler.Shard shard = scheduler.getShard(0);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // Block the shard's only thread so that the next task fires late.
+        shard.execute(() ->
+        {
+            try
+            {
+                blocked.await();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        });
+        shard.schedule(done::countDown, 10, TimeUnit.MILLISECONDS);
+
+        Thread.sleep(200);
+        blocked.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, shard.getExecutedTaskCount());
+        assertTrue(
+            shard.getMaxLag().toMillis() >= 100,
+            "Lag was not recorded: " + shard);
+    }
+
+    @Test
+    public void periodicTasksKeepRunning()
+        throws Exception
+    {
+        ShardedScheduler.Shard shard = scheduler.getShard(1);
+        CountDownLatch latch = new CountDownLatch(5);
+
+        ScheduledFuture<?> f = shard.scheduleWithFixedDelay(
+            latch::countDown, 1, 1, TimeUnit.MILLISECONDS);
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        f.cancel(false);
+        assertTrue(f.isCancelled());
+        assertTrue(shard.getExecutedTaskCount() >= 5);
+    }
+}
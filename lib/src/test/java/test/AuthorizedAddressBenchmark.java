@@ -0,0 +1,124 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.net.*;
+import java.util.*;
+
+import org.ice4j.util.*;
+
+/**
+ * A microbenchmark of the authorized-address check which
+ * <tt>ComponentSocket</tt> performs for every received packet. It compares
+ * the previous implementation, a <tt>HashSet&lt;SocketAddress&gt;</tt>
+ * queried with <tt>DatagramPacket.getSocketAddress()</tt>, with
+ * {@link InetSocketAddressSet} queried with the address and port of the
+ * packet.
+ * <p>
+ * Usage: <tt>AuthorizedAddressBenchmark [authorizedCount] [iterations]</tt>.
+ * Run with <tt>-verbose:gc</tt> to see the allocation pressure of the
+ * previous implementation.
+ * </p>
+ */
+public class AuthorizedAddressBenchmark
+{
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the number of authorized addresses (default 4) and the
+     * number of packets per round (default 10 million).
+     * @throws Exception if an address can not be created.
+     */
+    public static void main(String[] args)
+        throws Exception
+    {
+        int authorizedCount = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int iterations
+            = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+
+        Set<SocketAddress> hashSet = new HashSet<>();
+        InetSocketAddressSet table = InetSocketAddressSet.EMPTY;
+        // A power of two, so that the packets can be indexed with a mask.
+        int packetCount = Integer.highestOneBit(authorizedCount) * 2;
+        DatagramPacket[] packets = new DatagramPacket[packetCount];
+
+        for (int i = 0; i < authorizedCount; i++)
+        {
+            InetSocketAddress address
+                = new InetSocketAddress(
+                    InetAddress.getByAddress(
+                        new byte[] { (byte) 198, 51, 100, (byte) (i + 1) }),
+                    10000 + i);
+
+            hashSet.add(address);
+            table = table.add(address);
+            packets[i] = new DatagramPacket(new byte[1500], 1500, address);
+        }
+        // The remaining packets come from unauthorized sources.
+        for (int i = authorizedCount; i < packetCount; i++)
+        {
+            packets[i]
+                = new DatagramPacket(
+                    new byte[1500],
+                    1500,
+                    new InetSocketAddress("203.0.113.1", 5000 + i));
+        }
+
+        int mask = packetCount - 1;
+
+        for (int round = 0; round < 5; round++)
+        {
+            long start = System.nanoTime();
+            int accepted = 0;
+
+            for (int i = 0; i < iterations; i++)
+            {
+                if (hashSet.contains(
+                        packets[i & mask].getSocketAddress()))
+                {
+                    accepted++;
+                }
+            }
+
+            long hashSetNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i++)
+            {
+                DatagramPacket p = packets[i & mask];
+
+                if (table.contains(p.getAddress(), p.getPort()))
+                {
+                    accepted--;
+                }
+            }
+
+            long tableNanos = System.nanoTime() - start;
+
+            if (accepted != 0)
+            {
+                throw new IllegalStateException("Results differ");
+            }
+
+            System.out.printf(
+                "round %d: HashSet %.1f ns/packet, InetSocketAddressSet %.1f"
+                    + " ns/packet%n",
+                round,
+                ((double) hashSetNanos) / iterations,
+                ((double) tableNanos) / iterations);
+        }
+    }
+}
@@ -0,0 +1,544 @@
+/*
+ * Copyright @ 2024 - present 8x8, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package test;
+
+import java.beans.*;
+import java.io.*;
+import java.lang.management.*;
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.ice4j.*;
+import org.ice4j.ice.*;
+import org.ice4j.ice.harvest.*;
+import org.ice4j.socket.*;
+
+/**
+ * A load generator which establishes connectivity between many pairs of
+ * controlling and controlled <tt>Agent</tt>s over the loopback interface, all
+ * at once, and reports:
+ * <ul>
+ * <li>the percentiles of the time from the start of the connectivity checks
+ * of a pair to both of its agents being <tt>Completed</tt>;</li>
+ * <li>the rate of STUN packets;</li>
+ * <li>the CPU time of the process;</li>
+ * <li>the bytes allocated per connectivity check;</li>
+ * <li>the peak number of threads.</li>
+ * </ul>
+ * The controlling agents play the clients and each has a socket of its own.
+ * The controlled agents play the server, either with a socket per agent too,
+ * or all behind a single {@link SinglePortUdpHarvester} like a bridge.
+ * <p>
+ * Usage: <tt>IceLoad [pairs] [single-port] [timeoutSeconds]</tt>, e.g.
+ * <tt>IceLoad 500 single-port</tt>. The defaults are 100 pairs, a socket per
+ * agent and 60 seconds.
+ * </p>
+ * The packets and checks are counted on the sockets of the controlling
+ * agents, which are at one end of every packet. The allocations are tracked
+ * per thread by an {@link AllocationTracker}, so that threads which start or
+ * exit during the run count with what they allocated during it.
+ */
+public class IceLoad
+{
+    public static void main(String[] args)
+        throws Exception
+    {
+        int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        boolean singlePort
+            = args.length > 1 && "single-port".equals(args[1]);
+        int timeoutSeconds = args.length > 2 ? Integer.parseInt(args[2]) : 60;
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        Counters counters = new Counters();
+        CandidateHarvester clientHarvester
+            = new LoopbackHarvester(loopback, counters);
+        SinglePortUdpHarvester singlePortHarvester
+            = singlePort
+                ? new SinglePortUdpHarvester(
+                    new TransportAddress(loopback, 0, Transport.UDP))
+                : null;
+        CandidateHarvester serverHarvester
+            = singlePort
+                ? singlePortHarvester
+                : new LoopbackHarvester(loopback, null);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        AllocationTracker allocations = AllocationTracker.start();
+        long startCpu = getProcessCpuTime();
+
+        threads.resetPeakThreadCount();
+
+        List<Session> sessions = new ArrayList<>(pairs);
+        long setupStart = System.nanoTime();
+
+        for (int i = 0; i < pairs; i++)
+        {
+            sessions.add(new Session(clientHarvester, serverHarvester));
+        }
+
+        long setupNanos = System.nanoTime() - setupStart;
+        long checksStart = System.nanoTime();
+
+        for (Session session : sessions)
+        {
+            session.start();
+        }
+
+        long deadline
+            = checksStart + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        int failed = 0;
+
+        for (Session session : sessions)
+        {
+            if (!session.done.await(
+                    Math.max(0, deadline - System.nanoTime()),
+                    TimeUnit.NANOSECONDS)
+                || session.completedNanos < 0)
+            {
+                failed++;
+            }
+        }
+
+        long checksNanos = System.nanoTime() - checksStart;
+        long allocated = allocations == null ? 0 : allocations.stop();
+        long cpu = getProcessCpuTime() - startCpu;
+        long[] times
+            = sessions.stream()
+                .filter(s -> s.completedNanos >= 0)
+                .mapToLong(s -> s.completedNanos - s.startNanos)
+                .sorted()
+                .toArray();
+        long packets = counters.packets.get();
+        long checks = counters.checks.get();
+        double seconds = checksNanos / 1e9;
+
+        System.out.printf(
+            "%d pairs, %s, set up in %d ms%n",
+            pairs,
+            singlePort ? "single port" : "a socket per agent",
+            TimeUnit.NANOSECONDS.toMillis(setupNanos));
+        System.out.printf(
+            "completed %d, failed or timed out %d, in %.3f s%n",
+            times.length, failed, seconds);
+        if (times.length > 0)
+        {
+            System.out.printf(
+                "time to completed (ms): p50 %.1f, p90 %.1f, p99 %.1f,"
+                    + " max %.1f%n",
+                percentile(times, 50),
+                percentile(times, 90),
+                percentile(times, 99),
+                times[times.length - 1] / 1e6);
+        }
+        System.out.printf(
+            "STUN: %d packets, %d checks, %.0f packets/s%n",
+            packets, checks, packets / seconds);
+        if (cpu >= 0)
+        {
+            System.out.printf(
+                "CPU: %.3f s (%.0f%% of one core)%n",
+                cpu / 1e9, 100 * cpu / (double) checksNanos);
+        }
+        if (allocations != null && checks > 0)
+        {
+            System.out.printf(
+                "allocated: %.1f MiB, %d bytes per check%n",
+                allocated / (1024.0 * 1024), allocated / checks);
+        }
+        System.out.printf(
+            "threads: peak %d, now %d%n",
+            threads.getPeakThreadCount(), threads.getThreadCount());
+
+        for (Session session : sessions)
+        {
+            session.free();
+        }
+        if (singlePortHarvester != null)
+        {
+            singlePortHarvester.close();
+        }
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    /**
+     * Gets a percentile of sorted durations.
+     *
+     * @param sorted the durations in nanoseconds, in ascending order.
+     * @param percentile the percentile to get.
+     * @return the <tt>percentile</tt>th percentile of <tt>sorted</tt> in
+     * milliseconds.
+     */
+    private static double percentile(long[] sorted, int percentile)
+    {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Tracks the bytes allocated by all threads during a run, by thread id.
+     * The threads are sampled periodically, so that a thread which exits
+     * during the run counts with what it had allocated when it was last
+     * sampled, and a thread which starts during the run counts from zero.
+     * Only threads which live shorter than the sampling interval are missed.
+     */
+    private static class AllocationTracker
+    {
+        private static final long SAMPLE_INTERVAL_MILLIS = 100;
+
+        private final com.sun.management.ThreadMXBean threads;
+
+        /**
+         * The bytes allocated by each thread at the start of the run.
+         */
+        private final Map<Long, Long> startBytes;
+
+        /**
+         * The bytes allocated by each thread when it was last sampled.
+         */
+        private final Map<Long, Long> lastBytes = new HashMap<>();
+
+        private final ScheduledExecutorService sampler
+            = Executors.newSingleThreadScheduledExecutor(r ->
+            {
+                Thread t = new Thread(r, "IceLoad-allocations");
+
+                t.setDaemon(true);
+                return t;
+            });
+
+        /**
+         * Starts tracking the allocations, if the JVM measures them.
+         *
+         * @return the tracker, or <tt>null</tt> if the JVM does not measure
+         * the allocations of threads.
+         */
+        static AllocationTracker start()
+        {
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+            if (!(threads instanceof com.sun.management.ThreadMXBean))
+                return null;
+
+            com.sun.management.ThreadMXBean sunThreads
+                = (com.sun.management.ThreadMXBean) threads;
+
+            if (!sunThreads.isThreadAllocatedMemorySupported()
+                    || !sunThreads.isThreadAllocatedMemoryEnabled())
+            {
+                return null;
+            }
+            return new AllocationTracker(sunThreads);
+        }
+
+        private AllocationTracker(com.sun.management.ThreadMXBean threads)
+        {
+            this.threads = threads;
+            sample();
+            startBytes = new HashMap<>(lastBytes);
+            sampler.scheduleAtFixedRate(
+                this::sample,
+                SAMPLE_INTERVAL_MILLIS,
+                SAMPLE_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+        }
+
+        private synchronized void sample()
+        {
+            long[] ids = threads.getAllThreadIds();
+            long[] bytes = threads.getThreadAllocatedBytes(ids);
+
+            for (int i = 0; i < ids.length; i++)
+            {
+                // -1 if the thread exited since its id was read.
+                if (bytes[i] >= 0)
+                    lastBytes.put(ids[i], bytes[i]);
+            }
+        }
+
+        /**
+         * Stops tracking the allocations.
+         *
+         * @return the bytes allocated by all threads since the start.
+         */
+        synchronized long stop()
+        {
+            sampler.shutdownNow();
+            sample();
+
+            long allocated = 0;
+
+            for (Map.Entry<Long, Long> e : lastBytes.entrySet())
+            {
+                allocated
+                    += e.getValue() - startBytes.getOrDefault(e.getKey(), 0L);
+            }
+            return allocated;
+        }
+    }
+
+    /**
+     * Gets the CPU time of the process, if the JVM measures it.
+     *
+     * @return the CPU time of the process in nanoseconds, or <tt>-1</tt>.
+     */
+    private static long getProcessCpuTime()
+    {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+        return
+            os instanceof com.sun.management.OperatingSystemMXBean
+                ? ((com.sun.management.OperatingSystemMXBean) os)
+                    .getProcessCpuTime()
+                : -1;
+    }
+
+    /**
+     * A controlling and a controlled agent with one stream of one component.
+     */
+    private static class Session
+        implements PropertyChangeListener
+    {
+        private final Agent controlling;
+
+        private final Agent controlled;
+
+        /**
+         * Counted down when both agents are <tt>Completed</tt> or one failed.
+         */
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private final Set<Agent> completed = ConcurrentHashMap.newKeySet();
+
+        private volatile long startNanos;
+
+        private volatile long completedNanos = -1;
+
+        Session(
+                CandidateHarvester controllingHarvester,
+                CandidateHarvester controlledHarvester)
+            throws IOException
+        {
+            controlling = createAgent(controllingHarvester, true);
+            controlled = createAgent(controlledHarvester, false);
+            exchange(controlling, controlled);
+            exchange(controlled, controlling);
+        }
+
+        void start()
+        {
+            startNanos = System.nanoTime();
+            controlled.startConnectivityEstablishment();
+            controlling.startConnectivityEstablishment();
+        }
+
+        void free()
+        {
+            controlling.free();
+            controlled.free();
+        }
+
+        @Override
+        public void propertyChange(PropertyChangeEvent evt)
+        {
+            Object state = evt.getNewValue();
+
+            if (state == IceProcessingState.COMPLETED)
+            {
+                completed.add((Agent) evt.getSource());
+                if (completed.size() == 2)
+                {
+                    completedNanos = System.nanoTime();
+                    done.countDown();
+                }
+            }
+            else if (state == IceProcessingState.FAILED)
+            {
+                done.countDown();
+            }
+        }
+
+        private Agent createAgent(
+                CandidateHarvester harvester,
+                boolean isControlling)
+            throws IOException
+        {
+            Agent agent = new Agent();
+
+            agent.setControlling(isControlling);
+            agent.setUseDynamicPorts(false);
+            agent.addCandidateHarvester(harvester);
+            agent.addStateChangeListener(this);
+            agent.createComponent(
+                agent.createMediaStream("audio"),
+                KeepAliveStrategy.SELECTED_ONLY,
+                true);
+            return agent;
+        }
+
+        /**
+         * Gives the credentials and the candidates of an agent to the other.
+         *
+         * @param from the agent whose credentials and candidates to give.
+         * @param to the agent to give them to.
+         */
+        private static void exchange(Agent from, Agent to)
+        {
+            IceMediaStream fromStream = from.getStream("audio");
+            IceMediaStream toStream = to.getStream("audio");
+
+            toStream.setRemoteUfrag(from.getLocalUfrag());
+            toStream.setRemotePassword(from.getLocalPassword());
+
+            Component fromComponent
+                = fromStream.getComponent(Component.RTP);
+            Component toComponent = toStream.getComponent(Component.RTP);
+
+            for (LocalCandidate candidate : fromComponent.getLocalCandidates())
+            {
+                toComponent.addRemoteCandidate(
+                    new RemoteCandidate(
+                        candidate.getTransportAddress(),
+                        toComponent,
+                        candidate.getType(),
+                        candidate.getFoundation(),
+                        candidate.getPriority(),
+                        null));
+            }
+        }
+    }
+
+    /**
+     * The number of STUN packets and checks sent and received by the
+     * controlling agents.
+     */
+    private static class Counters
+    {
+        final AtomicLong packets = new AtomicLong();
+
+        final AtomicLong checks = new AtomicLong();
+
+        void count(DatagramPacket p)
+        {
+            packets.incrementAndGet();
+
+            byte[] data = p.getData();
+            int off = p.getOffset();
+
+            // A Binding request.
+            if (p.getLength() >= 2 && data[off] == 0 && data[off + 1] == 1)
+                checks.incrementAndGet();
+        }
+    }
+
+    /**
+     * A host harvester which binds a socket on the loopback address, which
+     * the <tt>HostCandidateHarvester</tt> skips.
+     */
+    private static class LoopbackHarvester
+        extends AbstractCandidateHarvester
+    {
+        private final InetAddress address;
+
+        /**
+         * The counters of the packets sent and received by the sockets, or
+         * <tt>null</tt> not to count them.
+         */
+        private final Counters counters;
+
+        LoopbackHarvester(InetAddress address, Counters counters)
+        {
+            this.address = address;
+            this.counters = counters;
+        }
+
+        @Override
+        public Collection<LocalCandidate> harvest(Component component)
+        {
+            DatagramSocket socket;
+
+            try
+            {
+                socket
+                    = counters == null
+                        ? new MultiplexingDatagramSocket(0, address)
+                        : new MultiplexingDatagramSocket(
+                            new CountingDatagramSocket(address, counters));
+            }
+            catch (SocketException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+
+            HostCandidate candidate
+                = new HostCandidate(
+                    new IceUdpSocketWrapper(socket),
+                    component,
+                    Transport.UDP);
+
+            component.addLocalCandidate(candidate);
+            candidate.getStunStack().addSocket(candidate.getStunSocket(null));
+
+            ComponentSocket componentSocket = component.getComponentSocket();
+
+            if (componentSocket != null)
+                componentSocket.add(socket);
+
+            return Collections.singletonList(candidate);
+        }
+
+        @Override
+        public boolean isHostHarvester()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * A <tt>DatagramSocket</tt> which counts the packets it sends and
+     * receives.
+     */
+    private static class CountingDatagramSocket
+        extends DatagramSocket
+    {
+        private final Counters counters;
+
+        CountingDatagramSocket(InetAddress address, Counters counters)
+            throws SocketException
+        {
+            super(0, address);
+            this.counters = counters;
+        }
+
+        @Override
+        public void send(DatagramPacket p)
+            throws IOException
+        {
+            super.send(p);
+            counters.count(p);
+        }
+
+        @Override
+        public void receive(DatagramPacket p)
+            throws IOException
+        {
+            super.receive(p);
+            counters.count(p);
+        }
+    }
+}